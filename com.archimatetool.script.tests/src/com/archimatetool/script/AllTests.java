@@ -6,24 +6,42 @@
 package com.archimatetool.script;
 
 
+import com.archimatetool.script.dom.jarchi.FSTests;
+import com.archimatetool.script.dom.model.AncestorCacheTests;
 import com.archimatetool.script.dom.model.ArchimateDiagramModelObjectProxyTests;
 import com.archimatetool.script.dom.model.ArchimateDiagramModelProxyTests;
 import com.archimatetool.script.dom.model.ArchimateElementProxyTests;
 import com.archimatetool.script.dom.model.ArchimateModelProxyTests;
 import com.archimatetool.script.dom.model.ArchimateRelationshipProxyTests;
+import com.archimatetool.script.dom.model.BatchRendererTests;
 import com.archimatetool.script.dom.model.CanvasDiagramModelProxyTests;
 import com.archimatetool.script.dom.model.CurrentModelTests;
+import com.archimatetool.script.dom.model.DerivationEngineTests;
+import com.archimatetool.script.dom.model.DiagramFingerprintTests;
 import com.archimatetool.script.dom.model.DiagramModelConnectionProxyTests;
 import com.archimatetool.script.dom.model.DiagramModelGroupProxyTests;
 import com.archimatetool.script.dom.model.DiagramModelNoteProxyTests;
 import com.archimatetool.script.dom.model.DiagramModelReferenceProxyTests;
 import com.archimatetool.script.dom.model.EObjectProxyCollectionTests;
 import com.archimatetool.script.dom.model.FolderProxyTests;
+import com.archimatetool.script.dom.model.GraphSnapshotTests;
+import com.archimatetool.script.dom.model.GraphTraversalTests;
+import com.archimatetool.script.dom.model.GroupKeyFactoryTests;
+import com.archimatetool.script.dom.model.ModelChangeTrackerTests;
+import com.archimatetool.script.dom.model.ModelDiffTests;
+import com.archimatetool.script.dom.model.ModelExporterTests;
 import com.archimatetool.script.dom.model.ModelFactoryTests;
+import com.archimatetool.script.dom.model.ModelImporterTests;
+import com.archimatetool.script.dom.model.ModelJournalTests;
+import com.archimatetool.script.dom.model.ModelSnapshotTests;
 import com.archimatetool.script.dom.model.ModelTests;
 import com.archimatetool.script.dom.model.ModelUtilTests;
+import com.archimatetool.script.dom.model.OffscreenRendererTests;
+import com.archimatetool.script.dom.model.PNGWriterTests;
+import com.archimatetool.script.dom.model.ReachabilityIndexTests;
 import com.archimatetool.script.dom.model.SelectorFilterFactoryTests;
 import com.archimatetool.script.dom.model.SketchDiagramModelProxyTests;
+import com.archimatetool.script.dom.model.ViewRendererTests;
 
 import junit.framework.TestSuite;
 
@@ -33,24 +51,42 @@ public class AllTests {
     public static junit.framework.Test suite() {
 		TestSuite suite = new TestSuite("com.archimatetool.script");
 
+        suite.addTest(FSTests.suite());
+        suite.addTest(AncestorCacheTests.suite());
         suite.addTest(ArchimateDiagramModelObjectProxyTests.suite());
         suite.addTest(ArchimateDiagramModelProxyTests.suite());
         suite.addTest(ArchimateElementProxyTests.suite());
 		suite.addTest(ArchimateModelProxyTests.suite());
         suite.addTest(ArchimateRelationshipProxyTests.suite());
+        suite.addTest(BatchRendererTests.suite());
         suite.addTest(CanvasDiagramModelProxyTests.suite());
         suite.addTest(CurrentModelTests.suite());
+        suite.addTest(DerivationEngineTests.suite());
+        suite.addTest(DiagramFingerprintTests.suite());
         suite.addTest(DiagramModelConnectionProxyTests.suite());
         suite.addTest(DiagramModelNoteProxyTests.suite());
         suite.addTest(DiagramModelGroupProxyTests.suite());
         suite.addTest(DiagramModelReferenceProxyTests.suite());
         suite.addTest(EObjectProxyCollectionTests.suite());
         suite.addTest(FolderProxyTests.suite());
+        suite.addTest(GraphSnapshotTests.suite());
+        suite.addTest(GraphTraversalTests.suite());
+        suite.addTest(GroupKeyFactoryTests.suite());
+        suite.addTest(ModelChangeTrackerTests.suite());
+        suite.addTest(ModelDiffTests.suite());
+        suite.addTest(ModelExporterTests.suite());
         suite.addTest(ModelFactoryTests.suite());
+        suite.addTest(ModelImporterTests.suite());
+        suite.addTest(ModelJournalTests.suite());
+        suite.addTest(ModelSnapshotTests.suite());
 		suite.addTest(ModelTests.suite());
         suite.addTest(ModelUtilTests.suite());
+        suite.addTest(OffscreenRendererTests.suite());
+        suite.addTest(PNGWriterTests.suite());
+        suite.addTest(ReachabilityIndexTests.suite());
         suite.addTest(SelectorFilterFactoryTests.suite());
         suite.addTest(SketchDiagramModelProxyTests.suite());
+        suite.addTest(ViewRendererTests.suite());
 		
         return suite;
 	}
@@ -0,0 +1,131 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.jarchi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * FS Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class FSTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FSTests.class);
+    }
+    
+    private FS fs;
+    private File file;
+    
+    @Before
+    public void runOnceBeforeEachTest() throws IOException {
+        fs = new FS();
+        file = File.createTempFile("~temp", ".txt");
+        file.deleteOnExit();
+    }
+    
+    @Test
+    public void open_Append_Close() throws IOException {
+        FileHandle handle = fs.open(file.getPath());
+        assertTrue(handle.isOpen());
+        handle.appendLine("one").append("two");
+        handle.close();
+        assertFalse(handle.isOpen());
+        
+        handle = fs.append(file.getPath());
+        handle.append("three").flush();
+        assertEquals("one\ntwothree", fs.readFile(file.getPath()));
+        handle.close();
+    }
+    
+    @Test(expected = IOException.class)
+    public void append_Closed() throws IOException {
+        FileHandle handle = fs.open(file.getPath());
+        handle.close();
+        handle.append("text");
+    }
+    
+    @Test
+    public void open_UnknownEncoding() throws IOException {
+        fs.writeFile(file.getPath(), "text");
+        
+        try {
+            fs.open(file.getPath(), "bogus");
+            fail("Should have thrown an exception");
+        }
+        catch(UnsupportedCharsetException ex) {
+        }
+        
+        // The encoding is checked before the file is opened so it is not replaced
+        assertEquals("text", fs.readFile(file.getPath()));
+    }
+    
+    @Test
+    public void closeAll() throws IOException {
+        FileHandle handle = fs.open(file.getPath());
+        handle.append("text");
+        FileHandle.closeAll();
+        assertFalse(handle.isOpen());
+        assertEquals("text", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void readLines() throws IOException {
+        fs.writeFile(file.getPath(), "a\nb\r\nc\n");
+        
+        List<String> lines = new ArrayList<>();
+        assertEquals(3, fs.readLines(file.getPath(), line -> lines.add(line)));
+        assertEquals(Arrays.asList("a", "b", "c"), lines);
+        
+        lines.clear();
+        assertEquals(2, fs.readLines(file.getPath(), line -> lines.add(line) && !line.equals("b")));
+        assertEquals(Arrays.asList("a", "b"), lines);
+    }
+    
+    @Test(expected = UnsupportedCharsetException.class)
+    public void readLines_UnknownEncoding() throws IOException {
+        fs.writeFile(file.getPath(), "a\n");
+        fs.readLines(file.getPath(), "bogus", line -> true);
+    }
+    
+    @Test
+    public void readFile_Base64() throws IOException {
+        fs.writeFile(file.getPath(), "AAEC", "BASE64");
+        assertEquals("AAEC", fs.readFile(file.getPath(), "BASE64"));
+    }
+    
+    @Test
+    public void mappedFileInputStream() throws IOException {
+        fs.writeFile(file.getPath(), "abc");
+        
+        try(MappedFileInputStream in = new MappedFileInputStream(file.toPath())) {
+            byte[] bytes = new byte[10];
+            assertEquals(3, in.read(bytes, 0, 10));
+            assertEquals("abc", new String(bytes, 0, 3, StandardCharsets.UTF_8));
+            assertEquals(-1, in.read());
+        }
+    }
+}
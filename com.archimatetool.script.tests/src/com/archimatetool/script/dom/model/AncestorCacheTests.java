@@ -0,0 +1,101 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IBusinessActor;
+import com.archimatetool.model.IFolder;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * AncestorCache Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class AncestorCacheTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(AncestorCacheTests.class);
+    }
+    
+    private IArchimateModel model;
+    private IFolder folder, subFolder;
+    private IBusinessActor actor1, actor2;
+    
+    private void createModel() {
+        model = IArchimateFactory.eINSTANCE.createArchimateModel();
+        model.setDefaults();
+        
+        actor1 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        actor2 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        
+        folder = model.getDefaultFolderForObject(actor1);
+        subFolder = IArchimateFactory.eINSTANCE.createFolder();
+        subFolder.setName("Sub");
+        folder.getFolders().add(subFolder);
+        
+        subFolder.getElements().add(actor1);
+        subFolder.getElements().add(actor2);
+    }
+    
+    @Test
+    public void getAncestors() {
+        createModel();
+        AncestorCache cache = new AncestorCache();
+        
+        List<EObjectProxy> ancestors = cache.getAncestors(actor1);
+        assertEquals(2, ancestors.size());
+        assertSame(subFolder, ancestors.get(0).getEObject());
+        assertSame(folder, ancestors.get(1).getEObject());
+        
+        // Objects in the same container share the cached chain
+        assertSame(ancestors, cache.getAncestors(actor2));
+        
+        // And the container's own chain is the rest of it
+        assertEquals(ancestors.subList(1, 2), cache.getAncestors(subFolder));
+    }
+    
+    @Test
+    public void getAncestors_None() {
+        AncestorCache cache = new AncestorCache();
+        assertTrue(cache.getAncestors(null).isEmpty());
+        assertTrue(cache.getAncestors(IArchimateFactory.eINSTANCE.createBusinessActor()).isEmpty());
+    }
+    
+    @Test
+    public void getParentFolderAndTopFolder() {
+        createModel();
+        AncestorCache cache = new AncestorCache();
+        
+        assertSame(subFolder, cache.getParentFolder(actor1));
+        assertSame(folder, cache.getTopFolder(actor1));
+        assertSame(folder, cache.getTopFolder(subFolder));
+        assertNull(cache.getTopFolder(folder));
+    }
+    
+    @Test
+    public void getFolderPath() {
+        createModel();
+        AncestorCache cache = new AncestorCache();
+        
+        assertEquals(folder.getName() + "/Sub", cache.getFolderPath(actor1));
+        assertEquals(folder.getName(), cache.getFolderPath(subFolder));
+        assertEquals("", cache.getFolderPath(folder));
+    }
+}
@@ -73,6 +73,12 @@ public class ArchimateElementProxyTests extends ArchimateConceptProxyTests {
         EObjectProxyCollection collection = testProxy.parents();
         assertEquals(2, collection.size());
     }
+    
+    @Test
+    public void getFolderPath() {
+        EObjectProxyCollection collection = testProxy.parents();
+        assertEquals(collection.get(1).getName() + "/" + collection.get(0).getName(), testProxy.getFolderPath());
+    }
 
     @Override
     @Test
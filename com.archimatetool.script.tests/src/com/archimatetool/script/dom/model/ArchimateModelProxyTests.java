@@ -6,14 +6,20 @@
 package com.archimatetool.script.dom.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.eclipse.emf.ecore.EObject;
 import org.junit.Before;
@@ -182,8 +188,51 @@ public class ArchimateModelProxyTests extends EObjectProxyTests {
         assertSame(testEObject, actualTestProxy.getEObject());
         
         ArchimateModelProxy proxy = actualTestProxy.copy();
-        assertSame(actualTestProxy.getEObject(), proxy.getEObject());
-        assertEquals(actualTestProxy, proxy);
+        assertNotSame(actualTestProxy.getEObject(), proxy.getEObject());
+        assertEquals(actualTestProxy.getId(), proxy.getId());
+        assertEquals(testEObject.eContents().size(), proxy.getEObject().eContents().size());
+    }
+    
+    @Test
+    public void copy_LoadedModel() {
+        ArchimateModelProxy modelProxy = TestsHelper.loadTestModel(TestsHelper.TEST_MODEL_FILE_ARCHISURANCE);
+        ArchimateModelProxy copy = modelProxy.copy();
+        
+        Iterator<EObject> iter1 = modelProxy.getEObject().eAllContents();
+        Iterator<EObject> iter2 = copy.getEObject().eAllContents();
+        while(iter1.hasNext()) {
+            EObject eObject = iter1.next();
+            EObject eObjectCopy = iter2.next();
+            assertNotSame(eObject, eObjectCopy);
+            assertEquals(eObject.eClass(), eObjectCopy.eClass());
+            if(eObject instanceof IIdentifier) {
+                assertEquals(((IIdentifier)eObject).getId(), ((IIdentifier)eObjectCopy).getId());
+            }
+        }
+        assertFalse(iter2.hasNext());
+        
+        // References are to the copies
+        IArchimateRelationship relation = (IArchimateRelationship)copy.find("relationship").first().getEObject();
+        assertSame(copy.getEObject(), relation.getSource().getArchimateModel());
+        assertSame(copy.getEObject(), relation.getTarget().getArchimateModel());
+        
+        // Changing the copy doesn't change the model
+        copy.find("element").first().setName("Changed");
+        assertNotEquals("Changed", modelProxy.find("element").first().getName());
+    }
+    
+    @Test
+    public void copy_WithoutViews() {
+        ArchimateModelProxy modelProxy = TestsHelper.loadTestModel(TestsHelper.TEST_MODEL_FILE_ARCHISURANCE);
+        
+        Map<String, Object> options = new LinkedHashMap<>();
+        options.put("views", false);
+        ArchimateModelProxy copy = modelProxy.copy(options);
+        
+        assertEquals(0, copy.find("view").size());
+        assertEquals(modelProxy.find("element").size(), copy.find("element").size());
+        assertEquals(modelProxy.find("relationship").size(), copy.find("relationship").size());
+        assertTrue(modelProxy.find("view").size() > 0);
     }
     
     @Test
@@ -248,4 +297,34 @@ public class ArchimateModelProxyTests extends EObjectProxyTests {
         ArchimateElementProxy target = actualTestProxy.createElement("BusinessRole", "Role");
         actualTestProxy.createRelationship("AccessRelationship", "Fido", source, target);
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void setProperties() {
+        ArchimateElementProxy actor = actualTestProxy.createElement("business-actor", "Actor");
+        ArchimateElementProxy role = actualTestProxy.createElement("business-role", "Role");
+        actor.prop("key1", "old");
+        actor.prop("key2", "a");
+        actor.prop("key2", "b", true);
+        
+        Map<String, Object> actorProps = new LinkedHashMap<>();
+        actorProps.put("key1", "new");
+        actorProps.put("key2", "c");
+        actorProps.put("key3", 3);
+        
+        Map<String, Object> roleProps = new LinkedHashMap<>();
+        roleProps.put("key1", "value1");
+        
+        Map<Object, Object> data = new LinkedHashMap<>();
+        data.put(actor, actorProps);
+        data.put(role.getId(), roleProps);
+        data.put("bogus", roleProps);
+        
+        assertSame(actualTestProxy, actualTestProxy.setProperties(data));
+        
+        assertEquals("new", actor.prop("key1"));
+        assertEquals(Arrays.asList("c", "c"), actor.prop("key2", true));
+        assertEquals("3", actor.prop("key3"));
+        assertEquals("value1", role.prop("key1"));
+        assertEquals(Arrays.asList("key1", "key2", "key3"), actor.prop());
+    }
+}
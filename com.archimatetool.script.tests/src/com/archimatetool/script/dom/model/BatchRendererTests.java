@@ -0,0 +1,187 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.script.ArchiScriptException;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * BatchRenderer Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class BatchRendererTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BatchRendererTests.class);
+    }
+    
+    private ArchimateModelProxy modelProxy;
+    private File folder;
+    
+    @Before
+    public void runOnceBeforeEachTest() throws IOException {
+        modelProxy = TestsHelper.createTestModel();
+        folder = Files.createTempDirectory("~temp").toFile();
+        folder.deleteOnExit();
+    }
+    
+    private ArchimateDiagramModelProxy createView(String name) {
+        ArchimateDiagramModelProxy view = modelProxy.createArchimateView(name);
+        view.add(modelProxy.createElement("business-actor", "Actor"), 10, 10, 120, 55);
+        return view;
+    }
+    
+    private EObjectProxyCollection collection(EObjectProxy... objects) {
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        for(EObjectProxy object : objects) {
+            collection.add(object);
+        }
+        return collection;
+    }
+    
+    private File getFile(String name) {
+        File file = new File(folder, name);
+        file.deleteOnExit();
+        return file;
+    }
+    
+    @Test
+    public void renderViews() throws IOException {
+        ArchimateDiagramModelProxy view1 = createView("View 1");
+        ArchimateDiagramModelProxy view2 = createView("View 2");
+        
+        List<Integer> progress = new ArrayList<>();
+        RenderResult result = collection(view1, view2).renderViews(folder.getAbsolutePath(), null, r -> progress.add(r.getDone()));
+        
+        assertEquals(2, result.getTotal());
+        assertEquals(2, result.getRendered());
+        assertEquals(0, result.getFailed());
+        assertEquals(2, progress.size());
+        assertEquals(2, (int)progress.get(1));
+        
+        assertNotNull(ImageIO.read(getFile(view1.getId() + ".png")));
+        assertNotNull(ImageIO.read(getFile(view2.getId() + ".png")));
+    }
+    
+    @Test
+    public void renderViews_FailureContinues() throws IOException {
+        ArchimateDiagramModelProxy view1 = createView("View 1");
+        ArchimateDiagramModelProxy view2 = createView("View 2");
+        ArchimateDiagramModelProxy view3 = createView("View 3");
+        
+        // A folder where the second View's file should go so that it can't be written
+        File blocked = getFile(view2.getId() + ".png");
+        assertTrue(blocked.mkdir());
+        
+        RenderResult result = collection(view1, view2, view3).renderViews(folder.getAbsolutePath());
+        
+        assertEquals(3, result.getDone());
+        assertEquals(2, result.getRendered());
+        assertEquals(1, result.getFailed());
+        assertEquals(1, result.getErrors().size());
+        assertTrue(result.getErrors().get(0).contains("View 2"));
+        
+        assertNotNull(ImageIO.read(getFile(view1.getId() + ".png")));
+        assertNotNull(ImageIO.read(getFile(view3.getId() + ".png")));
+    }
+    
+    @Test
+    public void renderViews_NameCollision() throws IOException {
+        ArchimateDiagramModelProxy view1 = createView("Same: name");
+        ArchimateDiagramModelProxy view2 = createView("same: NAME");
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("fileName", "name");
+        
+        RenderResult result = collection(view1, view2).renderViews(folder.getAbsolutePath(), options);
+        assertEquals(2, result.getRendered());
+        
+        assertTrue(getFile("Same_ name.png").exists());
+        assertTrue(getFile("same_ NAME_" + view2.getId() + ".png").exists());
+    }
+    
+    @Test
+    public void renderViews_IncrementalKeepsSkippedFileName() throws IOException {
+        ArchimateDiagramModelProxy view1 = createView("Same");
+        ArchimateDiagramModelProxy view2 = createView("Same");
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("fileName", "name");
+        options.put("incremental", true);
+        
+        // view2 takes "Same.png"
+        collection(view2).renderViews(folder.getAbsolutePath(), options);
+        File file2 = getFile("Same.png");
+        long modified = file2.lastModified();
+        getFile(RenderManifest.FILE_NAME);
+        
+        // view2 is skipped, so view1 must not take its file name even though it comes first
+        RenderResult result = collection(view1, view2).renderViews(folder.getAbsolutePath(), options);
+        assertEquals(1, result.getRendered());
+        assertEquals(1, result.getSkipped());
+        
+        assertEquals(modified, file2.lastModified());
+        assertTrue(getFile("Same_" + view1.getId() + ".png").exists());
+        
+        // And the second time both are skipped
+        result = collection(view1, view2).renderViews(folder.getAbsolutePath(), options);
+        assertEquals(2, result.getSkipped());
+    }
+    
+    @Test
+    public void renderViews_IgnoresObjectsThatAreNotViews() throws IOException {
+        ArchimateDiagramModelProxy view = createView("View");
+        
+        RenderResult result = collection(view, modelProxy.createElement("business-role", "Role")).renderViews(folder.getAbsolutePath());
+        assertEquals(1, result.getTotal());
+        assertEquals(1, result.getRendered());
+        getFile(view.getId() + ".png");
+    }
+    
+    @Test(expected = ArchiScriptException.class)
+    public void renderViews_UnknownFormat() throws IOException {
+        Map<String, Object> options = new HashMap<>();
+        options.put("format", "TIFF");
+        
+        File subFolder = new File(folder, "views");
+        
+        try {
+            collection(createView("View")).renderViews(subFolder.getAbsolutePath(), options);
+        }
+        finally {
+            assertFalse(subFolder.exists());
+        }
+    }
+    
+    @Test(expected = ArchiScriptException.class)
+    public void renderViews_BadFileNameOption() throws IOException {
+        Map<String, Object> options = new HashMap<>();
+        options.put("fileName", "title");
+        collection(createView("View")).renderViews(folder.getAbsolutePath(), options);
+    }
+}
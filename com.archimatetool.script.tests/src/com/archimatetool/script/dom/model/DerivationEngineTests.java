@@ -0,0 +1,132 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * DerivationEngine Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class DerivationEngineTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DerivationEngineTests.class);
+    }
+    
+    private ArchimateModelProxy modelProxy;
+    private ArchimateElementProxy actor, role, p1, p2, p3, p4;
+    
+    @Before
+    public void runOnceBeforeEachTest() {
+        modelProxy = TestsHelper.createTestModel();
+        
+        actor = modelProxy.createElement("business-actor", "actor");
+        role = modelProxy.createElement("business-role", "role");
+        p1 = modelProxy.createElement("business-process", "p1");
+        p2 = modelProxy.createElement("business-process", "p2");
+        p3 = modelProxy.createElement("business-process", "p3");
+        p4 = modelProxy.createElement("business-process", "p4");
+        
+        modelProxy.createRelationship("assignment-relationship", "", actor, role);
+        modelProxy.createRelationship("serving-relationship", "", role, p1);
+        
+        modelProxy.createRelationship("composition-relationship", "", p1, p2);
+        modelProxy.createRelationship("aggregation-relationship", "", p2, p3);
+    }
+    
+    @Test
+    public void derivedRels_Dependency() {
+        List<DerivedRelationship> derived = actor.derivedRels(p1);
+        assertEquals(1, derived.size());
+        assertEquals("serving-relationship", derived.get(0).getType());
+        assertEquals(actor, derived.get(0).getSource());
+        assertEquals(p1, derived.get(0).getTarget());
+        
+        // A dependency is not followed by structural relationships forwards
+        assertTrue(actor.derivedRels(p2).isEmpty());
+        assertTrue(actor.derivedRels(p3).isEmpty());
+    }
+    
+    @Test
+    public void derivedRels_DependencyThenStructural() {
+        // role2 serves p2, p1 is composed of p2, p2 aggregates p3
+        ArchimateElementProxy role2 = modelProxy.createElement("business-role", "role2");
+        modelProxy.createRelationship("serving-relationship", "", role2, p2);
+        
+        // Serving the part derives serving the whole
+        List<DerivedRelationship> derived = role2.derivedRels(p1);
+        assertEquals(1, derived.size());
+        assertEquals("serving-relationship", derived.get(0).getType());
+        
+        // "serves p2" and "p2 aggregates p3" don't derive "serves p3"
+        assertTrue(role2.derivedRels(p3).isEmpty());
+    }
+    
+    @Test
+    public void derivedRels_Structural() {
+        // Existing relationships are not derived
+        assertTrue(p1.derivedRels(p2).isEmpty());
+        
+        // Weakest in the chain
+        List<DerivedRelationship> derived = p1.derivedRels(p3);
+        assertEquals(1, derived.size());
+        assertEquals("aggregation-relationship", derived.get(0).getType());
+        
+        // Not reverse
+        assertTrue(p3.derivedRels(p1).isEmpty());
+    }
+    
+    @Test
+    public void derivedRels_Collection() {
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        collection.add(actor);
+        collection.add(p1);
+        collection.add(p2);
+        
+        // actor -> p1
+        List<DerivedRelationship> derived = collection.derivedRels();
+        assertEquals(1, derived.size());
+        
+        // actor -> p1 and p1 -> p3
+        assertEquals(2, modelProxy.derivedRels().size());
+    }
+    
+    @Test
+    public void derivedRels_UpdatedWhenModelChanges() {
+        assertTrue(p1.derivedRels(p4).isEmpty());
+        
+        modelProxy.createRelationship("composition-relationship", "", p3, p4);
+        
+        List<DerivedRelationship> derived = p1.derivedRels(p4);
+        assertEquals(1, derived.size());
+        assertEquals("aggregation-relationship", derived.get(0).getType());
+    }
+    
+    @Test
+    public void getEngine_IsModelAdapter() {
+        DerivationEngine engine = DerivationEngine.getEngine(modelProxy.getEObject());
+        assertSame(engine, modelProxy.getEObject().getAdapter(DerivationEngine.class));
+        assertSame(engine, DerivationEngine.getEngine(modelProxy.getEObject()));
+        
+        // Another model has its own engine
+        ArchimateModelProxy otherModel = TestsHelper.createTestModel();
+        assertNotSame(engine, DerivationEngine.getEngine(otherModel.getEObject()));
+    }
+}
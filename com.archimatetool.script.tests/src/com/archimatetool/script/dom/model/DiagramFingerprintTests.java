@@ -0,0 +1,144 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * DiagramFingerprint and RenderManifest Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class DiagramFingerprintTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DiagramFingerprintTests.class);
+    }
+    
+    private ArchimateModelProxy modelProxy;
+    private ArchimateDiagramModelProxy view;
+    private ArchimateElementProxy actor;
+    private DiagramModelObjectProxy dmo;
+    
+    @Before
+    public void runOnceBeforeEachTest() {
+        modelProxy = TestsHelper.createTestModel();
+        view = modelProxy.createArchimateView("view");
+        actor = modelProxy.createElement("business-actor", "Actor");
+        dmo = view.add(actor, 10, 10, 120, 55);
+    }
+    
+    @Test
+    public void getFingerprint_Unchanged() {
+        String fingerprint = view.getFingerprint();
+        assertEquals(40, fingerprint.length());
+        assertEquals(fingerprint, view.getFingerprint());
+        
+        // A concept that is not in the View
+        modelProxy.createElement("business-role", "Role");
+        assertEquals(fingerprint, view.getFingerprint());
+    }
+    
+    @Test
+    public void getFingerprint_Bounds() {
+        String fingerprint = view.getFingerprint();
+        
+        Map<String, Object> bounds = new HashMap<>();
+        bounds.put("x", 20);
+        dmo.setBounds(bounds);
+        
+        assertNotEquals(fingerprint, view.getFingerprint());
+    }
+    
+    @Test
+    public void getFingerprint_Style() {
+        String fingerprint = view.getFingerprint();
+        dmo.setFillColor("#ff0000");
+        assertNotEquals(fingerprint, view.getFingerprint());
+    }
+    
+    @Test
+    public void getFingerprint_ConceptName() {
+        String fingerprint = view.getFingerprint();
+        actor.setName("Actor 2");
+        assertNotEquals(fingerprint, view.getFingerprint());
+    }
+    
+    @Test
+    public void getFingerprint_ConceptProperty() {
+        String fingerprint = view.getFingerprint();
+        actor.prop("cost", "10");
+        String fingerprint2 = view.getFingerprint();
+        assertNotEquals(fingerprint, fingerprint2);
+        
+        actor.prop("cost", "20");
+        assertNotEquals(fingerprint2, view.getFingerprint());
+    }
+    
+    @Test
+    public void getFingerprint_RelationshipAttributes() {
+        ArchimateElementProxy object = modelProxy.createElement("business-object", "Object");
+        ArchimateRelationshipProxy access = modelProxy.createRelationship("access-relationship", "", actor, object);
+        ArchimateRelationshipProxy association = modelProxy.createRelationship("association-relationship", "", actor, object);
+        DiagramModelObjectProxy dmo2 = view.add(object, 300, 10, 120, 55);
+        view.add(access, dmo, dmo2);
+        view.add(association, dmo, dmo2);
+        
+        access.setAccessType("read");
+        String fingerprint = view.getFingerprint();
+        access.setAccessType("readwrite");
+        String fingerprint2 = view.getFingerprint();
+        assertNotEquals(fingerprint, fingerprint2);
+        
+        association.setAssociationDirected(!association.isAssociationDirected());
+        assertNotEquals(fingerprint2, view.getFingerprint());
+    }
+    
+    @Test
+    public void renderManifest() throws IOException {
+        Path folder = Files.createTempDirectory("~temp");
+        File image = folder.resolve("view.png").toFile();
+        image.deleteOnExit();
+        folder.resolve(RenderManifest.FILE_NAME).toFile().deleteOnExit();
+        folder.toFile().deleteOnExit();
+        
+        RenderManifest manifest = new RenderManifest(folder, "PNG,1");
+        assertNull(manifest.getFileName("id1"));
+        manifest.put("id1", "abc", "view.png");
+        manifest.save();
+        
+        // File doesn't exist yet
+        manifest = new RenderManifest(folder, "PNG,1");
+        assertEquals("view.png", manifest.getFileName("id1"));
+        assertFalse(manifest.isUnchanged("id1", "abc"));
+        
+        image.createNewFile();
+        assertTrue(manifest.isUnchanged("id1", "abc"));
+        assertFalse(manifest.isUnchanged("id1", "def"));
+        
+        // Different options
+        manifest = new RenderManifest(folder, "PNG,2");
+        assertFalse(manifest.isUnchanged("id1", "abc"));
+    }
+}
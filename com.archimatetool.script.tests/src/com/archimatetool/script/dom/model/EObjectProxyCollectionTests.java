@@ -10,6 +10,12 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.emf.ecore.EObject;
 import org.junit.Test;
@@ -22,6 +28,9 @@ import com.archimatetool.model.IDiagramModelArchimateObject;
 import com.archimatetool.model.IDiagramModelGroup;
 import com.archimatetool.model.IFolder;
 import com.archimatetool.model.util.ArchimateModelUtils;
+import com.archimatetool.script.ArchiScriptException;
+import com.archimatetool.script.commands.CommandHandler;
+import com.archimatetool.script.commands.ICommandListener;
 
 import junit.framework.JUnit4TestAdapter;
 
@@ -157,4 +166,282 @@ public class EObjectProxyCollectionTests {
             assertEquals(collection.get(i), clone.get(i));
         }
     }    
+
+    @Test
+    public void has() {
+        ArchimateModelProxy modelProxy = TestsHelper.loadTestModel(TestsHelper.TEST_MODEL_FILE_ARCHISURANCE);
+        
+        EObjectProxyCollection views = modelProxy.find("view");
+        EObjectProxyCollection expected = views.filter((EObjectProxy object) -> object.find().is("business-actor"));
+        EObjectProxyCollection actual = views.has("business-actor");
+        assertFalse(actual.isEmpty());
+        assertEquals(expected, actual);
+        
+        // Diagram objects only have diagram objects as descendants
+        EObjectProxyCollection dmos = modelProxy.find("element").objectRefs();
+        assertTrue(dmos.has("relationship").isEmpty());
+        assertEquals(dmos.filter((EObjectProxy object) -> object.find().is("element")), dmos.has("element"));
+        
+        assertTrue(views.has("bogus").isEmpty());
+        assertSame(views, views.has(null));
+    }
+    
+    @Test
+    public void setType() {
+        ArchimateModelProxy modelProxy = TestsHelper.createTestModel();
+        ArchimateElementProxy p1 = modelProxy.createElement("business-process", "p1");
+        ArchimateElementProxy p2 = modelProxy.createElement("business-process", "p2");
+        ArchimateElementProxy role = modelProxy.createElement("business-role", "role");
+        ArchimateRelationshipProxy r1 = modelProxy.createRelationship("triggering-relationship", "", p1, p2);
+        ArchimateRelationshipProxy r2 = modelProxy.createRelationship("serving-relationship", "", role, p1);
+        p1.prop("key", "value");
+        
+        ArchimateDiagramModelProxy view = modelProxy.createArchimateView("view");
+        DiagramModelObjectProxy dmo1 = view.add(p1, 0, 0, -1, -1);
+        DiagramModelObjectProxy dmo2 = view.add(p2, 200, 0, -1, -1);
+        view.add(r1, dmo1, dmo2);
+        
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        collection.add(p1);
+        collection.add(p2);
+        collection.add(view); // Ignored
+        
+        assertSame(collection, collection.setType("business-function"));
+        
+        assertEquals("business-function", p1.getType());
+        assertEquals("business-function", p2.getType());
+        assertEquals("p1", p1.getName());
+        assertEquals("value", p1.prop("key"));
+        
+        // Relationships and diagram objects are set to the new elements
+        assertEquals(p1, r1.getSource());
+        assertEquals(p2, r1.getTarget());
+        assertEquals(p1, r2.getTarget());
+        assertSame(p1.getEObject(), ((IDiagramModelArchimateObject)dmo1.getEObject()).getArchimateElement());
+        assertSame(p2.getEObject(), ((IDiagramModelArchimateObject)dmo2.getEObject()).getArchimateElement());
+        
+        assertTrue(modelProxy.find("business-process").isEmpty());
+        assertEquals(2, modelProxy.find("business-function").size());
+        assertEquals(2, modelProxy.find("relationship").size());
+    }
+    
+    @Test
+    public void setType_InvalidRelations() {
+        ArchimateModelProxy modelProxy = TestsHelper.createTestModel();
+        ArchimateElementProxy p1 = modelProxy.createElement("business-process", "p1");
+        ArchimateElementProxy role = modelProxy.createElement("business-role", "role");
+        modelProxy.createRelationship("serving-relationship", "", role, p1);
+        
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        collection.add(p1);
+        
+        try {
+            collection.setType("business-object");
+            fail("Should throw ArchiScriptException");
+        }
+        catch(ArchiScriptException ex) {
+        }
+        
+        // Nothing changed
+        assertEquals("business-process", p1.getType());
+        assertEquals(2, modelProxy.find("element").size());
+    }
+    
+    @Test
+    public void props() {
+        ArchimateModelProxy modelProxy = TestsHelper.createTestModel();
+        ArchimateElementProxy actor = modelProxy.createElement("business-actor", "Actor");
+        ArchimateElementProxy role = modelProxy.createElement("business-role", "Role");
+        actor.prop("key1", "old");
+        
+        ArchimateDiagramModelProxy view = modelProxy.createArchimateView("view");
+        DiagramModelObjectProxy dmo = view.add(actor, 0, 0, -1, -1);
+        
+        // The diagram object's properties are those of its element
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        collection.add(actor);
+        collection.add(role);
+        collection.add(dmo);
+        
+        Map<String, String> values = new HashMap<>();
+        values.put("key1", "value1");
+        values.put("key2", "value2");
+        assertSame(collection, collection.props(values));
+        
+        assertEquals(Arrays.asList("value1"), actor.prop("key1", true));
+        assertEquals("value2", actor.prop("key2"));
+        assertEquals("value1", role.prop("key1"));
+        assertEquals("value2", role.prop("key2"));
+        
+        collection.prop("key1", "value3");
+        assertEquals("value3", actor.prop("key1"));
+        assertEquals("value3", role.prop("key1"));
+    }
+    
+    @Test
+    public void props_NotInModel() {
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        EObjectProxy actor = EObjectProxy.get(IArchimateFactory.eINSTANCE.createBusinessActor());
+        collection.add(actor);
+        
+        Map<String, String> values = new HashMap<>();
+        values.put("key1", "value1");
+        
+        // Goes through the CommandHandler so command listeners are notified
+        int[] count = new int[1];
+        ICommandListener listener = cmd -> count[0]++;
+        CommandHandler.addCommandListener(listener);
+        
+        try {
+            collection.props(values);
+        }
+        finally {
+            CommandHandler.removeCommandListener(listener);
+        }
+        
+        assertEquals("value1", actor.prop("key1"));
+        assertEquals(1, count[0]);
+    }
+    
+    @Test
+    public void groupBy() {
+        ArchimateModelProxy modelProxy = TestsHelper.loadTestModel(TestsHelper.TEST_MODEL_FILE_ARCHISURANCE);
+        EObjectProxyCollection collection = modelProxy.find("element");
+        
+        Map<String, EObjectProxyCollection> map = collection.groupBy("type");
+        assertEquals(collection.find("business-actor").size(), map.get("business-actor").size());
+        
+        int total = 0;
+        for(EObjectProxyCollection c : map.values()) {
+            total += c.size();
+        }
+        assertEquals(collection.size(), total);
+        
+        assertTrue(collection.groupBy("bogus").isEmpty());
+    }
+    
+    @Test
+    public void countBy() {
+        ArchimateModelProxy modelProxy = TestsHelper.loadTestModel(TestsHelper.TEST_MODEL_FILE_ARCHISURANCE);
+        EObjectProxyCollection collection = modelProxy.find("element");
+        
+        Map<String, Integer> map = collection.countBy("type");
+        assertEquals(collection.filter("business-actor").size(), (int)map.get("business-actor"));
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void aggregate() {
+        ArchimateModelProxy modelProxy = TestsHelper.loadTestModel(TestsHelper.TEST_MODEL_FILE_ARCHISURANCE);
+        EObjectProxyCollection collection = modelProxy.find("element");
+        
+        Map<String, Object> map = collection.aggregate("layer", "type");
+        Map<String, Object> business = (Map<String, Object>)map.get("business");
+        assertEquals(collection.filter("business-actor").size(), business.get("business-actor"));
+    }
+    
+    @Test
+    public void sortBy() {
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        for(String name : new String[] { "b", "C", "a", "10", "9" }) {
+            EObjectProxy proxy = EObjectProxy.get(IArchimateFactory.eINSTANCE.createBusinessRole());
+            ((IBusinessRole)proxy.getEObject()).setName(name);
+            collection.add(proxy);
+        }
+        
+        EObjectProxyCollection sorted = collection.sortBy("name");
+        assertEquals("9", sorted.get(0).getName());
+        assertEquals("10", sorted.get(1).getName());
+        assertEquals("a", sorted.get(2).getName());
+        assertEquals("b", sorted.get(3).getName());
+        assertEquals("C", sorted.get(4).getName());
+        
+        sorted = collection.sortBy("name", true);
+        assertEquals("C", sorted.get(0).getName());
+        assertEquals("9", sorted.get(4).getName());
+        
+        // Original is unchanged
+        assertEquals("b", collection.get(0).getName());
+    }
+    
+    @Test
+    public void top() {
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        for(int i = 0; i < 100; i++) {
+            EObjectProxy proxy = EObjectProxy.get(IArchimateFactory.eINSTANCE.createBusinessRole());
+            ((IBusinessRole)proxy.getEObject()).getProperties().add(IArchimateFactory.eINSTANCE.createProperty("Risk", String.valueOf((i * 37) % 100)));
+            collection.add(proxy);
+        }
+        
+        EObjectProxyCollection top = collection.top(5, "prop:Risk", true);
+        assertEquals(5, top.size());
+        assertEquals("99", top.get(0).prop("Risk"));
+        assertEquals("95", top.get(4).prop("Risk"));
+        
+        assertEquals(collection.sortBy("prop:Risk").slice(0, 10), collection.top(10, "prop:Risk"));
+        assertTrue(collection.top(0, "prop:Risk").isEmpty());
+    }
+    
+    @Test
+    public void slice() {
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        for(int i = 0; i < 10; i++) {
+            collection.add(EObjectProxy.get(IArchimateFactory.eINSTANCE.createBusinessRole()));
+        }
+        
+        assertEquals(collection.subList(2, 5), collection.slice(2, 3));
+        assertEquals(collection.subList(8, 10), collection.slice(8, 5));
+        assertEquals(collection.subList(3, 10), collection.slice(3, -1));
+        assertTrue(collection.slice(20, 5).isEmpty());
+    }
+    
+    @Test
+    public void parents() {
+        ArchimateModelProxy modelProxy = TestsHelper.loadTestModel(TestsHelper.TEST_MODEL_FILE_ARCHISURANCE);
+        IFolder folder = modelProxy.getEObject().getDefaultFolderForObject(IArchimateFactory.eINSTANCE.createBusinessActor());
+        
+        IFolder subFolder1 = IArchimateFactory.eINSTANCE.createFolder();
+        folder.getFolders().add(subFolder1);
+        IFolder subFolder2 = IArchimateFactory.eINSTANCE.createFolder();
+        subFolder1.getFolders().add(subFolder2);
+        
+        IBusinessActor actor1 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        subFolder2.getElements().add(actor1);
+        IBusinessActor actor2 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        subFolder1.getElements().add(actor2);
+        
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        collection.add(EObjectProxy.get(actor1));
+        collection.add(EObjectProxy.get(actor2));
+        
+        // Shared ancestors only once
+        EObjectProxyCollection parents = collection.parents();
+        assertEquals(3, parents.size());
+        assertEquals(subFolder2, parents.get(0).getEObject());
+        assertEquals(subFolder1, parents.get(1).getEObject());
+        assertEquals(folder, parents.get(2).getEObject());
+    }
+    
+    @Test
+    public void folderPaths() {
+        ArchimateModelProxy modelProxy = TestsHelper.createTestModel();
+        IFolder folder = modelProxy.getEObject().getDefaultFolderForObject(IArchimateFactory.eINSTANCE.createBusinessActor());
+        
+        IFolder subFolder = IArchimateFactory.eINSTANCE.createFolder();
+        subFolder.setName("Sub");
+        folder.getFolders().add(subFolder);
+        
+        IBusinessActor actor1 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        subFolder.getElements().add(actor1);
+        IBusinessActor actor2 = IArchimateFactory.eINSTANCE.createBusinessActor();
+        
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        collection.add(EObjectProxy.get(actor1));
+        collection.add(EObjectProxy.get(actor2));
+        
+        List<String> paths = collection.folderPaths();
+        assertEquals(folder.getName() + "/Sub", paths.get(0));
+        assertEquals("", paths.get(1));
+        assertEquals(paths.get(0), collection.get(0).getFolderPath());
+    }
 }
@@ -0,0 +1,135 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * GraphSnapshot Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class GraphSnapshotTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(GraphSnapshotTests.class);
+    }
+    
+    private ArchimateModelProxy modelProxy;
+    private ArchimateElementProxy p1, p2, p3, p4, p5;
+    
+    @Before
+    public void runOnceBeforeEachTest() {
+        modelProxy = TestsHelper.createTestModel();
+        
+        p1 = modelProxy.createElement("business-process", "p1");
+        p2 = modelProxy.createElement("business-process", "p2");
+        p3 = modelProxy.createElement("business-process", "p3");
+        p4 = modelProxy.createElement("business-process", "p4");
+        p5 = modelProxy.createElement("business-process", "p5");
+        
+        // p1 -> p2 -> p3 -> p1 is a cycle, p5 is not connected
+        modelProxy.createRelationship("triggering-relationship", "", p1, p2);
+        modelProxy.createRelationship("triggering-relationship", "", p2, p3);
+        modelProxy.createRelationship("triggering-relationship", "", p3, p1);
+        modelProxy.createRelationship("flow-relationship", "", p3, p4);
+        modelProxy.createRelationship("flow-relationship", "", p1, p4);
+    }
+    
+    @Test
+    public void graph() {
+        GraphSnapshot graph = modelProxy.graph();
+        assertEquals(5, graph.getNodeCount());
+        assertEquals(5, graph.getEdgeCount());
+        assertEquals(Arrays.asList(p1, p2, p3, p4, p5), graph.nodes());
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("relations", "flow-relationship");
+        assertEquals(2, modelProxy.graph(options).getEdgeCount());
+        
+        // Only relationships between the nodes
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        collection.add(p1);
+        collection.add(p2);
+        collection.add(p4);
+        assertEquals(2, collection.graph().getEdgeCount());
+    }
+    
+    @Test
+    public void components() {
+        List<EObjectProxyCollection> components = modelProxy.graph().components();
+        assertEquals(2, components.size());
+        assertEquals(new HashSet<>(Arrays.asList(p1, p2, p3, p4)), new HashSet<>(components.get(0)));
+        assertEquals(Arrays.asList(p5), components.get(1));
+    }
+    
+    @Test
+    public void stronglyConnectedComponents() {
+        List<EObjectProxyCollection> components = modelProxy.graph().stronglyConnectedComponents();
+        assertEquals(3, components.size());
+        assertEquals(new HashSet<>(Arrays.asList(p1, p2, p3)), new HashSet<>(components.get(0)));
+    }
+    
+    @Test
+    public void cycles() {
+        GraphSnapshot graph = modelProxy.graph();
+        assertTrue(graph.hasCycles());
+        
+        List<EObjectProxyCollection> cycles = graph.cycles();
+        assertEquals(1, cycles.size());
+        assertEquals(new HashSet<>(Arrays.asList(p1, p2, p3)), new HashSet<>(cycles.get(0)));
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("relations", "flow-relationship");
+        graph = modelProxy.graph(options);
+        assertFalse(graph.hasCycles());
+        assertTrue(graph.cycles().isEmpty());
+    }
+    
+    @Test
+    public void degree() {
+        Map<EObjectProxy, Integer> degree = modelProxy.graph().degree();
+        assertEquals(Arrays.asList(p1, p3, p2, p4, p5), new ArrayList<>(degree.keySet()));
+        assertEquals(3, (int)degree.get(p1));
+        assertEquals(0, (int)degree.get(p5));
+        
+        degree = modelProxy.graph().degree("in");
+        assertEquals(2, (int)degree.get(p4));
+        assertEquals(p4, degree.keySet().iterator().next());
+    }
+    
+    @Test
+    public void pageRank() {
+        Map<EObjectProxy, Double> ranks = modelProxy.graph().pageRank();
+        assertEquals(5, ranks.size());
+        
+        double total = 0;
+        for(double rank : ranks.values()) {
+            total += rank;
+        }
+        assertEquals(1.0, total, 0.0001);
+        
+        // Not connected so lowest
+        List<EObjectProxy> keys = new ArrayList<>(ranks.keySet());
+        assertEquals(p5, keys.get(keys.size() - 1));
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.script.ArchiScriptException;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * GraphTraversal Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class GraphTraversalTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(GraphTraversalTests.class);
+    }
+    
+    private ArchimateElementProxy p1, p2, p3, p4;
+    private ArchimateRelationshipProxy r12, r23, r31, r34, r14;
+    
+    @Before
+    public void runOnceBeforeEachTest() {
+        ArchimateModelProxy modelProxy = TestsHelper.createTestModel();
+        
+        p1 = modelProxy.createElement("business-process", "p1");
+        p2 = modelProxy.createElement("business-process", "p2");
+        p3 = modelProxy.createElement("business-process", "p3");
+        p4 = modelProxy.createElement("business-process", "p4");
+        
+        // p1 -> p2 -> p3 -> p1 is a cycle
+        r12 = modelProxy.createRelationship("triggering-relationship", "", p1, p2);
+        r23 = modelProxy.createRelationship("triggering-relationship", "", p2, p3);
+        r31 = modelProxy.createRelationship("triggering-relationship", "", p3, p1);
+        r34 = modelProxy.createRelationship("flow-relationship", "", p3, p4);
+        r14 = modelProxy.createRelationship("flow-relationship", "", p1, p4);
+    }
+    
+    @Test
+    public void traverse() {
+        assertEquals(Arrays.asList(p2, p4, p3), p1.traverse());
+        assertTrue(p4.traverse().isEmpty());
+    }
+    
+    @Test
+    public void traverse_Options() {
+        Map<String, Object> options = new HashMap<>();
+        
+        options.put("order", "dfs");
+        assertEquals(Arrays.asList(p2, p3, p4), p1.traverse(options));
+        
+        options.put("relations", "triggering-relationship");
+        assertEquals(Arrays.asList(p2, p3), p1.traverse(options));
+        
+        options.clear();
+        options.put("direction", "in");
+        assertEquals(Arrays.asList(p3, p1, p2), p4.traverse(options));
+        
+        options.clear();
+        options.put("depth", 1);
+        assertEquals(Arrays.asList(p2, p4), p1.traverse(options));
+    }
+    
+    @Test
+    public void traverse_DepthFirstWithDepth() {
+        ArchimateModelProxy modelProxy = TestsHelper.createTestModel();
+        
+        ArchimateElementProxy a = modelProxy.createElement("business-process", "a");
+        ArchimateElementProxy b = modelProxy.createElement("business-process", "b");
+        ArchimateElementProxy c = modelProxy.createElement("business-process", "c");
+        ArchimateElementProxy d = modelProxy.createElement("business-process", "d");
+        
+        // a -> b -> c -> d and a -> c
+        modelProxy.createRelationship("triggering-relationship", "", a, b);
+        modelProxy.createRelationship("triggering-relationship", "", b, c);
+        modelProxy.createRelationship("triggering-relationship", "", c, d);
+        modelProxy.createRelationship("triggering-relationship", "", a, c);
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("order", "dfs");
+        options.put("depth", 2);
+        
+        // c is first reached at depth 2 through b but d is within 2 of a through a -> c
+        assertEquals(Arrays.asList(b, c, d), a.traverse(options));
+        
+        // Each concept is only reported once, at the depth it was first reached
+        List<Integer> depths = new ArrayList<>();
+        a.traverse(options, (object, depth) -> {
+            depths.add(depth);
+            return true;
+        });
+        assertEquals(Arrays.asList(1, 2, 2), depths);
+        
+        options.put("depth", 1);
+        assertEquals(Arrays.asList(b, c), a.traverse(options));
+        
+        options.remove("depth");
+        assertEquals(Arrays.asList(b, c, d), a.traverse(options));
+    }
+    
+    @Test
+    public void traverse_DepthFirstWithDepthInCycle() {
+        Map<String, Object> options = new HashMap<>();
+        options.put("order", "dfs");
+        options.put("depth", 2);
+        
+        // The cycle back to p1 is not followed and p4 is reached directly from p1
+        assertEquals(Arrays.asList(p2, p3, p4), p1.traverse(options));
+        
+        options.put("direction", "in");
+        assertEquals(Arrays.asList(p3, p2, p1), p4.traverse(options));
+    }
+    
+    @Test(expected = ArchiScriptException.class)
+    public void traverse_InvalidOption() {
+        Map<String, Object> options = new HashMap<>();
+        options.put("direction", "sideways");
+        p1.traverse(options);
+    }
+    
+    @Test
+    public void traverse_Callback() {
+        List<EObjectProxy> visited = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        
+        p1.traverse(null, (object, depth) -> {
+            visited.add(object);
+            depths.add(depth);
+            return null;
+        });
+        
+        assertEquals(Arrays.asList(p2, p4, p3), visited);
+        assertEquals(Arrays.asList(1, 1, 2), depths);
+        
+        // Stop
+        visited.clear();
+        p1.traverse(null, (object, depth) -> {
+            visited.add(object);
+            return false;
+        });
+        
+        assertEquals(1, visited.size());
+    }
+    
+    @Test
+    public void neighbours() {
+        assertEquals(Arrays.asList(p2, p4), p1.neighbours(1));
+        assertTrue(p1.neighbours(0).isEmpty());
+        
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        collection.add(p2);
+        collection.add(p3);
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("direction", "both");
+        assertEquals(Arrays.asList(p1, p4), collection.neighbours(1, options));
+    }
+    
+    @Test
+    public void shortestPath() {
+        assertEquals(Arrays.asList(p1, r14, p4), p1.shortestPath(p4));
+        assertEquals(Arrays.asList(p1), p1.shortestPath(p1));
+        assertTrue(p4.shortestPath(p1).isEmpty());
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("relations", Arrays.asList("triggering-relationship"));
+        assertEquals(Arrays.asList(p1, r12, p2, r23, p3), p1.shortestPath(p3, options));
+        assertTrue(p1.shortestPath(p4, options).isEmpty());
+        
+        options.put("depth", 1);
+        assertTrue(p1.shortestPath(p3, options).isEmpty());
+    }
+    
+    @Test
+    public void allPaths() {
+        List<EObjectProxyCollection> paths = p1.allPaths(p4);
+        assertEquals(2, paths.size());
+        assertEquals(Arrays.asList(p1, r12, p2, r23, p3, r34, p4), paths.get(0));
+        assertEquals(Arrays.asList(p1, r14, p4), paths.get(1));
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("depth", 2);
+        assertEquals(1, p1.allPaths(p4, options).size());
+        
+        options.clear();
+        options.put("limit", 1);
+        assertEquals(1, p1.allPaths(p4, options).size());
+        
+        options.clear();
+        options.put("direction", "both");
+        assertEquals(3, p2.allPaths(p3, options).size());
+        
+        // Cycle back to itself
+        assertEquals(Arrays.asList(p1), p1.allPaths(p1).get(0));
+        assertTrue(p4.allPaths(p1).isEmpty());
+        assertTrue(p1.allPaths(r31).isEmpty());
+    }
+    
+    @Test
+    public void allPaths_Collection() {
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        collection.add(p2);
+        collection.add(p1);
+        
+        List<EObjectProxyCollection> paths = collection.allPaths(p4);
+        assertEquals(4, paths.size());
+        assertEquals(Arrays.asList(p2, r23, p3, r31, p1, r14, p4), paths.get(0));
+        assertEquals(Arrays.asList(p2, r23, p3, r34, p4), paths.get(1));
+        assertEquals(Arrays.asList(p1, r12, p2, r23, p3, r34, p4), paths.get(2));
+        assertEquals(Arrays.asList(p1, r14, p4), paths.get(3));
+        
+        // The limit is for all the paths
+        Map<String, Object> options = new HashMap<>();
+        options.put("limit", 3);
+        assertEquals(3, collection.allPaths(p4, options).size());
+    }
+}
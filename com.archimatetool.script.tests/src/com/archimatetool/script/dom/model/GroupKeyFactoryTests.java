@@ -0,0 +1,129 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateDiagramModel;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IBusinessActor;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.script.dom.model.GroupKeyFactory.IGroupKey;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * GroupKeyFactory Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class GroupKeyFactoryTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(GroupKeyFactoryTests.class);
+    }
+    
+    @Test
+    public void getGroupKey_Null() {
+        assertNull(GroupKeyFactory.INSTANCE.getGroupKey(null));
+        assertNull(GroupKeyFactory.INSTANCE.getGroupKey(""));
+        assertNull(GroupKeyFactory.INSTANCE.getGroupKey("prop:"));
+        assertNull(GroupKeyFactory.INSTANCE.getGroupKey("bogus"));
+    }
+    
+    @Test
+    public void getKeys_Type() {
+        IGroupKey groupKey = GroupKeyFactory.INSTANCE.getGroupKey("type");
+        assertNotNull(groupKey);
+        
+        IBusinessActor actor = IArchimateFactory.eINSTANCE.createBusinessActor();
+        assertEquals(Collections.singletonList("business-actor"), groupKey.getKeys(actor));
+        
+        IDiagramModelArchimateObject dmo = IArchimateFactory.eINSTANCE.createDiagramModelArchimateObject();
+        dmo.setArchimateConcept(actor);
+        assertEquals(Collections.singletonList("business-actor"), groupKey.getKeys(dmo));
+    }
+    
+    @Test
+    public void getKeys_NoConcept() {
+        IDiagramModelArchimateObject dmo = IArchimateFactory.eINSTANCE.createDiagramModelArchimateObject();
+        assertEquals(Collections.singletonList(""), GroupKeyFactory.INSTANCE.getGroupKey("type").getKeys(dmo));
+        assertEquals(Collections.singletonList(""), GroupKeyFactory.INSTANCE.getGroupKey("prop:Lifecycle").getKeys(dmo));
+    }
+    
+    @Test
+    public void getKeys_FolderAndLayer() {
+        IArchimateModel model = IArchimateFactory.eINSTANCE.createArchimateModel();
+        model.setDefaults();
+        IBusinessActor actor = IArchimateFactory.eINSTANCE.createBusinessActor();
+        model.getDefaultFolderForObject(actor).getElements().add(actor);
+        
+        IGroupKey groupKey = GroupKeyFactory.INSTANCE.getGroupKey("folder");
+        assertEquals(Collections.singletonList(model.getDefaultFolderForObject(actor).getName()), groupKey.getKeys(actor));
+        
+        groupKey = GroupKeyFactory.INSTANCE.getGroupKey("layer");
+        assertEquals(Collections.singletonList("business"), groupKey.getKeys(actor));
+        
+        // Not in a folder
+        assertEquals(Collections.singletonList(""), groupKey.getKeys(IArchimateFactory.eINSTANCE.createBusinessActor()));
+    }
+    
+    @Test
+    public void getKeys_Property() {
+        IGroupKey groupKey = GroupKeyFactory.INSTANCE.getGroupKey("prop:Lifecycle");
+        assertNotNull(groupKey);
+        
+        IBusinessActor actor = IArchimateFactory.eINSTANCE.createBusinessActor();
+        assertEquals(Collections.singletonList(""), groupKey.getKeys(actor));
+        
+        actor.getProperties().add(IArchimateFactory.eINSTANCE.createProperty("Lifecycle", "Active"));
+        actor.getProperties().add(IArchimateFactory.eINSTANCE.createProperty("Lifecycle", "Retired"));
+        actor.getProperties().add(IArchimateFactory.eINSTANCE.createProperty("Lifecycle", "Active"));
+        assertEquals(Arrays.asList("Active", "Retired"), groupKey.getKeys(actor));
+    }
+    
+    @Test
+    public void getKeys_View() {
+        IArchimateModel model = IArchimateFactory.eINSTANCE.createArchimateModel();
+        model.setDefaults();
+        IBusinessActor actor = IArchimateFactory.eINSTANCE.createBusinessActor();
+        model.getDefaultFolderForObject(actor).getElements().add(actor);
+        
+        IGroupKey groupKey = GroupKeyFactory.INSTANCE.getGroupKey("view");
+        assertEquals(Collections.singletonList(""), groupKey.getKeys(actor));
+        
+        IArchimateDiagramModel dm = IArchimateFactory.eINSTANCE.createArchimateDiagramModel();
+        dm.setName("View");
+        model.getDefaultFolderForObject(dm).getElements().add(dm);
+        IDiagramModelArchimateObject dmo = IArchimateFactory.eINSTANCE.createDiagramModelArchimateObject();
+        dmo.setArchimateConcept(actor);
+        dm.getChildren().add(dmo);
+        
+        // Another view with the same name
+        IArchimateDiagramModel dm2 = IArchimateFactory.eINSTANCE.createArchimateDiagramModel();
+        dm2.setName("View");
+        model.getDefaultFolderForObject(dm2).getElements().add(dm2);
+        IDiagramModelArchimateObject dmo2 = IArchimateFactory.eINSTANCE.createDiagramModelArchimateObject();
+        dmo2.setArchimateConcept(actor);
+        dm2.getChildren().add(dmo2);
+        
+        // New key as the index is built once
+        groupKey = GroupKeyFactory.INSTANCE.getGroupKey("view");
+        assertEquals(Arrays.asList(dm.getId(), dm2.getId()), groupKey.getKeys(actor));
+        assertEquals(Collections.singletonList(dm.getId()), groupKey.getKeys(dmo));
+        assertEquals(Collections.singletonList(dm2.getId()), groupKey.getKeys(dmo2));
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IFolder;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * ModelChangeTracker and SaveTask Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class ModelChangeTrackerTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ModelChangeTrackerTests.class);
+    }
+    
+    private ArchimateModelProxy modelProxy;
+    private ArchimateElementProxy actor, role;
+    private ArchimateRelationshipProxy relation;
+    
+    @Before
+    public void runOnceBeforeEachTest() {
+        modelProxy = new Model().create("Test");
+        actor = modelProxy.createElement("business-actor", "Actor");
+        role = modelProxy.createElement("business-role", "Role");
+        relation = modelProxy.createRelationship("assignment-relationship", "", actor, role);
+        ArchimateDiagramModelProxy view = modelProxy.createArchimateView("view");
+        view.add(actor, 10, 10, 120, 55);
+    }
+    
+    @Test
+    public void check_FullThenIncremental() {
+        assertNull(ModelChangeTracker.get(modelProxy.getEObject()));
+        
+        assertTrue(ModelChangeTracker.check(modelProxy.getEObject()).isEmpty());
+        ModelChangeTracker tracker = ModelChangeTracker.get(modelProxy.getEObject());
+        assertNotNull(tracker);
+        assertEquals(0, tracker.getChangeCount());
+        
+        actor.setName("Actor 2");
+        assertEquals(1, tracker.getChangeCount());
+        
+        assertTrue(ModelChangeTracker.check(modelProxy.getEObject()).isEmpty());
+        assertEquals(0, tracker.getChangeCount());
+    }
+    
+    @Test
+    public void check_DuplicateId() {
+        ModelChangeTracker.check(modelProxy.getEObject());
+        
+        ((IArchimateElement)role.getEObject()).setId(actor.getId());
+        
+        List<String> errors = ModelChangeTracker.check(modelProxy.getEObject());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).contains(actor.getId()));
+    }
+    
+    @Test
+    public void check_RelationshipWithNoTarget() {
+        ModelChangeTracker.check(modelProxy.getEObject());
+        
+        ((IArchimateRelationship)relation.getEObject()).setTarget(null);
+        
+        assertFalse(ModelChangeTracker.check(modelProxy.getEObject()).isEmpty());
+    }
+    
+    @Test
+    public void check_RemovedConceptStillReferenced() {
+        ModelChangeTracker.check(modelProxy.getEObject());
+        
+        // Remove the actor without removing its relationship and diagram object
+        IArchimateElement element = (IArchimateElement)actor.getEObject();
+        ((IFolder)element.eContainer()).getElements().remove(element);
+        
+        List<String> errors = ModelChangeTracker.check(modelProxy.getEObject());
+        assertEquals(2, errors.size());
+    }
+    
+    @Test
+    public void check_DeleteIsOK() {
+        ModelChangeTracker.check(modelProxy.getEObject());
+        
+        actor.delete();
+        
+        assertTrue(ModelChangeTracker.check(modelProxy.getEObject()).isEmpty());
+    }
+    
+    @Test
+    public void check_WrongFolder() {
+        ModelChangeTracker.check(modelProxy.getEObject());
+        
+        IArchimateElement element = (IArchimateElement)actor.getEObject();
+        modelProxy.getEObject().getFolder(FolderType.RELATIONS).getElements().add(element);
+        
+        List<String> errors = ModelChangeTracker.check(modelProxy.getEObject());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).contains(actor.getId()));
+    }
+    
+    @Test
+    public void check_TopLevelFoldersChanged() {
+        ModelChangeTracker.check(modelProxy.getEObject());
+        ModelChangeTracker tracker = ModelChangeTracker.get(modelProxy.getEObject());
+        
+        // The removed folder is empty so only a full check finds that it is missing
+        modelProxy.getEObject().getFolders().remove(modelProxy.getEObject().getFolder(FolderType.MOTIVATION));
+        assertFalse(ModelChangeTracker.check(modelProxy.getEObject()).isEmpty());
+        assertEquals(tracker, ModelChangeTracker.get(modelProxy.getEObject()));
+    }
+    
+    @Test
+    public void removeAll() {
+        ModelChangeTracker.check(modelProxy.getEObject());
+        assertNotNull(ModelChangeTracker.get(modelProxy.getEObject()));
+        
+        ModelChangeTracker.removeAll();
+        assertNull(ModelChangeTracker.get(modelProxy.getEObject()));
+        
+        // The adapter is removed from the contents too
+        assertFalse(actor.getEObject().eAdapters().stream().anyMatch(adapter -> adapter instanceof ModelChangeTracker));
+    }
+    
+    @Test(expected = IOException.class)
+    public void save_IntegrityError() throws IOException {
+        File file = File.createTempFile("~temp", ".archimate");
+        file.deleteOnExit();
+        
+        modelProxy.save(file.getAbsolutePath());
+        ((IArchimateRelationship)relation.getEObject()).setSource(null);
+        modelProxy.save();
+    }
+    
+    @Test
+    public void saveAsync() throws IOException {
+        File file = File.createTempFile("~temp", ".archimate");
+        file.deleteOnExit();
+        
+        SaveTask task = modelProxy.saveAsync(file.getAbsolutePath());
+        
+        // Changes after the save has started are not in the file
+        actor.setName("Changed");
+        
+        task.waitFor();
+        assertTrue(task.isDone());
+        assertFalse(task.isFailed());
+        assertNull(task.getError());
+        
+        assertTrue(file.length() > 100);
+        assertFalse(new File(file.getPath() + ".saving").exists());
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.ecore.EObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.util.ArchimateModelUtils;
+import com.archimatetool.script.commands.CommandHandler;
+import com.archimatetool.script.commands.ICommandListener;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * ModelDiff and ModelMerger Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class ModelDiffTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ModelDiffTests.class);
+    }
+    
+    private static final String BA1 = "76aa9eb3-8cdd-471c-81e4-965d94e12dd9";
+    private static final String BA2 = "ad78af0a-24ce-44b2-b512-35f6f77204e3";
+    private static final String NODE = "8ca8c4c6-8fe1-4649-86dd-762f0b03aab0";
+    private static final String PROCESS = "a3a16448-0760-4d5c-860e-d9f8826340a6";
+    private static final String BA3 = "4c7c6ab3-5e12-4f93-a52a-3a4f8a64ad40";
+    private static final String FLOW = "87885d0d-ba43-4721-8bdd-bc33df5e7269";
+    private static final String REALIZATION_BA2 = "58f8a085-eb4c-45a8-8eb4-9bc7b0a2989e";
+    private static final String DMO_BA1 = "75cc2a08-266e-4681-a11a-e587a8b0e573";
+    private static final String DMO_NODE = "71a85e7e-5688-4c7f-8da7-47449d2c24c5";
+    
+    private ArchimateModelProxy base, ours, theirs;
+    
+    @Before
+    public void runOnceBeforeEachTest() {
+        base = TestsHelper.loadTestModel(TestsHelper.TEST_MODEL_MERGE);
+        ours = TestsHelper.loadTestModel(TestsHelper.TEST_MODEL_MERGE);
+        theirs = TestsHelper.loadTestModel(TestsHelper.TEST_MODEL_MERGE);
+    }
+    
+    @Test
+    public void diff_SameModel() {
+        assertTrue(base.diff(theirs).isEmpty());
+    }
+    
+    @Test
+    public void diff_Changes() {
+        get(theirs, BA1).setName("BA1 changed");
+        get(theirs, BA2).prop("ba2", "3", true);
+        ArchimateElementProxy added = theirs.createElement("business-role", "Role");
+        get(theirs, PROCESS).delete();
+        ((DiagramModelObjectProxy)get(theirs, DMO_BA1)).setBounds(newBounds(10, 20));
+        
+        List<ModelChange> changes = base.diff(theirs);
+        
+        assertChange(changes, ModelChange.CHANGED, BA1, "name", "BA1", "BA1 changed");
+        assertNotNull(findChange(changes, ModelChange.CHANGED, BA2, "properties"));
+        assertChange(changes, ModelChange.ADDED, added.getId(), null, null, null);
+        assertChange(changes, ModelChange.REMOVED, PROCESS, null, null, null);
+        assertChange(changes, ModelChange.REMOVED, FLOW, null, null, null);
+        assertNotNull(findChange(changes, ModelChange.CHANGED, DMO_BA1, "bounds"));
+        
+        // And the other way
+        assertChange(theirs.diff(base), ModelChange.ADDED, PROCESS, null, null, null);
+    }
+    
+    @Test
+    public void merge() {
+        // Our changes
+        get(ours, BA2).setName("BA2 ours");
+        
+        // Their changes
+        get(theirs, BA1).setName("BA1 theirs");
+        ArchimateElementProxy role = theirs.createElement("business-role", "Role");
+        ArchimateRelationshipProxy relation = theirs.createRelationship("assignment-relationship", "", (ArchimateElementProxy)get(theirs, BA1), role);
+        get(theirs, NODE).delete();
+        
+        MergeResult result = ours.merge(base, theirs);
+        assertTrue(result.isClean());
+        assertTrue(result.getApplied().size() > 0);
+        
+        assertEquals("BA1 theirs", get(ours, BA1).getName());
+        assertEquals("BA2 ours", get(ours, BA2).getName());
+        
+        // Added with the same ids and connected to our objects
+        assertEquals("Role", get(ours, role.getId()).getName());
+        IArchimateRelationship rel = (IArchimateRelationship)get(ours, relation.getId()).getEObject();
+        assertEquals(get(ours, BA1).getEObject(), rel.getSource());
+        assertTrue(((IArchimateElement)get(ours, BA1).getEObject()).getSourceRelationships().contains(rel));
+        
+        // Removed with its relationships and diagram objects
+        assertNull(get(ours, NODE));
+        assertNull(get(ours, DMO_NODE));
+        
+        // The merged model is the same as theirs except for our change
+        List<ModelChange> changes = theirs.diff(ours);
+        assertEquals(1, changes.size());
+        assertChange(changes, ModelChange.CHANGED, BA2, "name", "BA2", "BA2 ours");
+        
+        assertTrue(ModelChangeTracker.check(ours.getEObject()).isEmpty());
+    }
+    
+    @Test
+    public void merge_Conflict() {
+        get(ours, BA1).setName("BA1 ours");
+        get(theirs, BA1).setName("BA1 theirs");
+        
+        MergeResult result = ours.merge(base, theirs);
+        assertEquals(1, result.getConflicts().size());
+        assertEquals(BA1, result.getConflicts().get(0).getId());
+        assertNotNull(result.getConflicts().get(0).getConflict());
+        assertEquals("BA1 ours", get(ours, BA1).getName());
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("prefer", "theirs");
+        result = ours.merge(base, theirs, options);
+        assertTrue(result.isClean());
+        assertEquals("BA1 theirs", get(ours, BA1).getName());
+    }
+    
+    @Test
+    public void merge_RemovedButStillReferenced() {
+        // We connect something to the process that they delete
+        ours.createRelationship("triggering-relationship", "", (ArchimateElementProxy)get(ours, PROCESS), (ArchimateElementProxy)get(ours, BA1));
+        get(theirs, PROCESS).delete();
+        
+        MergeResult result = ours.merge(base, theirs);
+        
+        assertEquals(1, result.getConflicts().size());
+        assertEquals(PROCESS, result.getConflicts().get(0).getId());
+        assertNotNull(get(ours, PROCESS));
+        
+        // Their other removals are merged
+        assertNull(get(ours, FLOW));
+        
+        assertTrue(ModelChangeTracker.check(ours.getEObject()).isEmpty());
+    }
+    
+    @Test
+    public void merge_RelationshipEnd() {
+        // They change the target of the realization from BA2 to BA3
+        IArchimateRelationship theirRelationship = (IArchimateRelationship)get(theirs, REALIZATION_BA2).getEObject();
+        theirRelationship.disconnect();
+        theirRelationship.setTarget((IArchimateElement)get(theirs, BA3).getEObject());
+        theirRelationship.reconnect();
+        
+        MergeResult result = ours.merge(base, theirs);
+        assertTrue(result.isClean());
+        
+        IArchimateRelationship relationship = (IArchimateRelationship)get(ours, REALIZATION_BA2).getEObject();
+        IArchimateElement ba2 = (IArchimateElement)get(ours, BA2).getEObject();
+        IArchimateElement ba3 = (IArchimateElement)get(ours, BA3).getEObject();
+        
+        // The concepts' relationship lists are updated
+        assertSame(ba3, relationship.getTarget());
+        assertTrue(ba3.getTargetRelationships().contains(relationship));
+        assertFalse(ba2.getTargetRelationships().contains(relationship));
+        assertTrue(relationship.getSource().getSourceRelationships().contains(relationship));
+    }
+    
+    @Test
+    public void merge_IsOneCommand() {
+        get(theirs, BA1).setName("BA1 theirs");
+        theirs.createElement("business-role", "Role");
+        
+        int[] count = new int[1];
+        ICommandListener listener = cmd -> count[0]++;
+        CommandHandler.addCommandListener(listener);
+        
+        try {
+            ours.merge(base, theirs);
+        }
+        finally {
+            CommandHandler.removeCommandListener(listener);
+        }
+        
+        assertEquals(1, count[0]);
+    }
+    
+    private EObjectProxy get(ArchimateModelProxy model, String id) {
+        EObject eObject = ArchimateModelUtils.getObjectByID(model.getEObject(), id);
+        return eObject != null ? EObjectProxy.get(eObject) : null;
+    }
+    
+    private Map<String, Object> newBounds(int x, int y) {
+        Map<String, Object> bounds = new HashMap<>();
+        bounds.put("x", x);
+        bounds.put("y", y);
+        bounds.put("width", 120);
+        bounds.put("height", 55);
+        return bounds;
+    }
+    
+    private ModelChange findChange(List<ModelChange> changes, String kind, String id, String feature) {
+        for(ModelChange change : changes) {
+            if(change.getKind().equals(kind) && change.getId().equals(id) && (feature == null || feature.equals(change.getFeature()))) {
+                return change;
+            }
+        }
+        return null;
+    }
+    
+    private void assertChange(List<ModelChange> changes, String kind, String id, String feature, String oldValue, String newValue) {
+        ModelChange change = findChange(changes, kind, id, feature);
+        assertNotNull(kind + " " + id + " " + feature, change);
+        assertEquals(oldValue, change.getOldValue());
+        assertEquals(newValue, change.getNewValue());
+    }
+}
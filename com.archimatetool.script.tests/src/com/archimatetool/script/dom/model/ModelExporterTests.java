@@ -0,0 +1,122 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.script.ArchiScriptException;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * ModelExporter Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class ModelExporterTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ModelExporterTests.class);
+    }
+    
+    private ArchimateModelProxy modelProxy;
+    
+    @Before
+    public void runOnceBeforeEachTest() {
+        modelProxy = TestsHelper.createTestModel();
+    }
+    
+    private File createFile(String suffix) throws IOException {
+        File file = File.createTempFile("~temp", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+    
+    @Test
+    public void exportFile_CSV() throws IOException {
+        ArchimateElementProxy actor = modelProxy.createElement("business-actor", "Actor, \"One\"");
+        actor.prop("Owner", "Bob");
+        ArchimateElementProxy role = modelProxy.createElement("business-role", "Role");
+        ArchimateRelationshipProxy rel = modelProxy.createRelationship("assignment-relationship", "", actor, role);
+        
+        EObjectProxyCollection collection = new EObjectProxyCollection();
+        collection.add(actor);
+        collection.add(rel);
+        
+        File file = createFile(".csv");
+        assertEquals(2, collection.exportFile(file.getAbsolutePath()));
+        
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertEquals("id,type,name,documentation,source,target,prop:Owner", lines.get(0));
+        assertEquals(actor.getId() + ",business-actor,\"Actor, \"\"One\"\"\",,,,Bob", lines.get(1));
+        assertEquals(rel.getId() + ",assignment-relationship,,," + actor.getId() + "," + role.getId() + ",", lines.get(2));
+    }
+    
+    @Test
+    public void exportFile_NDJSON_Gzip() throws IOException {
+        EObjectProxyCollection elements = modelProxy.find("element");
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("columns", Arrays.asList("id", "name"));
+        
+        File file = createFile(".ndjson.gz");
+        assertEquals(elements.size(), elements.exportFile(file.getAbsolutePath(), options));
+        
+        List<String> lines;
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file.toPath())), StandardCharsets.UTF_8))) {
+            lines = reader.lines().collect(Collectors.toList());
+        }
+        
+        assertEquals(elements.size(), lines.size());
+        assertTrue(lines.get(0).startsWith("{\"id\":\"" + elements.first().getId() + "\""));
+    }
+    
+    @Test
+    public void exportFile_RoundTrip() throws IOException {
+        EObjectProxyCollection elements = modelProxy.find("element");
+        
+        File file = createFile(".ndjson");
+        elements.exportFile(file.getAbsolutePath());
+        
+        ArchimateModelProxy newModel = new Model().create("New");
+        ImportResult result = newModel.importFile(file.getAbsolutePath());
+        
+        assertEquals(0, result.getErrorCount());
+        assertEquals(elements.size(), result.getCreated());
+        
+        EObjectProxy element = elements.first();
+        EObjectProxy copy = newModel.find("#" + element.getId()).first();
+        assertEquals(element.getType(), copy.getType());
+        assertEquals(element.getName(), copy.getName());
+    }
+    
+    @Test(expected = ArchiScriptException.class)
+    public void exportFile_UnknownColumn() throws IOException {
+        Map<String, Object> options = new HashMap<>();
+        options.put("columns", Arrays.asList("bogus"));
+        modelProxy.find().exportFile(createFile(".csv").getAbsolutePath(), options);
+    }
+}
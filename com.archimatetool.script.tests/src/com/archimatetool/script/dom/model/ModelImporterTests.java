@@ -0,0 +1,187 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.script.ArchiScriptException;
+import com.archimatetool.script.commands.CommandHandler;
+import com.archimatetool.script.commands.ICommandListener;
+import com.archimatetool.script.commands.ScriptCommand;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * ModelImporter Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class ModelImporterTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ModelImporterTests.class);
+    }
+    
+    private ArchimateModelProxy modelProxy;
+    
+    @Before
+    public void runOnceBeforeEachTest() {
+        modelProxy = TestsHelper.createTestModel();
+    }
+    
+    private File createFile(String suffix, String text) throws IOException {
+        File file = File.createTempFile("~temp", suffix);
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+    
+    @Test
+    public void importFile_CSV() throws IOException {
+        File file = createFile(".csv",
+                "id,type,name,documentation,source,target,prop:Owner\n" +
+                "a1,business-actor,Actor,\"Some, \"\"quoted\"\"\nnotes\",,,Bob\n" +
+                "r1,business-role,Role,,,,\n" +
+                ",assignment-relationship,,,a1,Role,\n");
+        
+        ImportResult result = modelProxy.importFile(file.getAbsolutePath());
+        
+        assertEquals(3, result.getRows());
+        assertEquals(3, result.getCreated());
+        assertEquals(0, result.getErrorCount());
+        
+        EObjectProxy actor = modelProxy.find("#a1").first();
+        assertEquals("Actor", actor.getName());
+        assertEquals("Some, \"quoted\"\nnotes", actor.getDocumentation());
+        assertEquals("Bob", actor.prop("Owner"));
+        
+        EObjectProxyCollection rels = modelProxy.find("assignment-relationship");
+        assertEquals(1, rels.size());
+        assertEquals(actor, ((ArchimateRelationshipProxy)rels.first()).getSource());
+        assertEquals(modelProxy.find("#r1").first(), ((ArchimateRelationshipProxy)rels.first()).getTarget());
+    }
+    
+    @Test
+    public void importFile_NDJSON_UpdatesAndErrors() throws IOException {
+        ArchimateElementProxy actor = modelProxy.createElement("business-actor", "Actor");
+        actor.prop("Owner", "Alice");
+        
+        File file = createFile(".ndjson",
+                "{\"id\": \"" + actor.getId() + "\", \"name\": \"Actor 2\", \"properties\": {\"Owner\": \"Bob\", \"Cost\": 10}}\n" +
+                "\n" +
+                "{\"type\": \"business-role\", \"name\": \"Role\"}\n" +
+                "{\"type\": \"bogus\"}\n" +
+                "{not json}\n" +
+                "{\"type\": \"access-relationship\", \"source\": \"Actor 2\", \"target\": \"Role\"}\n" +
+                "{\"type\": \"serving-relationship\", \"source\": \"Actor 2\", \"target\": \"Nothing\"}\n");
+        
+        List<Integer> progress = new ArrayList<>();
+        Map<String, Object> options = new HashMap<>();
+        options.put("batchSize", 2);
+        
+        ImportResult result = modelProxy.importFile(file.getAbsolutePath(), options, r -> progress.add(r.getRows()));
+        
+        assertEquals(6, result.getRows());
+        assertEquals(1, result.getUpdated());
+        assertEquals(1, result.getCreated());
+        assertEquals(4, result.getErrorCount());
+        assertTrue(result.getErrors().get(0).startsWith("Line 4:"));
+        assertEquals(4, progress.size());
+        
+        assertEquals("Actor 2", actor.getName());
+        assertEquals("Bob", actor.prop("Owner"));
+        assertEquals("10", actor.prop("Cost"));
+        assertEquals(1, modelProxy.find("business-role").size());
+        assertTrue(modelProxy.find("relationship").isEmpty());
+    }
+    
+    @Test
+    public void importFile_UpdatesDiagramObjects() throws IOException {
+        ArchimateElementProxy actor = modelProxy.createElement("business-actor", "Actor");
+        ArchimateDiagramModelProxy view = modelProxy.createArchimateView("view");
+        DiagramModelObjectProxy dmo = view.add(actor, 10, 10, 120, 55);
+        
+        File file = createFile(".csv", "id,name\n" + dmo.getId() + ",Actor 2\n");
+        
+        ImportResult result = modelProxy.importFile(file.getAbsolutePath());
+        
+        assertEquals(1, result.getUpdated());
+        assertEquals(0, result.getErrorCount());
+        assertEquals("Actor 2", actor.getName());
+    }
+    
+    @Test
+    public void importFile_RenamedElementFoundByNewName() throws IOException {
+        ArchimateElementProxy actor = modelProxy.createElement("business-actor", "Actor");
+        modelProxy.createElement("business-role", "Role");
+        
+        File file = createFile(".csv",
+                "id,type,name,source,target\n" +
+                actor.getId() + ",,Actor 2,,\n" +
+                ",assignment-relationship,,Actor 2,Role\n" +
+                ",assignment-relationship,,Actor,Role\n");
+        
+        ImportResult result = modelProxy.importFile(file.getAbsolutePath());
+        
+        assertEquals(1, result.getUpdated());
+        assertEquals(1, result.getCreated());
+        
+        // The old name is not found
+        assertEquals(1, result.getErrorCount());
+        assertTrue(result.getErrors().get(0).startsWith("Line 4:"));
+        
+        assertEquals(actor, ((ArchimateRelationshipProxy)modelProxy.find("assignment-relationship").first()).getSource());
+    }
+    
+    @Test
+    public void importFile_PropertiesOfNewConceptInBatch() throws IOException {
+        File file = createFile(".csv",
+                "id,type,name,prop:Owner\n" +
+                "a1,business-actor,Actor,Alice\n" +
+                "a1,,,Bob\n");
+        
+        // Everything is one command on the model, so it is on the command stack and undone together
+        List<ScriptCommand> commands = new ArrayList<>();
+        ICommandListener listener = commands::add;
+        CommandHandler.addCommandListener(listener);
+        
+        try {
+            modelProxy.importFile(file.getAbsolutePath());
+        }
+        finally {
+            CommandHandler.removeCommandListener(listener);
+        }
+        
+        assertEquals(1, commands.size());
+        assertEquals(modelProxy.getEObject(), commands.get(0).getModel());
+        
+        assertEquals("Bob", modelProxy.find("#a1").first().prop("Owner"));
+    }
+    
+    @Test(expected = ArchiScriptException.class)
+    public void importFile_StopOnError() throws IOException {
+        File file = createFile(".csv", "type,name\nbogus,Thing\n");
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("stopOnError", true);
+        modelProxy.importFile(file.getAbsolutePath(), options);
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.editor.model.ModelChecker;
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelArchimateConnection;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IDiagramModelContainer;
+import com.archimatetool.model.IDiagramModelObject;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.model.INameable;
+import com.archimatetool.model.util.ArchimateModelUtils;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * ModelJournal Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class ModelJournalTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ModelJournalTests.class);
+    }
+    
+    private File file;
+    private ArchimateModelProxy modelProxy;
+    private ArchimateElementProxy actor;
+    
+    @Before
+    public void runOnceBeforeEachTest() throws IOException {
+        file = File.createTempFile("~temp", ".archimate");
+        file.deleteOnExit();
+        ModelJournal.getFile(file).deleteOnExit();
+        
+        modelProxy = new Model().create("Test");
+        actor = modelProxy.createElement("business-actor", "Actor");
+        modelProxy.save(file.getAbsolutePath());
+    }
+    
+    @Test
+    public void saveAndReplay() throws IOException {
+        modelProxy.startJournal();
+        assertTrue(modelProxy.isJournaling());
+        
+        long length = file.length();
+        long modified = file.lastModified();
+        
+        actor.setName("Actor 2");
+        actor.prop("Owner", "Bob");
+        ArchimateElementProxy role = modelProxy.createElement("business-role", "Role\twith a tab\nand a new line");
+        ArchimateRelationshipProxy relation = modelProxy.createRelationship("assignment-relationship", "", actor, role);
+        ArchimateDiagramModelProxy view = modelProxy.createArchimateView("view");
+        DiagramModelObjectProxy dmo1 = view.add(actor, 10, 10, 120, 55);
+        DiagramModelObjectProxy dmo2 = view.add(role, 200, 10, 120, 55);
+        view.add(relation, dmo1, dmo2);
+        ArchimateElementProxy event = modelProxy.createElement("business-event", "Event");
+        event.delete();
+        
+        modelProxy.save();
+        
+        // Model file is not written
+        assertEquals(length, file.length());
+        assertEquals(modified, file.lastModified());
+        assertTrue(ModelJournal.getFile(file).length() > 0);
+        
+        IArchimateModel model = new Model().load(file.getAbsolutePath()).getEObject();
+        assertTrue(ModelJournal.get(model) != null);
+        
+        assertEquals("Actor 2", getName(model, actor.getId()));
+        assertEquals("Bob", EObjectProxy.get(ArchimateModelUtils.getObjectByID(model, actor.getId())).prop("Owner"));
+        assertEquals("Role\twith a tab\nand a new line", getName(model, role.getId()));
+        assertEquals("", getName(model, relation.getId()));
+        assertNull(ArchimateModelUtils.getObjectByID(model, event.getId()));
+        
+        IDiagramModel dm = (IDiagramModel)ArchimateModelUtils.getObjectByID(model, view.getId());
+        assertEquals(2, dm.getChildren().size());
+        IDiagramModelObject dmo = dm.getChildren().get(0);
+        assertEquals(1, dmo.getSourceConnections().size());
+        assertEquals(200, dm.getChildren().get(1).getBounds().getX());
+        assertEquals(dm.getChildren().get(1), dmo.getSourceConnections().get(0).getTarget());
+    }
+    
+    @Test
+    public void saveAndReplay_Move() throws IOException {
+        ArchimateElementProxy role = modelProxy.createElement("business-role", "Role");
+        ArchimateRelationshipProxy relation = modelProxy.createRelationship("assignment-relationship", "", actor, role);
+        ArchimateDiagramModelProxy view = modelProxy.createArchimateView("view");
+        DiagramModelObjectProxy group = view.createObject("diagram-model-group", 300, 10, 400, 300);
+        DiagramModelObjectProxy dmo1 = view.add(actor, 10, 10, 120, 55);
+        DiagramModelObjectProxy dmo2 = view.add(role, 10, 100, 120, 55);
+        view.add(relation, dmo1, dmo2);
+        modelProxy.save();
+        
+        modelProxy.startJournal();
+        
+        // Move the actor to another folder and its diagram object into the group
+        FolderProxy businessFolder = (FolderProxy)EObjectProxy.get(modelProxy.getEObject().getFolder(FolderType.BUSINESS));
+        FolderProxy folder = businessFolder.createFolder("Actors");
+        folder.add(actor);
+        ((IDiagramModelContainer)group.getEObject()).getChildren().add((IDiagramModelObject)dmo1.getEObject());
+        
+        modelProxy.save();
+        
+        IArchimateModel model = new Model().load(file.getAbsolutePath()).getEObject();
+        
+        IArchimateElement element = (IArchimateElement)ArchimateModelUtils.getObjectByID(model, actor.getId());
+        assertEquals(folder.getId(), ((IFolder)element.eContainer()).getId());
+        
+        // References to the moved element resolve to the element in the model
+        IArchimateRelationship relationship = (IArchimateRelationship)ArchimateModelUtils.getObjectByID(model, relation.getId());
+        assertSame(element, relationship.getSource());
+        assertEquals(1, element.getSourceRelationships().size());
+        
+        IDiagramModelArchimateObject dmo = (IDiagramModelArchimateObject)ArchimateModelUtils.getObjectByID(model, dmo1.getId());
+        assertEquals(group.getId(), ((IIdentifier)dmo.eContainer()).getId());
+        assertSame(element, dmo.getArchimateElement());
+        assertEquals(1, element.getReferencingDiagramComponents().size());
+        
+        // The connection still joins the moved diagram object
+        assertEquals(1, dmo.getSourceConnections().size());
+        assertSame(dmo, dmo.getSourceConnections().get(0).getSource());
+        assertSame(relationship, ((IDiagramModelArchimateConnection)dmo.getSourceConnections().get(0)).getArchimateRelationship());
+        
+        // Everything is in the model
+        assertTrue(new ModelChecker(model).checkAll());
+    }
+    
+    @Test
+    public void replay_IgnoresUnfinishedSave() throws IOException {
+        modelProxy.startJournal();
+        actor.setName("Actor 2");
+        modelProxy.save();
+        
+        // A save that didn't finish
+        Files.write(ModelJournal.getFile(file).toPath(), ("S\t" + actor.getId() + "\tname\t=Not saved\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        
+        ArchimateModelProxy loaded = new Model().load(file.getAbsolutePath());
+        assertEquals("Actor 2", getName(loaded.getEObject(), actor.getId()));
+        
+        // The next save cuts off the unfinished save
+        ArchimateElementProxy loadedActor = (ArchimateElementProxy)EObjectProxy.get(ArchimateModelUtils.getObjectByID(loaded.getEObject(), actor.getId()));
+        loadedActor.setName("Actor 3");
+        loaded.save();
+        
+        assertEquals("Actor 3", getName(new Model().load(file.getAbsolutePath()).getEObject(), actor.getId()));
+    }
+    
+    @Test
+    public void compactJournal() throws IOException {
+        modelProxy.startJournal();
+        actor.setName("Actor 2");
+        modelProxy.save();
+        
+        modelProxy.compactJournal();
+        assertTrue(modelProxy.isJournaling());
+        assertEquals(1, Files.readAllLines(ModelJournal.getFile(file).toPath()).size());
+        
+        assertEquals("Actor 2", getName(new Model().load(file.getAbsolutePath()).getEObject(), actor.getId()));
+    }
+    
+    @Test
+    public void stopJournal() throws IOException {
+        modelProxy.startJournal();
+        actor.setName("Actor 2");
+        modelProxy.stopJournal();
+        
+        assertFalse(modelProxy.isJournaling());
+        assertFalse(ModelJournal.getFile(file).exists());
+        assertEquals("Actor 2", getName(new Model().load(file.getAbsolutePath()).getEObject(), actor.getId()));
+    }
+    
+    @Test
+    public void replay_ModelFileChanged() throws IOException {
+        modelProxy.startJournal();
+        actor.setName("Actor 2");
+        modelProxy.save();
+        
+        // Model file saved by something else
+        file.setLastModified(file.lastModified() - 10000);
+        
+        IArchimateModel model = new Model().load(file.getAbsolutePath()).getEObject();
+        assertEquals("Actor", getName(model, actor.getId()));
+        assertNull(ModelJournal.get(model));
+    }
+    
+    @Test
+    public void save_ModelFileSavedElsewhere() throws IOException {
+        modelProxy.startJournal();
+        actor.setName("Actor 2");
+        modelProxy.save();
+        
+        // Model file saved by something else, such as Archi
+        file.setLastModified(file.lastModified() - 10000);
+        long modified = file.lastModified();
+        
+        actor.prop("Owner", "Bob");
+        modelProxy.save();
+        
+        // The journal no longer applies so the model is saved in full and the journal starts again
+        assertTrue(file.lastModified() != modified);
+        assertEquals(1, Files.readAllLines(ModelJournal.getFile(file).toPath()).size());
+        assertTrue(modelProxy.isJournaling());
+        
+        IArchimateModel model = new Model().load(file.getAbsolutePath()).getEObject();
+        assertEquals("Actor 2", getName(model, actor.getId()));
+        assertEquals("Bob", EObjectProxy.get(ArchimateModelUtils.getObjectByID(model, actor.getId())).prop("Owner"));
+    }
+    
+    @Test
+    public void removeAll() throws IOException {
+        modelProxy.startJournal();
+        actor.setName("Actor 2");
+        modelProxy.save();
+        
+        // When the script ends
+        ModelJournal.removeAll();
+        assertFalse(modelProxy.isJournaling());
+        
+        // Later changes are not recorded
+        actor.setName("Actor 3");
+        assertEquals("Actor 2", getName(new Model().load(file.getAbsolutePath()).getEObject(), actor.getId()));
+    }
+    
+    private String getName(IArchimateModel model, String id) {
+        return ((INameable)ArchimateModelUtils.getObjectByID(model, id)).getName();
+    }
+}
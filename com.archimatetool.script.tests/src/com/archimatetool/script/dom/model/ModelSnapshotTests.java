@@ -0,0 +1,192 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.script.ArchiScriptException;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * ModelSnapshot Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class ModelSnapshotTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ModelSnapshotTests.class);
+    }
+    
+    private File snapshotFile;
+    
+    @Before
+    public void runOnceBeforeEachTest() throws IOException {
+        snapshotFile = File.createTempFile("~temp", ".snapshot");
+        snapshotFile.delete();
+        snapshotFile.deleteOnExit();
+    }
+    
+    @Test
+    public void saveAndLoadSnapshot() throws IOException {
+        ArchimateModelProxy modelProxy = new Model().load(TestsHelper.TEST_MODEL_FILE_ARCHISURANCE.getAbsolutePath());
+        modelProxy.saveSnapshot(snapshotFile.getAbsolutePath());
+        
+        // Smaller than the model file
+        assertTrue(snapshotFile.length() < TestsHelper.TEST_MODEL_FILE_ARCHISURANCE.length());
+        
+        ArchimateModelProxy loaded = new Model().loadSnapshot(snapshotFile.getAbsolutePath());
+        assertNotSame(modelProxy.getEObject(), loaded.getEObject());
+        
+        // The snapshot might be out of date so saving it can't overwrite the model file
+        assertNull(loaded.getEObject().getFile());
+        
+        assertSameContents(modelProxy.getEObject(), loaded.getEObject());
+    }
+    
+    @Test
+    public void saveAndLoadSnapshot_NewModel() throws IOException {
+        ArchimateModelProxy modelProxy = new Model().create("Test");
+        ArchimateElementProxy actor = modelProxy.createElement("business-actor", "Actor\nwith a new line");
+        actor.prop("Owner", "Bob");
+        actor.prop("Owner", "Alice", true);
+        ArchimateElementProxy role = modelProxy.createElement("business-role", "");
+        ArchimateRelationshipProxy relation = modelProxy.createRelationship("assignment-relationship", "", actor, role);
+        ArchimateDiagramModelProxy view = modelProxy.createArchimateView("view");
+        DiagramModelObjectProxy dmo1 = view.add(actor, 10, 10, 120, 55);
+        DiagramModelObjectProxy dmo2 = view.add(role, 200, 10, -1, -1);
+        view.add(relation, dmo1, dmo2);
+        
+        modelProxy.saveSnapshot(snapshotFile.getAbsolutePath());
+        ArchimateModelProxy loaded = new Model().loadSnapshot(snapshotFile.getAbsolutePath());
+        
+        assertSameContents(modelProxy.getEObject(), loaded.getEObject());
+    }
+    
+    @Test
+    public void loadSnapshot_WithModelFile() throws IOException {
+        File modelFile = File.createTempFile("~temp", ".archimate");
+        modelFile.deleteOnExit();
+        Files.copy(TestsHelper.TEST_MODEL_FILE_ARCHISURANCE.toPath(), modelFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        
+        // No snapshot so the model file is loaded and a snapshot written
+        assertFalse(ModelSnapshot.isCurrent(snapshotFile, modelFile));
+        new Model().loadSnapshot(snapshotFile.getAbsolutePath(), modelFile.getAbsolutePath());
+        assertTrue(ModelSnapshot.isCurrent(snapshotFile, modelFile));
+        
+        // The snapshot is current so the model's file is the model file
+        ArchimateModelProxy loaded = new Model().loadSnapshot(snapshotFile.getAbsolutePath(), modelFile.getAbsolutePath());
+        assertEquals(modelFile.getAbsoluteFile(), loaded.getEObject().getFile());
+        
+        // Model file has changed
+        modelFile.setLastModified(modelFile.lastModified() - 10000);
+        assertFalse(ModelSnapshot.isCurrent(snapshotFile, modelFile));
+        new Model().loadSnapshot(snapshotFile.getAbsolutePath(), modelFile.getAbsolutePath());
+        assertTrue(ModelSnapshot.isCurrent(snapshotFile, modelFile));
+    }
+    
+    @Test
+    public void saveSnapshot_UnsavedChanges() throws IOException {
+        File modelFile = File.createTempFile("~temp", ".archimate");
+        modelFile.deleteOnExit();
+        ModelJournal.getFile(modelFile).deleteOnExit();
+        Files.copy(TestsHelper.TEST_MODEL_FILE_ARCHISURANCE.toPath(), modelFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        
+        ArchimateModelProxy modelProxy = new Model().load(modelFile.getAbsolutePath());
+        modelProxy.startJournal();
+        modelProxy.createElement("business-actor", "Actor");
+        
+        // The journal has changes that are not saved so the snapshot is not the same as the model file
+        modelProxy.saveSnapshot(snapshotFile.getAbsolutePath());
+        assertFalse(ModelSnapshot.isCurrent(snapshotFile, modelFile));
+        
+        // So loading it with the model file loads the model file and writes a new snapshot
+        new Model().loadSnapshot(snapshotFile.getAbsolutePath(), modelFile.getAbsolutePath());
+        assertTrue(ModelSnapshot.isCurrent(snapshotFile, modelFile));
+        
+        modelProxy.createElement("business-actor", "Actor");
+        
+        // Saved
+        modelProxy.save();
+        modelProxy.saveSnapshot(snapshotFile.getAbsolutePath());
+        assertTrue(ModelSnapshot.isCurrent(snapshotFile, modelFile));
+        
+        modelProxy.stopJournal();
+    }
+    
+    @Test(expected = ArchiScriptException.class)
+    public void loadSnapshot_NotASnapshot() {
+        new Model().loadSnapshot(TestsHelper.TEST_MODEL_FILE_ARCHISURANCE.getAbsolutePath());
+    }
+    
+    private void assertSameContents(IArchimateModel expected, IArchimateModel actual) {
+        assertSameFeatures(expected, actual);
+        
+        Iterator<EObject> iter1 = expected.eAllContents();
+        Iterator<EObject> iter2 = actual.eAllContents();
+        
+        while(iter1.hasNext()) {
+            assertTrue(iter2.hasNext());
+            assertSameFeatures(iter1.next(), iter2.next());
+        }
+        
+        assertFalse(iter2.hasNext());
+    }
+    
+    private void assertSameFeatures(EObject expected, EObject actual) {
+        assertEquals(expected.eClass(), actual.eClass());
+        
+        for(EStructuralFeature feature : expected.eClass().getEAllStructuralFeatures()) {
+            if(feature.isTransient() || (feature instanceof EReference && (((EReference)feature).isContainment() || ((EReference)feature).isContainer()))) {
+                continue;
+            }
+            
+            Object value1 = expected.eGet(feature);
+            Object value2 = actual.eGet(feature);
+            
+            if(feature instanceof EReference) {
+                if(feature.isMany()) {
+                    List<?> list1 = (List<?>)value1;
+                    List<?> list2 = (List<?>)value2;
+                    assertEquals(list1.size(), list2.size());
+                    for(int i = 0; i < list1.size(); i++) {
+                        assertEquals(ModelJournal.getAddress((EObject)list1.get(i)), ModelJournal.getAddress((EObject)list2.get(i)));
+                    }
+                }
+                else {
+                    assertEquals(value1 == null, value2 == null);
+                    if(value1 != null) {
+                        assertEquals(ModelJournal.getAddress((EObject)value1), ModelJournal.getAddress((EObject)value2));
+                    }
+                }
+            }
+            else {
+                assertEquals(feature.getName(), value1, value2);
+            }
+        }
+    }
+}
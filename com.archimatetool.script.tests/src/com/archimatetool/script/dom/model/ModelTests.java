@@ -11,7 +11,10 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.gef.commands.CommandStack;
 import org.junit.BeforeClass;
@@ -88,4 +91,25 @@ public class ModelTests {
     public void isAllowedRelationship_Exception() {
         model.isAllowedRelationship("bogus", "business-actor", "business-role");
     }
+    
+    @Test
+    public void validateRelationships() {
+        ArchimateModelProxy modelProxy = TestsHelper.createTestModel();
+        ArchimateElementProxy actor = modelProxy.createElement("business-actor", "actor");
+        
+        Map<String, Object> candidate = new HashMap<>();
+        candidate.put("type", "assignment-relationship");
+        candidate.put("source", actor);
+        candidate.put("target", "business-role");
+        
+        List<Object> candidates = Arrays.asList(
+                Arrays.asList("association-relationship", "business-actor", "business-role"),
+                Arrays.asList("influence-relationship", "business-actor", "business-role"),
+                candidate,
+                Arrays.asList("bogus", "business-actor", "business-role"),
+                new Object[] { "serving-relationship", actor, "business-process" },
+                Arrays.asList("serving-relationship"));
+        
+        assertEquals(Arrays.asList(1, 3, 5), model.validateRelationships(candidates));
+    }
 }
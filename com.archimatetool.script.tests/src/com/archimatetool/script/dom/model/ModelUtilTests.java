@@ -9,6 +9,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -185,6 +186,24 @@ public class ModelUtilTests {
         // Null map
         assertEquals("bogus", ModelUtil.getStringValueFromMap(null, "key4", "bogus"));
     }
+    
+    @Test
+    public void getStringListFromMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("key1", "hello");
+        map.put("key2", Arrays.asList("hello", "there"));
+        map.put("key3", new String[] { "hello", "there" });
+        map.put("key4", 1);
+        
+        assertEquals(Arrays.asList("hello"), ModelUtil.getStringListFromMap(map, "key1"));
+        assertEquals(Arrays.asList("hello", "there"), ModelUtil.getStringListFromMap(map, "key2"));
+        assertEquals(Arrays.asList("hello", "there"), ModelUtil.getStringListFromMap(map, "key3"));
+        assertTrue(ModelUtil.getStringListFromMap(map, "key4").isEmpty());
+        assertTrue(ModelUtil.getStringListFromMap(map, "key5").isEmpty());
+        
+        // Null map
+        assertTrue(ModelUtil.getStringListFromMap(null, "key1").isEmpty());
+    }
 
     @Test
     public void checkComponentsInSameModel() {
@@ -0,0 +1,123 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.script.ArchiScriptException;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * OffscreenRenderer Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class OffscreenRendererTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(OffscreenRendererTests.class);
+    }
+    
+    private ArchimateDiagramModelProxy view;
+    
+    @Before
+    public void runOnceBeforeEachTest() {
+        ArchimateModelProxy modelProxy = TestsHelper.createTestModel();
+        view = modelProxy.createArchimateView("view");
+        
+        ArchimateElementProxy actor = modelProxy.createElement("business-actor", "Actor & Co");
+        ArchimateElementProxy role = modelProxy.createElement("business-role", "Role");
+        ArchimateRelationshipProxy relation = modelProxy.createRelationship("assignment-relationship", "assigned", actor, role);
+        
+        DiagramModelObjectProxy dmo1 = view.add(actor, 10, 10, 120, 55);
+        DiagramModelObjectProxy dmo2 = view.add(role, 300, 200, 120, 55);
+        view.add(relation, dmo1, dmo2);
+    }
+    
+    @Test
+    public void renderViewToFile_PNG() throws IOException {
+        File file = File.createTempFile("~temp", ".png");
+        file.deleteOnExit();
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("headless", true);
+        options.put("margin", 10);
+        options.put("scale", 2);
+        
+        new Model().renderViewToFile(view, file.getAbsolutePath(), options);
+        
+        BufferedImage image = ImageIO.read(file);
+        assertNotNull(image);
+        assertEquals((410 + 20) * 2, image.getWidth());
+        assertEquals((245 + 20) * 2, image.getHeight());
+        
+        // Margin is white and the actor is filled with the business colour
+        assertEquals(0xFFFFFF, image.getRGB(5, 5) & 0xFFFFFF);
+        assertEquals(0xFFFFB5, image.getRGB(60, 100) & 0xFFFFFF);
+    }
+    
+    @Test
+    public void renderViewToStream_SVG() throws IOException {
+        Map<String, Object> options = new HashMap<>();
+        options.put("headless", true);
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Model().renderViewToStream(view, out, "SVG", options);
+        
+        String svg = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(svg.startsWith("<?xml"));
+        assertTrue(svg.contains("viewBox=\"0 0 430 265\""));
+        assertTrue(svg.contains(">Actor &amp; Co</text>"));
+        assertTrue(svg.contains(">assigned</text>"));
+        assertTrue(svg.contains("fill=\"#ffffb5\""));
+        assertTrue(svg.trim().endsWith("</svg>"));
+    }
+    
+    @Test(expected = ArchiScriptException.class)
+    public void renderViewToStream_SVGNotHeadless() throws IOException {
+        new Model().renderViewToStream(view, new ByteArrayOutputStream(), "SVG", null);
+    }
+    
+    @Test
+    public void renderViews_Headless() throws IOException {
+        File folder = Files.createTempDirectory("~temp").toFile();
+        folder.deleteOnExit();
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("headless", true);
+        options.put("threads", 4);
+        
+        EObjectProxyCollection views = new EObjectProxyCollection();
+        views.add(view);
+        
+        RenderResult result = views.renderViews(folder.getAbsolutePath(), options, null);
+        assertEquals(1, result.getRendered());
+        assertEquals(0, result.getFailed());
+        
+        File file = new File(folder, view.getId() + ".png");
+        file.deleteOnExit();
+        assertNotNull(ImageIO.read(file));
+    }
+}
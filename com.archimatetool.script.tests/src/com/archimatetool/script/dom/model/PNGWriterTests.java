@@ -0,0 +1,69 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * PNGWriter Tests
+ *
+ * @author agent
+ */
+public class PNGWriterTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PNGWriterTests.class);
+    }
+    
+    @Test
+    public void writeRows() throws IOException {
+        int width = 300, height = 200;
+        int[] pixels = new int[width * height];
+        
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                pixels[y * width + x] = (x * 255 / width) << 16 | (y * 255 / height) << 8 | ((x ^ y) & 0xFF);
+            }
+        }
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        // Write in two strips
+        try(PNGWriter writer = new PNGWriter(out, width, height)) {
+            writer.writeRows(pixels, 0, 50);
+            writer.writeRows(pixels, 50 * width, 150);
+        }
+        
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                assertEquals(pixels[y * width + x], image.getRGB(x, y) & 0xFFFFFF);
+            }
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void close_MissingRows() throws IOException {
+        try(PNGWriter writer = new PNGWriter(new ByteArrayOutputStream(), 10, 10)) {
+            writer.writeRows(new int[10], 0, 1);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * ReachabilityIndex Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class ReachabilityIndexTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReachabilityIndexTests.class);
+    }
+    
+    private ArchimateModelProxy modelProxy;
+    private ArchimateElementProxy p1, p2, p3, p4;
+    private ArchimateRelationshipProxy r12;
+    private ReachabilityIndex index;
+    
+    @Before
+    public void runOnceBeforeEachTest() {
+        modelProxy = TestsHelper.createTestModel();
+        
+        p1 = modelProxy.createElement("business-process", "p1");
+        p2 = modelProxy.createElement("business-process", "p2");
+        p3 = modelProxy.createElement("business-process", "p3");
+        p4 = modelProxy.createElement("business-process", "p4");
+        
+        r12 = modelProxy.createRelationship("triggering-relationship", "", p1, p2);
+        modelProxy.createRelationship("triggering-relationship", "", p2, p3);
+        
+        // Not indexed
+        modelProxy.createRelationship("flow-relationship", "", p3, p4);
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("relations", "triggering-relationship");
+        index = modelProxy.createReachabilityIndex(options);
+    }
+    
+    @After
+    public void runOnceAfterEachTest() {
+        index.dispose();
+    }
+    
+    @Test
+    public void downstream() {
+        assertEquals(new HashSet<>(Arrays.asList(p2, p3)), new HashSet<>(index.downstream(p1)));
+        assertTrue(index.downstream(p3).isEmpty());
+        assertTrue(index.downstream(p4).isEmpty());
+    }
+    
+    @Test
+    public void upstream() {
+        assertEquals(new HashSet<>(Arrays.asList(p1, p2)), new HashSet<>(index.upstream(p3)));
+        assertTrue(index.upstream(p1).isEmpty());
+    }
+    
+    @Test
+    public void isReachable() {
+        assertTrue(index.isReachable(p1, p3));
+        assertFalse(index.isReachable(p3, p1));
+        assertFalse(index.isReachable(p1, p4));
+    }
+    
+    @Test
+    public void relationshipAdded_UpdatesIndex() {
+        // Cache these first
+        index.downstream(p1);
+        index.upstream(p4);
+        
+        modelProxy.createRelationship("triggering-relationship", "", p3, p4);
+        
+        assertEquals(new HashSet<>(Arrays.asList(p2, p3, p4)), new HashSet<>(index.downstream(p1)));
+        assertEquals(new HashSet<>(Arrays.asList(p1, p2, p3)), new HashSet<>(index.upstream(p4)));
+        assertTrue(index.isReachable(p2, p4));
+    }
+    
+    @Test
+    public void relationshipDeleted_UpdatesIndex() {
+        // Cache these first
+        index.downstream(p1);
+        index.upstream(p3);
+        
+        r12.delete();
+        
+        assertTrue(index.downstream(p1).isEmpty());
+        assertEquals(Arrays.asList(p2), index.upstream(p3));
+        assertFalse(index.isReachable(p1, p3));
+    }
+    
+    @Test
+    public void relationshipRenamed_UpdatesIndex() {
+        r12.setName("next");
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("relations", ".next");
+        ReachabilityIndex byName = modelProxy.createReachabilityIndex(options);
+        
+        try {
+            assertEquals(Arrays.asList(p2), byName.downstream(p1));
+            
+            // Renamed so no longer matched by the selector
+            r12.setName("other");
+            assertTrue(byName.downstream(p1).isEmpty());
+            
+            r12.setName("next");
+            assertEquals(Arrays.asList(p2), byName.downstream(p1));
+        }
+        finally {
+            byName.dispose();
+        }
+    }
+    
+    @Test
+    public void elementDeleted_UpdatesIndex() {
+        index.downstream(p1);
+        
+        p2.delete();
+        
+        assertTrue(index.downstream(p1).isEmpty());
+        assertTrue(index.upstream(p3).isEmpty());
+    }
+}
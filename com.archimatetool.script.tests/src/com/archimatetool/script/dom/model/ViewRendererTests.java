@@ -0,0 +1,244 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.eclipse.swt.SWT;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.script.ArchiScriptException;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * ViewRenderer Tests
+ *
+ * @author agent
+ */
+@SuppressWarnings("nls")
+public class ViewRendererTests {
+    
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ViewRendererTests.class);
+    }
+    
+    private static final byte[] PNG_SIGNATURE = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    
+    private ArchimateDiagramModelProxy view;
+    
+    @Before
+    public void runOnceBeforeEachTest() {
+        ArchimateModelProxy modelProxy = TestsHelper.createTestModel();
+        view = modelProxy.createArchimateView("view");
+        
+        ArchimateElementProxy actor = modelProxy.createElement("business-actor", "Actor");
+        ArchimateElementProxy role = modelProxy.createElement("business-role", "Role");
+        
+        view.add(actor, 10, 10, 120, 55);
+        view.add(role, 300, 200, 120, 55);
+    }
+    
+    @Test
+    public void renderViewToFile_PNG() throws IOException {
+        File file = File.createTempFile("~temp", ".png");
+        file.deleteOnExit();
+        
+        new Model().renderViewToFile(view, file.getAbsolutePath());
+        
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertArrayEquals(PNG_SIGNATURE, Arrays.copyOf(bytes, PNG_SIGNATURE.length));
+        
+        BufferedImage image = ImageIO.read(file);
+        assertNotNull(image);
+        assertTrue(image.getWidth() >= 410);
+        assertTrue(image.getHeight() >= 245);
+    }
+    
+    @Test
+    public void renderViewToFile_FormatOption() throws IOException {
+        File file = File.createTempFile("~temp", ".img");
+        file.deleteOnExit();
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("format", "BMP");
+        options.put("headless", true);
+        
+        new Model().renderViewToFile(view, file.getAbsolutePath(), options);
+        
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertEquals('B', bytes[0]);
+        assertEquals('M', bytes[1]);
+        
+        BufferedImage image = ImageIO.read(file);
+        assertEquals(410 + 20, image.getWidth());
+        assertEquals(245 + 20, image.getHeight());
+    }
+    
+    @Test
+    public void renderViewToStream_Scale() throws IOException {
+        Map<String, Object> options = new HashMap<>();
+        options.put("headless", true);
+        options.put("scale", 0.5);
+        options.put("margin", 0);
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Model().renderViewToStream(view, out, "png", options);
+        
+        byte[] bytes = out.toByteArray();
+        assertArrayEquals(PNG_SIGNATURE, Arrays.copyOf(bytes, PNG_SIGNATURE.length));
+        
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+        assertEquals(205, image.getWidth());
+        assertEquals(123, image.getHeight());
+    }
+    
+    @Test
+    public void renderViewToStream_JPG() throws IOException {
+        Map<String, Object> options = new HashMap<>();
+        options.put("headless", true);
+        options.put("quality", 50);
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Model().renderViewToStream(view, out, "JPG", options);
+        
+        byte[] bytes = out.toByteArray();
+        assertEquals((byte)0xFF, bytes[0]);
+        assertEquals((byte)0xD8, bytes[1]);
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(bytes)));
+    }
+    
+    @Test(expected = ArchiScriptException.class)
+    public void renderViewToStream_UnknownFormat() throws IOException {
+        new Model().renderViewToStream(view, new ByteArrayOutputStream(), "TIFF", null);
+    }
+    
+    @Test
+    public void renderViewToFile_UnknownExtension() throws IOException {
+        File file = File.createTempFile("~temp", ".tif");
+        file.deleteOnExit();
+        
+        // An extension that is not an image format is rendered as PNG
+        new Model().renderViewToFile(view, file.getAbsolutePath());
+        
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertArrayEquals(PNG_SIGNATURE, Arrays.copyOf(bytes, PNG_SIGNATURE.length));
+    }
+    
+    @Test
+    public void renderViewToFile_UnknownFormatOption() throws IOException {
+        File file = new File(Files.createTempDirectory("~temp").toFile(), "x.png");
+        file.getParentFile().deleteOnExit();
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("format", "TIFF");
+        
+        try {
+            new Model().renderViewToFile(view, file.getAbsolutePath(), options);
+        }
+        catch(ArchiScriptException ex) {
+            // The file is not created
+            assertFalse(file.exists());
+            return;
+        }
+        
+        throw new AssertionError("ArchiScriptException expected");
+    }
+    
+    @Test
+    public void renderViewAsBase64_UnknownFormat() throws IOException {
+        // Formats that are not image formats, and SVG if not headless, are rendered as PNG as they always have been
+        for(String format : new String[] { "TIFF", "SVG" }) {
+            byte[] bytes = Base64.getDecoder().decode(new Model().renderViewAsBase64(view, format));
+            assertArrayEquals(PNG_SIGNATURE, Arrays.copyOf(bytes, PNG_SIGNATURE.length));
+        }
+    }
+    
+    @Test
+    public void renderViewTiles_Quality() throws IOException {
+        File parent = Files.createTempDirectory("~temp").toFile();
+        parent.deleteOnExit();
+        
+        long[] sizes = new long[2];
+        int[] qualities = { 10, 100 };
+        
+        for(int i = 0; i < qualities.length; i++) {
+            Map<String, Object> options = new HashMap<>();
+            options.put("format", "JPG");
+            options.put("quality", qualities[i]);
+            
+            File folder = new File(parent, "tiles" + i);
+            new Model().renderViewTiles(view, folder.getAbsolutePath(), options);
+            
+            File tile = new File(folder, "0_0.jpg");
+            tile.deleteOnExit();
+            folder.deleteOnExit();
+            sizes[i] = tile.length();
+            
+            // No temporary files are left
+            assertEquals(1, folder.list().length);
+        }
+        
+        // The quality option is used for the tiles
+        assertTrue(sizes[0] < sizes[1]);
+    }
+    
+    @Test(expected = ArchiScriptException.class)
+    public void renderViewTiles_SVG() throws IOException {
+        Map<String, Object> options = new HashMap<>();
+        options.put("format", "SVG");
+        
+        File folder = new File(Files.createTempDirectory("~temp").toFile(), "tiles");
+        folder.getParentFile().deleteOnExit();
+        
+        new Model().renderViewTiles(view, folder.getAbsolutePath(), options);
+    }
+    
+    @Test
+    public void getSWTFormat() {
+        assertEquals(SWT.IMAGE_PNG, ViewRenderer.getSWTFormat("png"));
+        assertEquals(SWT.IMAGE_BMP, ViewRenderer.getSWTFormat("BMP"));
+        assertEquals(SWT.IMAGE_GIF, ViewRenderer.getSWTFormat("GIF"));
+        assertEquals(SWT.IMAGE_JPEG, ViewRenderer.getSWTFormat("JPG"));
+        assertEquals(SWT.IMAGE_JPEG, ViewRenderer.getSWTFormat("jpeg"));
+    }
+    
+    @Test(expected = ArchiScriptException.class)
+    public void getSWTFormat_Unknown() {
+        ViewRenderer.getSWTFormat("SVG");
+    }
+    
+    @Test
+    public void getFormat() {
+        assertEquals("jpg", ViewRenderer.getFormat(null, "/a/b/view.jpg"));
+        assertEquals("PNG", ViewRenderer.getFormat(null, "/a/b/view"));
+        assertEquals("PNG", ViewRenderer.getFormat(null, "/a/b/view.tif"));
+        assertEquals("svg", ViewRenderer.getFormat(null, "/a/b/view.svg"));
+        
+        Map<String, Object> options = new HashMap<>();
+        options.put("format", "GIF");
+        assertEquals("GIF", ViewRenderer.getFormat(options, "/a/b/view.jpg"));
+    }
+}
@@ -23,6 +23,10 @@ import org.eclipse.ui.PlatformUI;
 import com.archimatetool.editor.utils.FileUtils;
 import com.archimatetool.script.commands.CommandHandler;
 import com.archimatetool.script.dom.IArchiScriptDOMFactory;
+import com.archimatetool.script.dom.jarchi.FileHandle;
+import com.archimatetool.script.dom.model.ModelChangeTracker;
+import com.archimatetool.script.dom.model.ModelJournal;
+import com.archimatetool.script.dom.model.SaveTask;
 import com.archimatetool.script.views.console.ConsoleOutput;
 
 
@@ -73,6 +77,16 @@ public class RunArchiScript {
             
             RefreshUIHandler.finalise();
             
+            // Close any files left open by the script
+            FileHandle.closeAll();
+            
+            // Finish any model saves running in the background
+            SaveTask.waitForAll();
+            
+            // Stop tracking changes to models checked by saves and stop recording journals
+            ModelChangeTracker.removeAll();
+            ModelJournal.removeAll();
+            
             // Add Commands to UI
             CommandHandler.finalise(FileUtils.getFileNameWithoutExtension(file));
         }
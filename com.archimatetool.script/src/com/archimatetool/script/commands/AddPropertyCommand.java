@@ -25,6 +25,13 @@ public class AddPropertyCommand extends ScriptCommand {
         property = IArchimateFactory.eINSTANCE.createProperty(key, value);
     }
 
+    /**
+     * @return the object whose properties are changed
+     */
+    public IProperties getEObject() {
+        return eObject;
+    }
+    
     @Override
     public void undo() {
         eObject.getProperties().remove(property);
@@ -40,6 +40,13 @@ public class AddRelationshipCommand extends ScriptCommand {
         parent.getElements().add(relationship);
     }
     
+    /**
+     * @return the relationship
+     */
+    public IArchimateRelationship getRelationship() {
+        return relationship;
+    }
+    
     @Override
     public void dispose() {
         parent = null;
@@ -0,0 +1,78 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.commands;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.archimatetool.model.IArchimateModel;
+
+/**
+ * A batch of Script Commands that is executed as one command.
+ * The commands are performed in the order they were added and undone in reverse order.
+ *
+ * @author agent
+ */
+public class BatchCommand extends ScriptCommand {
+    
+    private List<ScriptCommand> commands = new ArrayList<>();
+    
+    public BatchCommand(String name, IArchimateModel model) {
+        super(name, model);
+    }
+    
+    /**
+     * Add a command to the batch if it can be executed
+     * @param cmd
+     */
+    public void add(ScriptCommand cmd) {
+        if(cmd.canExecute()) {
+            commands.add(cmd);
+        }
+    }
+    
+    /**
+     * @return the commands in the batch
+     */
+    public List<ScriptCommand> getCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+    
+    public boolean isEmpty() {
+        return commands.isEmpty();
+    }
+    
+    @Override
+    public boolean canExecute() {
+        return !commands.isEmpty();
+    }
+    
+    @Override
+    public void perform() {
+        for(ScriptCommand cmd : commands) {
+            cmd.perform();
+        }
+    }
+    
+    @Override
+    public void undo() {
+        for(int i = commands.size() - 1; i >= 0; i--) {
+            commands.get(i).undo();
+        }
+    }
+    
+    @Override
+    public void dispose() {
+        super.dispose();
+        
+        for(ScriptCommand cmd : commands) {
+            cmd.dispose();
+        }
+        
+        commands.clear();
+    }
+}
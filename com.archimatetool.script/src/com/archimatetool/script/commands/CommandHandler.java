@@ -6,8 +6,10 @@
 package com.archimatetool.script.commands;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.eclipse.gef.commands.CommandStack;
 import org.eclipse.gef.commands.CompoundCommand;
@@ -26,8 +28,11 @@ public class CommandHandler {
     
     private static Map<CommandStack, CompoundCommand> compoundcommands;
     
+    private static List<ICommandListener> listeners = new CopyOnWriteArrayList<>();
+    
     public static void init() {
         compoundcommands = new HashMap<CommandStack, CompoundCommand>();
+        listeners.clear();
     }
 
     public static void executeCommand(ScriptCommand cmd) {
@@ -35,8 +40,9 @@ public class CommandHandler {
             return;
         }
         
+        // Objects that are not in a model have no command stack but are still changed here
         IArchimateModel model = cmd.getModel();
-        CommandStack stack = (CommandStack)model.getAdapter(CommandStack.class);
+        CommandStack stack = model == null ? null : (CommandStack)model.getAdapter(CommandStack.class);
         
         if(stack != null) {
             CompoundCommand compound = compoundcommands.get(stack);
@@ -49,6 +55,10 @@ public class CommandHandler {
         
         cmd.perform();
         
+        for(ICommandListener listener : listeners) {
+            listener.commandPerformed(cmd);
+        }
+        
         // Take this opportunity to update the UI if set
         RefreshUIHandler.refresh();
     }
@@ -65,5 +75,41 @@ public class CommandHandler {
         }
     }
     
+    /**
+     * @return true if commands have been performed on a model with a command stack in this script.
+     * These commands are not on the command stack until the script ends.
+     */
+    public static boolean hasPendingCommands(IArchimateModel model) {
+        CommandStack stack = model == null ? null : (CommandStack)model.getAdapter(CommandStack.class);
+        CompoundCommand compound = stack == null || compoundcommands == null ? null : compoundcommands.get(stack);
+        return compound != null && !compound.isEmpty();
+    }
+    
+    /**
+     * Add a listener to be notified after each command is performed.
+     * Listeners are removed when the next script starts.
+     * @param listener
+     */
+    public static void addCommandListener(ICommandListener listener) {
+        if(!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+    
+    /**
+     * Remove a listener
+     * @param listener
+     */
+    public static void removeCommandListener(ICommandListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * @return true if the listener is registered
+     */
+    public static boolean hasCommandListener(ICommandListener listener) {
+        return listeners.contains(listener);
+    }
+    
     
 }
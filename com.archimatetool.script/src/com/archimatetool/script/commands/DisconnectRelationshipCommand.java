@@ -31,6 +31,13 @@ public class DisconnectRelationshipCommand extends ScriptCommand {
         eObject.disconnect();
     }
     
+    /**
+     * @return the relationship
+     */
+    public IArchimateRelationship getRelationship() {
+        return eObject;
+    }
+    
     @Override
     public void dispose() {
         eObject = null;
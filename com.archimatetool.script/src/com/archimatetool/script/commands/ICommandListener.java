@@ -0,0 +1,21 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.commands;
+
+/**
+ * Listener for commands executed by the CommandHandler
+ * 
+ * @author agent
+ */
+public interface ICommandListener {
+    
+    /**
+     * Called after a command has been performed
+     * @param cmd the command
+     */
+    void commandPerformed(ScriptCommand cmd);
+
+}
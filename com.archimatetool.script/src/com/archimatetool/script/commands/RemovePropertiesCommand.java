@@ -26,6 +26,13 @@ public class RemovePropertiesCommand extends ScriptCommand {
         this.toRemove = toRemove;
     }
 
+    /**
+     * @return the object whose properties are changed
+     */
+    public IProperties getEObject() {
+        return eObject;
+    }
+    
     @Override
     public void undo() {
         eObject.getProperties().addAll(toRemove);
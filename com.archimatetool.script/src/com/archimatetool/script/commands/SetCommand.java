@@ -16,8 +16,24 @@ import com.archimatetool.editor.model.commands.EObjectFeatureCommand;
  * @author Phillip Beauvoir
  */
 public class SetCommand extends ScriptCommandWrapper {
+    
+    private EObject eObject;
 
     public SetCommand(EObject eObject, EStructuralFeature feature, Object newValue) {
         super(new EObjectFeatureCommand("Script", eObject, feature, newValue), eObject); //$NON-NLS-1$
+        this.eObject = eObject;
+    }
+    
+    /**
+     * @return the object whose feature is set
+     */
+    public EObject getEObject() {
+        return eObject;
+    }
+    
+    @Override
+    public void dispose() {
+        super.dispose();
+        eObject = null;
     }
 }
\ No newline at end of file
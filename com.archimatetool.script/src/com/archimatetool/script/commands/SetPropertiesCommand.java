@@ -0,0 +1,109 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IProperties;
+import com.archimatetool.model.IProperty;
+
+/**
+ * Set the values of many existing properties and add many new properties as one command.
+ * The changes are held in lists rather than as one command per property.
+ *
+ * @author agent
+ */
+public class SetPropertiesCommand extends ScriptCommand {
+    
+    private List<IProperty> updatedProperties = new ArrayList<>();
+    private List<String> oldValues = new ArrayList<>();
+    private List<String> newValues = new ArrayList<>();
+    
+    private List<IProperties> owners = new ArrayList<>();
+    private List<IProperty> addedProperties = new ArrayList<>();
+    
+    public SetPropertiesCommand(IArchimateModel model) {
+        super("property", model); //$NON-NLS-1$
+    }
+    
+    /**
+     * Set the value of an existing property
+     * @return the index of the change, which can be passed to updateValue()
+     */
+    public int setValue(IProperty property, String value) {
+        updatedProperties.add(property);
+        oldValues.add(property.getValue());
+        newValues.add(value);
+        return updatedProperties.size() - 1;
+    }
+    
+    /**
+     * Change the new value of a change made with setValue()
+     */
+    public void updateValue(int index, String value) {
+        newValues.set(index, value);
+    }
+    
+    /**
+     * Add a property to owner
+     */
+    public void addProperty(IProperties owner, IProperty property) {
+        owners.add(owner);
+        addedProperties.add(property);
+    }
+    
+    /**
+     * @return the objects whose properties are changed
+     */
+    public List<IProperties> getOwners() {
+        List<IProperties> list = new ArrayList<>(owners);
+        for(IProperty property : updatedProperties) {
+            if(property.eContainer() instanceof IProperties) {
+                list.add((IProperties)property.eContainer());
+            }
+        }
+        return list;
+    }
+    
+    @Override
+    public boolean canExecute() {
+        return !updatedProperties.isEmpty() || !addedProperties.isEmpty();
+    }
+    
+    @Override
+    public void perform() {
+        for(int i = 0; i < updatedProperties.size(); i++) {
+            updatedProperties.get(i).setValue(newValues.get(i));
+        }
+        
+        for(int i = 0; i < addedProperties.size(); i++) {
+            owners.get(i).getProperties().add(addedProperties.get(i));
+        }
+    }
+    
+    @Override
+    public void undo() {
+        for(int i = addedProperties.size() - 1; i >= 0; i--) {
+            owners.get(i).getProperties().remove(addedProperties.get(i));
+        }
+        
+        for(int i = updatedProperties.size() - 1; i >= 0; i--) {
+            updatedProperties.get(i).setValue(oldValues.get(i));
+        }
+    }
+    
+    @Override
+    public void dispose() {
+        super.dispose();
+        updatedProperties = null;
+        oldValues = null;
+        newValues = null;
+        owners = null;
+        addedProperties = null;
+    }
+}
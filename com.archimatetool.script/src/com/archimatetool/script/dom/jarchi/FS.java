@@ -5,18 +5,31 @@
  */
 package com.archimatetool.script.dom.jarchi;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Base64;
+import java.util.function.Function;
 
 /**
  * File services
  * 
+ * readLines() reads files larger than MAPPED_READ_SIZE through memory-mapped regions.
+ * 
  * @author jbsarrodie
  */
 public class FS {
+    
+    static final long MAPPED_READ_SIZE = 8L << 20;
+    
     /**
      * Write text to file (using UTF-8)
      * @param path
@@ -64,4 +77,112 @@ public class FS {
             writer.flush();
         }
     }
+    
+    /**
+     * Open a file for writing (using UTF-8), replacing any existing file
+     * @param path
+     * @return a handle to append text to. Close it when done.
+     * @throws IOException
+     */
+    public FileHandle open(String path) throws IOException {
+        return open(path, "UTF-8"); //$NON-NLS-1$
+    }
+    
+    /**
+     * Open a file for writing, replacing any existing file
+     * @param path
+     * @param encoding
+     * @return a handle to append text to. Close it when done.
+     * @throws IOException
+     */
+    public FileHandle open(String path, String encoding) throws IOException {
+        return new FileHandle(path, encoding, false);
+    }
+    
+    /**
+     * Open a file for appending (using UTF-8), creating it if it doesn't exist
+     * @param path
+     * @return a handle to append text to. Close it when done.
+     * @throws IOException
+     */
+    public FileHandle append(String path) throws IOException {
+        return append(path, "UTF-8"); //$NON-NLS-1$
+    }
+    
+    /**
+     * Open a file for appending, creating it if it doesn't exist
+     * @param path
+     * @param encoding
+     * @return a handle to append text to. Close it when done.
+     * @throws IOException
+     */
+    public FileHandle append(String path, String encoding) throws IOException {
+        return new FileHandle(path, encoding, true);
+    }
+    
+    /**
+     * Read text from file (using UTF-8)
+     * @param path
+     * @return the text
+     * @throws IOException
+     */
+    public String readFile(String path) throws IOException {
+        return readFile(path, "UTF-8"); //$NON-NLS-1$
+    }
+    
+    /**
+     * Read text from file
+     * @param path
+     * @param encoding use BASE64 to read a binary file as base64 text
+     * @return the text
+     * @throws IOException
+     */
+    public String readFile(String path, String encoding) throws IOException {
+        Path file = Paths.get(path);
+        
+        if(encoding.equals("BASE64")) { //$NON-NLS-1$
+            return Base64.getEncoder().encodeToString(Files.readAllBytes(file));
+        }
+        
+        // The whole text is held in memory anyway so there is nothing to gain from mapping the file. Use readLines() for large files.
+        return new String(Files.readAllBytes(file), Charset.forName(encoding));
+    }
+    
+    /**
+     * Read a file (using UTF-8) one line at a time
+     * @param path
+     * @param callback called with each line. If it returns false reading stops.
+     * @return the number of lines read
+     * @throws IOException
+     */
+    public int readLines(String path, Function<String, Object> callback) throws IOException {
+        return readLines(path, "UTF-8", callback); //$NON-NLS-1$
+    }
+    
+    /**
+     * Read a file one line at a time. Only the current line is held in memory.
+     * @param path
+     * @param encoding
+     * @param callback called with each line. If it returns false reading stops.
+     * @return the number of lines read
+     * @throws IOException
+     */
+    public int readLines(String path, String encoding, Function<String, Object> callback) throws IOException {
+        Path file = Paths.get(path);
+        Charset charset = Charset.forName(encoding);
+        int count = 0;
+        
+        try(InputStream in = Files.size(file) < MAPPED_READ_SIZE ? Files.newInputStream(file) : new MappedFileInputStream(file);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, charset), 1 << 16)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                count++;
+                if(Boolean.FALSE.equals(callback.apply(line))) {
+                    break;
+                }
+            }
+        }
+        
+        return count;
+    }
 }
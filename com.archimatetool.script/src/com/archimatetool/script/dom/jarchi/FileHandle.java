@@ -0,0 +1,151 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.jarchi;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An open file that text can be appended to through a buffer, returned by FS.open() and FS.append()
+ *
+ * Text is only written to disk when the buffer is full, when flush() is called or when the file is closed.
+ * Handles that a script leaves open are closed when the script ends.
+ *
+ * @author agent
+ */
+public class FileHandle {
+    
+    private static final Set<FileHandle> openHandles = new LinkedHashSet<>();
+    
+    private String path;
+    private BufferedWriter writer;
+    
+    FileHandle(String path, String encoding, boolean append) throws IOException {
+        this.path = path;
+        
+        // Before the file is opened so that an unknown encoding doesn't leave it open
+        Charset charset = Charset.forName(encoding);
+        
+        Path file = Paths.get(path);
+        writer = new BufferedWriter(new OutputStreamWriter(append ?
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE) :
+                Files.newOutputStream(file), charset), 1 << 16);
+        
+        synchronized(openHandles) {
+            openHandles.add(this);
+        }
+    }
+    
+    /**
+     * @return the file path
+     */
+    public String getPath() {
+        return path;
+    }
+    
+    /**
+     * @return true if the file is still open
+     */
+    public boolean isOpen() {
+        return writer != null;
+    }
+    
+    /**
+     * Append text to the file
+     * @param text
+     * @return this
+     * @throws IOException
+     */
+    public FileHandle append(String text) throws IOException {
+        checkOpen();
+        if(text != null) {
+            writer.write(text);
+        }
+        return this;
+    }
+    
+    /**
+     * Append text and a new line to the file
+     * @param text
+     * @return this
+     * @throws IOException
+     */
+    public FileHandle appendLine(String text) throws IOException {
+        append(text);
+        writer.write('\n');
+        return this;
+    }
+    
+    /**
+     * Write any buffered text to the file
+     * @return this
+     * @throws IOException
+     */
+    public FileHandle flush() throws IOException {
+        checkOpen();
+        writer.flush();
+        return this;
+    }
+    
+    /**
+     * Write any buffered text and close the file. Closing a closed file does nothing.
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if(writer != null) {
+            synchronized(openHandles) {
+                openHandles.remove(this);
+            }
+            try {
+                writer.close();
+            }
+            finally {
+                writer = null;
+            }
+        }
+    }
+    
+    private void checkOpen() throws IOException {
+        if(writer == null) {
+            throw new IOException("File is closed: " + path); //$NON-NLS-1$
+        }
+    }
+    
+    /**
+     * Close all open handles. This is called when a script ends.
+     */
+    public static void closeAll() {
+        List<FileHandle> handles;
+        
+        synchronized(openHandles) {
+            handles = new ArrayList<>(openHandles);
+        }
+        
+        for(FileHandle handle : handles) {
+            try {
+                handle.close();
+            }
+            catch(IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "FileHandle: " + path; //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.jarchi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file through memory-mapped regions so that large files are read by the OS page cache
+ * without copying each block through a heap buffer. Only one region is mapped at a time.
+ *
+ * @author agent
+ */
+class MappedFileInputStream extends InputStream {
+    
+    static final long REGION_SIZE = 64L << 20;
+    
+    private FileChannel channel;
+    private long position;
+    private long size;
+    private MappedByteBuffer buffer;
+    
+    MappedFileInputStream(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+    }
+    
+    @Override
+    public int read() throws IOException {
+        return nextRegion() ? buffer.get() & 0xFF : -1;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+        if(!nextRegion()) {
+            return -1;
+        }
+        
+        len = Math.min(len, buffer.remaining());
+        buffer.get(b, off, len);
+        return len;
+    }
+    
+    @Override
+    public int available() throws IOException {
+        return buffer != null ? buffer.remaining() : 0;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+    
+    /**
+     * Map the next region if the current one has been read
+     * @return false at the end of the file
+     */
+    private boolean nextRegion() throws IOException {
+        if(buffer != null && buffer.hasRemaining()) {
+            return true;
+        }
+        if(position >= size) {
+            return false;
+        }
+        
+        long length = Math.min(REGION_SIZE, size - position);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        position += length;
+        return true;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.ecore.EObject;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IFolder;
+
+/**
+ * Ancestor chains and folder paths of objects.
+ *
+ * The ancestor chain of each container is cached, so objects that share containers only walk up to the first
+ * container that has been seen before, and folder paths are cached per folder so each folder path is only computed once.
+ * Use one AncestorCache for all the objects of an operation (for example a collection's parents() or a groupBy()).
+ * The model can change between operations so use a new AncestorCache for each operation.
+ *
+ * @author agent
+ */
+class AncestorCache {
+    
+    static final String PATH_SEPARATOR = "/"; //$NON-NLS-1$
+    
+    // Containers to their proxy and their ancestors, nearest first, not including the model
+    private Map<EObject, List<EObjectProxy>> chains = new HashMap<>();
+    
+    private Map<IFolder, String> folderPaths = new HashMap<>();
+    
+    /**
+     * @return proxies of the ancestors of eObject, nearest first, not including the model. Don't change the list.
+     */
+    List<EObjectProxy> getAncestors(EObject eObject) {
+        return eObject == null ? Collections.emptyList() : getChain(eObject.eContainer());
+    }
+    
+    /**
+     * @return the proxy of container followed by its ancestors
+     */
+    private List<EObjectProxy> getChain(EObject container) {
+        // Walk up until we find a container with a known chain
+        Deque<EObject> stack = new ArrayDeque<>();
+        List<EObjectProxy> chain = Collections.emptyList();
+        
+        for(EObject e = container; e != null && !(e instanceof IArchimateModel); e = e.eContainer()) {
+            List<EObjectProxy> cached = chains.get(e);
+            if(cached != null) {
+                chain = cached;
+                break;
+            }
+            stack.push(e);
+        }
+        
+        // Then walk back down storing the chains
+        while(!stack.isEmpty()) {
+            EObject e = stack.pop();
+            EObjectProxy proxy = EObjectProxy.get(e);
+            
+            // No proxy for this type of object so the chain stops here
+            if(proxy == null) {
+                chain = Collections.emptyList();
+            }
+            else {
+                List<EObjectProxy> list = new ArrayList<>(chain.size() + 1);
+                list.add(proxy);
+                list.addAll(chain);
+                chain = Collections.unmodifiableList(list);
+            }
+            
+            chains.put(e, chain);
+        }
+        
+        return chain;
+    }
+    
+    /**
+     * @return the nearest folder containing eObject, or null
+     */
+    IFolder getParentFolder(EObject eObject) {
+        for(EObjectProxy proxy : getAncestors(eObject)) {
+            if(proxy.getEObject() instanceof IFolder) {
+                return (IFolder)proxy.getEObject();
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @return the top level folder containing eObject, or null
+     */
+    IFolder getTopFolder(EObject eObject) {
+        List<EObjectProxy> ancestors = getAncestors(eObject);
+        for(int i = ancestors.size() - 1; i >= 0; i--) {
+            if(ancestors.get(i).getEObject() instanceof IFolder) {
+                return (IFolder)ancestors.get(i).getEObject();
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @return the path of the folders containing eObject, for example "Business/Actors", or an empty string
+     */
+    String getFolderPath(EObject eObject) {
+        IFolder folder = getParentFolder(eObject);
+        return folder == null ? "" : getPath(folder); //$NON-NLS-1$
+    }
+    
+    private String getPath(IFolder folder) {
+        // Walk up until we find a folder with a known path
+        Deque<IFolder> stack = new ArrayDeque<>();
+        String path = null;
+        
+        for(IFolder f = folder; f != null; f = f.eContainer() instanceof IFolder ? (IFolder)f.eContainer() : null) {
+            path = folderPaths.get(f);
+            if(path != null) {
+                break;
+            }
+            stack.push(f);
+        }
+        
+        // Then walk back down storing the paths
+        while(!stack.isEmpty()) {
+            IFolder f = stack.pop();
+            path = path == null ? f.getName() : path + PATH_SEPARATOR + f.getName();
+            folderPaths.put(f, path);
+        }
+        
+        return path;
+    }
+}
@@ -5,6 +5,11 @@
  */
 package com.archimatetool.script.dom.model;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
 import org.eclipse.osgi.util.NLS;
 
 import com.archimatetool.editor.model.DiagramModelUtils;
@@ -102,6 +107,87 @@ public abstract class ArchimateConceptProxy extends EObjectProxy {
         return list;
     }
 
+    /**
+     * @return the concepts reachable from this concept by following its outgoing relationships
+     */
+    public EObjectProxyCollection traverse() {
+        return traverse(null);
+    }
+    
+    /**
+     * @param options "direction" ("out", "in" or "both"), "relations" (a selector or array of selectors), "depth", "order" ("bfs" or "dfs")
+     * @return the concepts reachable from this concept in traversal order
+     */
+    public EObjectProxyCollection traverse(Map<?, ?> options) {
+        return GraphTraversal.traverse(Collections.singletonList(getEObject()), options);
+    }
+    
+    /**
+     * Call the callback with each concept reachable from this concept and its depth.
+     * If the callback returns false the traversal stops.
+     */
+    public void traverse(Map<?, ?> options, BiFunction<EObjectProxy, Integer, Object> callback) {
+        GraphTraversal.traverse(Collections.singletonList(getEObject()), options, callback);
+    }
+    
+    /**
+     * @return the concepts within a number of outgoing relationships of this concept
+     */
+    public EObjectProxyCollection neighbours(int hops) {
+        return neighbours(hops, null);
+    }
+    
+    /**
+     * @return the concepts within a number of relationships of this concept
+     */
+    public EObjectProxyCollection neighbours(int hops, Map<?, ?> options) {
+        return GraphTraversal.neighbours(Collections.singletonList(getEObject()), hops, options);
+    }
+    
+    public EObjectProxyCollection shortestPath(EObjectProxy target) {
+        return shortestPath(target, null);
+    }
+    
+    /**
+     * @return the shortest path from this concept to target as the concepts and the relationships between them,
+     * or an empty collection if there is no path
+     */
+    public EObjectProxyCollection shortestPath(EObjectProxy target, Map<?, ?> options) {
+        return GraphTraversal.shortestPath(Collections.singletonList(getEObject()), target, options);
+    }
+    
+    public List<EObjectProxyCollection> allPaths(EObjectProxy target) {
+        return allPaths(target, null);
+    }
+    
+    /**
+     * @return all paths from this concept to target that don't visit a concept more than once,
+     * each as the concepts and the relationships between them
+     */
+    public List<EObjectProxyCollection> allPaths(EObjectProxy target, Map<?, ?> options) {
+        return GraphTraversal.allPaths(Collections.singletonList(getEObject()), target, options);
+    }
+    
+    /**
+     * @return the relationships that can be derived from chains of relationships starting at this concept
+     * and that are not already in the model
+     */
+    public List<DerivedRelationship> derivedRels() {
+        return DerivationEngine.getDerivedRelationshipsFrom(getEObject());
+    }
+    
+    /**
+     * @return the relationships that can be derived from chains of relationships from this concept to target
+     * and that are not already in the model
+     */
+    public List<DerivedRelationship> derivedRels(EObjectProxy target) {
+        if(target == null || !(target.getEObject() instanceof IArchimateConcept)) {
+            throw new ArchiScriptException("Target is not a concept: " + target); //$NON-NLS-1$
+        }
+        
+        return DerivationEngine.getDerivedRelationships(getEObject(), (IArchimateConcept)target.getEObject());
+    }
+    
     @Override
     public void delete() {
         // Delete diagram instances first
@@ -7,16 +7,23 @@ package com.archimatetool.script.dom.model;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
+import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.ui.PlatformUI;
 
 import com.archimatetool.editor.model.IArchiveManager;
 import com.archimatetool.editor.model.IEditorModelManager;
-import com.archimatetool.editor.model.ModelChecker;
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateElement;
 import com.archimatetool.model.IArchimateModel;
 import com.archimatetool.model.IArchimatePackage;
+import com.archimatetool.model.IDiagramModel;
 import com.archimatetool.model.IFolder;
 import com.archimatetool.model.ModelVersion;
 import com.archimatetool.script.ArchiScriptException;
@@ -65,8 +72,23 @@ public class ArchimateModelProxy extends EObjectProxy {
         return getPurpose();
     }
     
+    /**
+     * @return a copy of the model with the same ids. The copy has no file and is not opened in the UI.
+     */
     public ArchimateModelProxy copy() {
-        return new ArchimateModelProxy(getEObject());
+        return copy(null);
+    }
+    
+    /**
+     * @param options "views" false to leave the Views out of the copy (default true)
+     * @return a copy of the model with the same ids. The copy has no file and is not opened in the UI.
+     */
+    public ArchimateModelProxy copy(Map<?, ?> options) {
+        if(getEObject() == null) {
+            return new ArchimateModelProxy(null);
+        }
+        
+        return new ArchimateModelProxy(new ModelCopier(options).copy(getEObject()));
     }
     
     public ArchimateModelProxy save(String path) throws IOException {
@@ -80,29 +102,170 @@ public class ArchimateModelProxy extends EObjectProxy {
             
             getEObject().setFile(file);
             
-            return save();
+            // Saving to a file is always a full save, and the journal starts again for the new file
+            return isJournaling() ? saveFull() : save();
         }
 
         return this;
     }
     
+    /**
+     * Save the model. If the journal has been started only the changes since the last save are appended to the journal,
+     * unless the model file has been saved by something else since the journal was started, when the model is saved in full.
+     */
     public ArchimateModelProxy save() throws IOException {
         if(getEObject() != null && getEObject().getFile() != null) {
-            getEObject().setVersion(ModelVersion.VERSION);
-            checkModel();
-            IArchiveManager archiveManager = (IArchiveManager)getEObject().getAdapter(IArchiveManager.class);
-            archiveManager.saveModel();
+            ModelJournal journal = ModelJournal.get(getEObject());
+            
+            // If the model file was saved by something else the journal wouldn't be replayed on it
+            if(journal != null && journal.isCurrent()) {
+                getEObject().setVersion(ModelVersion.VERSION);
+                checkModel();
+                journal.save();
+            }
+            else {
+                saveFull();
+            }
+        }
+        
+        return this;
+    }
+    
+    /**
+     * Save the whole model to its file, and if the journal has been started empty the journal
+     */
+    private ArchimateModelProxy saveFull() throws IOException {
+        // Don't let an earlier background save overwrite this one
+        SaveTask.waitForAll();
+        
+        getEObject().setVersion(ModelVersion.VERSION);
+        checkModel();
+        IArchiveManager archiveManager = (IArchiveManager)getEObject().getAdapter(IArchiveManager.class);
+        archiveManager.saveModel();
+        
+        ModelJournal journal = ModelJournal.get(getEObject());
+        if(journal != null) {
+            journal.reset();
+        }
+        
+        return this;
+    }
+    
+    /**
+     * Start journal mode. The model is saved in full and from then on save() appends the changes since the last save
+     * to a journal file next to the model file, which is replayed when the model is loaded. Journal mode ends when the script ends.
+     */
+    public ArchimateModelProxy startJournal() throws IOException {
+        if(getEObject() == null || getEObject().getFile() == null) {
+            throw new ArchiScriptException("startJournal - Model has no file"); //$NON-NLS-1$
+        }
+        
+        if(!isJournaling()) {
+            saveFull();
+            ModelJournal.start(getEObject());
+        }
+        
+        return this;
+    }
+    
+    /**
+     * Save the model in full, including the journal's changes, and empty the journal
+     */
+    public ArchimateModelProxy compactJournal() throws IOException {
+        if(!isJournaling()) {
+            throw new ArchiScriptException("compactJournal - Journal is not started"); //$NON-NLS-1$
+        }
+        
+        return saveFull();
+    }
+    
+    /**
+     * Save the model in full, delete the journal and stop journal mode
+     */
+    public ArchimateModelProxy stopJournal() throws IOException {
+        if(isJournaling()) {
+            saveFull();
+            ModelJournal.get(getEObject()).stop();
+        }
+        
+        return this;
+    }
+    
+    /**
+     * @return true if journal mode is started, either by startJournal() or because the model was loaded with a journal
+     */
+    public boolean isJournaling() {
+        return getEObject() != null && ModelJournal.get(getEObject()) != null;
+    }
+    
+    /**
+     * Save the model in the background. The model is checked and copied now, and the copy is written to the model file
+     * on a background thread while the script carries on.
+     * @return the SaveTask, which can be used to wait for the save to finish
+     */
+    public SaveTask saveAsync() throws IOException {
+        if(getEObject() == null || getEObject().getFile() == null) {
+            throw new ArchiScriptException("saveAsync - Model has no file"); //$NON-NLS-1$
+        }
+        
+        // Appending to the journal is quick so is done now
+        if(isJournaling()) {
+            save();
+            return SaveTask.completed(getEObject().getFile().getAbsolutePath());
+        }
+        
+        getEObject().setVersion(ModelVersion.VERSION);
+        checkModel();
+        return SaveTask.start(getEObject());
+    }
+    
+    /**
+     * Save the model to a file in the background
+     * @see #saveAsync()
+     */
+    public SaveTask saveAsync(String path) throws IOException {
+        if(getEObject() != null) {
+            File file = new File(path);
+            
+            // Check we don't already have a model open in UI with the same file name
+            if(PlatformUI.isWorkbenchRunning() && IEditorModelManager.INSTANCE.isModelLoaded(file)) {
+                throw new ArchiScriptException(NLS.bind(Messages.ArchimateModelProxy_5, file));
+            }
+            
+            getEObject().setFile(file);
+            
+            // Saving to a file is always a full save
+            if(isJournaling()) {
+                saveFull();
+                return SaveTask.completed(file.getAbsolutePath());
+            }
+        }
+        
+        return saveAsync();
+    }
+    
+    /**
+     * Write a snapshot of the model to a file in a compact binary form that Model.loadSnapshot() loads much faster than the model file.
+     * This doesn't save the model. If the model has unsaved changes the snapshot is not taken as the same as the model file by Model.loadSnapshot(path, modelPath).
+     */
+    public ArchimateModelProxy saveSnapshot(String path) throws IOException {
+        if(path == null) {
+            throw new ArchiScriptException("saveSnapshot - Path is null"); //$NON-NLS-1$
+        }
+        
+        if(getEObject() != null) {
+            ModelSnapshot.save(getEObject(), new File(path));
         }
         
         return this;
     }
     
     private void checkModel() throws IOException {
-        // Model Checker
-        ModelChecker checker = new ModelChecker(getEObject());
+        // The first check is a full check, after that only what has changed since the last successful check is checked
+        List<String> errors = ModelChangeTracker.check(getEObject());
         
-        if(!checker.checkAll()) {
-            for(String m : checker.getErrorMessages()) {
+        if(!errors.isEmpty()) {
+            for(String m : errors) {
                 String logMessage = "Model Integrity Error.";  //$NON-NLS-1$
                 logMessage += " \'" + getEObject().getName() + "\':"; //$NON-NLS-1$ //$NON-NLS-2$
                 logMessage += " " + m; //$NON-NLS-1$
@@ -241,6 +404,157 @@ public class ArchimateModelProxy extends EObjectProxy {
         return this;
     }
 
+    /**
+     * @return a snapshot of the relationships between all of the elements in the model
+     */
+    public GraphSnapshot graph() {
+        return graph(null);
+    }
+    
+    /**
+     * @param options "relations" (a selector or array of selectors of the relationships to include)
+     * @return a snapshot of the relationships between all of the elements in the model
+     */
+    public GraphSnapshot graph(Map<?, ?> options) {
+        return new GraphSnapshot(getElements(), options);
+    }
+    
+    /**
+     * @return the relationships that can be derived between all of the elements in the model
+     * and that are not already in the model
+     */
+    public List<DerivedRelationship> derivedRels() {
+        return DerivationEngine.getDerivedRelationships(getElements());
+    }
+    
+    /**
+     * @return the relationships that can be derived between the concepts in the collection
+     * and that are not already in the model
+     */
+    public List<DerivedRelationship> derivedRels(EObjectProxyCollection concepts) {
+        return concepts.derivedRels();
+    }
+    
+    private List<IArchimateConcept> getElements() {
+        List<IArchimateConcept> elements = new ArrayList<>();
+        
+        for(TreeIterator<EObject> iter = getEObject().eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            if(eObject instanceof IArchimateElement) {
+                elements.add((IArchimateElement)eObject);
+            }
+            // Don't look inside views
+            else if(eObject instanceof IDiagramModel) {
+                iter.prune();
+            }
+        }
+        
+        return elements;
+    }
+    
+    /**
+     * Add or update the properties of many objects in the model as one change
+     * @param data a map of object or object id to a map of property keys and values.
+     * Properties are updated if they already exist, otherwise they are added.
+     * @return this
+     */
+    public ArchimateModelProxy setProperties(Map<?, ?> data) {
+        if(data != null) {
+            PropertyUpdater.update(getEObject(), data);
+        }
+        return this;
+    }
+    
+    public ImportResult importFile(String path) throws IOException {
+        return importFile(path, null, null);
+    }
+    
+    public ImportResult importFile(String path, Map<?, ?> options) throws IOException {
+        return importFile(path, options, null);
+    }
+    
+    /**
+     * Stream rows from a CSV or NDJSON file into this model, creating or updating elements, relationships and properties
+     * @param options "format" ("csv" or "ndjson", by default from the file extension), "delimiter", "encoding", "batchSize",
+     * "maxErrors" and "stopOnError"
+     * @param progress if not null this is called with the result so far after each batch of rows
+     * @return the number of rows imported, created and updated and any errors
+     */
+    public ImportResult importFile(String path, Map<?, ?> options, Consumer<ImportResult> progress) throws IOException {
+        return ModelImporter.importFile(getEObject(), path, options, progress);
+    }
+    
+    /**
+     * Compare this model with another version of it. Objects are matched by id.
+     * @return the changes from this model to the other model
+     */
+    public List<ModelChange> diff(ArchimateModelProxy other) {
+        if(other == null) {
+            throw new ArchiScriptException("diff - Model is null"); //$NON-NLS-1$
+        }
+        
+        return new ModelDiff(new ModelDiff.Index(getEObject()), new ModelDiff.Index(other.getEObject())).getChanges();
+    }
+    
+    public MergeResult merge(ArchimateModelProxy base, ArchimateModelProxy other) {
+        return merge(base, other, null);
+    }
+    
+    /**
+     * Three-way merge of the changes made in another version of this model since a base version that both came from.
+     * The changes are applied to this model as one command. Changes that conflict with changes made in this model are not applied.
+     * @param base The version both models came from
+     * @param other The other version
+     * @param options "prefer" "ours" (default) to leave conflicts as they are in this model, or "theirs" to apply the other model's changes
+     * @return the changes that were applied and the conflicts
+     */
+    public MergeResult merge(ArchimateModelProxy base, ArchimateModelProxy other, Map<?, ?> options) {
+        if(base == null || other == null) {
+            throw new ArchiScriptException("merge - Model is null"); //$NON-NLS-1$
+        }
+        
+        if(base.getEObject() == getEObject() || other.getEObject() == getEObject()) {
+            throw new ArchiScriptException("merge - Can't merge a model into itself"); //$NON-NLS-1$
+        }
+        
+        return new ModelMerger(getEObject(), base.getEObject(), other.getEObject(), options).merge();
+    }
+    
+    public RenderResult renderViews(String folder) throws IOException {
+        return renderViews(folder, null, null);
+    }
+    
+    public RenderResult renderViews(String folder, Map<?, ?> options) throws IOException {
+        return renderViews(folder, options, null);
+    }
+    
+    /**
+     * Render all Views in this model to image files in a folder
+     * @param folder the folder. It is created if it doesn't exist.
+     * @param options "format" ("PNG", "BMP", "GIF", "JPG", or "SVG" with "headless", default "PNG"), "scale", "margin", "quality", "fileName" ("id" or "name", default "id"),
+     * "threads", "maxPending", "incremental" and "headless" (paint an approximate preview of each View in parallel with Java2D, without the Display and Archi's figures)
+     * @param progress if not null this is called with the result so far after each View
+     * @return the number of Views rendered and any errors
+     */
+    public RenderResult renderViews(String folder, Map<?, ?> options, Consumer<RenderResult> progress) throws IOException {
+        return new BatchRenderer(folder, options, progress).render(getEObject().getDiagramModels());
+    }
+    
+    /**
+     * @return a reachability index over all relationships in the model
+     */
+    public ReachabilityIndex createReachabilityIndex() {
+        return createReachabilityIndex(null);
+    }
+    
+    /**
+     * @param options "relations" (a selector or array of selectors of the relationships to index) and "cacheSize"
+     * @return a reachability index over the relationships in the model that is kept up to date as the script changes the model
+     */
+    public ReachabilityIndex createReachabilityIndex(Map<?, ?> options) {
+        return new ReachabilityIndex(getEObject(), options);
+    }
+    
     // Expose find methods as public
     
     @Override
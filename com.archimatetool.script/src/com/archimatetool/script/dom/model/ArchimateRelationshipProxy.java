@@ -25,7 +25,6 @@ import com.archimatetool.model.IFeature;
 import com.archimatetool.model.IFolder;
 import com.archimatetool.model.IInfluenceRelationship;
 import com.archimatetool.model.IProperty;
-import com.archimatetool.model.util.ArchimateModelUtils;
 import com.archimatetool.script.ArchiScriptException;
 import com.archimatetool.script.commands.CommandHandler;
 import com.archimatetool.script.commands.DisconnectRelationshipCommand;
@@ -66,7 +65,7 @@ public class ArchimateRelationshipProxy extends ArchimateConceptProxy implements
         // Ensure all components share the same model
         ModelUtil.checkComponentsInSameModel(getEObject(), source.getEObject());
         
-        if(!ArchimateModelUtils.isValidRelationship(source.getEObject(), getEObject().getTarget(), getEObject().eClass())) {
+        if(!RelationshipRules.isValidRelationship(source.getEObject(), getEObject().getTarget(), getEObject().eClass())) {
             throw new ArchiScriptException(NLS.bind(Messages.ArchimateRelationshipProxy_0,
                     new Object[] { getEObject().eClass().getName(), source, getTarget() }));
         }
@@ -128,7 +127,7 @@ public class ArchimateRelationshipProxy extends ArchimateConceptProxy implements
         // Ensure all components share the same model
         ModelUtil.checkComponentsInSameModel(getEObject(), target.getEObject());
         
-        if(!ArchimateModelUtils.isValidRelationship(getEObject().getSource(), target.getEObject(), getEObject().eClass())) {
+        if(!RelationshipRules.isValidRelationship(getEObject().getSource(), target.getEObject(), getEObject().eClass())) {
             throw new ArchiScriptException(NLS.bind(Messages.ArchimateRelationshipProxy_1,
                     new Object[] { getEObject().eClass().getName(), getSource(), target }));
         }
@@ -0,0 +1,328 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.eclipse.swt.graphics.ImageData;
+
+import com.archimatetool.editor.utils.StringUtils;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.script.ArchiScriptException;
+import com.archimatetool.script.RefreshUIHandler;
+
+/**
+ * Batch Renderer
+ *
+ * Renders many Views to image files in a directory. The calling (Display) thread only paints each View,
+ * and the images are encoded and written on background threads so that painting the next View overlaps
+ * with encoding and writing the previous ones. The number of painted images waiting to be written is limited
+ * so that memory use stays bounded.
+ *
+ * Progress is reported on the calling thread after each View is written, and a View that fails is recorded
+ * in the RenderResult and the rest are still rendered.
+ *
+ * If the View is painted headless (the "headless" option, which SVG needs) the whole render of each View is done
+ * on the background threads, so Views are painted in parallel.
+ *
+ * If the "incremental" option is set a RenderManifest in the folder records the fingerprint of each View rendered,
+ * and Views whose fingerprint and render options are unchanged since the last time are skipped.
+ *
+ * @author agent
+ */
+class BatchRenderer {
+    
+    static final String THREADS = "threads"; //$NON-NLS-1$
+    static final String MAX_PENDING = "maxPending"; //$NON-NLS-1$
+    static final String FILE_NAME = "fileName"; //$NON-NLS-1$
+    static final String FILE_NAME_ID = "id"; //$NON-NLS-1$
+    static final String FILE_NAME_NAME = "name"; //$NON-NLS-1$
+    static final String INCREMENTAL = "incremental"; //$NON-NLS-1$
+    
+    private static final long WAIT_MILLIS = 50;
+    
+    /**
+     * A View that has been written or has failed
+     */
+    private static class Done {
+        IDiagramModel dm;
+        String fingerprint;
+        String fileName;
+        Throwable error;
+        
+        Done(IDiagramModel dm, String fingerprint, String fileName, Throwable error) {
+            this.dm = dm;
+            this.fingerprint = fingerprint;
+            this.fileName = fileName;
+            this.error = error;
+        }
+    }
+    
+    private ViewRenderer renderer;
+    private Path folder;
+    private String format;
+    private String extension;
+    private boolean useNames;
+    private boolean incremental;
+    private boolean headless;
+    private int threads;
+    private Semaphore pending;
+    
+    private RenderResult result;
+    private Consumer<RenderResult> progress;
+    private Queue<Done> done = new ConcurrentLinkedQueue<>();
+    private Set<String> fileNames = new HashSet<>();
+    private RenderManifest manifest;
+    
+    /**
+     * @param options "format" (default "PNG"), "scale", "margin", "quality", "fileName" ("id" or "name", default "id"),
+     * "headless" (paint an approximate preview with Java2D on the background threads, needed for SVG), "threads" (number of background threads), "maxPending" (the number of painted images that can wait to be written)
+     * and "incremental" (skip Views that are unchanged since the last export to the folder)
+     * @param progress if not null called with the result so far after each View
+     */
+    BatchRenderer(String folder, Map<?, ?> options, Consumer<RenderResult> progress) {
+        this.folder = Paths.get(folder);
+        this.progress = progress;
+        
+        renderer = new ViewRenderer(options);
+        format = ModelUtil.getStringValueFromMap(options, ViewRenderer.FORMAT, ViewRenderer.PNG);
+        renderer.checkFormat(format);
+        extension = ViewRenderer.getExtension(format);
+        
+        String fileName = ModelUtil.getStringValueFromMap(options, FILE_NAME, FILE_NAME_ID);
+        if(!FILE_NAME_ID.equals(fileName) && !FILE_NAME_NAME.equals(fileName)) {
+            throw new ArchiScriptException("fileName must be \"id\" or \"name\""); //$NON-NLS-1$
+        }
+        useNames = FILE_NAME_NAME.equals(fileName);
+        incremental = Boolean.TRUE.equals(options != null ? options.get(INCREMENTAL) : null);
+        
+        // When painting headless the calling thread is mostly waiting, so all processors can be used
+        headless = renderer.isHeadless();
+        int processors = Runtime.getRuntime().availableProcessors();
+        threads = Math.max(1, ModelUtil.getIntValueFromMap(options, THREADS, headless ? processors : Math.max(1, processors - 1)));
+        pending = new Semaphore(Math.max(1, ModelUtil.getIntValueFromMap(options, MAX_PENDING, threads * 2)));
+    }
+    
+    /**
+     * Render the Views. This has to be called on the Display thread.
+     */
+    RenderResult render(List<IDiagramModel> views) throws IOException {
+        Files.createDirectories(folder);
+        
+        result = new RenderResult(views.size());
+        
+        if(incremental) {
+            manifest = new RenderManifest(folder, format.toUpperCase() + "," + renderer.getOptionsKey() + "," + useNames); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "jArchi Render"); //$NON-NLS-1$
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        Map<IDiagramModel, String> fingerprints = new HashMap<>();
+        Set<IDiagramModel> unchanged = new HashSet<>();
+        
+        if(manifest != null) {
+            Map<String, String> manifestFileNames = manifest.getFileNames();
+            
+            for(IDiagramModel dm : views) {
+                String fingerprint = DiagramFingerprint.getFingerprint(dm);
+                fingerprints.put(dm, fingerprint);
+                
+                if(manifest.isUnchanged(dm.getId(), fingerprint)) {
+                    unchanged.add(dm);
+                }
+                else {
+                    manifestFileNames.remove(dm.getId());
+                }
+            }
+            
+            // Keep the file names of the Views that won't be rendered again before any View takes a name,
+            // so that a changed View with the same name doesn't overwrite one of them
+            for(String fileName : manifestFileNames.values()) {
+                fileNames.add(fileName.toLowerCase());
+            }
+        }
+        
+        try {
+            for(IDiagramModel dm : views) {
+                String fingerprint = fingerprints.get(dm);
+                
+                if(unchanged.contains(dm)) {
+                    skip();
+                    continue;
+                }
+                
+                // Wait for a free slot so that only so many images are held in memory
+                acquire();
+                
+                String fileName = getFileName(dm);
+                String fp = fingerprint;
+                
+                if(headless) {
+                    executor.execute(() -> {
+                        try {
+                            renderer.render(dm, format, folder.resolve(fileName));
+                            done.add(new Done(dm, fp, fileName, null));
+                        }
+                        catch(Throwable ex) {
+                            done.add(new Done(dm, fp, fileName, ex));
+                        }
+                        finally {
+                            pending.release();
+                        }
+                    });
+                    
+                    reportDone();
+                    continue;
+                }
+                
+                ImageData imageData;
+                
+                try {
+                    imageData = renderer.createImageData(dm);
+                }
+                catch(Throwable ex) { // SWTError if the image is too large
+                    pending.release();
+                    done.add(new Done(dm, fp, fileName, ex));
+                    continue;
+                }
+                
+                executor.execute(() -> {
+                    try {
+                        renderer.write(imageData, format, folder.resolve(fileName));
+                        done.add(new Done(dm, fp, fileName, null));
+                    }
+                    catch(Throwable ex) {
+                        done.add(new Done(dm, fp, fileName, ex));
+                    }
+                    finally {
+                        pending.release();
+                    }
+                });
+                
+                reportDone();
+            }
+            
+            executor.shutdown();
+            
+            while(!executor.awaitTermination(WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                reportDone();
+            }
+        }
+        catch(InterruptedException ex) {
+            throw new InterruptedIOException();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        
+        reportDone();
+        
+        if(manifest != null) {
+            manifest.save();
+        }
+        
+        return result;
+    }
+    
+    private void acquire() throws InterruptedException {
+        while(!pending.tryAcquire(WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+            reportDone();
+        }
+    }
+    
+    /**
+     * Update the result and report progress on this thread for the Views done since the last call
+     */
+    private void reportDone() {
+        Done d;
+        boolean changed = false;
+        
+        while((d = done.poll()) != null) {
+            if(d.error == null) {
+                result.addRendered();
+                if(manifest != null) {
+                    manifest.put(d.dm.getId(), d.fingerprint, d.fileName);
+                }
+            }
+            else {
+                result.addFailed(d.dm.getName(), d.error);
+                if(manifest != null) {
+                    manifest.remove(d.dm.getId());
+                }
+            }
+            
+            if(progress != null) {
+                progress.accept(result);
+            }
+            
+            changed = true;
+        }
+        
+        if(changed) {
+            RefreshUIHandler.refresh();
+        }
+    }
+    
+    private void skip() {
+        result.addSkipped();
+        if(progress != null) {
+            progress.accept(result);
+        }
+    }
+    
+    /**
+     * @return the file name for a View, either its id or its name made safe for a file name.
+     * If two Views have the same name the id is appended.
+     */
+    String getFileName(IDiagramModel dm) {
+        String name = dm.getId();
+        
+        if(useNames && StringUtils.isSet(dm.getName()) && !dm.getName().trim().isEmpty()) {
+            name = dm.getName().trim().replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_"); //$NON-NLS-1$ //$NON-NLS-2$
+            if(!fileNames.add((name + "." + extension).toLowerCase())) { //$NON-NLS-1$
+                name += "_" + dm.getId(); //$NON-NLS-1$
+            }
+        }
+        
+        return name + "." + extension; //$NON-NLS-1$
+    }
+    
+    /**
+     * @return the Views among objects, ignoring anything else
+     */
+    static List<IDiagramModel> getViews(List<EObjectProxy> objects) {
+        List<IDiagramModel> views = new ArrayList<>();
+        
+        for(EObjectProxy object : objects) {
+            if(object.getEObject() instanceof IDiagramModel) {
+                views.add((IDiagramModel)object.getEObject());
+            }
+        }
+        
+        return views;
+    }
+}
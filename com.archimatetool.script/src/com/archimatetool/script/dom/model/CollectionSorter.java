@@ -0,0 +1,175 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.archimatetool.script.ArchiScriptException;
+import com.archimatetool.script.dom.model.GroupKeyFactory.IGroupKey;
+
+/**
+ * Sorts a list of EObjectProxy objects on a key
+ *
+ * The sort keys are the same as the keys used by GroupKeyFactory ("type", "name", "folder", "layer", "view", "prop:<key>").
+ * Values that are numbers are compared as numbers, other values are compared using the Collator of the default Locale.
+ * Objects without a value are always sorted last.
+ *
+ * @author agent
+ */
+class CollectionSorter {
+    
+    /**
+     * An object and its pre-computed sort value, so that the key is only read once per object
+     */
+    private static class Entry {
+        EObjectProxy object;
+        int index;
+        boolean isEmpty;
+        Double number;
+        CollationKey collationKey;
+    }
+    
+    private CollectionSorter() {
+    }
+    
+    /**
+     * @return a new sorted list of objects
+     */
+    static List<EObjectProxy> sort(List<EObjectProxy> objects, String key, boolean descending) {
+        List<Entry> entries = createEntries(objects, key);
+        entries.sort(getComparator(descending));
+        
+        List<EObjectProxy> list = new ArrayList<>(entries.size());
+        for(Entry entry : entries) {
+            list.add(entry.object);
+        }
+        
+        return list;
+    }
+    
+    /**
+     * @return the first k objects in sorted order, using a heap of size k
+     */
+    static List<EObjectProxy> top(List<EObjectProxy> objects, int k, String key, boolean descending) {
+        List<Entry> entries = createEntries(objects, key);
+        
+        List<Entry> top = top(entries, k, getComparator(descending));
+        
+        List<EObjectProxy> list = new ArrayList<>(top.size());
+        for(Entry entry : top) {
+            list.add(entry.object);
+        }
+        
+        return list;
+    }
+    
+    /**
+     * @return the first k objects in sorted order, using a heap of size k
+     */
+    static <T> List<T> top(List<T> objects, int k, Comparator<? super T> comparator) {
+        if(k <= 0 || objects.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        // Max heap on the comparator so that the head is the "worst" of the current top k
+        PriorityQueue<T> heap = new PriorityQueue<>(Math.min(k, objects.size()), Collections.reverseOrder(comparator));
+        
+        for(T object : objects) {
+            if(heap.size() < k) {
+                heap.add(object);
+            }
+            else if(comparator.compare(object, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(object);
+            }
+        }
+        
+        List<T> list = new ArrayList<>(heap);
+        list.sort(comparator);
+        return list;
+    }
+    
+    private static List<Entry> createEntries(List<EObjectProxy> objects, String key) {
+        IGroupKey groupKey = GroupKeyFactory.INSTANCE.getGroupKey(key);
+        if(groupKey == null) {
+            throw new ArchiScriptException("Invalid sort key: " + key); //$NON-NLS-1$
+        }
+        
+        // Collator is not thread safe so use a new one
+        Collator collator = Collator.getInstance();
+        
+        List<Entry> entries = new ArrayList<>(objects.size());
+        
+        for(int i = 0; i < objects.size(); i++) {
+            Entry entry = new Entry();
+            entry.object = objects.get(i);
+            entry.index = i;
+            
+            // First value only
+            String value = groupKey.getKeys(entry.object.getEObject()).get(0);
+            entry.isEmpty = value.isEmpty();
+            
+            if(!entry.isEmpty) {
+                entry.number = getNumber(value);
+                if(entry.number == null) {
+                    entry.collationKey = collator.getCollationKey(value);
+                }
+            }
+            
+            entries.add(entry);
+        }
+        
+        return entries;
+    }
+    
+    private static Comparator<Entry> getComparator(boolean descending) {
+        return (e1, e2) -> {
+            // Empty values always last
+            if(e1.isEmpty || e2.isEmpty) {
+                int result = Boolean.compare(e1.isEmpty, e2.isEmpty);
+                return result != 0 ? result : Integer.compare(e1.index, e2.index);
+            }
+            
+            int result;
+            
+            // Numbers before strings
+            if(e1.number != null && e2.number != null) {
+                result = e1.number.compareTo(e2.number);
+            }
+            else if(e1.number != null) {
+                result = -1;
+            }
+            else if(e2.number != null) {
+                result = 1;
+            }
+            else {
+                result = e1.collationKey.compareTo(e2.collationKey);
+            }
+            
+            if(descending) {
+                result = -result;
+            }
+            
+            // Keep the original order for equal values
+            return result != 0 ? result : Integer.compare(e1.index, e2.index);
+        };
+    }
+    
+    private static Double getNumber(String value) {
+        try {
+            return Double.valueOf(value.trim());
+        }
+        catch(NumberFormatException ex) {
+            return null;
+        }
+    }
+}
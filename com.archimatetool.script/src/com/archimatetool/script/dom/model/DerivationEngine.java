@@ -0,0 +1,321 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EClass;
+
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimatePackage;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.script.commands.CommandHandler;
+import com.archimatetool.script.commands.ICommandListener;
+import com.archimatetool.script.commands.ScriptCommand;
+
+/**
+ * Derivation Engine
+ *
+ * Computes the relationships that can be derived from chains of relationships in a model:
+ *
+ * - A chain of structural relationships derives the weakest structural relationship in the chain
+ *   (realization is the weakest, then assignment, aggregation and composition).
+ * - A chain of structural relationships followed by one dependency relationship (serving, access or influence)
+ *   derives that dependency relationship (a structural relationship p(a, b) and a dependency q(b, c) derive q(a, c)).
+ * - A dependency relationship to a concept also derives that dependency to the concepts that have a structural relationship
+ *   to it, so after the dependency structural relationships are followed in reverse
+ *   (a dependency p(a, b) and a structural relationship q(c, b) derive p(a, c)).
+ *   Structural relationships are not followed forwards after a dependency, so "a serves b" and "b is composed of c"
+ *   do not derive "a serves c".
+ *
+ * Only derived relationships that are valid between the source and target, and that don't already exist
+ * as a relationship in the model, are returned.
+ *
+ * For each source the strongest derivation to every target is found in one pass over the states
+ * (concept, dependency type), relaxing the strength of each state in order from strongest to weakest.
+ * Each state is settled once, so cycles and the number of possible chains don't matter.
+ * The results for each source are memoised until a command that might change relationships is performed.
+ *
+ * @author agent
+ */
+class DerivationEngine {
+    
+    private static final IArchimatePackage PACKAGE = IArchimatePackage.eINSTANCE;
+    
+    // Weakest first so the index is the strength
+    private static final EClass[] STRUCTURAL = {
+            PACKAGE.getRealizationRelationship(),
+            PACKAGE.getAssignmentRelationship(),
+            PACKAGE.getAggregationRelationship(),
+            PACKAGE.getCompositionRelationship()
+    };
+    
+    private static final EClass[] DEPENDENCY = {
+            PACKAGE.getServingRelationship(),
+            PACKAGE.getAccessRelationship(),
+            PACKAGE.getInfluenceRelationship()
+    };
+    
+    private static final int STRONGEST = STRUCTURAL.length - 1;
+    
+    // The number of states per concept. State 0 is structural only, state i is dependency DEPENDENCY[i - 1]
+    private static final int STATES = DEPENDENCY.length + 1;
+    
+    /**
+     * @return the engine for the model, creating it if needed.
+     * The engine is kept as an adapter on the model so that it goes when the model goes.
+     */
+    static synchronized DerivationEngine getEngine(IArchimateModel model) {
+        DerivationEngine engine = (DerivationEngine)model.getAdapter(DerivationEngine.class);
+        
+        if(engine == null) {
+            engine = new DerivationEngine(model);
+            model.setAdapter(DerivationEngine.class, engine);
+        }
+        
+        // If a script has started since the engine was used the model might have changed
+        if(!CommandHandler.hasCommandListener(engine.listener)) {
+            engine.clear();
+            CommandHandler.addCommandListener(engine.listener);
+        }
+        
+        return engine;
+    }
+    
+    /**
+     * Command listener that only holds the engine weakly so that the listeners don't keep the engine and its model
+     */
+    private static class EngineListener implements ICommandListener {
+        private WeakReference<DerivationEngine> engineRef;
+        
+        EngineListener(DerivationEngine engine) {
+            engineRef = new WeakReference<>(engine);
+        }
+        
+        @Override
+        public void commandPerformed(ScriptCommand cmd) {
+            DerivationEngine engine = engineRef.get();
+            if(engine != null) {
+                engine.commandPerformed(cmd);
+            }
+            else {
+                CommandHandler.removeCommandListener(this);
+            }
+        }
+    }
+    
+    private static class State {
+        IArchimateConcept concept;
+        int dependency;
+        
+        State(IArchimateConcept concept, int dependency) {
+            this.concept = concept;
+            this.dependency = dependency;
+        }
+    }
+    
+    private IArchimateModel model;
+    private Map<IArchimateConcept, List<DerivedRelationship>> memo = new HashMap<>();
+    private ICommandListener listener = new EngineListener(this);
+    
+    private DerivationEngine(IArchimateModel model) {
+        this.model = model;
+    }
+    
+    /**
+     * @return the relationships that can be derived from source
+     */
+    synchronized List<DerivedRelationship> getDerivedRelationships(IArchimateConcept source) {
+        List<DerivedRelationship> list = memo.get(source);
+        
+        if(list == null) {
+            list = derive(source);
+            memo.put(source, list);
+        }
+        
+        return list;
+    }
+    
+    /**
+     * @return the relationships that can be derived from source to target
+     */
+    static List<DerivedRelationship> getDerivedRelationships(IArchimateConcept source, IArchimateConcept target) {
+        List<DerivedRelationship> list = new ArrayList<>();
+        
+        for(DerivedRelationship derived : getDerivedRelationshipsFrom(source)) {
+            if(derived.getTargetConcept() == target) {
+                list.add(derived);
+            }
+        }
+        
+        return list;
+    }
+    
+    /**
+     * @return the relationships that can be derived between all pairs of concepts
+     */
+    static List<DerivedRelationship> getDerivedRelationships(Collection<? extends IArchimateConcept> concepts) {
+        Set<IArchimateConcept> targets = new HashSet<>(concepts);
+        List<DerivedRelationship> list = new ArrayList<>();
+        
+        for(IArchimateConcept source : new LinkedHashSet<>(concepts)) {
+            for(DerivedRelationship derived : getDerivedRelationshipsFrom(source)) {
+                if(targets.contains(derived.getTargetConcept())) {
+                    list.add(derived);
+                }
+            }
+        }
+        
+        return list;
+    }
+    
+    /**
+     * @return a copy of the relationships that can be derived from source using the engine for its model
+     */
+    static List<DerivedRelationship> getDerivedRelationshipsFrom(IArchimateConcept source) {
+        IArchimateModel model = source.getArchimateModel();
+        return model == null ? new ArrayList<>() : new ArrayList<>(getEngine(model).getDerivedRelationships(source));
+    }
+    
+    private List<DerivedRelationship> derive(IArchimateConcept source) {
+        // Best strength reached for each state of each concept, -1 if not reached
+        Map<IArchimateConcept, int[]> best = new LinkedHashMap<>();
+        Map<IArchimateConcept, boolean[]> settled = new HashMap<>();
+        
+        // One queue per strength
+        List<ArrayDeque<State>> queues = new ArrayList<>();
+        for(int i = 0; i <= STRONGEST; i++) {
+            queues.add(new ArrayDeque<>());
+        }
+        
+        relax(best, queues, source, 0, STRONGEST);
+        
+        for(int strength = STRONGEST; strength >= 0; strength--) {
+            ArrayDeque<State> queue = queues.get(strength);
+            
+            while(!queue.isEmpty()) {
+                State state = queue.poll();
+                
+                // Already settled at a higher strength
+                boolean[] done = settled.computeIfAbsent(state.concept, c -> new boolean[STATES]);
+                if(done[state.dependency] || best.get(state.concept)[state.dependency] != strength) {
+                    continue;
+                }
+                done[state.dependency] = true;
+                
+                // Structural relationships and then one dependency are followed forwards
+                if(state.dependency == 0) {
+                    for(IArchimateRelationship relationship : state.concept.getSourceRelationships()) {
+                        int structural = indexOf(STRUCTURAL, relationship.eClass());
+                        if(structural != -1) {
+                            relax(best, queues, relationship.getTarget(), 0, Math.min(strength, structural));
+                            continue;
+                        }
+                        
+                        // The strength only matters until there is a dependency, after that it's kept at the current
+                        // strength so that a state is never queued at a strength that has already been processed
+                        int dependency = indexOf(DEPENDENCY, relationship.eClass());
+                        if(dependency != -1) {
+                            relax(best, queues, relationship.getTarget(), dependency + 1, strength);
+                        }
+                    }
+                }
+                // After the dependency only structural relationships to this concept are followed, in reverse
+                else {
+                    for(IArchimateRelationship relationship : state.concept.getTargetRelationships()) {
+                        if(indexOf(STRUCTURAL, relationship.eClass()) != -1) {
+                            relax(best, queues, relationship.getSource(), state.dependency, strength);
+                        }
+                    }
+                }
+            }
+        }
+        
+        return createDerivedRelationships(source, best);
+    }
+    
+    private void relax(Map<IArchimateConcept, int[]> best, List<ArrayDeque<State>> queues, IArchimateConcept concept, int dependency, int strength) {
+        int[] strengths = best.computeIfAbsent(concept, c -> {
+            int[] a = new int[STATES];
+            Arrays.fill(a, -1);
+            return a;
+        });
+        
+        if(strength > strengths[dependency]) {
+            strengths[dependency] = strength;
+            queues.get(strength).add(new State(concept, dependency));
+        }
+    }
+    
+    private List<DerivedRelationship> createDerivedRelationships(IArchimateConcept source, Map<IArchimateConcept, int[]> best) {
+        List<DerivedRelationship> list = new ArrayList<>();
+        
+        for(Map.Entry<IArchimateConcept, int[]> entry : best.entrySet()) {
+            IArchimateConcept target = entry.getKey();
+            if(target == source) {
+                continue;
+            }
+            
+            int[] strengths = entry.getValue();
+            
+            for(int state = 0; state < STATES; state++) {
+                if(strengths[state] == -1) {
+                    continue;
+                }
+                
+                EClass eClass = state == 0 ? STRUCTURAL[strengths[state]] : DEPENDENCY[state - 1];
+                
+                if(RelationshipRules.isValidRelationship(source, target, eClass) && !hasRelationship(source, target, eClass)) {
+                    list.add(new DerivedRelationship(source, target, eClass));
+                }
+            }
+        }
+        
+        return list;
+    }
+    
+    private boolean hasRelationship(IArchimateConcept source, IArchimateConcept target, EClass eClass) {
+        for(IArchimateRelationship relationship : source.getSourceRelationships()) {
+            if(relationship.getTarget() == target && relationship.eClass() == eClass) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    private int indexOf(EClass[] eClasses, EClass eClass) {
+        for(int i = 0; i < eClasses.length; i++) {
+            if(eClasses[i] == eClass) {
+                return i;
+            }
+        }
+        
+        return -1;
+    }
+    
+    private synchronized void clear() {
+        memo.clear();
+    }
+    
+    private void commandPerformed(ScriptCommand cmd) {
+        if(cmd.getModel() == model && ModelUtil.canChangeRelationships(cmd)) {
+            clear();
+        }
+    }
+}
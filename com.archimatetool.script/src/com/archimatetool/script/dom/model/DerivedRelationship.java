@@ -0,0 +1,59 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import org.eclipse.emf.ecore.EClass;
+
+import com.archimatetool.model.IArchimateConcept;
+
+/**
+ * A relationship that can be derived from a chain of relationships in the model
+ *
+ * @author agent
+ */
+public class DerivedRelationship {
+    
+    private IArchimateConcept source, target;
+    private EClass eClass;
+    
+    DerivedRelationship(IArchimateConcept source, IArchimateConcept target, EClass eClass) {
+        this.source = source;
+        this.target = target;
+        this.eClass = eClass;
+    }
+    
+    public EObjectProxy getSource() {
+        return EObjectProxy.get(source);
+    }
+    
+    public EObjectProxy getTarget() {
+        return EObjectProxy.get(target);
+    }
+    
+    /**
+     * @return the type of relationship, for example "serving-relationship"
+     */
+    public String getType() {
+        return ModelUtil.getKebabCase(eClass.getName());
+    }
+    
+    IArchimateConcept getSourceConcept() {
+        return source;
+    }
+    
+    IArchimateConcept getTargetConcept() {
+        return target;
+    }
+    
+    EClass getEClass() {
+        return eClass;
+    }
+    
+    @Override
+    public String toString() {
+        return getType() + ": " + getSource() + " -> " + getTarget(); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
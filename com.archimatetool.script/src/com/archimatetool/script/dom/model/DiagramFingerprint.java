@@ -0,0 +1,131 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.model.INameable;
+
+/**
+ * Diagram Fingerprint
+ *
+ * A content hash of a diagram model that changes when anything that affects how it renders changes:
+ * the attributes of the diagram model and all of its contents (bounds, bendpoints, styles, text, properties and features),
+ * the attributes and properties of the concepts that diagram objects and connections reference
+ * (such as an access relationship's access type or a property shown by a label expression),
+ * and the type and name of other objects that they reference.
+ *
+ * @author agent
+ */
+class DiagramFingerprint {
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+    
+    private MessageDigest digest;
+    
+    private DiagramFingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+        }
+        catch(NoSuchAlgorithmException ex) {
+            // Every Java platform has SHA-1
+            throw new RuntimeException(ex);
+        }
+    }
+    
+    /**
+     * @return the fingerprint of dm as a hex string
+     */
+    static String getFingerprint(IDiagramModel dm) {
+        DiagramFingerprint fingerprint = new DiagramFingerprint();
+        
+        fingerprint.add(dm);
+        for(Iterator<EObject> iter = dm.eAllContents(); iter.hasNext();) {
+            fingerprint.add(iter.next());
+        }
+        
+        return fingerprint.toHex();
+    }
+    
+    private void add(EObject eObject) {
+        EClass eClass = eObject.eClass();
+        add(eClass.getName());
+        addAttributes(eObject);
+        
+        // Referenced objects (such as concepts, relationships, connection ends and referenced views)
+        for(EReference reference : eClass.getEAllReferences()) {
+            if(reference.isContainment() || reference.isContainer() || reference.isTransient() || reference.isMany()) {
+                continue;
+            }
+            
+            Object value = eObject.eGet(reference, false);
+            if(value instanceof EObject) {
+                addReferenced((EObject)value);
+            }
+        }
+    }
+    
+    private void addAttributes(EObject eObject) {
+        for(EAttribute attribute : eObject.eClass().getEAllAttributes()) {
+            if(!attribute.isTransient() && !attribute.isDerived()) {
+                add(String.valueOf(eObject.eGet(attribute)));
+            }
+        }
+    }
+    
+    /**
+     * A concept is added with its attributes and its properties and features, as these can change how it is drawn.
+     * Anything else is added by id, type and name.
+     */
+    private void addReferenced(EObject ref) {
+        add(ref instanceof IIdentifier ? ((IIdentifier)ref).getId() : null);
+        add(ref.eClass().getName());
+        
+        if(ref instanceof IArchimateConcept) {
+            addAttributes(ref);
+            
+            for(Iterator<EObject> iter = ref.eAllContents(); iter.hasNext();) {
+                EObject child = iter.next();
+                add(child.eClass().getName());
+                addAttributes(child);
+            }
+        }
+        else {
+            add(ref instanceof INameable ? ((INameable)ref).getName() : null);
+        }
+    }
+    
+    private void add(String s) {
+        if(s != null) {
+            digest.update(s.getBytes(StandardCharsets.UTF_8));
+        }
+        // Separator so that adjacent values can't run together
+        digest.update((byte)0);
+    }
+    
+    private String toHex() {
+        byte[] bytes = digest.digest();
+        char[] chars = new char[bytes.length * 2];
+        
+        for(int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        
+        return new String(chars);
+    }
+}
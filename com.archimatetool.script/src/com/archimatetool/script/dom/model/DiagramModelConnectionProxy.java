@@ -22,6 +22,7 @@ import com.archimatetool.script.commands.DisconnectConnectionCommand;
 import com.archimatetool.script.commands.ScriptCommand;
 import com.archimatetool.script.commands.ScriptCommandWrapper;
 import com.archimatetool.script.commands.SetCommand;
+import com.archimatetool.script.dom.model.SelectorFilterFactory.ISelectorFilter;
 
 /**
  * Diagram Model Connection wrapper proxy
@@ -175,6 +176,12 @@ public class DiagramModelConnectionProxy extends DiagramModelComponentProxy impl
         return new EObjectProxyCollection();
     }
     
+    @Override
+    protected boolean hasDescendant(ISelectorFilter filter) {
+        // We don't include connected relationships
+        return false;
+    }
+    
     @Override
     protected Object attr(String attribute) {
         switch(attribute) {
@@ -27,6 +27,7 @@ import com.archimatetool.script.commands.CommandHandler;
 import com.archimatetool.script.commands.DeleteDiagramModelObjectCommand;
 import com.archimatetool.script.commands.ScriptCommandWrapper;
 import com.archimatetool.script.commands.SetCommand;
+import com.archimatetool.script.dom.model.SelectorFilterFactory.ISelectorFilter;
 
 /**
  * Diagram Model Object wrapper proxy
@@ -137,6 +138,13 @@ public class DiagramModelObjectProxy extends DiagramModelComponentProxy {
         return all.filter(IModelConstants.ELEMENT);
     }
     
+    @Override
+    protected boolean hasDescendant(ISelectorFilter filter) {
+        // We don't include relationships
+        ISelectorFilter elementFilter = SelectorFilterFactory.INSTANCE.getFilter(IModelConstants.ELEMENT);
+        return super.hasDescendant(eObject -> elementFilter.accept(eObject) && filter.accept(eObject));
+    }
+    
     public String getFillColor() {
         return getEObject().getFillColor();
     }
@@ -58,6 +58,13 @@ public abstract class DiagramModelProxy extends EObjectProxy {
         return ModelFactory.createViewReference(getEObject(), dmRef.getEObject(), x, y, width, height, autoNest);
     }
     
+    /**
+     * @return a hash of the content of this View that changes when anything that affects how it is rendered changes
+     */
+    public String getFingerprint() {
+        return DiagramFingerprint.getFingerprint(getEObject());
+    }
+    
     @Override
     protected IDiagramModel getEObject() {
         return (IDiagramModel)super.getEObject();
@@ -36,6 +36,7 @@ import com.archimatetool.script.commands.AddPropertyCommand;
 import com.archimatetool.script.commands.CommandHandler;
 import com.archimatetool.script.commands.RemovePropertiesCommand;
 import com.archimatetool.script.commands.SetCommand;
+import com.archimatetool.script.dom.model.SelectorFilterFactory.ISelectorFilter;
 
 /**
  * Abstract EObject wrapper proxy
@@ -203,6 +204,24 @@ public abstract class EObjectProxy implements IModelConstants, Comparable<EObjec
         return list;
     }
     
+    /**
+     * @param filter
+     * @return true if a descendant of this object, as returned by find(), is accepted by the filter.
+     * This stops at the first match and does not create a proxy for each descendant.
+     */
+    protected boolean hasDescendant(ISelectorFilter filter) {
+        if(getEObject() != null) {
+            for(Iterator<EObject> iter = getEObject().eAllContents(); iter.hasNext();) {
+                EObject eObject = iter.next();
+                if(filter.accept(eObject) && EObjectProxy.get(eObject) != null) {
+                    return true;
+                }
+            }
+        }
+        
+        return false;
+    }
+    
     /**
      * @param selector
      * @return the set of matched objects
@@ -254,17 +273,30 @@ public abstract class EObjectProxy implements IModelConstants, Comparable<EObjec
         return getEObject() == null ? null : EObjectProxy.get(getEObject().eContainer());
 	}
     
+    /**
+     * @return the ancestors of this object, nearest first and not including the model, or null if there are none
+     */
     protected EObjectProxyCollection parents() {
-        EObjectProxy parent = parent();
-        
-        if(parent == null || parent.getEObject() instanceof IArchimateModel) {
+        if(getEObject() == null) {
             return null;
         }
-        else {
-            EObjectProxyCollection list = new EObjectProxyCollection();
-            list.add(parent);
-            return list.add(list.parents());
+        
+        List<EObjectProxy> ancestors = new AncestorCache().getAncestors(getEObject());
+        if(ancestors.isEmpty()) {
+            return null;
         }
+        
+        EObjectProxyCollection list = new EObjectProxyCollection();
+        list.addAll(ancestors);
+        return list;
+    }
+    
+    /**
+     * @return the path of the folders that contain this object, for example "Business/Actors".
+     *         For a diagram component this is the folder path of its view.
+     */
+    public String getFolderPath() {
+        return new AncestorCache().getFolderPath(getEObject());
     }
 
 	/**
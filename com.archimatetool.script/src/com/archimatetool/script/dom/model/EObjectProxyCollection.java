@@ -5,13 +5,22 @@
  */
 package com.archimatetool.script.dom.model;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
+import org.eclipse.emf.ecore.EObject;
+
+import com.archimatetool.script.dom.model.GroupKeyFactory.IGroupKey;
 import com.archimatetool.script.dom.model.SelectorFilterFactory.ISelectorFilter;
 
 
@@ -142,6 +151,7 @@ public class EObjectProxyCollection extends ArrayList<EObjectProxy> implements I
     
     /**
      * Reduce the set of matched elements to those that have a descendant that matches the selector.
+     * The search of each object's descendants stops at the first match.
      * @param selector
      * @return
      */
@@ -150,7 +160,12 @@ public class EObjectProxyCollection extends ArrayList<EObjectProxy> implements I
     		return this;
     	}
     	
-    	return filter((EObjectProxy object) -> object.find().is(selector));
+    	ISelectorFilter filter = SelectorFilterFactory.INSTANCE.getFilter(selector);
+    	if(filter == null) {
+    	    return new EObjectProxyCollection();
+    	}
+    	
+    	return filter((EObjectProxy object) -> object.hasDescendant(filter));
     }
     
     
@@ -236,19 +251,47 @@ public class EObjectProxyCollection extends ArrayList<EObjectProxy> implements I
     	return parent().filter(selector);
     }
     
+    /**
+     * Get the ancestors of each object in the collection, without duplicates.
+     * This is done in a single pass with a shared ancestor cache, a shared ancestor is only visited once.
+     * @return
+     */
     public EObjectProxyCollection parents() {
         EObjectProxyCollection list = new EObjectProxyCollection();
         
+        AncestorCache cache = new AncestorCache();
+        Set<EObject> visited = new HashSet<>();
+        
         for(EObjectProxy object : this) {
-        	EObjectProxyCollection parents = object.parents();
-            if(parents != null && !parents.isEmpty()) {
-                list = list.add(parents); // TODO: should this just be list.add(parents); ?
+            // Stop when we reach an ancestor already visited as its own ancestors will have been added
+            for(EObjectProxy proxy : cache.getAncestors(object.getEObject())) {
+                if(!visited.add(proxy.getEObject())) {
+                    break;
+                }
+                list.add(proxy);
             }
         }
         
         return list;
     }
     
+    /**
+     * Get the folder path of each object in the collection
+     * @return a list of folder paths in the same order as the objects in this collection
+     */
+    public List<String> folderPaths() {
+        List<String> list = new ArrayList<>(size());
+        
+        // Share the cache so that each folder's path is only computed once
+        AncestorCache cache = new AncestorCache();
+        
+        for(EObjectProxy object : this) {
+            list.add(cache.getFolderPath(object.getEObject()));
+        }
+        
+        return list;
+    }
+    
     /**
      * Return the list of properties' key for the first object in the collection
      * @return
@@ -288,11 +331,7 @@ public class EObjectProxyCollection extends ArrayList<EObjectProxy> implements I
      * @return
      */
     public EObjectProxyCollection prop(String propKey, String propValue) {
-	    for(EObjectProxy object : this) {
-	        object.prop(propKey, propValue);
-	    }
-	    
-	    return this;
+        return prop(propKey, propValue, false);
     }
 
     /**
@@ -305,11 +344,31 @@ public class EObjectProxyCollection extends ArrayList<EObjectProxy> implements I
      * @return
      */
     public EObjectProxyCollection prop(String propKey, String propValue, boolean allowDuplicate) {
-	    for(EObjectProxy object : this) {
-	        object.prop(propKey, propValue, allowDuplicate);
-	    }
-	    
-	    return this;
+        PropertyUpdater updater = new PropertyUpdater();
+        
+        for(EObjectProxy object : this) {
+            updater.put(object, propKey, propValue, allowDuplicate);
+        }
+        
+        updater.execute();
+        return this;
+    }
+    
+    /**
+     * Sets the properties in a map of keys and values for every object as one change.
+     * Properties are updated if they already exist.
+     * @param values
+     * @return
+     */
+    public EObjectProxyCollection props(Map<?, ?> values) {
+        PropertyUpdater updater = new PropertyUpdater();
+        
+        for(EObjectProxy object : this) {
+            updater.put(object, values, false);
+        }
+        
+        updater.execute();
+        return this;
     }
 
     /**
@@ -337,6 +396,17 @@ public class EObjectProxyCollection extends ArrayList<EObjectProxy> implements I
         return this;
     }
 
+    /**
+     * Set the type of every concept in the collection, preserving all connecting relationships and diagram components.
+     * All of the changes are validated first and applied as one batch.
+     * @param type the Archimate type to replace with
+     * @return this collection, with the concepts replaced by the new concepts
+     */
+    public EObjectProxyCollection setType(String type) {
+        TypeChanger.setType(this, type);
+        return this;
+    }
+
     public Object attr(String attribute) {
     	return isEmpty() ? null : first().attr(attribute);
     }
@@ -359,6 +429,184 @@ public class EObjectProxyCollection extends ArrayList<EObjectProxy> implements I
     	forEach(action);
     	return this;
     }
+
+    /**
+     * Group the objects in the collection by a key.
+     * The key can be "type", "name", "folder", "layer", "view" or "prop:" followed by a property key.
+     * The value of the "view" key is the id of each view that references the object, as view names are not unique.
+     * Objects without a value for the key are grouped under the empty string.
+     * @param key
+     * @return a map of key value to the collection of objects with that value
+     */
+    public Map<String, EObjectProxyCollection> groupBy(String key) {
+        Map<String, EObjectProxyCollection> map = new LinkedHashMap<>();
+        
+        IGroupKey groupKey = GroupKeyFactory.INSTANCE.getGroupKey(key);
+        if(groupKey == null) {
+            return map;
+        }
+        
+        for(EObjectProxy object : this) {
+            for(String value : groupKey.getKeys(object.getEObject())) {
+                EObjectProxyCollection list = map.get(value);
+                if(list == null) {
+                    list = new EObjectProxyCollection();
+                    map.put(value, list);
+                }
+                list.add(object);
+            }
+        }
+        
+        return map;
+    }
+    
+    /**
+     * Count the objects in the collection by a key.
+     * The key can be "type", "name", "folder", "layer", "view" or "prop:" followed by a property key.
+     * The value of the "view" key is the id of each view that references the object, as view names are not unique.
+     * Objects without a value for the key are counted under the empty string.
+     * @param key
+     * @return a map of key value to the number of objects with that value
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Integer> countBy(String key) {
+        return (Map<String, Integer>)(Map<String, ?>)aggregate(key);
+    }
+    
+    /**
+     * Count the objects in the collection by one or more keys in a single pass.
+     * For example aggregate("layer", "prop:Lifecycle") returns the count of objects per lifecycle value per layer.
+     * The keys can be "type", "name", "folder", "layer", "view" or "prop:" followed by a property key.
+     * The value of the "view" key is the id of each view that references the object, as view names are not unique.
+     * @param keys
+     * @return nested maps of key values with the number of objects as the values of the innermost map
+     */
+    public Map<String, Object> aggregate(String... keys) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        
+        if(keys == null || keys.length == 0) {
+            return map;
+        }
+        
+        IGroupKey[] groupKeys = new IGroupKey[keys.length];
+        for(int i = 0; i < keys.length; i++) {
+            groupKeys[i] = GroupKeyFactory.INSTANCE.getGroupKey(keys[i]);
+            if(groupKeys[i] == null) {
+                return map;
+            }
+        }
+        
+        for(EObjectProxy object : this) {
+            aggregate(map, groupKeys, 0, object.getEObject());
+        }
+        
+        return map;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void aggregate(Map<String, Object> map, IGroupKey[] groupKeys, int level, EObject eObject) {
+        for(String value : groupKeys[level].getKeys(eObject)) {
+            // Innermost level so count it
+            if(level == groupKeys.length - 1) {
+                map.merge(value, 1, (a, b) -> (Integer)a + (Integer)b);
+            }
+            else {
+                Map<String, Object> child = (Map<String, Object>)map.computeIfAbsent(value, v -> new LinkedHashMap<String, Object>());
+                aggregate(child, groupKeys, level + 1, eObject);
+            }
+        }
+    }
+    
+    /**
+     * Sort the collection on a key in ascending order.
+     * The key can be "type", "name", "folder", "layer", "view" or "prop:" followed by a property key.
+     * Numbers are compared as numbers and text is compared using the rules of the current locale.
+     * @param key
+     * @return a new sorted collection
+     */
+    public EObjectProxyCollection sortBy(String key) {
+        return sortBy(key, false);
+    }
+    
+    /**
+     * Sort the collection on a key.
+     * The key can be "type", "name", "folder", "layer", "view" or "prop:" followed by a property key.
+     * Numbers are compared as numbers and text is compared using the rules of the current locale.
+     * @param key
+     * @param descending
+     * @return a new sorted collection
+     */
+    public EObjectProxyCollection sortBy(String key, boolean descending) {
+        EObjectProxyCollection list = new EObjectProxyCollection();
+        list.addAll(CollectionSorter.sort(this, key, descending));
+        return list;
+    }
+    
+    /**
+     * Sort the collection using a compare function.
+     * @param comparator
+     * @return a new sorted collection
+     */
+    public EObjectProxyCollection sortBy(Comparator<EObjectProxy> comparator) {
+        EObjectProxyCollection list = new EObjectProxyCollection();
+        list.addAll(this);
+        list.sort(comparator);
+        return list;
+    }
+    
+    /**
+     * Get the first k objects of the collection as if sorted on a key in ascending order, without sorting the whole collection.
+     * @param k
+     * @param key
+     * @return a new sorted collection of at most k objects
+     */
+    public EObjectProxyCollection top(int k, String key) {
+        return top(k, key, false);
+    }
+    
+    /**
+     * Get the first k objects of the collection as if sorted on a key, without sorting the whole collection.
+     * For example top(50, "prop:Risk", true) returns the 50 objects with the highest "Risk" property value.
+     * @param k
+     * @param key
+     * @param descending
+     * @return a new sorted collection of at most k objects
+     */
+    public EObjectProxyCollection top(int k, String key, boolean descending) {
+        EObjectProxyCollection list = new EObjectProxyCollection();
+        list.addAll(CollectionSorter.top(this, k, key, descending));
+        return list;
+    }
+    
+    /**
+     * Get the first k objects of the collection as if sorted using a compare function, without sorting the whole collection.
+     * @param k
+     * @param comparator
+     * @return a new sorted collection of at most k objects
+     */
+    public EObjectProxyCollection top(int k, Comparator<EObjectProxy> comparator) {
+        EObjectProxyCollection list = new EObjectProxyCollection();
+        if(comparator != null) {
+            list.addAll(CollectionSorter.top(this, k, comparator));
+        }
+        return list;
+    }
+    
+    /**
+     * Get a page of the collection.
+     * @param offset the index of the first object
+     * @param limit the maximum number of objects. If this is negative all remaining objects are returned
+     * @return a new collection
+     */
+    public EObjectProxyCollection slice(int offset, int limit) {
+        EObjectProxyCollection list = new EObjectProxyCollection();
+        
+        int start = Math.max(0, Math.min(offset, size()));
+        int end = limit < 0 ? size() : (int)Math.min((long)start + limit, size());
+        list.addAll(subList(start, end));
+        
+        return list;
+    }
     
     /**
      * Create a new jArchi Collection with objects added to the set of matched objects.
@@ -621,4 +869,158 @@ public class EObjectProxyCollection extends ArrayList<EObjectProxy> implements I
 	public EObjectProxyCollection outRels(String selector) {
 		return outRels().filter(selector);
 	}
+    
+    /**
+     * Get the concepts reachable from the concepts in the set of matched objects by following their relationships.
+     * @return the reached concepts in traversal order, not including the concepts in this collection
+     */
+    public EObjectProxyCollection traverse() {
+        return traverse(null);
+    }
+    
+    /**
+     * Get the concepts reachable from the concepts in the set of matched objects by following their relationships.
+     * @param options "direction" ("out", "in" or "both"), "relations" (a selector or array of selectors), "depth", "order" ("bfs" or "dfs")
+     * @return the reached concepts in traversal order, not including the concepts in this collection
+     */
+    public EObjectProxyCollection traverse(Map<?, ?> options) {
+        return GraphTraversal.traverse(GraphTraversal.getConcepts(this), options);
+    }
+    
+    /**
+     * Call the callback with each concept reachable from the concepts in the set of matched objects and its depth.
+     * If the callback returns false the traversal stops.
+     * @param options as for traverse(options)
+     * @param callback
+     */
+    public void traverse(Map<?, ?> options, BiFunction<EObjectProxy, Integer, Object> callback) {
+        GraphTraversal.traverse(GraphTraversal.getConcepts(this), options, callback);
+    }
+    
+    /**
+     * @param hops the maximum number of relationships to follow
+     * @return the concepts within a number of relationships of the concepts in the set of matched objects
+     */
+    public EObjectProxyCollection neighbours(int hops) {
+        return neighbours(hops, null);
+    }
+    
+    /**
+     * @param hops the maximum number of relationships to follow
+     * @param options as for traverse(options)
+     * @return the concepts within a number of relationships of the concepts in the set of matched objects
+     */
+    public EObjectProxyCollection neighbours(int hops, Map<?, ?> options) {
+        return GraphTraversal.neighbours(GraphTraversal.getConcepts(this), hops, options);
+    }
+    
+    /**
+     * @param target
+     * @return the shortest path from any of the concepts in the set of matched objects to target,
+     * as the concepts and the relationships between them, or an empty collection if there is no path
+     */
+    public EObjectProxyCollection shortestPath(EObjectProxy target) {
+        return shortestPath(target, null);
+    }
+    
+    /**
+     * @param target
+     * @param options as for traverse(options)
+     * @return the shortest path from any of the concepts in the set of matched objects to target,
+     * as the concepts and the relationships between them, or an empty collection if there is no path
+     */
+    public EObjectProxyCollection shortestPath(EObjectProxy target, Map<?, ?> options) {
+        return GraphTraversal.shortestPath(GraphTraversal.getConcepts(this), target, options);
+    }
+    
+    /**
+     * @param target
+     * @return all paths from any of the concepts in the set of matched objects to target that don't visit a concept more than once,
+     * each as the concepts and the relationships between them
+     */
+    public List<EObjectProxyCollection> allPaths(EObjectProxy target) {
+        return allPaths(target, null);
+    }
+    
+    /**
+     * @param target
+     * @param options as for traverse(options), and "limit" (the maximum number of paths)
+     * @return all paths from any of the concepts in the set of matched objects to target that don't visit a concept more than once,
+     * each as the concepts and the relationships between them
+     */
+    public List<EObjectProxyCollection> allPaths(EObjectProxy target, Map<?, ?> options) {
+        return GraphTraversal.allPaths(GraphTraversal.getConcepts(this), target, options);
+    }
+    
+    /**
+     * @return a snapshot of the relationships between the concepts in the set of matched objects
+     */
+    public GraphSnapshot graph() {
+        return graph(null);
+    }
+    
+    /**
+     * @param options "relations" (a selector or array of selectors of the relationships to include)
+     * @return a snapshot of the relationships between the concepts in the set of matched objects
+     */
+    public GraphSnapshot graph(Map<?, ?> options) {
+        return new GraphSnapshot(GraphTraversal.getConcepts(this), options);
+    }
+    
+    /**
+     * @return the relationships that can be derived between the concepts in the set of matched objects
+     * and that are not already in the model
+     */
+    public List<DerivedRelationship> derivedRels() {
+        return DerivationEngine.getDerivedRelationships(GraphTraversal.getConcepts(this));
+    }
+    
+    /**
+     * Write the objects in this collection to a CSV or NDJSON file, one row per object
+     * @param path the file path. If it ends with ".gz" the file is gzipped.
+     * @return the number of rows written
+     */
+    public int exportFile(String path) throws IOException {
+        return exportFile(path, null);
+    }
+    
+    /**
+     * Write the objects in this collection to a CSV or NDJSON file, one row per object.
+     * Rows are streamed to the file so memory use doesn't grow with the size of the collection.
+     * @param path the file path
+     * @param options "format" ("csv" or "ndjson", by default from the file extension),
+     * "columns" (an array of "id", "type", "name", "documentation", "source", "target", "properties", "prop:key",
+     * "folder", "path", "layer" or "view"), "delimiter", "header", "encoding" and "gzip"
+     * @return the number of rows written
+     */
+    public int exportFile(String path, Map<?, ?> options) throws IOException {
+        return ModelExporter.exportFile(this, path, options);
+    }
+    
+    /**
+     * Render the Views in this collection to image files in a folder
+     * @param folder the folder. It is created if it doesn't exist.
+     * @return the number of Views rendered and any errors
+     */
+    public RenderResult renderViews(String folder) throws IOException {
+        return renderViews(folder, null, null);
+    }
+    
+    public RenderResult renderViews(String folder, Map<?, ?> options) throws IOException {
+        return renderViews(folder, options, null);
+    }
+    
+    /**
+     * Render the Views in this collection to image files in a folder. Objects that are not Views are ignored.
+     * Images are encoded and written on background threads while the next View is painted.
+     * A View that can't be rendered is reported in the result and the others are still rendered.
+     * @param folder the folder. It is created if it doesn't exist.
+     * @param options "format" ("PNG", "BMP", "GIF", "JPG", or "SVG" with "headless", default "PNG"), "scale", "margin", "quality", "fileName" ("id" or "name", default "id"),
+     * "threads", "maxPending", "incremental" and "headless" (paint an approximate preview of each View in parallel with Java2D, without the Display and Archi's figures)
+     * @param progress if not null this is called with the result so far after each View
+     * @return the number of Views rendered and any errors
+     */
+    public RenderResult renderViews(String folder, Map<?, ?> options, Consumer<RenderResult> progress) throws IOException {
+        return new BatchRenderer(folder, options, progress).render(BatchRenderer.getViews(this));
+    }
 }
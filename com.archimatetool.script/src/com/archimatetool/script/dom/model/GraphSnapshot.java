@@ -0,0 +1,443 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.script.ArchiScriptException;
+import com.archimatetool.script.dom.model.SelectorFilterFactory.ISelectorFilter;
+
+/**
+ * Graph Snapshot
+ *
+ * A read-only copy of the relationships between a set of concepts, stored as compressed sparse rows of int node ids
+ * so that whole graph algorithms don't need to touch the model or create proxies.
+ * Only relationships whose source and target are both nodes are included, optionally filtered by the "relations" option.
+ * Changes to the model after the snapshot is taken are not reflected in the snapshot.
+ *
+ * @author agent
+ */
+public class GraphSnapshot {
+    
+    static final String DAMPING = "damping"; //$NON-NLS-1$
+    static final String ITERATIONS = "iterations"; //$NON-NLS-1$
+    static final String TOLERANCE = "tolerance"; //$NON-NLS-1$
+    
+    private IArchimateConcept[] nodes;
+    
+    // Outgoing edges of node i are outTargets[outOffsets[i]] to outTargets[outOffsets[i + 1] - 1]
+    private int[] outOffsets;
+    private int[] outTargets;
+    
+    // Incoming edges of node i are inSources[inOffsets[i]] to inSources[inOffsets[i + 1] - 1]
+    private int[] inOffsets;
+    private int[] inSources;
+    
+    private boolean[] selfLoops;
+    
+    GraphSnapshot(Collection<? extends IArchimateConcept> concepts, Map<?, ?> options) {
+        List<ISelectorFilter> filters = GraphTraversal.getRelationFilters(options);
+        
+        // Dense node ids
+        Map<IArchimateConcept, Integer> ids = new HashMap<>();
+        List<IArchimateConcept> list = new ArrayList<>();
+        for(IArchimateConcept concept : concepts) {
+            if(concept != null && !ids.containsKey(concept)) {
+                ids.put(concept, list.size());
+                list.add(concept);
+            }
+        }
+        
+        nodes = list.toArray(new IArchimateConcept[list.size()]);
+        int n = nodes.length;
+        
+        selfLoops = new boolean[n];
+        
+        // Edge list
+        int[] sources = new int[16];
+        int[] targets = new int[16];
+        int m = 0;
+        
+        for(int source = 0; source < n; source++) {
+            for(IArchimateRelationship relation : nodes[source].getSourceRelationships()) {
+                Integer target = ids.get(relation.getTarget());
+                if(target != null && GraphTraversal.acceptRelation(filters, relation)) {
+                    if(m == sources.length) {
+                        sources = Arrays.copyOf(sources, m * 2);
+                        targets = Arrays.copyOf(targets, m * 2);
+                    }
+                    sources[m] = source;
+                    targets[m] = target;
+                    m++;
+                    
+                    if(source == target) {
+                        selfLoops[source] = true;
+                    }
+                }
+            }
+        }
+        
+        // Compressed sparse rows
+        outOffsets = new int[n + 1];
+        inOffsets = new int[n + 1];
+        for(int i = 0; i < m; i++) {
+            outOffsets[sources[i] + 1]++;
+            inOffsets[targets[i] + 1]++;
+        }
+        for(int i = 0; i < n; i++) {
+            outOffsets[i + 1] += outOffsets[i];
+            inOffsets[i + 1] += inOffsets[i];
+        }
+        
+        outTargets = new int[m];
+        inSources = new int[m];
+        int[] outPos = Arrays.copyOf(outOffsets, n);
+        int[] inPos = Arrays.copyOf(inOffsets, n);
+        for(int i = 0; i < m; i++) {
+            outTargets[outPos[sources[i]]++] = targets[i];
+            inSources[inPos[targets[i]]++] = sources[i];
+        }
+    }
+    
+    /**
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return nodes.length;
+    }
+    
+    /**
+     * @return the number of relationships
+     */
+    public int getEdgeCount() {
+        return outTargets.length;
+    }
+    
+    /**
+     * @return the nodes
+     */
+    public EObjectProxyCollection nodes() {
+        EObjectProxyCollection list = new EObjectProxyCollection();
+        
+        for(IArchimateConcept concept : nodes) {
+            list.add(EObjectProxy.get(concept));
+        }
+        
+        return list;
+    }
+    
+    /**
+     * @return the connected components, ignoring the direction of relationships, largest first
+     */
+    public List<EObjectProxyCollection> components() {
+        int n = nodes.length;
+        
+        // Union find
+        int[] parent = new int[n];
+        int[] size = new int[n];
+        for(int i = 0; i < n; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+        
+        for(int source = 0; source < n; source++) {
+            for(int e = outOffsets[source]; e < outOffsets[source + 1]; e++) {
+                int a = findRoot(parent, source);
+                int b = findRoot(parent, outTargets[e]);
+                if(a != b) {
+                    if(size[a] < size[b]) {
+                        int t = a;
+                        a = b;
+                        b = t;
+                    }
+                    parent[b] = a;
+                    size[a] += size[b];
+                }
+            }
+        }
+        
+        int[] component = new int[n];
+        for(int i = 0; i < n; i++) {
+            component[i] = findRoot(parent, i);
+        }
+        
+        return toComponents(component);
+    }
+    
+    private int findRoot(int[] parent, int i) {
+        while(parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+    
+    /**
+     * @return the strongly connected components, largest first
+     */
+    public List<EObjectProxyCollection> stronglyConnectedComponents() {
+        return toComponents(getStrongComponents());
+    }
+    
+    /**
+     * @return the strongly connected components that contain a cycle, largest first
+     */
+    public List<EObjectProxyCollection> cycles() {
+        int[] component = getStrongComponents();
+        int n = nodes.length;
+        
+        int[] counts = new int[n];
+        for(int i = 0; i < n; i++) {
+            counts[component[i]]++;
+        }
+        
+        // Exclude single nodes that don't have a relationship to themselves
+        for(int i = 0; i < n; i++) {
+            if(counts[component[i]] == 1 && !selfLoops[i]) {
+                component[i] = -1;
+            }
+        }
+        
+        return toComponents(component);
+    }
+    
+    /**
+     * @return true if the graph contains a cycle
+     */
+    public boolean hasCycles() {
+        for(boolean selfLoop : selfLoops) {
+            if(selfLoop) {
+                return true;
+            }
+        }
+        
+        int[] component = getStrongComponents();
+        boolean[] seen = new boolean[nodes.length];
+        for(int c : component) {
+            if(seen[c]) {
+                return true;
+            }
+            seen[c] = true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Tarjan's algorithm without recursion
+     * @return the component number of each node
+     */
+    private int[] getStrongComponents() {
+        int n = nodes.length;
+        
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] component = new int[n];
+        int[] nextEdge = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] callStack = new int[n];
+        
+        Arrays.fill(index, -1);
+        
+        int counter = 0;
+        int sp = 0;
+        
+        for(int start = 0; start < n; start++) {
+            if(index[start] != -1) {
+                continue;
+            }
+            
+            int csp = 0;
+            index[start] = low[start] = counter++;
+            nextEdge[start] = outOffsets[start];
+            stack[sp++] = start;
+            onStack[start] = true;
+            callStack[csp++] = start;
+            
+            while(csp > 0) {
+                int v = callStack[csp - 1];
+                
+                if(nextEdge[v] < outOffsets[v + 1]) {
+                    int w = outTargets[nextEdge[v]++];
+                    if(index[w] == -1) {
+                        index[w] = low[w] = counter++;
+                        nextEdge[w] = outOffsets[w];
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        callStack[csp++] = w;
+                    }
+                    else if(onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                
+                csp--;
+                if(csp > 0) {
+                    int u = callStack[csp - 1];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+                
+                // v is the root of a component
+                if(low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--sp];
+                        onStack[w] = false;
+                        component[w] = v;
+                    }
+                    while(w != v);
+                }
+            }
+        }
+        
+        return component;
+    }
+    
+    /**
+     * @return the number of relationships of each node, highest first
+     */
+    public Map<EObjectProxy, Integer> degree() {
+        return degree(GraphTraversal.DIRECTION_BOTH);
+    }
+    
+    /**
+     * @param direction "out", "in" or "both"
+     * @return the number of relationships of each node in direction, highest first
+     */
+    public Map<EObjectProxy, Integer> degree(String direction) {
+        boolean out = GraphTraversal.DIRECTION_OUT.equals(direction) || GraphTraversal.DIRECTION_BOTH.equals(direction);
+        boolean in = GraphTraversal.DIRECTION_IN.equals(direction) || GraphTraversal.DIRECTION_BOTH.equals(direction);
+        if(!out && !in) {
+            throw new ArchiScriptException("Invalid direction: " + direction); //$NON-NLS-1$
+        }
+        
+        int n = nodes.length;
+        double[] degrees = new double[n];
+        for(int i = 0; i < n; i++) {
+            if(out) {
+                degrees[i] += outOffsets[i + 1] - outOffsets[i];
+            }
+            if(in) {
+                degrees[i] += inOffsets[i + 1] - inOffsets[i];
+            }
+        }
+        
+        Map<EObjectProxy, Integer> map = new LinkedHashMap<>();
+        for(int i : getOrder(degrees)) {
+            map.put(EObjectProxy.get(nodes[i]), (int)degrees[i]);
+        }
+        
+        return map;
+    }
+    
+    /**
+     * @return the PageRank of each node, highest first
+     */
+    public Map<EObjectProxy, Double> pageRank() {
+        return pageRank(null);
+    }
+    
+    /**
+     * @param options "damping" (default 0.85), "iterations" (default 100) and "tolerance" (default 0.000001)
+     * @return the PageRank of each node, highest first. The ranks add up to 1.
+     */
+    public Map<EObjectProxy, Double> pageRank(Map<?, ?> options) {
+        double damping = ModelUtil.getDoubleValueFromMap(options, DAMPING, 0.85);
+        int iterations = ModelUtil.getIntValueFromMap(options, ITERATIONS, 100);
+        double tolerance = ModelUtil.getDoubleValueFromMap(options, TOLERANCE, 0.000001);
+        
+        int n = nodes.length;
+        Map<EObjectProxy, Double> map = new LinkedHashMap<>();
+        if(n == 0) {
+            return map;
+        }
+        
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+        
+        for(int iteration = 0; iteration < iterations; iteration++) {
+            // Nodes without outgoing relationships share their rank with all nodes
+            double dangling = 0;
+            for(int i = 0; i < n; i++) {
+                if(outOffsets[i + 1] == outOffsets[i]) {
+                    dangling += rank[i];
+                }
+            }
+            
+            Arrays.fill(next, (1 - damping) / n + damping * dangling / n);
+            
+            for(int i = 0; i < n; i++) {
+                int degree = outOffsets[i + 1] - outOffsets[i];
+                if(degree > 0) {
+                    double share = damping * rank[i] / degree;
+                    for(int e = outOffsets[i]; e < outOffsets[i + 1]; e++) {
+                        next[outTargets[e]] += share;
+                    }
+                }
+            }
+            
+            double delta = 0;
+            for(int i = 0; i < n; i++) {
+                delta += Math.abs(next[i] - rank[i]);
+            }
+            
+            double[] t = rank;
+            rank = next;
+            next = t;
+            
+            if(delta < tolerance) {
+                break;
+            }
+        }
+        
+        for(int i : getOrder(rank)) {
+            map.put(EObjectProxy.get(nodes[i]), rank[i]);
+        }
+        
+        return map;
+    }
+    
+    /**
+     * @return node ids sorted by descending value, keeping node order for equal values
+     */
+    private int[] getOrder(double[] values) {
+        return IntStream.range(0, values.length)
+                .boxed()
+                .sorted((a, b) -> Double.compare(values[b], values[a]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+    
+    /**
+     * @param component the component of each node, or -1 to exclude the node
+     * @return the components as collections, largest first
+     */
+    private List<EObjectProxyCollection> toComponents(int[] component) {
+        Map<Integer, EObjectProxyCollection> map = new LinkedHashMap<>();
+        
+        for(int i = 0; i < nodes.length; i++) {
+            if(component[i] != -1) {
+                map.computeIfAbsent(component[i], c -> new EObjectProxyCollection()).add(EObjectProxy.get(nodes[i]));
+            }
+        }
+        
+        List<EObjectProxyCollection> list = new ArrayList<>(map.values());
+        list.sort((c1, c2) -> Integer.compare(c2.size(), c1.size()));
+        return list;
+    }
+}
@@ -0,0 +1,549 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.script.ArchiScriptException;
+import com.archimatetool.script.dom.model.SelectorFilterFactory.ISelectorFilter;
+
+/**
+ * Graph Traversal
+ *
+ * Walks the graph of concepts connected by relationships. Options are:
+ *
+ * "direction" - "out" (default), "in" or "both"
+ * "relations" - a selector, or array of selectors, of the relationships to follow (default is all relationships)
+ * "depth"     - the maximum number of relationships to follow from a start concept (default is no limit)
+ * "order"     - "bfs" (breadth first, default) or "dfs" (depth first)
+ * "limit"     - the maximum number of paths returned by allPaths() (default is no limit)
+ *
+ * Each concept is visited at most once so cycles are handled. Results are reported as they are found so that
+ * a visitor can stop the traversal early. The visitor is not called while a concept's relationships are being iterated.
+ *
+ * @author agent
+ */
+class GraphTraversal {
+    
+    static final String DIRECTION = "direction"; //$NON-NLS-1$
+    static final String DIRECTION_OUT = "out"; //$NON-NLS-1$
+    static final String DIRECTION_IN = "in"; //$NON-NLS-1$
+    static final String DIRECTION_BOTH = "both"; //$NON-NLS-1$
+    static final String RELATIONS = "relations"; //$NON-NLS-1$
+    static final String DEPTH = "depth"; //$NON-NLS-1$
+    static final String ORDER = "order"; //$NON-NLS-1$
+    static final String ORDER_BFS = "bfs"; //$NON-NLS-1$
+    static final String ORDER_DFS = "dfs"; //$NON-NLS-1$
+    static final String LIMIT = "limit"; //$NON-NLS-1$
+    
+    static interface IVisitor {
+        /**
+         * @return false to stop the traversal
+         */
+        boolean visit(IArchimateConcept concept, int depth);
+    }
+    
+    private static interface IRelationVisitor {
+        /**
+         * @return false to stop iterating the relationships
+         */
+        boolean visit(IArchimateRelationship relation, IArchimateConcept other);
+    }
+    
+    /**
+     * A visited concept, the relationship it was reached by and the previous node
+     */
+    private static class Node {
+        IArchimateConcept concept;
+        IArchimateRelationship relation;
+        Node previous;
+        int depth;
+        
+        Node(IArchimateConcept concept, IArchimateRelationship relation, Node previous) {
+            this.concept = concept;
+            this.relation = relation;
+            this.previous = previous;
+            depth = previous == null ? 0 : previous.depth + 1;
+        }
+    }
+    
+    /**
+     * A concept on the current path of allPaths() and the relationships still to follow from it
+     */
+    private static class Frame {
+        IArchimateConcept concept;
+        List<IArchimateRelationship> relations = new ArrayList<>();
+        List<IArchimateConcept> others = new ArrayList<>();
+        int index;
+        
+        Frame(IArchimateConcept concept) {
+            this.concept = concept;
+        }
+    }
+    
+    private boolean followOut, followIn;
+    private List<ISelectorFilter> relationFilters;
+    private int maxDepth;
+    private boolean depthFirst;
+    private int limit;
+    
+    GraphTraversal(Map<?, ?> options) {
+        String direction = ModelUtil.getStringValueFromMap(options, DIRECTION, DIRECTION_OUT);
+        switch(direction) {
+            case DIRECTION_OUT:
+                followOut = true;
+                break;
+            case DIRECTION_IN:
+                followIn = true;
+                break;
+            case DIRECTION_BOTH:
+                followOut = true;
+                followIn = true;
+                break;
+            default:
+                throw new ArchiScriptException("Invalid direction: " + direction); //$NON-NLS-1$
+        }
+        
+        String order = ModelUtil.getStringValueFromMap(options, ORDER, ORDER_BFS);
+        if(!ORDER_BFS.equals(order) && !ORDER_DFS.equals(order)) {
+            throw new ArchiScriptException("Invalid order: " + order); //$NON-NLS-1$
+        }
+        depthFirst = ORDER_DFS.equals(order);
+        
+        relationFilters = getRelationFilters(options);
+        
+        maxDepth = ModelUtil.getIntValueFromMap(options, DEPTH, -1);
+        limit = ModelUtil.getIntValueFromMap(options, LIMIT, -1);
+    }
+    
+    /**
+     * Set the maximum depth. A negative value is no limit.
+     */
+    void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+    
+    /**
+     * Visit the concepts reachable from the start concepts, not including the start concepts
+     */
+    void traverse(Collection<? extends IArchimateConcept> starts, IVisitor visitor) {
+        if(depthFirst) {
+            traverseDepthFirst(starts, visitor);
+        }
+        else {
+            traverseBreadthFirst(starts, visitor);
+        }
+    }
+    
+    private void traverseBreadthFirst(Collection<? extends IArchimateConcept> starts, IVisitor visitor) {
+        Set<IArchimateConcept> visited = new HashSet<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        
+        for(IArchimateConcept start : starts) {
+            if(visited.add(start)) {
+                queue.add(new Node(start, null, null));
+            }
+        }
+        
+        while(!queue.isEmpty()) {
+            Node node = queue.poll();
+            
+            if(node.depth > 0 && !visitor.visit(node.concept, node.depth)) {
+                return;
+            }
+            
+            if(isAtMaxDepth(node)) {
+                continue;
+            }
+            
+            forEachRelation(node.concept, (relation, other) -> {
+                if(visited.add(other)) {
+                    queue.add(new Node(other, relation, node));
+                }
+                return true;
+            });
+        }
+    }
+    
+    private void traverseDepthFirst(Collection<? extends IArchimateConcept> starts, IVisitor visitor) {
+        Set<IArchimateConcept> startSet = new HashSet<>(starts);
+        
+        // The smallest depth each concept has been expanded at. With a depth limit a concept first reached by a long path
+        // is expanded again if it's reached by a shorter path, so that concepts beyond it within the limit are not missed.
+        Map<IArchimateConcept, Integer> depths = new HashMap<>();
+        
+        Deque<Node> stack = new ArrayDeque<>();
+        List<Node> children = new ArrayList<>();
+        
+        // Push in reverse order so that the first is visited first
+        List<IArchimateConcept> startList = new ArrayList<>(starts);
+        for(int i = startList.size() - 1; i >= 0; i--) {
+            stack.push(new Node(startList.get(i), null, null));
+        }
+        
+        while(!stack.isEmpty()) {
+            Node node = stack.pop();
+            
+            Integer best = depths.get(node.concept);
+            if(best != null && (maxDepth < 0 || node.depth >= best)) {
+                continue;
+            }
+            depths.put(node.concept, node.depth);
+            
+            // Only visit a concept the first time it's reached
+            if(best == null && node.depth > 0 && !visitor.visit(node.concept, node.depth)) {
+                return;
+            }
+            
+            if(isAtMaxDepth(node)) {
+                continue;
+            }
+            
+            children.clear();
+            
+            forEachRelation(node.concept, (relation, other) -> {
+                if(!startSet.contains(other)) {
+                    Integer otherBest = depths.get(other);
+                    if(otherBest == null || (maxDepth >= 0 && otherBest > node.depth + 1)) {
+                        children.add(new Node(other, relation, node));
+                    }
+                }
+                return true;
+            });
+            
+            for(int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+    }
+    
+    /**
+     * @return the shortest path from any of the start concepts to the target as a list of concepts
+     *         and the relationships between them, or an empty list if there is no path
+     */
+    List<IArchimateConcept> shortestPath(Collection<? extends IArchimateConcept> starts, IArchimateConcept target) {
+        List<IArchimateConcept> path = new ArrayList<>();
+        
+        if(starts.contains(target)) {
+            path.add(target);
+            return path;
+        }
+        
+        Set<IArchimateConcept> visited = new HashSet<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        Node[] found = new Node[1];
+        
+        for(IArchimateConcept start : starts) {
+            if(visited.add(start)) {
+                queue.add(new Node(start, null, null));
+            }
+        }
+        
+        while(!queue.isEmpty() && found[0] == null) {
+            Node node = queue.poll();
+            
+            if(isAtMaxDepth(node)) {
+                continue;
+            }
+            
+            forEachRelation(node.concept, (relation, other) -> {
+                if(visited.add(other)) {
+                    Node next = new Node(other, relation, node);
+                    if(other == target) {
+                        found[0] = next;
+                        return false;
+                    }
+                    queue.add(next);
+                }
+                return true;
+            });
+        }
+        
+        // Walk back from the target
+        for(Node node = found[0]; node != null; node = node.previous) {
+            path.add(0, node.concept);
+            if(node.relation != null) {
+                path.add(0, node.relation);
+            }
+        }
+        
+        return path;
+    }
+    
+    /**
+     * @return all paths from any of the start concepts to target that don't visit a concept more than once.
+     *         Each path is a list of concepts and the relationships between them.
+     */
+    List<List<IArchimateConcept>> allPaths(Collection<? extends IArchimateConcept> starts, IArchimateConcept target) {
+        List<List<IArchimateConcept>> paths = new ArrayList<>();
+        
+        for(IArchimateConcept start : new LinkedHashSet<>(starts)) {
+            if(isAtLimit(paths)) {
+                break;
+            }
+            addPaths(start, target, paths);
+        }
+        
+        return paths;
+    }
+    
+    private void addPaths(IArchimateConcept start, IArchimateConcept target, List<List<IArchimateConcept>> paths) {
+        List<IArchimateConcept> path = new ArrayList<>();
+        path.add(start);
+        
+        if(start == target) {
+            paths.add(path);
+            return;
+        }
+        
+        Set<IArchimateConcept> onPath = new HashSet<>();
+        Deque<Frame> stack = new ArrayDeque<>();
+        
+        stack.push(createFrame(start));
+        onPath.add(start);
+        
+        while(!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            
+            // All relationships followed so step back
+            if(frame.index >= frame.relations.size()) {
+                stack.pop();
+                onPath.remove(frame.concept);
+                path.remove(path.size() - 1);
+                if(!path.isEmpty()) {
+                    path.remove(path.size() - 1);
+                }
+                continue;
+            }
+            
+            IArchimateRelationship relation = frame.relations.get(frame.index);
+            IArchimateConcept other = frame.others.get(frame.index);
+            frame.index++;
+            
+            if(onPath.contains(other)) {
+                continue;
+            }
+            
+            // The number of relationships on the path including this one
+            int length = stack.size();
+            
+            if(other == target) {
+                if(maxDepth < 0 || length <= maxDepth) {
+                    List<IArchimateConcept> result = new ArrayList<>(path);
+                    result.add(relation);
+                    result.add(target);
+                    paths.add(result);
+                    if(isAtLimit(paths)) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            
+            if(maxDepth >= 0 && length >= maxDepth) {
+                continue;
+            }
+            
+            stack.push(createFrame(other));
+            onPath.add(other);
+            path.add(relation);
+            path.add(other);
+        }
+    }
+    
+    private boolean isAtLimit(List<?> paths) {
+        return limit >= 0 && paths.size() >= limit;
+    }
+    
+    private Frame createFrame(IArchimateConcept concept) {
+        Frame frame = new Frame(concept);
+        
+        forEachRelation(concept, (relation, other) -> {
+            frame.relations.add(relation);
+            frame.others.add(other);
+            return true;
+        });
+        
+        return frame;
+    }
+    
+    private boolean isAtMaxDepth(Node node) {
+        return maxDepth >= 0 && node.depth >= maxDepth;
+    }
+    
+    /**
+     * Iterate the relationships of concept that are followed and the concepts at the other end
+     */
+    private void forEachRelation(IArchimateConcept concept, IRelationVisitor visitor) {
+        if(followOut) {
+            for(IArchimateRelationship relation : concept.getSourceRelationships()) {
+                if(acceptRelation(relation) && !visitor.visit(relation, relation.getTarget())) {
+                    return;
+                }
+            }
+        }
+        
+        if(followIn) {
+            for(IArchimateRelationship relation : concept.getTargetRelationships()) {
+                if(acceptRelation(relation) && !visitor.visit(relation, relation.getSource())) {
+                    return;
+                }
+            }
+        }
+    }
+    
+    private boolean acceptRelation(IArchimateRelationship relation) {
+        return acceptRelation(relationFilters, relation);
+    }
+    
+    /**
+     * @return the filters for the "relations" option, or null to accept all relationships
+     */
+    static List<ISelectorFilter> getRelationFilters(Map<?, ?> options) {
+        List<ISelectorFilter> filters = null;
+        
+        for(String selector : ModelUtil.getStringListFromMap(options, RELATIONS)) {
+            ISelectorFilter filter = SelectorFilterFactory.INSTANCE.getFilter(selector);
+            if(filter == null) {
+                throw new ArchiScriptException("Invalid relations selector: " + selector); //$NON-NLS-1$
+            }
+            if(filters == null) {
+                filters = new ArrayList<>();
+            }
+            filters.add(filter);
+        }
+        
+        return filters;
+    }
+    
+    /**
+     * @return true if filters is null or a filter accepts the relationship
+     */
+    static boolean acceptRelation(List<ISelectorFilter> filters, IArchimateRelationship relation) {
+        if(filters == null) {
+            return true;
+        }
+        
+        for(ISelectorFilter filter : filters) {
+            if(filter.accept(relation)) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    // ===========================================
+    // Proxy methods
+    // ===========================================
+    
+    /**
+     * @return the concepts in the collection
+     */
+    static List<IArchimateConcept> getConcepts(Collection<EObjectProxy> objects) {
+        List<IArchimateConcept> list = new ArrayList<>();
+        
+        for(EObjectProxy object : objects) {
+            if(object != null && object.getEObject() instanceof IArchimateConcept) {
+                list.add((IArchimateConcept)object.getEObject());
+            }
+        }
+        
+        return list;
+    }
+    
+    /**
+     * @return the concepts reachable from the start concepts
+     */
+    static EObjectProxyCollection traverse(List<IArchimateConcept> starts, Map<?, ?> options) {
+        EObjectProxyCollection list = new EObjectProxyCollection();
+        
+        new GraphTraversal(options).traverse(starts, (concept, depth) -> {
+            list.add(EObjectProxy.get(concept));
+            return true;
+        });
+        
+        return list;
+    }
+    
+    /**
+     * Call the callback with each concept reachable from the start concepts and its depth.
+     * If the callback returns false the traversal stops.
+     */
+    static void traverse(List<IArchimateConcept> starts, Map<?, ?> options, BiFunction<EObjectProxy, Integer, Object> callback) {
+        new GraphTraversal(options).traverse(starts, (concept, depth) -> {
+            return !Boolean.FALSE.equals(callback.apply(EObjectProxy.get(concept), depth));
+        });
+    }
+    
+    /**
+     * @return the concepts within a number of relationships from the start concepts
+     */
+    static EObjectProxyCollection neighbours(List<IArchimateConcept> starts, int hops, Map<?, ?> options) {
+        EObjectProxyCollection list = new EObjectProxyCollection();
+        
+        GraphTraversal traversal = new GraphTraversal(options);
+        traversal.setMaxDepth(Math.max(0, hops));
+        
+        traversal.traverse(starts, (concept, depth) -> {
+            list.add(EObjectProxy.get(concept));
+            return true;
+        });
+        
+        return list;
+    }
+    
+    /**
+     * @return the shortest path from any of the start concepts to the target
+     */
+    static EObjectProxyCollection shortestPath(List<IArchimateConcept> starts, EObjectProxy target, Map<?, ?> options) {
+        List<IArchimateConcept> path = new GraphTraversal(options).shortestPath(starts, getConcept(target));
+        return toCollection(path);
+    }
+    
+    /**
+     * @return all simple paths from any of the start concepts to the target
+     */
+    static List<EObjectProxyCollection> allPaths(List<IArchimateConcept> starts, EObjectProxy target, Map<?, ?> options) {
+        List<EObjectProxyCollection> list = new ArrayList<>();
+        
+        for(List<IArchimateConcept> path : new GraphTraversal(options).allPaths(starts, getConcept(target))) {
+            list.add(toCollection(path));
+        }
+        
+        return list;
+    }
+    
+    private static IArchimateConcept getConcept(EObjectProxy proxy) {
+        if(proxy == null || !(proxy.getEObject() instanceof IArchimateConcept)) {
+            throw new ArchiScriptException("Target is not a concept: " + proxy); //$NON-NLS-1$
+        }
+        
+        return (IArchimateConcept)proxy.getEObject();
+    }
+    
+    private static EObjectProxyCollection toCollection(List<IArchimateConcept> concepts) {
+        EObjectProxyCollection list = new EObjectProxyCollection();
+        
+        for(IArchimateConcept concept : concepts) {
+            list.add(EObjectProxy.get(concept));
+        }
+        
+        return list;
+    }
+}
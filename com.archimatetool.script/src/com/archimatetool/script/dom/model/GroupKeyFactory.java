@@ -0,0 +1,204 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EObject;
+
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimateModelObject;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelArchimateComponent;
+import com.archimatetool.model.IDiagramModelComponent;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.INameable;
+import com.archimatetool.model.IProperties;
+import com.archimatetool.model.IProperty;
+
+/**
+ * Group Key Factory
+ *
+ * Creates the functions that return the grouping keys of an object for the groupBy(), countBy() and aggregate()
+ * methods of EObjectProxyCollection. Supported keys are:
+ *
+ * "type", "name", "folder", "path", "layer", "view" and "prop:<property key>"
+ *
+ * An object can have no key (for example a missing property), in which case it is grouped under the empty string,
+ * or more than one key (for example it is referenced in more than one view).
+ *
+ * @author agent
+ */
+class GroupKeyFactory {
+    
+    public static interface IGroupKey {
+        List<String> getKeys(EObject object);
+    }
+    
+    static final String FOLDER = "folder"; //$NON-NLS-1$
+    static final String PATH = "path"; //$NON-NLS-1$
+    static final String LAYER = "layer"; //$NON-NLS-1$
+    static final String PROP_PREFIX = "prop:"; //$NON-NLS-1$
+    
+    private static final List<String> NO_KEY = Collections.singletonList(""); //$NON-NLS-1$
+    
+    private GroupKeyFactory() {}
+    
+    static GroupKeyFactory INSTANCE = new GroupKeyFactory();
+    
+    /**
+     * @param key the key
+     * @return A new IGroupKey. This may hold state (such as an index) so use a new one for each operation.
+     */
+    public IGroupKey getGroupKey(String key) {
+        if(key == null || "".equals(key)) { //$NON-NLS-1$
+            return null;
+        }
+        
+        switch(key) {
+            // Class type of concept
+            case IModelConstants.TYPE:
+                return object -> {
+                    object = getReferencedConcept(object);
+                    return object == null ? NO_KEY : Collections.singletonList(ModelUtil.getKebabCase(object.eClass().getName()));
+                };
+            
+            // Name
+            case IModelConstants.NAME:
+                return object -> {
+                    String name = object instanceof INameable ? ((INameable)object).getName() : null;
+                    return name == null ? NO_KEY : Collections.singletonList(name);
+                };
+            
+            // Name of the parent folder
+            case FOLDER:
+                AncestorCache folderCache = new AncestorCache();
+                return object -> {
+                    IFolder folder = folderCache.getParentFolder(object);
+                    return folder == null ? NO_KEY : Collections.singletonList(folder.getName());
+                };
+            
+            // Path of the parent folder
+            case PATH:
+                AncestorCache pathCache = new AncestorCache();
+                return object -> {
+                    String path = pathCache.getFolderPath(object);
+                    return path.isEmpty() ? NO_KEY : Collections.singletonList(path);
+                };
+            
+            // Type of the top level folder
+            case LAYER:
+                AncestorCache layerCache = new AncestorCache();
+                return object -> {
+                    IFolder folder = layerCache.getTopFolder(object);
+                    return folder == null ? NO_KEY : Collections.singletonList(folder.getType().getLiteral());
+                };
+            
+            // Ids of the views that reference the object. View names are not unique.
+            case IModelConstants.VIEW:
+                return new ViewGroupKey();
+            
+            default:
+                break;
+        }
+        
+        // Property values
+        if(key.startsWith(PROP_PREFIX) && key.length() > PROP_PREFIX.length()) {
+            String propKey = key.substring(PROP_PREFIX.length());
+            
+            return object -> {
+                object = getReferencedConcept(object);
+                
+                if(!(object instanceof IProperties)) {
+                    return NO_KEY;
+                }
+                
+                List<String> values = null;
+                
+                for(IProperty p : ((IProperties)object).getProperties()) {
+                    if(propKey.equals(p.getKey())) {
+                        if(values == null) {
+                            values = new ArrayList<>();
+                        }
+                        if(!values.contains(p.getValue())) {
+                            values.add(p.getValue());
+                        }
+                    }
+                }
+                
+                return values == null ? NO_KEY : values;
+            };
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Group on view ids.
+     * The index of concepts to views is built once per model, the first time it's needed.
+     */
+    private static class ViewGroupKey implements IGroupKey {
+        private Map<IArchimateModel, Map<IArchimateConcept, Set<String>>> indexes = new HashMap<>();
+        
+        @Override
+        public List<String> getKeys(EObject object) {
+            // A diagram component is in its own view
+            if(object instanceof IDiagramModelComponent) {
+                IDiagramModel dm = ((IDiagramModelComponent)object).getDiagramModel();
+                return dm == null ? NO_KEY : Collections.singletonList(dm.getId());
+            }
+            
+            if(!(object instanceof IArchimateConcept)) {
+                return NO_KEY;
+            }
+            
+            IArchimateModel model = ((IArchimateModelObject)object).getArchimateModel();
+            if(model == null) {
+                return NO_KEY;
+            }
+            
+            Set<String> ids = indexes.computeIfAbsent(model, ViewGroupKey::createIndex).get(object);
+            return ids == null ? NO_KEY : new ArrayList<>(ids);
+        }
+        
+        private static Map<IArchimateConcept, Set<String>> createIndex(IArchimateModel model) {
+            Map<IArchimateConcept, Set<String>> index = new HashMap<>();
+            
+            for(IDiagramModel dm : model.getDiagramModels()) {
+                for(Iterator<EObject> iter = dm.eAllContents(); iter.hasNext();) {
+                    EObject eObject = iter.next();
+                    if(eObject instanceof IDiagramModelArchimateComponent) {
+                        IArchimateConcept concept = ((IDiagramModelArchimateComponent)eObject).getArchimateConcept();
+                        if(concept != null) {
+                            index.computeIfAbsent(concept, c -> new LinkedHashSet<>()).add(dm.getId());
+                        }
+                    }
+                }
+            }
+            
+            return index;
+        }
+    }
+    
+    /**
+     * @return the concept of a diagram component, or null if it has none, or the object
+     */
+    private static EObject getReferencedConcept(EObject object) {
+        if(object instanceof IDiagramModelArchimateComponent) {
+            return ((IDiagramModelArchimateComponent)object).getArchimateConcept();
+        }
+        
+        return object;
+    }
+}
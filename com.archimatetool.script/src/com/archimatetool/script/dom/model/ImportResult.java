@@ -0,0 +1,85 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The progress and result of an import
+ *
+ * @author agent
+ */
+public class ImportResult {
+    
+    private int rows, created, updated, errorCount;
+    private int maxErrors;
+    private List<String> errors = new ArrayList<>();
+    
+    ImportResult(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+    
+    /**
+     * @return the number of rows read so far
+     */
+    public int getRows() {
+        return rows;
+    }
+    
+    /**
+     * @return the number of concepts created
+     */
+    public int getCreated() {
+        return created;
+    }
+    
+    /**
+     * @return the number of existing objects updated
+     */
+    public int getUpdated() {
+        return updated;
+    }
+    
+    /**
+     * @return the number of rows that could not be imported
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+    
+    /**
+     * @return the error messages, up to the "maxErrors" option
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+    
+    void addRow() {
+        rows++;
+    }
+    
+    void addCreated() {
+        created++;
+    }
+    
+    void addUpdated() {
+        updated++;
+    }
+    
+    void addError(int line, String message) {
+        errorCount++;
+        if(errors.size() < maxErrors) {
+            errors.add("Line " + line + ": " + message); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "Rows: " + rows + ", created: " + created + ", updated: " + updated + ", errors: " + errorCount; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+}
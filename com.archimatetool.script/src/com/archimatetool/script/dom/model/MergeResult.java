@@ -0,0 +1,58 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of model.merge()
+ *
+ * @author agent
+ */
+public class MergeResult {
+    
+    private List<ModelChange> applied = new ArrayList<>();
+    private List<ModelChange> conflicts = new ArrayList<>();
+    
+    MergeResult() {
+    }
+    
+    /**
+     * @return the changes that were merged into the model
+     */
+    public List<ModelChange> getApplied() {
+        return Collections.unmodifiableList(applied);
+    }
+    
+    /**
+     * @return the changes that were not merged, with the reason in getConflict()
+     */
+    public List<ModelChange> getConflicts() {
+        return Collections.unmodifiableList(conflicts);
+    }
+    
+    /**
+     * @return true if there were no conflicts
+     */
+    public boolean isClean() {
+        return conflicts.isEmpty();
+    }
+    
+    void addApplied(ModelChange change) {
+        applied.add(change);
+    }
+    
+    void addConflict(ModelChange change, String reason) {
+        conflicts.add(change.asConflict(reason));
+    }
+    
+    @Override
+    public String toString() {
+        return "Applied: " + applied.size() + ", conflicts: " + conflicts.size(); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
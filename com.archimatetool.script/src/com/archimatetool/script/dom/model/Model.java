@@ -8,6 +8,8 @@ package com.archimatetool.script.dom.model;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Base64.Encoder;
@@ -16,20 +18,12 @@ import java.util.Map;
 
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.osgi.util.NLS;
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.ImageLoader;
 import org.eclipse.ui.PlatformUI;
 
-import com.archimatetool.editor.diagram.util.DiagramUtils;
 import com.archimatetool.editor.model.IArchiveManager;
 import com.archimatetool.editor.model.IEditorModelManager;
-import com.archimatetool.editor.ui.ImageFactory;
 import com.archimatetool.model.IArchimateFactory;
 import com.archimatetool.model.IArchimateModel;
-import com.archimatetool.model.IArchimatePackage;
-import com.archimatetool.model.util.ArchimateModelUtils;
 import com.archimatetool.script.ArchiScriptException;
 
 /**
@@ -76,6 +70,7 @@ public class Model {
             // Load and Open it in UI
             IArchimateModel model = IEditorModelManager.INSTANCE.openModel(file);
             if(model != null) {
+                replayJournal(model);
                 return new ArchimateModelProxy(model);
             }
         }
@@ -83,6 +78,7 @@ public class Model {
         else {
             IArchimateModel model = IEditorModelManager.INSTANCE.loadModel(file);
             if(model != null) {
+                replayJournal(model);
                 return new ArchimateModelProxy(model);
             }
         }
@@ -90,6 +86,63 @@ public class Model {
         throw new ArchiScriptException(NLS.bind(Messages.ArchimateModelProxy_2, path));
     }
     
+    /**
+     * If the model has a journal apply its changes, and carry on in journal mode
+     */
+    private void replayJournal(IArchimateModel model) {
+        try {
+            ModelJournal.replay(model);
+        }
+        catch(IOException ex) {
+            throw new ArchiScriptException(ex.getMessage(), ex);
+        }
+    }
+    
+    /**
+     * Load a model from a snapshot written by model.saveSnapshot(). The model is not opened in the UI.
+     * The snapshot is not checked against the model file, so the model has no file and has to be saved with model.save(path).
+     * @param path The snapshot file
+     */
+    public ArchimateModelProxy loadSnapshot(String path) {
+        if(path == null) {
+            throw new ArchiScriptException("loadSnapshot - Path is null"); //$NON-NLS-1$
+        }
+        
+        try {
+            return new ArchimateModelProxy(ModelSnapshot.load(new File(path)));
+        }
+        catch(IOException ex) {
+            throw new ArchiScriptException(ex.getMessage(), ex);
+        }
+    }
+    
+    /**
+     * Load a model using a snapshot as a cache. If the snapshot was taken from the model file as it is now it is loaded,
+     * otherwise the model file is loaded and a new snapshot is written. Either way the model's file is the model file.
+     * @param path The snapshot file
+     * @param modelPath The model file
+     */
+    public ArchimateModelProxy loadSnapshot(String path, String modelPath) throws IOException {
+        if(path == null) {
+            throw new ArchiScriptException("loadSnapshot - Path is null"); //$NON-NLS-1$
+        }
+        
+        if(modelPath == null) {
+            throw new ArchiScriptException("loadSnapshot - Model path is null"); //$NON-NLS-1$
+        }
+        
+        File modelFile = new File(modelPath);
+        
+        if(ModelSnapshot.isCurrent(new File(path), modelFile)) {
+            // The snapshot is the same as the model file so it can be saved to it
+            ArchimateModelProxy modelProxy = loadSnapshot(path);
+            modelProxy.getEObject().setFile(modelFile.getAbsoluteFile());
+            return modelProxy;
+        }
+        
+        return load(modelPath).saveSnapshot(path);
+    }
+    
     /**
      * @param modelProxy
      * @return true if modelProxy is loaded in the models tree
@@ -132,8 +185,8 @@ public class Model {
     /**
      * Render a View as a String of BASE64 bytes
      * @param dmProxy The DiagramModelProxy
-     * @param format One of "PNG", "BMP", "JPG", "JPEG",
-     * @param options can be scale and margin insets
+     * @param format One of "PNG", "BMP", "GIF", "JPG", "JPEG", or "SVG" if headless. Any other format, and SVG if not headless, is rendered as PNG.
+     * @param options can be scale, margin, quality (JPEG quality from 1 to 100) and headless (paint an approximate preview with Java2D, without the Display and Archi's figures)
      * @return a string encoded in BASE64
      * @throws IOException
      */
@@ -146,53 +199,112 @@ public class Model {
             throw new ArchiScriptException("renderViewAsBase64 - Format is null"); //$NON-NLS-1$
         }
         
-        // Default options
-        int scale = ModelUtil.getIntValueFromMap(options, "scale", 1); //$NON-NLS-1$
-        int margin = ModelUtil.getIntValueFromMap(options, "margin", 10); //$NON-NLS-1$
+        try(ByteArrayOutputStream stream = new ByteArrayOutputStream(1024)) {
+            ViewRenderer renderer = new ViewRenderer(options);
+            renderer.render(dmProxy.getEObject(), renderer.getFormatOrPNG(format), stream);
+            
+            Encoder encoder = Base64.getEncoder();
+            return encoder.encodeToString(stream.toByteArray());
+        }
+    }
+    
+    /**
+     * Render a View to a file. The image is encoded straight to the file.
+     * @param dmProxy The DiagramModelProxy
+     * @param path The file path. The format is taken from the file extension, and is PNG if the extension is not an image format.
+     * @throws IOException
+     */
+    public void renderViewToFile(DiagramModelProxy dmProxy, String path) throws IOException {
+        renderViewToFile(dmProxy, path, null);
+    }
+    
+    /**
+     * Render a View to a file. The image is encoded straight to the file.
+     * @param dmProxy The DiagramModelProxy
+     * @param path The file path
+     * @param options can be format (one of "PNG", "BMP", "GIF", "JPG", "JPEG", "SVG", default is from the file extension, or PNG if the extension is not an image format),
+     * scale, margin, quality (JPEG quality from 1 to 100) and headless (paint an approximate preview with Java2D, without the Display and Archi's figures).
+     * SVG can only be rendered headless.
+     * @throws IOException
+     */
+    public void renderViewToFile(DiagramModelProxy dmProxy, String path, Map<?, ?> options) throws IOException {
+        if(dmProxy == null) {
+            throw new ArchiScriptException("renderViewToFile - View is null"); //$NON-NLS-1$
+        }
+        
+        if(path == null) {
+            throw new ArchiScriptException("renderViewToFile - Path is null"); //$NON-NLS-1$
+        }
         
-        // Format
-        int imgFormat = SWT.IMAGE_PNG;
+        new ViewRenderer(options).render(dmProxy.getEObject(), ViewRenderer.getFormat(options, path), Paths.get(path));
+    }
+    
+    /**
+     * Render a View to an output stream. The image is encoded straight to the stream, which is not closed.
+     * @param dmProxy The DiagramModelProxy
+     * @param stream The output stream
+     * @param format One of "PNG", "BMP", "GIF", "JPG", "JPEG", or "SVG" if headless
+     * @param options can be scale, margin, quality (JPEG quality from 1 to 100) and headless (paint an approximate preview with Java2D, without the Display and Archi's figures)
+     * @throws IOException
+     */
+    public void renderViewToStream(DiagramModelProxy dmProxy, OutputStream stream, String format, Map<?, ?> options) throws IOException {
+        if(dmProxy == null) {
+            throw new ArchiScriptException("renderViewToStream - View is null"); //$NON-NLS-1$
+        }
         
-        switch(format.toUpperCase()) {
-            case "PNG": //$NON-NLS-1$
-                imgFormat = SWT.IMAGE_PNG;
-                break;
-
-            case "BMP": //$NON-NLS-1$
-                imgFormat = SWT.IMAGE_BMP;
-                break;
-
-            case "GIF": //$NON-NLS-1$
-                imgFormat = SWT.IMAGE_GIF;
-                break;
-
-            case "JPG": //$NON-NLS-1$
-            case "JPEG": //$NON-NLS-1$
-                imgFormat = SWT.IMAGE_JPEG;
-                break;
+        if(stream == null) {
+            throw new ArchiScriptException("renderViewToStream - Stream is null"); //$NON-NLS-1$
+        }
+        
+        if(format == null) {
+            throw new ArchiScriptException("renderViewToStream - Format is null"); //$NON-NLS-1$
+        }
+        
+        new ViewRenderer(options).render(dmProxy.getEObject(), format, stream);
+    }
 
-            default:
-                break;
+    /**
+     * Render a View to a PNG file tile by tile, so that a View of any size can be rendered with a fixed amount of memory
+     * @param dmProxy The DiagramModelProxy
+     * @param path The PNG file path
+     * @param options can be scale, margin and tileSize (the tile width and height in pixels, default 1024)
+     * @return the width and height of the image
+     * @throws IOException
+     */
+    public Map<String, Integer> renderViewTiled(DiagramModelProxy dmProxy, String path, Map<?, ?> options) throws IOException {
+        if(dmProxy == null) {
+            throw new ArchiScriptException("renderViewTiled - View is null"); //$NON-NLS-1$
         }
         
-        Image image = DiagramUtils.createImage(dmProxy.getEObject(), scale, margin);
+        if(path == null) {
+            throw new ArchiScriptException("renderViewTiled - Path is null"); //$NON-NLS-1$
+        }
         
-        try {
-            ImageLoader loader = new ImageLoader();
-            loader.data = new ImageData[] { image.getImageData(ImageFactory.getImageDeviceZoom()) };
-            
-            try(ByteArrayOutputStream stream = new ByteArrayOutputStream(1024)) {
-                loader.save(stream, imgFormat);
-                
-                Encoder encoder = Base64.getEncoder();
-                return encoder.encodeToString(stream.toByteArray());
-            }
+        return new TiledRenderer(options).renderPNG(dmProxy.getEObject(), Paths.get(path));
+    }
+    
+    /**
+     * Render a View to a folder of tile images named "column_row.png", for example for a zoomable viewer
+     * @param dmProxy The DiagramModelProxy
+     * @param folder The folder. It is created if it doesn't exist.
+     * @param options can be format (one of "PNG", "BMP", "GIF", "JPG", "JPEG", default "PNG"), scale, margin, quality (JPEG quality from 1 to 100)
+     * and tileSize (the tile width and height in pixels, default 1024)
+     * @return the width and height of the whole image, the tileSize, and the number of columns and rows of tiles
+     * @throws IOException
+     */
+    public Map<String, Integer> renderViewTiles(DiagramModelProxy dmProxy, String folder, Map<?, ?> options) throws IOException {
+        if(dmProxy == null) {
+            throw new ArchiScriptException("renderViewTiles - View is null"); //$NON-NLS-1$
         }
-        finally {
-            image.dispose();
+        
+        if(folder == null) {
+            throw new ArchiScriptException("renderViewTiles - Folder is null"); //$NON-NLS-1$
         }
+        
+        String format = ModelUtil.getStringValueFromMap(options, ViewRenderer.FORMAT, ViewRenderer.PNG);
+        return new TiledRenderer(options).renderTiles(dmProxy.getEObject(), Paths.get(folder), format);
     }
-
+    
     /**
      * @param relationshipType
      * @param sourceType
@@ -200,14 +312,24 @@ public class Model {
      * @return True if relationship type is allowed between source and target
      */
     public boolean isAllowedRelationship(String relationshipType, String sourceType, String targetType) {
-        EClass relClass = (EClass)IArchimatePackage.eINSTANCE.getEClassifier(ModelUtil.getCamelCase(relationshipType));
-        EClass sourceClass = (EClass)IArchimatePackage.eINSTANCE.getEClassifier(ModelUtil.getCamelCase(sourceType));
-        EClass targetClass = (EClass)IArchimatePackage.eINSTANCE.getEClassifier(ModelUtil.getCamelCase(targetType));
+        EClass relClass = RelationshipRules.getEClass(relationshipType);
+        EClass sourceClass = RelationshipRules.getEClass(sourceType);
+        EClass targetClass = RelationshipRules.getEClass(targetType);
         
         if(relClass == null || sourceClass == null || targetClass == null) {
             throw new ArchiScriptException("Invalid type name."); //$NON-NLS-1$
         }
         
-        return ArchimateModelUtils.isValidRelationship(sourceClass, targetClass, relClass);
+        return RelationshipRules.isValidRelationship(sourceClass, targetClass, relClass);
+    }
+    
+    /**
+     * Validate a batch of candidate relationships in one call
+     * @param candidates an array of candidates, each either an array of [relationshipType, source, target]
+     * or an object with "type", "source" and "target" keys, where source and target are type names or concepts
+     * @return the indexes of the candidates that are not allowed or have an invalid type name
+     */
+    public List<Integer> validateRelationships(Object candidates) {
+        return RelationshipRules.validate(ModelUtil.toList(candidates));
     }
 }
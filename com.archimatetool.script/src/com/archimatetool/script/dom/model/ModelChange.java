@@ -0,0 +1,118 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+/**
+ * One difference between two versions of a model, found by model.diff() or model.merge()
+ *
+ * An object is "added", "removed", or "changed", in which case there is one change for each feature that is different.
+ * Features are named as in the model file ("name", "documentation", "properties", "source", "bounds" and so on) and "parent"
+ * is the folder or diagram object the object is in. Values are strings, and references to other objects are their ids.
+ *
+ * @author agent
+ */
+public class ModelChange {
+    
+    public static final String ADDED = "added"; //$NON-NLS-1$
+    public static final String REMOVED = "removed"; //$NON-NLS-1$
+    public static final String CHANGED = "changed"; //$NON-NLS-1$
+    
+    private String kind;
+    private String id;
+    private String type;
+    private String name;
+    private String feature;
+    private String oldValue;
+    private String newValue;
+    private String conflict;
+    
+    ModelChange(String kind, String id, String type, String name, String feature, String oldValue, String newValue) {
+        this.kind = kind;
+        this.id = id;
+        this.type = type;
+        this.name = name;
+        this.feature = feature;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+    
+    /**
+     * @return "added", "removed" or "changed"
+     */
+    public String getKind() {
+        return kind;
+    }
+    
+    /**
+     * @return the id of the object
+     */
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * @return the type of the object, such as "business-actor", "archimate-diagram-model" or "diagram-model-archimate-object"
+     */
+    public String getType() {
+        return type;
+    }
+    
+    /**
+     * @return the name of the object, or null if it has no name
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return the feature that changed, or null if the object was added or removed
+     */
+    public String getFeature() {
+        return feature;
+    }
+    
+    /**
+     * @return the value before the change, or null
+     */
+    public String getOldValue() {
+        return oldValue;
+    }
+    
+    /**
+     * @return the value after the change, or null
+     */
+    public String getNewValue() {
+        return newValue;
+    }
+    
+    /**
+     * @return why the change could not be merged, or null if it is not a conflict
+     */
+    public String getConflict() {
+        return conflict;
+    }
+    
+    ModelChange asConflict(String conflict) {
+        ModelChange change = new ModelChange(kind, id, type, name, feature, oldValue, newValue);
+        change.conflict = conflict;
+        return change;
+    }
+    
+    @Override
+    public String toString() {
+        String s = kind + " " + type + " " + id; //$NON-NLS-1$ //$NON-NLS-2$
+        
+        if(feature != null) {
+            s += " " + feature + ": " + oldValue + " -> " + newValue; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+        
+        if(conflict != null) {
+            s += " (" + conflict + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        
+        return s;
+    }
+}
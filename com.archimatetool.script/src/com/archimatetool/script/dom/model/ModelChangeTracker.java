@@ -0,0 +1,364 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+import com.archimatetool.editor.model.ModelChecker;
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimatePackage;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IConnectable;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelArchimateComponent;
+import com.archimatetool.model.IDiagramModelArchimateConnection;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IDiagramModelConnection;
+import com.archimatetool.model.IDiagramModelReference;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+
+/**
+ * Model Change Tracker
+ *
+ * Records the objects in a model that have changed, been added or been removed since the model last passed an integrity check,
+ * so that the next check only has to look at those objects rather than the whole model.
+ *
+ * The first check of a model is a full ModelChecker check, after which the tracker is added to the model until the script ends.
+ * The incremental check applies these rules to the changed objects: every object has an id and the ids are unique,
+ * relationships have a source and target in the model, diagram components reference concepts in the model, connections have a source and target,
+ * concepts and Views are in their own top-level folder, and nothing in the model still references a removed concept or diagram object.
+ * If a View is removed, or the model's top-level folders change, the next check is a full check
+ * since these can't be checked without looking at the whole model.
+ *
+ * @author agent
+ */
+public class ModelChangeTracker extends EContentAdapter {
+    
+    // Trackers added while the script is running, removed when it ends
+    private static final Set<ModelChangeTracker> trackers = new LinkedHashSet<>();
+    
+    private IArchimateModel model;
+    private boolean fullCheck;
+    private Set<EObject> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Set<EObject> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Map<String, EObject> ids = new HashMap<>();
+    
+    /**
+     * Check the integrity of a model, incrementally if it has been checked before
+     * @return the error messages, empty if there are none
+     */
+    static List<String> check(IArchimateModel model) {
+        ModelChangeTracker tracker = get(model);
+        
+        if(tracker != null) {
+            List<String> errors = tracker.checkChanges(model);
+            if(errors != null) {
+                if(errors.isEmpty()) {
+                    tracker.changed.clear();
+                    tracker.removed.clear();
+                }
+                return errors;
+            }
+        }
+        
+        // Full check
+        ModelChecker checker = new ModelChecker(model);
+        if(!checker.checkAll()) {
+            return checker.getErrorMessages();
+        }
+        
+        if(tracker == null) {
+            tracker = new ModelChangeTracker(model);
+            model.eAdapters().add(tracker);
+            synchronized(trackers) {
+                trackers.add(tracker);
+            }
+        }
+        tracker.reset(model);
+        
+        return Collections.emptyList();
+    }
+    
+    /**
+     * Remove the trackers from their models so that they don't keep recording changes. This is called when a script ends.
+     */
+    public static void removeAll() {
+        List<ModelChangeTracker> list;
+        
+        synchronized(trackers) {
+            list = new ArrayList<>(trackers);
+            trackers.clear();
+        }
+        
+        for(ModelChangeTracker tracker : list) {
+            tracker.model.eAdapters().remove(tracker);
+        }
+    }
+    
+    /**
+     * @return the tracker on a model or null if the model hasn't been checked
+     */
+    static ModelChangeTracker get(IArchimateModel model) {
+        for(Adapter adapter : model.eAdapters()) {
+            if(adapter instanceof ModelChangeTracker) {
+                return (ModelChangeTracker)adapter;
+            }
+        }
+        return null;
+    }
+    
+    private ModelChangeTracker(IArchimateModel model) {
+        this.model = model;
+    }
+    
+    /**
+     * @return the number of objects waiting to be checked
+     */
+    int getChangeCount() {
+        return changed.size() + removed.size();
+    }
+    
+    private void reset(IArchimateModel model) {
+        fullCheck = false;
+        changed.clear();
+        removed.clear();
+        ids.clear();
+        
+        for(Iterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            if(eObject instanceof IIdentifier) {
+                ids.put(((IIdentifier)eObject).getId(), eObject);
+            }
+        }
+    }
+    
+    @Override
+    public void notifyChanged(Notification notification) {
+        // Keep this adapter on added contents and remove it from removed contents
+        super.notifyChanged(notification);
+        
+        if(notification.isTouch() || !(notification.getNotifier() instanceof EObject)) {
+            return;
+        }
+        
+        changed.add((EObject)notification.getNotifier());
+        
+        Object feature = notification.getFeature();
+        
+        if(notification.getNotifier() == model && feature == IArchimatePackage.Literals.FOLDER_CONTAINER__FOLDERS) {
+            fullCheck = true;
+        }
+        
+        if(!(feature instanceof EReference) || !((EReference)feature).isContainment()) {
+            return;
+        }
+        
+        switch(notification.getEventType()) {
+            case Notification.ADD:
+                added(notification.getNewValue());
+                break;
+            
+            case Notification.ADD_MANY:
+                for(Object value : (Collection<?>)notification.getNewValue()) {
+                    added(value);
+                }
+                break;
+            
+            case Notification.SET:
+            case Notification.UNSET:
+                removed(notification.getOldValue());
+                added(notification.getNewValue());
+                break;
+            
+            case Notification.REMOVE:
+                removed(notification.getOldValue());
+                break;
+            
+            case Notification.REMOVE_MANY:
+                for(Object value : (Collection<?>)notification.getOldValue()) {
+                    removed(value);
+                }
+                break;
+            
+            default:
+                break;
+        }
+    }
+    
+    private void added(Object value) {
+        if(value instanceof EObject) {
+            EObject eObject = (EObject)value;
+            changed.add(eObject);
+            for(Iterator<EObject> iter = eObject.eAllContents(); iter.hasNext();) {
+                changed.add(iter.next());
+            }
+        }
+    }
+    
+    private void removed(Object value) {
+        if(value instanceof EObject) {
+            removed.add((EObject)value);
+        }
+    }
+    
+    /**
+     * @return the errors found in the changed objects, or null if a full check is needed
+     */
+    private List<String> checkChanges(IArchimateModel model) {
+        if(fullCheck) {
+            return null;
+        }
+        
+        List<String> errors = new ArrayList<>();
+        
+        for(EObject root : removed) {
+            // Moved rather than removed
+            if(EcoreUtil.isAncestor(model, root)) {
+                continue;
+            }
+            
+            for(Iterator<EObject> iter = EcoreUtil.getAllContents(Collections.singleton(root)); iter.hasNext();) {
+                EObject eObject = iter.next();
+                
+                if(eObject instanceof IDiagramModel) {
+                    return null;
+                }
+                
+                checkRemoved(model, eObject, errors);
+                
+                if(eObject instanceof IIdentifier) {
+                    ids.remove(((IIdentifier)eObject).getId(), eObject);
+                }
+            }
+        }
+        
+        for(EObject eObject : changed) {
+            if(EcoreUtil.isAncestor(model, eObject)) {
+                checkObject(model, eObject, errors);
+            }
+        }
+        
+        return errors;
+    }
+    
+    /**
+     * Check that nothing in the model still references a removed object
+     */
+    private void checkRemoved(IArchimateModel model, EObject eObject, List<String> errors) {
+        if(eObject instanceof IArchimateConcept) {
+            IArchimateConcept concept = (IArchimateConcept)eObject;
+            
+            for(IDiagramModelArchimateComponent dmc : concept.getReferencingDiagramComponents()) {
+                if(EcoreUtil.isAncestor(model, dmc)) {
+                    errors.add("Diagram object '" + dmc.getId() + "' references removed concept '" + concept.getId() + "'"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                }
+            }
+            
+            List<IArchimateRelationship> relationships = new ArrayList<>(concept.getSourceRelationships());
+            relationships.addAll(concept.getTargetRelationships());
+            for(IArchimateRelationship relationship : relationships) {
+                if(EcoreUtil.isAncestor(model, relationship)) {
+                    errors.add("Relationship '" + relationship.getId() + "' connects to removed concept '" + concept.getId() + "'"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                }
+            }
+        }
+        
+        if(eObject instanceof IConnectable) {
+            IConnectable connectable = (IConnectable)eObject;
+            
+            List<IDiagramModelConnection> connections = new ArrayList<>(connectable.getSourceConnections());
+            connections.addAll(connectable.getTargetConnections());
+            for(IDiagramModelConnection connection : connections) {
+                if(EcoreUtil.isAncestor(model, connection)) {
+                    errors.add("Connection '" + connection.getId() + "' connects to removed diagram object"); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+            }
+        }
+    }
+    
+    private void checkObject(IArchimateModel model, EObject eObject, List<String> errors) {
+        if(eObject instanceof IIdentifier) {
+            String id = ((IIdentifier)eObject).getId();
+            
+            if(id == null || id.isEmpty()) {
+                errors.add("Object has no id: " + eObject.eClass().getName()); //$NON-NLS-1$
+            }
+            else {
+                EObject other = ids.get(id);
+                if(other != null && other != eObject && id.equals(((IIdentifier)other).getId()) && EcoreUtil.isAncestor(model, other)) {
+                    errors.add("Duplicate id: " + id); //$NON-NLS-1$
+                }
+                else {
+                    ids.put(id, eObject);
+                }
+            }
+        }
+        
+        if(eObject instanceof IArchimateConcept || eObject instanceof IDiagramModel) {
+            IFolder folder = model.getDefaultFolderForObject(eObject);
+            if(folder == null || !EcoreUtil.isAncestor(folder, eObject)) {
+                errors.add("Object is not in its top-level folder: " + ((IIdentifier)eObject).getId()); //$NON-NLS-1$
+            }
+        }
+        
+        if(eObject instanceof IArchimateRelationship) {
+            IArchimateRelationship relationship = (IArchimateRelationship)eObject;
+            if(!isInModel(model, relationship.getSource()) || !isInModel(model, relationship.getTarget())) {
+                errors.add("Relationship has no source or target in the model: " + relationship.getId()); //$NON-NLS-1$
+            }
+        }
+        
+        if(eObject instanceof IDiagramModelArchimateObject) {
+            IDiagramModelArchimateObject dmo = (IDiagramModelArchimateObject)eObject;
+            if(!isInModel(model, dmo.getArchimateElement())) {
+                errors.add("Diagram object has no element in the model: " + dmo.getId()); //$NON-NLS-1$
+            }
+        }
+        
+        if(eObject instanceof IDiagramModelArchimateConnection) {
+            IDiagramModelArchimateConnection dmc = (IDiagramModelArchimateConnection)eObject;
+            if(!isInModel(model, dmc.getArchimateRelationship())) {
+                errors.add("Connection has no relationship in the model: " + dmc.getId()); //$NON-NLS-1$
+            }
+        }
+        
+        if(eObject instanceof IDiagramModelConnection) {
+            IDiagramModelConnection connection = (IDiagramModelConnection)eObject;
+            if(!isInModel(model, connection.getSource()) || !isInModel(model, connection.getTarget())) {
+                errors.add("Connection has no source or target in the model: " + connection.getId()); //$NON-NLS-1$
+            }
+        }
+        
+        if(eObject instanceof IDiagramModelReference) {
+            IDiagramModelReference ref = (IDiagramModelReference)eObject;
+            if(!isInModel(model, ref.getReferencedModel())) {
+                errors.add("View reference has no View in the model: " + ref.getId()); //$NON-NLS-1$
+            }
+        }
+    }
+    
+    private static boolean isInModel(IArchimateModel model, EObject eObject) {
+        return eObject != null && EcoreUtil.isAncestor(model, eObject);
+    }
+}
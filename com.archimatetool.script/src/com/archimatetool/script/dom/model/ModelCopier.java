@@ -0,0 +1,147 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.util.InternalEList;
+
+import com.archimatetool.editor.model.IArchiveManager;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IDiagramModel;
+
+/**
+ * Model Copier
+ *
+ * Makes a copy of a model with the same ids, for trying out changes on a copy of a model.
+ *
+ * Only the persisted features are copied, which is what saving the model would write, and lists are filled in one go
+ * without EMF's check for duplicates which makes EcoreUtil.copy slow on large folders.
+ * Attribute values are immutable so the copy shares them with the model rather than copying them, so a copy of a model
+ * costs only its objects. Views can be left out of the copy, which for most models is most of the objects.
+ *
+ * @author agent
+ */
+class ModelCopier {
+    
+    static final String VIEWS = "views"; //$NON-NLS-1$
+    
+    private boolean copyViews;
+    
+    // Model objects to their copies, and the model objects in the order they were copied
+    private Map<EObject, EObject> copies = new IdentityHashMap<>();
+    private List<EObject> copied = new ArrayList<>();
+    
+    /**
+     * @param options "views" false to leave the Views out of the copy (default true)
+     */
+    ModelCopier(Map<?, ?> options) {
+        copyViews = !Boolean.FALSE.equals(options != null ? options.get(VIEWS) : null);
+    }
+    
+    /**
+     * @return a copy of the model. The copy has no file.
+     */
+    IArchimateModel copy(IArchimateModel model) {
+        IArchimateModel copy = (IArchimateModel)copyObject(model);
+        
+        // References are set when all the objects have been copied
+        for(EObject eObject : copied) {
+            copyReferences(eObject, copies.get(eObject));
+        }
+        
+        // Images are in the archive managers' shared storage so the copy can find them
+        IArchiveManager archiveManager = IArchiveManager.FACTORY.createArchiveManager(copy);
+        copy.setAdapter(IArchiveManager.class, archiveManager);
+        
+        return copy;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private EObject copyObject(EObject eObject) {
+        EClass eClass = eObject.eClass();
+        EObject copy = EcoreUtil.create(eClass);
+        copies.put(eObject, copy);
+        copied.add(eObject);
+        
+        for(EStructuralFeature feature : eClass.getEAllStructuralFeatures()) {
+            if(!isPersisted(feature) || !eObject.eIsSet(feature)) {
+                continue;
+            }
+            
+            if(feature instanceof EAttribute) {
+                if(feature.isMany()) {
+                    ((InternalEList<Object>)copy.eGet(feature)).addAllUnique((List<?>)eObject.eGet(feature));
+                }
+                else {
+                    copy.eSet(feature, eObject.eGet(feature));
+                }
+            }
+            else if(((EReference)feature).isContainment()) {
+                if(feature.isMany()) {
+                    List<?> children = (List<?>)eObject.eGet(feature);
+                    List<EObject> childCopies = new ArrayList<>(children.size());
+                    for(Object child : children) {
+                        if(copyViews || !(child instanceof IDiagramModel)) {
+                            childCopies.add(copyObject((EObject)child));
+                        }
+                    }
+                    ((InternalEList<EObject>)copy.eGet(feature)).addAllUnique(childCopies);
+                }
+                else {
+                    EObject child = (EObject)eObject.eGet(feature);
+                    if(child != null) {
+                        copy.eSet(feature, copyObject(child));
+                    }
+                }
+            }
+        }
+        
+        return copy;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void copyReferences(EObject eObject, EObject copy) {
+        for(EReference reference : eObject.eClass().getEAllReferences()) {
+            if(reference.isContainment() || !isPersisted(reference) || !eObject.eIsSet(reference)) {
+                continue;
+            }
+            
+            // References to objects that aren't copied are left out
+            if(reference.isMany()) {
+                EList<?> targets = (EList<?>)eObject.eGet(reference, false);
+                List<EObject> targetCopies = new ArrayList<>(targets.size());
+                for(Object target : targets) {
+                    EObject targetCopy = copies.get(target);
+                    if(targetCopy != null) {
+                        targetCopies.add(targetCopy);
+                    }
+                }
+                ((InternalEList<EObject>)copy.eGet(reference)).addAllUnique(targetCopies);
+            }
+            else {
+                EObject targetCopy = copies.get(eObject.eGet(reference, false));
+                if(targetCopy != null) {
+                    copy.eSet(reference, targetCopy);
+                }
+            }
+        }
+    }
+    
+    private static boolean isPersisted(EStructuralFeature feature) {
+        return !feature.isTransient() && !feature.isDerived() && !(feature instanceof EReference && ((EReference)feature).isContainer());
+    }
+}
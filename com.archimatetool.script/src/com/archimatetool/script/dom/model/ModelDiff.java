@@ -0,0 +1,273 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimatePackage;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.model.INameable;
+
+/**
+ * Model Diff
+ *
+ * Compares two versions of a model. Objects are matched by id through a hash map of each model, so the comparison
+ * takes one pass over each model rather than comparing every object with every other.
+ *
+ * Each object with an id is reduced to its features as strings: attributes, references to other objects as ids,
+ * objects without ids that it contains (properties, bounds, bendpoints, features) as one value for each feature, and its parent.
+ * Objects with ids that it contains (folder contents, diagram children and connections) are compared as objects in their own right.
+ * The model version and the derived list of a diagram object's target connections are left out.
+ *
+ * @author agent
+ */
+class ModelDiff {
+    
+    static final String PARENT = "parent"; //$NON-NLS-1$
+    
+    private Index from, to;
+    
+    ModelDiff(Index from, Index to) {
+        this.from = from;
+        this.to = to;
+    }
+    
+    /**
+     * @return the changes from the first model to the second, in model order, with removals last
+     */
+    List<ModelChange> getChanges() {
+        List<ModelChange> changes = new ArrayList<>();
+        
+        for(Entry<String, EObject> entry : to.objects.entrySet()) {
+            String id = entry.getKey();
+            EObject eObject = entry.getValue();
+            EObject old = from.get(id);
+            
+            if(old == null) {
+                changes.add(createChange(ModelChange.ADDED, id, eObject, null, null, null));
+            }
+            else {
+                Map<String, String> oldFeatures = from.getFeatures(old);
+                Map<String, String> newFeatures = to.getFeatures(eObject);
+                
+                if(!oldFeatures.equals(newFeatures)) {
+                    // In the order of the object's features
+                    List<String> ordered = new ArrayList<>(newFeatures.keySet());
+                    for(String name : oldFeatures.keySet()) {
+                        if(!newFeatures.containsKey(name)) {
+                            ordered.add(name);
+                        }
+                    }
+                    
+                    for(String name : ordered) {
+                        String oldValue = oldFeatures.get(name);
+                        String newValue = newFeatures.get(name);
+                        if(!Objects.equals(oldValue, newValue)) {
+                            changes.add(createChange(ModelChange.CHANGED, id, eObject, name, oldValue, newValue));
+                        }
+                    }
+                }
+            }
+        }
+        
+        for(Entry<String, EObject> entry : from.objects.entrySet()) {
+            if(to.get(entry.getKey()) == null) {
+                changes.add(createChange(ModelChange.REMOVED, entry.getKey(), entry.getValue(), null, null, null));
+            }
+        }
+        
+        return changes;
+    }
+    
+    private static ModelChange createChange(String kind, String id, EObject eObject, String feature, String oldValue, String newValue) {
+        String type = ModelUtil.getKebabCase(eObject.eClass().getName());
+        String name = eObject instanceof INameable ? ((INameable)eObject).getName() : null;
+        return new ModelChange(kind, id, type, name, feature, oldValue, newValue);
+    }
+    
+    /**
+     * The objects with ids in a model, and their features as strings
+     */
+    static class Index {
+        private IArchimateModel model;
+        private Map<String, EObject> objects = new LinkedHashMap<>();
+        private Map<EObject, Map<String, String>> features = new IdentityHashMap<>();
+        
+        Index(IArchimateModel model) {
+            this.model = model;
+            
+            add(model);
+            for(Iterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
+                add(iter.next());
+            }
+        }
+        
+        private void add(EObject eObject) {
+            if(hasId(eObject)) {
+                // If there are duplicate ids the first one is used
+                objects.putIfAbsent(((IIdentifier)eObject).getId(), eObject);
+            }
+        }
+        
+        IArchimateModel getModel() {
+            return model;
+        }
+        
+        /**
+         * @return the object with the id, or null
+         */
+        EObject get(String id) {
+            return id != null ? objects.get(id) : null;
+        }
+        
+        /**
+         * @return the object at an address from ModelJournal.getAddress(), or null
+         */
+        EObject resolve(String address) {
+            if(address == null) {
+                return null;
+            }
+            
+            int index = address.indexOf('#');
+            if(index == -1) {
+                return get(address);
+            }
+            
+            EObject anchor = get(address.substring(0, index));
+            return anchor != null ? EcoreUtil.getEObject(anchor, address.substring(index + 1)) : null;
+        }
+        
+        /**
+         * @return the features of an object as strings, by feature name
+         */
+        Map<String, String> getFeatures(EObject eObject) {
+            return features.computeIfAbsent(eObject, ModelDiff::createFeatures);
+        }
+    }
+    
+    private static Map<String, String> createFeatures(EObject eObject) {
+        Map<String, String> map = new LinkedHashMap<>();
+        
+        for(EStructuralFeature feature : eObject.eClass().getEAllStructuralFeatures()) {
+            if(!isCompared(feature) || !eObject.eIsSet(feature)) {
+                continue;
+            }
+            
+            String value = getValue(eObject, feature);
+            if(value != null) {
+                map.put(feature.getName(), value);
+            }
+        }
+        
+        if(eObject.eContainer() != null) {
+            map.put(PARENT, ModelJournal.getAddress(eObject.eContainer()));
+        }
+        
+        return map;
+    }
+    
+    /**
+     * @return the value of a feature as a string, or null if there's nothing to compare
+     */
+    static String getValue(EObject eObject, EStructuralFeature feature) {
+        Object value = eObject.eGet(feature, false);
+        
+        if(feature instanceof EAttribute) {
+            if(feature.isMany()) {
+                StringBuilder sb = new StringBuilder();
+                for(Object item : (List<?>)value) {
+                    sb.append(sb.length() > 0 ? "," : "").append(escape(EcoreUtil.convertToString(((EAttribute)feature).getEAttributeType(), item))); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                return sb.toString();
+            }
+            return value == null ? null : EcoreUtil.convertToString(((EAttribute)feature).getEAttributeType(), value);
+        }
+        
+        EReference reference = (EReference)feature;
+        List<?> list = feature.isMany() ? (List<?>)value : value == null ? Collections.emptyList() : Collections.singletonList(value);
+        
+        StringBuilder sb = new StringBuilder();
+        
+        for(Object item : list) {
+            EObject target = (EObject)item;
+            
+            if(reference.isContainment()) {
+                // Contained objects with ids are compared as objects
+                if(!hasId(target)) {
+                    sb.append(encode(target));
+                }
+            }
+            else {
+                sb.append(sb.length() > 0 ? "," : "").append(ModelJournal.getAddress(target)); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+        
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+    
+    /**
+     * @return an object without an id as a string, such as Property[key=Owner;value=Bob]
+     */
+    private static String encode(EObject eObject) {
+        StringBuilder sb = new StringBuilder(eObject.eClass().getName()).append('[');
+        boolean first = true;
+        
+        for(Entry<String, String> entry : createFeatures(eObject).entrySet()) {
+            if(!PARENT.equals(entry.getKey())) {
+                sb.append(first ? "" : ";").append(entry.getKey()).append('=').append(escape(entry.getValue())); //$NON-NLS-1$ //$NON-NLS-2$
+                first = false;
+            }
+        }
+        
+        return sb.append(']').toString();
+    }
+    
+    private static String escape(String s) {
+        if(s == null) {
+            return ""; //$NON-NLS-1$
+        }
+        
+        StringBuilder sb = new StringBuilder(s.length());
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c == '\\' || c == ';' || c == ',' || c == '[' || c == ']') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * @return true if a feature is compared. The model version changes on every save and target connections duplicate the connections' targets.
+     */
+    static boolean isCompared(EStructuralFeature feature) {
+        return !feature.isTransient() && !feature.isDerived()
+                && !(feature instanceof EReference && ((EReference)feature).isContainer())
+                && feature != IArchimatePackage.Literals.IDENTIFIER__ID
+                && feature != IArchimatePackage.Literals.ARCHIMATE_MODEL__VERSION
+                && feature != IArchimatePackage.Literals.CONNECTABLE__TARGET_CONNECTIONS;
+    }
+    
+    static boolean hasId(EObject eObject) {
+        return eObject instanceof IIdentifier && ((IIdentifier)eObject).getId() != null && !((IIdentifier)eObject).getId().isEmpty();
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.emf.ecore.EObject;
+
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IDiagramModelConnection;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.model.IProperties;
+import com.archimatetool.model.IProperty;
+import com.archimatetool.script.ArchiScriptException;
+import com.archimatetool.script.dom.model.GroupKeyFactory.IGroupKey;
+
+/**
+ * Model Exporter
+ *
+ * Streams the objects in a collection to a CSV or NDJSON file, one row per object, through a buffered writer
+ * (and optionally gzip) so that only the current row is held in memory.
+ *
+ * Columns can be "id", "type", "name", "documentation", "source" and "target" (the ids of a relationship's or connection's ends),
+ * "prop:key" for the first value of a property, "properties" for all properties, or any of the groupBy() keys
+ * "folder", "path", "layer" and "view". For NDJSON "properties" is written as an object, for CSV it is expanded to a "prop:key"
+ * column for each property key used in the collection. The defaults are compatible with ModelImporter.
+ *
+ * @author agent
+ */
+class ModelExporter implements IModelConstants {
+    
+    static final String COLUMNS = "columns"; //$NON-NLS-1$
+    static final String HEADER = "header"; //$NON-NLS-1$
+    static final String GZIP = "gzip"; //$NON-NLS-1$
+    
+    static final List<String> DEFAULT_COLUMNS = Arrays.asList(ID, TYPE, NAME, DOCUMENTATION, SOURCE, TARGET, ModelImporter.PROPERTIES);
+    
+    private ModelExporter() {}
+    
+    /**
+     * Export objects to the file at path
+     * @param options "format" ("csv" or "ndjson", by default from the file extension), "columns" (default all of the above),
+     * "delimiter" (CSV, default ","), "header" (CSV, default true), "encoding" (default "UTF-8")
+     * and "gzip" (default true if the path ends with ".gz")
+     * @return the number of rows written
+     */
+    static int exportFile(List<EObjectProxy> objects, String path, Map<?, ?> options) throws IOException {
+        Path file = Paths.get(path);
+        String name = file.getFileName().toString().toLowerCase();
+        boolean gzip = name.endsWith(".gz"); //$NON-NLS-1$
+        if(options != null && options.get(GZIP) instanceof Boolean) {
+            gzip = (Boolean)options.get(GZIP);
+        }
+        
+        String format = ModelUtil.getStringValueFromMap(options, ModelImporter.FORMAT, getFormat(name));
+        String delimiter = ModelUtil.getStringValueFromMap(options, ModelImporter.DELIMITER, ","); //$NON-NLS-1$
+        Charset charset = Charset.forName(ModelUtil.getStringValueFromMap(options, ModelImporter.ENCODING, "UTF-8")); //$NON-NLS-1$
+        boolean header = !Boolean.FALSE.equals(options != null ? options.get(HEADER) : null);
+        
+        if(!RecordReader.CSV.equals(format) && !RecordReader.NDJSON.equals(format)) {
+            throw new ArchiScriptException("Unknown format: " + format); //$NON-NLS-1$
+        }
+        if(delimiter.length() != 1) {
+            throw new ArchiScriptException("Delimiter must be one character: " + delimiter); //$NON-NLS-1$
+        }
+        
+        List<String> columns = ModelUtil.getStringListFromMap(options, COLUMNS);
+        if(columns.isEmpty()) {
+            columns = DEFAULT_COLUMNS;
+        }
+        if(RecordReader.CSV.equals(format) && columns.contains(ModelImporter.PROPERTIES)) {
+            columns = expandProperties(objects, columns);
+        }
+        
+        List<Function<EObjectProxy, Object>> getters = new ArrayList<>();
+        for(String column : columns) {
+            getters.add(getColumn(column));
+        }
+        
+        // Opened in the try so that the file is closed if the gzip stream or the writer can't be created
+        try(OutputStream fileOut = Files.newOutputStream(file);
+                OutputStream out = gzip ? new GZIPOutputStream(fileOut, 1 << 16) : fileOut;
+                RecordWriter writer = RecordWriter.create(new OutputStreamWriter(out, charset), format, columns, delimiter.charAt(0), header)) {
+            List<Object> values = new ArrayList<>(columns.size());
+            
+            for(EObjectProxy object : objects) {
+                values.clear();
+                for(Function<EObjectProxy, Object> getter : getters) {
+                    values.add(getter.apply(object));
+                }
+                writer.write(values);
+            }
+        }
+        
+        return objects.size();
+    }
+    
+    private static String getFormat(String name) {
+        if(name.endsWith(".gz")) { //$NON-NLS-1$
+            name = name.substring(0, name.length() - 3);
+        }
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json") ? RecordReader.NDJSON : RecordReader.CSV; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+    
+    /**
+     * Replace the "properties" column with a "prop:key" column for each property key used by the objects
+     */
+    private static List<String> expandProperties(List<EObjectProxy> objects, List<String> columns) {
+        Set<String> keys = new LinkedHashSet<>();
+        
+        for(EObjectProxy object : objects) {
+            EObject eObject = object.getReferencedConcept();
+            if(eObject instanceof IProperties) {
+                for(IProperty property : ((IProperties)eObject).getProperties()) {
+                    keys.add(GroupKeyFactory.PROP_PREFIX + property.getKey());
+                }
+            }
+        }
+        
+        List<String> result = new ArrayList<>();
+        for(String column : columns) {
+            if(ModelImporter.PROPERTIES.equals(column)) {
+                for(String key : keys) {
+                    if(!columns.contains(key)) {
+                        result.add(key);
+                    }
+                }
+            }
+            else {
+                result.add(column);
+            }
+        }
+        
+        return result;
+    }
+    
+    private static Function<EObjectProxy, Object> getColumn(String column) {
+        switch(column) {
+            case ID:
+                return EObjectProxy::getId;
+            
+            case TYPE:
+                return EObjectProxy::getType;
+            
+            case NAME:
+                return EObjectProxy::getName;
+            
+            case DOCUMENTATION:
+                return EObjectProxy::getDocumentation;
+            
+            case SOURCE:
+                return object -> getEndId(object.getEObject(), true);
+            
+            case TARGET:
+                return object -> getEndId(object.getEObject(), false);
+            
+            case ModelImporter.PROPERTIES:
+                return object -> {
+                    EObject eObject = object.getReferencedConcept();
+                    if(!(eObject instanceof IProperties) || ((IProperties)eObject).getProperties().isEmpty()) {
+                        return null;
+                    }
+                    Map<String, String> properties = new LinkedHashMap<>();
+                    for(IProperty property : ((IProperties)eObject).getProperties()) {
+                        properties.putIfAbsent(property.getKey(), property.getValue());
+                    }
+                    return properties;
+                };
+            
+            default:
+                break;
+        }
+        
+        if(column.startsWith(GroupKeyFactory.PROP_PREFIX) && column.length() > GroupKeyFactory.PROP_PREFIX.length()) {
+            String key = column.substring(GroupKeyFactory.PROP_PREFIX.length());
+            return object -> {
+                EObject eObject = object.getReferencedConcept();
+                if(eObject instanceof IProperties) {
+                    for(IProperty property : ((IProperties)eObject).getProperties()) {
+                        if(key.equals(property.getKey())) {
+                            return property.getValue();
+                        }
+                    }
+                }
+                return null;
+            };
+        }
+        
+        // Other groupBy() keys, with more than one value separated by "|"
+        IGroupKey groupKey = GroupKeyFactory.INSTANCE.getGroupKey(column);
+        if(groupKey != null) {
+            return object -> String.join("|", groupKey.getKeys(object.getEObject())); //$NON-NLS-1$
+        }
+        
+        throw new ArchiScriptException("Unknown column: " + column); //$NON-NLS-1$
+    }
+    
+    private static String getEndId(EObject eObject, boolean source) {
+        EObject end = null;
+        
+        if(eObject instanceof IArchimateRelationship) {
+            end = source ? ((IArchimateRelationship)eObject).getSource() : ((IArchimateRelationship)eObject).getTarget();
+        }
+        else if(eObject instanceof IDiagramModelConnection) {
+            end = source ? ((IDiagramModelConnection)eObject).getSource() : ((IDiagramModelConnection)eObject).getTarget();
+        }
+        
+        return end instanceof IIdentifier ? ((IIdentifier)end).getId() : null;
+    }
+}
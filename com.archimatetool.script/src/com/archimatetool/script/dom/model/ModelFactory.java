@@ -34,7 +34,6 @@ import com.archimatetool.model.IDiagramModelContainer;
 import com.archimatetool.model.IDiagramModelObject;
 import com.archimatetool.model.IDiagramModelReference;
 import com.archimatetool.model.IFolder;
-import com.archimatetool.model.util.ArchimateModelUtils;
 import com.archimatetool.script.ArchiScriptException;
 import com.archimatetool.script.commands.AddElementCommand;
 import com.archimatetool.script.commands.AddRelationshipCommand;
@@ -59,7 +58,7 @@ class ModelFactory implements IModelConstants {
         // Ensure all components share the same model
         ModelUtil.checkComponentsInSameModel(model, parentFolder);
         
-        EClass eClass = (EClass)IArchimatePackage.eINSTANCE.getEClassifier(ModelUtil.getCamelCase(type));
+        EClass eClass = RelationshipRules.getEClass(type);
         if(eClass != null && IArchimatePackage.eINSTANCE.getArchimateElement().isSuperTypeOf(eClass)) { // Check this is the correct type
             IArchimateElement element = (IArchimateElement)IArchimateFactory.eINSTANCE.create(eClass);
             element.setName(StringUtils.safeString(name));
@@ -87,9 +86,9 @@ class ModelFactory implements IModelConstants {
         // Ensure all components share the same model
         ModelUtil.checkComponentsInSameModel(model, parentFolder, source, target);
         
-        EClass eClass = (EClass)IArchimatePackage.eINSTANCE.getEClassifier(ModelUtil.getCamelCase(type));
+        EClass eClass = RelationshipRules.getEClass(type);
         if(eClass != null && IArchimatePackage.eINSTANCE.getArchimateRelationship().isSuperTypeOf(eClass)) { // Check this is the correct type
-            if(!ArchimateModelUtils.isValidRelationship(source, target, eClass)) {
+            if(!RelationshipRules.isValidRelationship(source, target, eClass)) {
                 throw new ArchiScriptException(NLS.bind(Messages.ArchimateModelProxy_3, type));
             }
 
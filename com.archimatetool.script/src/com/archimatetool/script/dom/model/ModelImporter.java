@@ -0,0 +1,397 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+
+import com.archimatetool.editor.utils.StringUtils;
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimatePackage;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IDiagramModelArchimateComponent;
+import com.archimatetool.model.IDocumentable;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.model.INameable;
+import com.archimatetool.script.ArchiScriptException;
+import com.archimatetool.script.commands.AddElementCommand;
+import com.archimatetool.script.commands.AddRelationshipCommand;
+import com.archimatetool.script.commands.BatchCommand;
+import com.archimatetool.script.commands.CommandHandler;
+import com.archimatetool.script.commands.SetCommand;
+
+/**
+ * Model Importer
+ *
+ * Streams rows from a CSV or NDJSON file into a model, creating elements and relationships and setting properties.
+ *
+ * Each row can have the fields "id", "type", "name", "documentation", "source" and "target",
+ * and properties as "prop:key" fields or, for NDJSON, a "properties" object.
+ * If a row's id is an existing object in the model that object is updated, otherwise a new concept of the given type is created,
+ * using the id if there is one. The source and target of a relationship are found by id or, failing that, by unique element name,
+ * and can be concepts created by earlier rows.
+ *
+ * Ids of all objects in the model, including Views and their contents, and element names are held in indexes,
+ * which are kept up to date as rows create and rename concepts. Rows are read one at a time, and the changes,
+ * including property changes, are applied as one batch command every "batchSize" rows. Rows that can't be imported are counted and reported in the ImportResult and the import carries on
+ * unless "stopOnError" is set.
+ *
+ * @author agent
+ */
+class ModelImporter implements IModelConstants {
+    
+    static final String FORMAT = "format"; //$NON-NLS-1$
+    static final String DELIMITER = "delimiter"; //$NON-NLS-1$
+    static final String ENCODING = "encoding"; //$NON-NLS-1$
+    static final String BATCH_SIZE = "batchSize"; //$NON-NLS-1$
+    static final String MAX_ERRORS = "maxErrors"; //$NON-NLS-1$
+    static final String STOP_ON_ERROR = "stopOnError"; //$NON-NLS-1$
+    static final String PROPERTIES = "properties"; //$NON-NLS-1$
+    
+    private IArchimateModel model;
+    private int batchSize;
+    private boolean stopOnError;
+    private ImportResult result;
+    private Consumer<ImportResult> progress;
+    
+    private Map<String, EObject> ids;
+    
+    // Name -> the element with that name, or a list of the elements if more than one has it
+    private Map<String, Object> names;
+    private Map<EClass, IFolder> folders = new HashMap<>();
+    
+    private BatchCommand batch;
+    private PropertyUpdater propertyUpdater;
+    
+    private ModelImporter(IArchimateModel model, Map<?, ?> options, Consumer<ImportResult> progress) {
+        this.model = model;
+        this.progress = progress;
+        batchSize = Math.max(1, ModelUtil.getIntValueFromMap(options, BATCH_SIZE, 1000));
+        stopOnError = Boolean.TRUE.equals(options != null ? options.get(STOP_ON_ERROR) : null);
+        result = new ImportResult(ModelUtil.getIntValueFromMap(options, MAX_ERRORS, 1000));
+    }
+    
+    /**
+     * Import the file at path into model
+     * @param options "format" ("csv" or "ndjson", by default from the file extension), "delimiter" (CSV, default ","),
+     * "encoding" (default "UTF-8"), "batchSize" (default 1000), "maxErrors" (default 1000) and "stopOnError" (default false)
+     * @param progress if not null called with the result so far after each batch
+     */
+    static ImportResult importFile(IArchimateModel model, String path, Map<?, ?> options, Consumer<ImportResult> progress) throws IOException {
+        File file = new File(path);
+        String format = ModelUtil.getStringValueFromMap(options, FORMAT, getFormat(file));
+        String delimiter = ModelUtil.getStringValueFromMap(options, DELIMITER, ","); //$NON-NLS-1$
+        Charset charset = Charset.forName(ModelUtil.getStringValueFromMap(options, ENCODING, "UTF-8")); //$NON-NLS-1$
+        
+        if(!RecordReader.CSV.equals(format) && !RecordReader.NDJSON.equals(format)) {
+            throw new ArchiScriptException("Unknown format: " + format); //$NON-NLS-1$
+        }
+        if(delimiter.length() != 1) {
+            throw new ArchiScriptException("Delimiter must be one character: " + delimiter); //$NON-NLS-1$
+        }
+        
+        try(Reader reader = new InputStreamReader(Files.newInputStream(file.toPath()), charset);
+                RecordReader records = RecordReader.create(reader, format, delimiter.charAt(0))) {
+            return new ModelImporter(model, options, progress).run(records);
+        }
+    }
+    
+    private static String getFormat(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json") ? RecordReader.NDJSON : RecordReader.CSV; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+    
+    private ImportResult run(RecordReader records) throws IOException {
+        createIndexes();
+        newBatch();
+        
+        while(true) {
+            Map<String, Object> row = null;
+            
+            try {
+                row = records.next();
+                if(row == null) {
+                    break;
+                }
+                result.addRow();
+            }
+            catch(IOException ex) {
+                // A bad line in NDJSON can be skipped, a bad CSV file can't be read any further
+                if(!(records instanceof RecordReader.NDJSONReader)) {
+                    throw ex;
+                }
+                result.addRow();
+                error(records.getLine(), ex.getMessage());
+            }
+            
+            if(row != null) {
+                try {
+                    importRow(row);
+                }
+                catch(ImportException ex) {
+                    error(records.getLine(), ex.getMessage());
+                }
+            }
+            
+            if(result.getRows() % batchSize == 0) {
+                flush();
+            }
+        }
+        
+        flush();
+        
+        return result;
+    }
+    
+    private void error(int line, String message) {
+        result.addError(line, message);
+        
+        if(stopOnError) {
+            flush();
+            throw new ArchiScriptException("Import stopped at line " + line + ": " + message); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+    
+    /**
+     * Apply the current batch and report progress
+     */
+    private void flush() {
+        // Property changes go in the batch after the concepts are added so that they are undone with them
+        propertyUpdater.addTo(batch);
+        CommandHandler.executeCommand(batch);
+        newBatch();
+        
+        if(progress != null) {
+            progress.accept(result);
+        }
+    }
+    
+    private void newBatch() {
+        batch = new BatchCommand("import", model); //$NON-NLS-1$
+        propertyUpdater = new PropertyUpdater(model);
+    }
+    
+    private void importRow(Map<String, Object> row) throws ImportException {
+        String id = getString(row, ID);
+        EObject existing = id != null ? ids.get(id) : null;
+        
+        if(existing != null) {
+            updateObject(existing, row);
+            result.addUpdated();
+        }
+        else {
+            createConcept(id, row);
+            result.addCreated();
+        }
+    }
+    
+    private void updateObject(EObject eObject, Map<String, Object> row) throws ImportException {
+        String type = getString(row, TYPE);
+        if(type != null && RelationshipRules.getEClass(type) != eObject.eClass()) {
+            throw new ImportException("Type of " + getString(row, ID) + " is not " + type); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        
+        String name = getString(row, NAME);
+        if(name != null && eObject instanceof INameable && !name.equals(((INameable)eObject).getName())) {
+            // The name of a diagram object is its concept's name
+            EObject named = eObject instanceof IDiagramModelArchimateComponent ? ((IDiagramModelArchimateComponent)eObject).getArchimateConcept() : eObject;
+            if(named instanceof IArchimateElement) {
+                removeName((IArchimateElement)named, ((IArchimateElement)named).getName());
+                addName((IArchimateElement)named, name);
+            }
+            batch.add(new SetCommand(eObject, IArchimatePackage.Literals.NAMEABLE__NAME, name));
+        }
+        
+        String documentation = getString(row, DOCUMENTATION);
+        if(documentation != null && eObject instanceof IDocumentable && !documentation.equals(((IDocumentable)eObject).getDocumentation())) {
+            batch.add(new SetCommand(eObject, IArchimatePackage.Literals.DOCUMENTABLE__DOCUMENTATION, documentation));
+        }
+        
+        propertyUpdater.put(EObjectProxy.get(eObject), getProperties(row), false);
+    }
+    
+    private void createConcept(String id, Map<String, Object> row) throws ImportException {
+        String type = getString(row, TYPE);
+        if(type == null) {
+            throw new ImportException(id == null ? "No id or type" : "Not found and no type: " + id); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        
+        EClass eClass = RelationshipRules.getEClass(type);
+        if(eClass == null || eClass.isAbstract() || !IArchimatePackage.eINSTANCE.getArchimateConcept().isSuperTypeOf(eClass)) {
+            throw new ImportException("Invalid type: " + type); //$NON-NLS-1$
+        }
+        
+        IArchimateConcept source = null, target = null;
+        
+        if(IArchimatePackage.eINSTANCE.getArchimateRelationship().isSuperTypeOf(eClass)) {
+            source = resolve(getString(row, SOURCE), SOURCE);
+            target = resolve(getString(row, TARGET), TARGET);
+            if(!RelationshipRules.isValidRelationship(source, target, eClass)) {
+                throw new ImportException("Invalid relationship " + type + " between " + source.getName() + " and " + target.getName()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            }
+        }
+        
+        IArchimateConcept concept = (IArchimateConcept)IArchimateFactory.eINSTANCE.create(eClass);
+        if(id != null) {
+            concept.setId(id);
+        }
+        concept.setName(StringUtils.safeString(getString(row, NAME)));
+        concept.setDocumentation(StringUtils.safeString(getString(row, DOCUMENTATION)));
+        
+        // Not in the model yet so set the properties directly
+        for(Entry<String, String> entry : getProperties(row).entrySet()) {
+            concept.getProperties().add(IArchimateFactory.eINSTANCE.createProperty(entry.getKey(), entry.getValue()));
+        }
+        
+        IFolder folder = folders.computeIfAbsent(eClass, c -> model.getDefaultFolderForObject(concept));
+        
+        if(concept instanceof IArchimateRelationship) {
+            batch.add(new AddRelationshipCommand(folder, (IArchimateRelationship)concept, source, target));
+        }
+        else {
+            batch.add(new AddElementCommand(folder, (IArchimateElement)concept));
+            addName(concept, concept.getName());
+        }
+        
+        ids.put(concept.getId(), concept);
+    }
+    
+    /**
+     * Find a concept by id, or by name if no concept has the id
+     */
+    private IArchimateConcept resolve(String value, String field) throws ImportException {
+        if(value == null) {
+            throw new ImportException("No " + field); //$NON-NLS-1$
+        }
+        
+        EObject eObject = ids.get(value);
+        if(eObject instanceof IArchimateConcept) {
+            return (IArchimateConcept)eObject;
+        }
+        
+        Object named = names.get(value);
+        if(named instanceof List) {
+            throw new ImportException("More than one element is named " + value); //$NON-NLS-1$
+        }
+        if(named == null) {
+            throw new ImportException("Not found " + field + ": " + value); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        
+        return (IArchimateConcept)named;
+    }
+    
+    private void createIndexes() {
+        ids = new HashMap<>();
+        names = new HashMap<>();
+        
+        for(TreeIterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            
+            if(eObject instanceof IIdentifier) {
+                ids.put(((IIdentifier)eObject).getId(), eObject);
+            }
+            
+            if(eObject instanceof IArchimateElement) {
+                addName((IArchimateElement)eObject, ((IArchimateElement)eObject).getName());
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void addName(IArchimateConcept concept, String name) {
+        if(name == null || name.isEmpty()) {
+            return;
+        }
+        
+        names.merge(name, concept, (oldValue, value) -> {
+            if(oldValue instanceof List) {
+                ((List<Object>)oldValue).add(value);
+                return oldValue;
+            }
+            
+            List<Object> list = new ArrayList<>();
+            list.add(oldValue);
+            list.add(value);
+            return list;
+        });
+    }
+    
+    private void removeName(IArchimateConcept concept, String name) {
+        if(name == null || name.isEmpty()) {
+            return;
+        }
+        
+        names.computeIfPresent(name, (key, value) -> {
+            if(value instanceof List) {
+                List<?> list = (List<?>)value;
+                list.remove(concept);
+                return list.size() == 1 ? list.get(0) : list;
+            }
+            
+            return value == concept ? null : value;
+        });
+    }
+    
+    private static String getString(Map<String, Object> row, String key) {
+        Object value = row.get(key);
+        if(value == null) {
+            return null;
+        }
+        
+        String s = value.toString();
+        return s.isEmpty() ? null : s;
+    }
+    
+    /**
+     * @return the properties in "prop:" fields and, for NDJSON, in a "properties" object
+     */
+    private static Map<String, String> getProperties(Map<String, Object> row) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        
+        for(Entry<String, Object> entry : row.entrySet()) {
+            if(entry.getKey().startsWith(GroupKeyFactory.PROP_PREFIX) && entry.getValue() != null) {
+                properties.put(entry.getKey().substring(GroupKeyFactory.PROP_PREFIX.length()), entry.getValue().toString());
+            }
+        }
+        
+        Object value = row.get(PROPERTIES);
+        if(value instanceof Map) {
+            for(Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+                if(entry.getKey() != null && entry.getValue() != null) {
+                    properties.put(entry.getKey().toString(), entry.getValue().toString());
+                }
+            }
+        }
+        
+        return properties;
+    }
+    
+    @SuppressWarnings("serial")
+    private static class ImportException extends Exception {
+        ImportException(String message) {
+            super(message);
+        }
+    }
+}
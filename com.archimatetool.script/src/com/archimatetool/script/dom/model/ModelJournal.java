@@ -0,0 +1,860 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimatePackage;
+import com.archimatetool.model.IIdentifier;
+
+/**
+ * Model Journal
+ *
+ * Records the changes made to a model as deltas and appends them to a sidecar file next to the model file ("model.archimate.journal"),
+ * so that saving a large model only writes what has changed rather than the whole model.
+ * When the model is loaded the journal is replayed on top of it. A full save of the model compacts the journal,
+ * which then starts again empty.
+ *
+ * The changes are recorded from the model's EMF notifications, so they include everything the CommandHandler's commands do,
+ * and undo and redo. Objects are addressed by id, or by the nearest object with an id and a relative path for objects without one
+ * (such as bounds and properties), and added objects are written with all of their contents. An object with an id that is moved
+ * to another container (such as an element moved to another folder) is recorded by id and re-parented when replayed,
+ * so that references to it still resolve.
+ *
+ * The journal is a UTF-8 text file with one delta per line and fields separated by tabs. Each save appends its deltas followed by
+ * a commit line, so if a save is interrupted the unfinished deltas are ignored when replayed. The first line records the model id
+ * and the size and time of the model file that the journal applies to, and if the model file has been saved by something else
+ * since then the journal is not replayed. For the same reason, if the model file has been saved by something else (such as Archi)
+ * while the journal is recording, the next save is a full save and the journal starts again.
+ *
+ * A journal records changes only while the script that started it (or loaded the model) is running.
+ * When the script ends it is removed from the model, so that edits made afterwards in the UI are not collected.
+ *
+ * @author agent
+ */
+public class ModelJournal extends EContentAdapter {
+    
+    static final String EXTENSION = ".journal"; //$NON-NLS-1$
+    
+    private static final String HEADER = "JARCHI-JOURNAL"; //$NON-NLS-1$
+    private static final String VERSION = "1"; //$NON-NLS-1$
+    
+    // Delta types
+    private static final String SET = "S"; //$NON-NLS-1$
+    private static final String UNSET = "U"; //$NON-NLS-1$
+    private static final String ADD = "A"; //$NON-NLS-1$
+    private static final String ADD_REFERENCE = "R"; //$NON-NLS-1$
+    private static final String ADD_VALUE = "V"; //$NON-NLS-1$
+    private static final String REMOVE = "D"; //$NON-NLS-1$
+    private static final String MOVE = "M"; //$NON-NLS-1$
+    private static final String MOVE_TO = "T"; //$NON-NLS-1$
+    private static final String COMMIT = "C"; //$NON-NLS-1$
+    
+    private static final String NULL = "-"; //$NON-NLS-1$
+    private static final char SEPARATOR = '\u001f';
+    
+    // Journals recording while the script is running, removed when it ends
+    private static final Set<ModelJournal> journals = new LinkedHashSet<>();
+    
+    private IArchimateModel model;
+    private List<String> pending = new ArrayList<>();
+    
+    // Objects removed from their container that are being added to another one
+    private Set<EObject> moving = Collections.newSetFromMap(new IdentityHashMap<>());
+    
+    // The length of the journal file up to the last commit
+    private long committedLength;
+    
+    private ModelJournal(IArchimateModel model) {
+        this.model = model;
+    }
+    
+    /**
+     * @return the journal recording a model, or null
+     */
+    static ModelJournal get(IArchimateModel model) {
+        for(Adapter adapter : model.eAdapters()) {
+            if(adapter instanceof ModelJournal) {
+                return (ModelJournal)adapter;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @return the journal file for a model file
+     */
+    static File getFile(File modelFile) {
+        return new File(modelFile.getPath() + EXTENSION);
+    }
+    
+    /**
+     * Start recording a model's changes. The model file must have just been saved.
+     */
+    static ModelJournal start(IArchimateModel model) throws IOException {
+        ModelJournal journal = get(model);
+        
+        if(journal == null) {
+            journal = new ModelJournal(model);
+            journal.reset();
+            journal.attach();
+        }
+        
+        return journal;
+    }
+    
+    /**
+     * Replay the journal for a model that has just been loaded, if there is one, and carry on recording its changes
+     * @return the number of deltas replayed, or -1 if there is no journal or it doesn't apply to the model file
+     */
+    static int replay(IArchimateModel model) throws IOException {
+        File file = getFile(model.getFile());
+        if(!file.exists()) {
+            return -1;
+        }
+        
+        int count = 0;
+        long committedLength;
+        
+        try(BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if(header == null || !header.equals(getHeader(model))) {
+                System.err.println("Journal does not match the model file and was not replayed: " + file); //$NON-NLS-1$
+                return -1;
+            }
+            
+            Replayer replayer = new Replayer(model);
+            List<String[]> batch = new ArrayList<>();
+            int lineNumber = 1;
+            long length = header.getBytes(StandardCharsets.UTF_8).length + 1;
+            committedLength = length;
+            
+            for(String line; (line = reader.readLine()) != null;) {
+                lineNumber++;
+                length += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                String[] fields = line.split("\t", -1); //$NON-NLS-1$
+                
+                if(COMMIT.equals(fields[0])) {
+                    if(fields.length < 2 || Integer.parseInt(fields[1]) != batch.size()) {
+                        throw new IOException("Journal is corrupt at line " + lineNumber + ": " + file); //$NON-NLS-1$ //$NON-NLS-2$
+                    }
+                    
+                    for(String[] delta : batch) {
+                        replayer.apply(delta);
+                    }
+                    
+                    count += batch.size();
+                    batch.clear();
+                    committedLength = length;
+                }
+                else {
+                    batch.add(fields);
+                }
+            }
+            
+            // Anything after the last commit is from a save that didn't finish and is cut off by the next save
+            replayer.resolveDeferred();
+        }
+        catch(RuntimeException ex) {
+            throw new IOException("Could not replay journal " + file + ": " + ex.getMessage(), ex); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        
+        ModelJournal journal = new ModelJournal(model);
+        journal.committedLength = committedLength;
+        journal.attach();
+        
+        return count;
+    }
+    
+    /**
+     * Remove the journals from their models so that they don't keep recording changes. This is called when a script ends.
+     * Changes not saved to a journal are still in the model, and a full save of the model saves them.
+     */
+    public static void removeAll() {
+        List<ModelJournal> list;
+        
+        synchronized(journals) {
+            list = new ArrayList<>(journals);
+            journals.clear();
+        }
+        
+        for(ModelJournal journal : list) {
+            journal.model.eAdapters().remove(journal);
+        }
+    }
+    
+    private void attach() {
+        model.eAdapters().add(this);
+        synchronized(journals) {
+            journals.add(this);
+        }
+    }
+    
+    /**
+     * @return true if the journal file still applies to the model file, so that changes can be appended to it.
+     * If the model file has been saved by something else since then the journal would not be replayed.
+     */
+    boolean isCurrent() throws IOException {
+        File file = getFile(model.getFile());
+        if(!file.exists()) {
+            return false;
+        }
+        
+        try(BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return getHeader(model).equals(reader.readLine());
+        }
+    }
+    
+    /**
+     * Append the changes since the last save to the journal file
+     */
+    void save() throws IOException {
+        if(pending.isEmpty()) {
+            return;
+        }
+        
+        try(FileChannel channel = FileChannel.open(getFile(model.getFile()).toPath(), StandardOpenOption.WRITE)) {
+            // Cut off anything from a save that didn't finish
+            channel.truncate(committedLength);
+            channel.position(committedLength);
+            
+            Writer writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), 1 << 16);
+            
+            for(String delta : pending) {
+                writer.write(delta);
+                writer.write('\n');
+            }
+            
+            writer.write(COMMIT + "\t" + pending.size() + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+            writer.flush();
+            
+            // Make sure it's on disk
+            channel.force(false);
+            committedLength = channel.size();
+        }
+        
+        pending.clear();
+    }
+    
+    /**
+     * Start an empty journal after the model file has been saved in full
+     */
+    void reset() throws IOException {
+        File file = getFile(model.getFile());
+        File temp = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+        
+        byte[] header = (getHeader(model) + "\n").getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+        Files.write(temp.toPath(), header);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        
+        committedLength = header.length;
+        
+        pending.clear();
+    }
+    
+    /**
+     * Stop recording and delete the journal file. The model file must have just been saved.
+     */
+    void stop() throws IOException {
+        model.eAdapters().remove(this);
+        synchronized(journals) {
+            journals.remove(this);
+        }
+        Files.deleteIfExists(getFile(model.getFile()).toPath());
+        pending.clear();
+    }
+    
+    /**
+     * @return the number of deltas not saved yet
+     */
+    int getPendingCount() {
+        return pending.size();
+    }
+    
+    /**
+     * The header ties the journal to the model file it applies to
+     */
+    private static String getHeader(IArchimateModel model) {
+        File file = model.getFile();
+        return HEADER + "\t" + VERSION + "\t" + model.getId() + "\t" + file.length() + "\t" + file.lastModified(); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+    
+    // ====================================== Recording ======================================
+    
+    @Override
+    public void notifyChanged(Notification notification) {
+        // Keep this adapter on added contents and remove it from removed contents
+        super.notifyChanged(notification);
+        
+        if(notification.isTouch() || !(notification.getNotifier() instanceof EObject)
+                || !(notification.getFeature() instanceof EStructuralFeature)) {
+            return;
+        }
+        
+        EObject eObject = (EObject)notification.getNotifier();
+        EStructuralFeature feature = (EStructuralFeature)notification.getFeature();
+        
+        if(!isPersisted(feature)) {
+            return;
+        }
+        
+        String address = getAddress(eObject);
+        if(address == null) {
+            return;
+        }
+        
+        boolean containment = feature instanceof EReference && ((EReference)feature).isContainment();
+        int position = notification.getPosition();
+        
+        switch(notification.getEventType()) {
+            case Notification.SET:
+                // Replacing an item in a list
+                if(feature.isMany()) {
+                    record(REMOVE, address, feature.getName(), String.valueOf(position));
+                    addValue(address, feature, position, notification.getNewValue());
+                }
+                else if(containment && notification.getNewValue() != null) {
+                    add(address, feature, -1, (EObject)notification.getNewValue());
+                }
+                else {
+                    record(SET, address, feature.getName(), encodeValue(feature, notification.getNewValue()));
+                }
+                break;
+            
+            case Notification.UNSET:
+                record(UNSET, address, feature.getName());
+                break;
+            
+            case Notification.ADD:
+                addValue(address, feature, position, notification.getNewValue());
+                break;
+            
+            case Notification.ADD_MANY: {
+                int i = position;
+                for(Object value : (Collection<?>)notification.getNewValue()) {
+                    addValue(address, feature, i < 0 ? -1 : i++, value);
+                }
+                break;
+            }
+            
+            case Notification.REMOVE:
+                record(REMOVE, address, feature.getName(), String.valueOf(position));
+                
+                // When an object is moved to another container it is removed from the old one after it is in the new one,
+                // and then it is added to the new one
+                if(containment && notification.getOldValue() instanceof EObject && EcoreUtil.isAncestor(model, (EObject)notification.getOldValue())) {
+                    moving.add((EObject)notification.getOldValue());
+                }
+                break;
+            
+            case Notification.REMOVE_MANY: {
+                // The new value is the removed positions, or null if the list was cleared
+                int[] positions = (int[])notification.getNewValue();
+                if(positions == null) {
+                    positions = new int[((Collection<?>)notification.getOldValue()).size()];
+                    for(int i = 0; i < positions.length; i++) {
+                        positions[i] = i;
+                    }
+                }
+                
+                positions = positions.clone();
+                Arrays.sort(positions);
+                for(int i = positions.length - 1; i >= 0; i--) {
+                    record(REMOVE, address, feature.getName(), String.valueOf(positions[i]));
+                }
+                break;
+            }
+            
+            case Notification.MOVE:
+                record(MOVE, address, feature.getName(), String.valueOf(notification.getOldValue()), String.valueOf(position));
+                break;
+            
+            default:
+                break;
+        }
+    }
+    
+    private void addValue(String address, EStructuralFeature feature, int position, Object value) {
+        if(feature instanceof EReference) {
+            if(((EReference)feature).isContainment()) {
+                // A moved object is re-parented by id so that references to it stay the same object
+                if(moving.remove(value) && hasId((EObject)value)) {
+                    record(MOVE_TO, address, feature.getName(), String.valueOf(position), ((IIdentifier)value).getId());
+                }
+                else {
+                    add(address, feature, position, (EObject)value);
+                }
+            }
+            else {
+                record(ADD_REFERENCE, address, feature.getName(), String.valueOf(position), encodeValue(feature, value));
+            }
+        }
+        else {
+            record(ADD_VALUE, address, feature.getName(), String.valueOf(position), encodeValue(feature, value));
+        }
+    }
+    
+    /**
+     * Record an added object with its contents. Each object is written as its class, the index of its parent in the list,
+     * the containment feature, and its feature values.
+     */
+    private void add(String address, EStructuralFeature feature, int position, EObject root) {
+        List<EObject> objects = new ArrayList<>();
+        objects.add(root);
+        for(Iterator<EObject> iter = root.eAllContents(); iter.hasNext();) {
+            objects.add(iter.next());
+        }
+        
+        Map<EObject, Integer> indexes = new IdentityHashMap<>();
+        List<String> fields = new ArrayList<>();
+        fields.add(ADD);
+        fields.add(address);
+        fields.add(feature.getName());
+        fields.add(String.valueOf(position));
+        fields.add(String.valueOf(objects.size()));
+        
+        for(EObject eObject : objects) {
+            indexes.put(eObject, indexes.size());
+            
+            EClass eClass = eObject.eClass();
+            fields.add(eClass.getEPackage() == IArchimatePackage.eINSTANCE ? eClass.getName() : eClass.getEPackage().getNsURI() + "#" + eClass.getName()); //$NON-NLS-1$
+            
+            Integer parent = eObject == root ? null : indexes.get(eObject.eContainer());
+            fields.add(parent == null ? "-1" : parent.toString()); //$NON-NLS-1$
+            fields.add(eObject == root ? "" : eObject.eContainmentFeature().getName()); //$NON-NLS-1$
+            
+            List<String> values = new ArrayList<>();
+            for(EStructuralFeature f : eClass.getEAllStructuralFeatures()) {
+                if(isPersisted(f) && !(f instanceof EReference && ((EReference)f).isContainment()) && eObject.eIsSet(f)) {
+                    values.add(f.getName());
+                    values.add(encodeValue(f, eObject.eGet(f)));
+                }
+            }
+            
+            fields.add(String.valueOf(values.size() / 2));
+            fields.addAll(values);
+        }
+        
+        record(fields.toArray(new String[fields.size()]));
+    }
+    
+    private void record(String... fields) {
+        StringBuilder sb = new StringBuilder();
+        
+        for(String field : fields) {
+            if(sb.length() > 0) {
+                sb.append('\t');
+            }
+            escape(field, sb);
+        }
+        
+        pending.add(sb.toString());
+    }
+    
+    /**
+     * Values are "-" for null, "=value" for an attribute value and "@address" for a referenced object.
+     * Many-valued features have their values separated by a unit separator character.
+     */
+    private static String encodeValue(EStructuralFeature feature, Object value) {
+        if(value == null) {
+            return NULL;
+        }
+        
+        if(feature.isMany() && value instanceof Collection) {
+            StringBuilder sb = new StringBuilder("*"); //$NON-NLS-1$
+            for(Object item : (Collection<?>)value) {
+                if(sb.length() > 1) {
+                    sb.append(SEPARATOR);
+                }
+                sb.append(encodeValue(feature, item));
+            }
+            return sb.toString();
+        }
+        
+        if(feature instanceof EReference) {
+            String address = getAddress((EObject)value);
+            return address == null ? NULL : "@" + address; //$NON-NLS-1$
+        }
+        
+        return "=" + EcoreUtil.convertToString(((EAttribute)feature).getEAttributeType(), value); //$NON-NLS-1$
+    }
+    
+    private static boolean isPersisted(EStructuralFeature feature) {
+        return !feature.isTransient() && !feature.isDerived() && !(feature instanceof EReference && ((EReference)feature).isContainer());
+    }
+    
+    /**
+     * @return the id of an object, or the id of the nearest object with an id and the relative path from it, or null if it's not in a model
+     */
+    static String getAddress(EObject eObject) {
+        EObject anchor = eObject;
+        while(anchor != null && !hasId(anchor)) {
+            anchor = anchor.eContainer();
+        }
+        
+        if(anchor == null) {
+            return null;
+        }
+        
+        String id = ((IIdentifier)anchor).getId();
+        return anchor == eObject ? id : id + "#" + EcoreUtil.getRelativeURIFragmentPath(anchor, eObject); //$NON-NLS-1$
+    }
+    
+    private static boolean hasId(EObject eObject) {
+        return eObject instanceof IIdentifier && ((IIdentifier)eObject).getId() != null && !((IIdentifier)eObject).getId().isEmpty();
+    }
+    
+    private static void escape(String s, StringBuilder sb) {
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch(c) {
+                case '\\':
+                    sb.append("\\\\"); //$NON-NLS-1$
+                    break;
+                case '\t':
+                    sb.append("\\t"); //$NON-NLS-1$
+                    break;
+                case '\n':
+                    sb.append("\\n"); //$NON-NLS-1$
+                    break;
+                case '\r':
+                    sb.append("\\r"); //$NON-NLS-1$
+                    break;
+                default:
+                    sb.append(c);
+                    break;
+            }
+        }
+    }
+    
+    private static String unescape(String s) {
+        if(s.indexOf('\\') == -1) {
+            return s;
+        }
+        
+        StringBuilder sb = new StringBuilder(s.length());
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            }
+            else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+    
+    // ====================================== Replaying ======================================
+    
+    /**
+     * Applies deltas to a model
+     */
+    private static class Replayer {
+        
+        /**
+         * A reference to an object that didn't exist yet when it was set
+         */
+        private static class Deferred {
+            EObject eObject;
+            EStructuralFeature feature;
+            String address;
+            
+            Deferred(EObject eObject, EStructuralFeature feature, String address) {
+                this.eObject = eObject;
+                this.feature = feature;
+                this.address = address;
+            }
+        }
+        
+        private Map<String, EObject> ids = new HashMap<>();
+        private List<Deferred> deferred = new ArrayList<>();
+        
+        Replayer(IArchimateModel model) {
+            ids.put(model.getId(), model);
+            for(Iterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
+                addId(iter.next());
+            }
+        }
+        
+        void apply(String[] fields) {
+            String type = fields[0];
+            EObject eObject = getObject(unescape(fields[1]));
+            EStructuralFeature feature = getFeature(eObject.eClass(), unescape(fields[2]));
+            
+            switch(type) {
+                case SET:
+                    setValue(eObject, feature, unescape(fields[3]));
+                    break;
+                
+                case UNSET:
+                    eObject.eUnset(feature);
+                    break;
+                
+                case ADD:
+                    addObjects(eObject, feature, Integer.parseInt(fields[3]), fields, 4);
+                    break;
+                
+                case ADD_REFERENCE:
+                case ADD_VALUE: {
+                    Object value = decodeValue(eObject, feature, unescape(fields[4]));
+                    EList<Object> list = getList(eObject, feature);
+                    // A reference can already have been added as a side effect of setting another one
+                    if(value != null && !(type == ADD_REFERENCE && list.contains(value))) {
+                        add(list, Integer.parseInt(fields[3]), value);
+                    }
+                    break;
+                }
+                
+                case REMOVE:
+                    getList(eObject, feature).remove(Integer.parseInt(fields[3]));
+                    break;
+                
+                case MOVE:
+                    getList(eObject, feature).move(Integer.parseInt(fields[4]), Integer.parseInt(fields[3]));
+                    break;
+                
+                case MOVE_TO: {
+                    // The object was removed from its old container by the delta before this one
+                    EObject moved = getObject(unescape(fields[4]));
+                    if(feature.isMany()) {
+                        add(getList(eObject, feature), Integer.parseInt(fields[3]), moved);
+                    }
+                    else {
+                        eObject.eSet(feature, moved);
+                    }
+                    break;
+                }
+                
+                default:
+                    throw new IllegalArgumentException("Unknown journal entry " + type); //$NON-NLS-1$
+            }
+            
+            addId(eObject);
+        }
+        
+        private void addObjects(EObject container, EStructuralFeature feature, int position, String[] fields, int index) {
+            int count = Integer.parseInt(fields[index++]);
+            List<EObject> objects = new ArrayList<>(count);
+            List<String[]> values = new ArrayList<>(count);
+            
+            for(int i = 0; i < count; i++) {
+                EObject eObject = EcoreUtil.create(getEClass(unescape(fields[index++])));
+                int parent = Integer.parseInt(fields[index++]);
+                String containmentFeature = unescape(fields[index++]);
+                int valueCount = Integer.parseInt(fields[index++]);
+                
+                values.add(Arrays.copyOfRange(fields, index, index + valueCount * 2));
+                index += valueCount * 2;
+                
+                // Set the attributes first so that the id is set
+                String[] objectValues = values.get(i);
+                for(int j = 0; j < objectValues.length; j += 2) {
+                    EStructuralFeature f = getFeature(eObject.eClass(), unescape(objectValues[j]));
+                    if(f instanceof EAttribute) {
+                        setValue(eObject, f, unescape(objectValues[j + 1]));
+                    }
+                }
+                
+                if(parent >= 0) {
+                    EObject parentObject = objects.get(parent);
+                    EStructuralFeature f = getFeature(parentObject.eClass(), containmentFeature);
+                    if(f.isMany()) {
+                        getList(parentObject, f).add(eObject);
+                    }
+                    else {
+                        parentObject.eSet(f, eObject);
+                    }
+                }
+                
+                objects.add(eObject);
+                addId(eObject);
+            }
+            
+            // Add to the model and then set references, which can be to objects in the model or in the added objects
+            if(feature.isMany()) {
+                add(getList(container, feature), position, objects.get(0));
+            }
+            else {
+                container.eSet(feature, objects.get(0));
+            }
+            
+            for(int i = 0; i < count; i++) {
+                EObject eObject = objects.get(i);
+                String[] objectValues = values.get(i);
+                for(int j = 0; j < objectValues.length; j += 2) {
+                    EStructuralFeature f = getFeature(eObject.eClass(), unescape(objectValues[j]));
+                    if(f instanceof EReference) {
+                        setValue(eObject, f, unescape(objectValues[j + 1]));
+                    }
+                }
+            }
+        }
+        
+        private void setValue(EObject eObject, EStructuralFeature feature, String encoded) {
+            Object value = decodeValue(eObject, feature, encoded);
+            
+            if(feature.isMany()) {
+                EList<Object> list = getList(eObject, feature);
+                list.clear();
+                if(value != null) {
+                    list.addAll((Collection<?>)value);
+                }
+            }
+            else if(value != null || !encoded.startsWith("@")) { //$NON-NLS-1$
+                eObject.eSet(feature, value);
+            }
+        }
+        
+        private Object decodeValue(EObject eObject, EStructuralFeature feature, String encoded) {
+            if(encoded.equals(NULL)) {
+                return null;
+            }
+            
+            if(encoded.startsWith("*")) { //$NON-NLS-1$
+                List<Object> values = new ArrayList<>();
+                if(encoded.length() > 1) {
+                    for(String item : encoded.substring(1).split(String.valueOf(SEPARATOR), -1)) {
+                        Object value = decodeValue(eObject, feature, item);
+                        if(value != null) {
+                            values.add(value);
+                        }
+                    }
+                }
+                return values;
+            }
+            
+            if(encoded.startsWith("@")) { //$NON-NLS-1$
+                String address = encoded.substring(1);
+                EObject target = resolve(address);
+                if(target == null) {
+                    deferred.add(new Deferred(eObject, feature, address));
+                }
+                return target;
+            }
+            
+            return EcoreUtil.createFromString(((EAttribute)feature).getEAttributeType(), encoded.substring(1));
+        }
+        
+        /**
+         * Set the references to objects that were added after the reference was set
+         */
+        void resolveDeferred() {
+            for(Deferred d : deferred) {
+                EObject target = resolve(d.address);
+                if(target == null) {
+                    continue;
+                }
+                
+                if(d.feature.isMany()) {
+                    EList<Object> list = getList(d.eObject, d.feature);
+                    if(!list.contains(target)) {
+                        list.add(target);
+                    }
+                }
+                else if(d.eObject.eGet(d.feature) == null) {
+                    d.eObject.eSet(d.feature, target);
+                }
+            }
+            
+            deferred.clear();
+        }
+        
+        private EObject resolve(String address) {
+            int index = address.lastIndexOf('#');
+            EObject anchor = ids.get(index == -1 ? address : address.substring(0, index));
+            
+            if(anchor == null || index == -1) {
+                return anchor;
+            }
+            
+            return EcoreUtil.getEObject(anchor, address.substring(index + 1));
+        }
+        
+        private EObject getObject(String address) {
+            EObject eObject = resolve(address);
+            if(eObject == null) {
+                throw new IllegalArgumentException("Object not found: " + address); //$NON-NLS-1$
+            }
+            return eObject;
+        }
+        
+        private void addId(EObject eObject) {
+            if(hasId(eObject)) {
+                ids.put(((IIdentifier)eObject).getId(), eObject);
+            }
+        }
+        
+        private static EStructuralFeature getFeature(EClass eClass, String name) {
+            EStructuralFeature feature = eClass.getEStructuralFeature(name);
+            if(feature == null) {
+                throw new IllegalArgumentException("Unknown feature " + eClass.getName() + "." + name); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            return feature;
+        }
+        
+        private static EClass getEClass(String name) {
+            int index = name.lastIndexOf('#');
+            EPackage ePackage = index == -1 ? IArchimatePackage.eINSTANCE : EPackage.Registry.INSTANCE.getEPackage(name.substring(0, index));
+            Object eClass = ePackage == null ? null : ePackage.getEClassifier(name.substring(index + 1));
+            
+            if(!(eClass instanceof EClass)) {
+                throw new IllegalArgumentException("Unknown class " + name); //$NON-NLS-1$
+            }
+            return (EClass)eClass;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private static EList<Object> getList(EObject eObject, EStructuralFeature feature) {
+            return (EList<Object>)eObject.eGet(feature);
+        }
+        
+        private static void add(EList<Object> list, int position, Object value) {
+            if(position < 0 || position > list.size()) {
+                list.add(value);
+            }
+            else {
+                list.add(position, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,749 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.EStructuralFeature.Setting;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.util.EcoreUtil.Copier;
+import org.eclipse.ui.PlatformUI;
+
+import com.archimatetool.editor.ui.services.EditorManager;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimatePackage;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IDiagramModelConnection;
+import com.archimatetool.model.IDiagramModelObject;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.script.ArchiScriptException;
+import com.archimatetool.script.commands.BatchCommand;
+import com.archimatetool.script.commands.CommandHandler;
+import com.archimatetool.script.commands.DeleteDiagramModelObjectCommand;
+import com.archimatetool.script.commands.DeleteFolderObjectCommand;
+import com.archimatetool.script.commands.DisconnectConnectionCommand;
+import com.archimatetool.script.commands.DisconnectRelationshipCommand;
+import com.archimatetool.script.commands.ScriptCommand;
+import com.archimatetool.script.commands.SetCommand;
+import com.archimatetool.script.commands.SetElementOnDiagramModelObjectCommand;
+
+/**
+ * Model Merger
+ *
+ * Three-way merge of the changes between a base version of a model and another version ("theirs") into a model ("ours")
+ * that has also changed since the base version. The changes are found with ModelDiff and applied as one BatchCommand.
+ *
+ * A change is a conflict if our model has changed the same feature of an object to something else, has removed the object,
+ * or, for a removal, has changed the object or something in it. Conflicts are left as they are in our model unless
+ * the "prefer" option is "theirs". Added objects that reference something not in our model, and removed objects that
+ * are still referenced by something else in our model, are always conflicts.
+ *
+ * @author agent
+ */
+class ModelMerger {
+    
+    static final String PREFER = "prefer"; //$NON-NLS-1$
+    static final String OURS = "ours"; //$NON-NLS-1$
+    static final String THEIRS = "theirs"; //$NON-NLS-1$
+    
+    private IArchimateModel model;
+    private ModelDiff.Index base, theirs, ours;
+    private boolean preferTheirs;
+    
+    private MergeResult result = new MergeResult();
+    
+    // Commands in the order they are run
+    private List<ScriptCommand> addCommands = new ArrayList<>();
+    private List<ScriptCommand> setCommands = new ArrayList<>();
+    private List<ScriptCommand> removeCommands = new ArrayList<>();
+    
+    // Ids of objects that were added, or removed, or changed in our model since the base version
+    private Set<String> theirsAdded = new HashSet<>();
+    private Set<String> theirsRemoved = new HashSet<>();
+    private Set<String> oursChanged = new HashSet<>();
+    
+    // Copies of their added objects that will be added to the model, by id
+    private Map<String, EObject> added = new LinkedHashMap<>();
+    
+    /**
+     * @param options "prefer" "ours" (default) to leave conflicts as they are in the model, or "theirs" to apply them
+     */
+    ModelMerger(IArchimateModel model, IArchimateModel baseModel, IArchimateModel theirModel, Map<?, ?> options) {
+        String prefer = ModelUtil.getStringValueFromMap(options, PREFER, OURS);
+        if(!OURS.equals(prefer) && !THEIRS.equals(prefer)) {
+            throw new ArchiScriptException("prefer must be \"ours\" or \"theirs\": " + prefer); //$NON-NLS-1$
+        }
+        
+        this.model = model;
+        preferTheirs = THEIRS.equals(prefer);
+        
+        base = new ModelDiff.Index(baseModel);
+        theirs = new ModelDiff.Index(theirModel);
+        ours = new ModelDiff.Index(model);
+    }
+    
+    /**
+     * Merge the changes and run them as one command
+     */
+    MergeResult merge() {
+        List<ModelChange> changes = new ModelDiff(base, theirs).getChanges();
+        
+        for(ModelChange change : new ModelDiff(base, ours).getChanges()) {
+            if(!ModelChange.REMOVED.equals(change.getKind())) {
+                oursChanged.add(change.getId());
+            }
+        }
+        
+        for(ModelChange change : changes) {
+            if(ModelChange.ADDED.equals(change.getKind())) {
+                theirsAdded.add(change.getId());
+            }
+            else if(ModelChange.REMOVED.equals(change.getKind())) {
+                theirsRemoved.add(change.getId());
+            }
+        }
+        
+        // Added first so that changes can move objects into added folders and reference added objects
+        mergeAdded(changes);
+        mergeChanged(changes);
+        mergeRemoved(changes);
+        
+        BatchCommand batch = new BatchCommand("merge", model); //$NON-NLS-1$
+        addCommands.forEach(batch::add);
+        setCommands.forEach(batch::add);
+        removeCommands.forEach(batch::add);
+        CommandHandler.executeCommand(batch);
+        
+        return result;
+    }
+    
+    // ====================================== Changed ======================================
+    
+    private void mergeChanged(List<ModelChange> changes) {
+        for(ModelChange change : changes) {
+            if(!ModelChange.CHANGED.equals(change.getKind())) {
+                continue;
+            }
+            
+            EObject eObject = ours.get(change.getId());
+            if(eObject == null) {
+                result.addConflict(change, "Removed in the model"); //$NON-NLS-1$
+                continue;
+            }
+            
+            String ourValue = ours.getFeatures(eObject).get(change.getFeature());
+            
+            // Same change in both
+            if(Objects.equals(ourValue, change.getNewValue())) {
+                continue;
+            }
+            
+            if(!preferTheirs && !Objects.equals(ourValue, change.getOldValue())) {
+                result.addConflict(change, "Changed in the model to " + ourValue); //$NON-NLS-1$
+                continue;
+            }
+            
+            String conflict = addSetCommand(eObject, theirs.get(change.getId()), change);
+            if(conflict != null) {
+                result.addConflict(change, conflict);
+            }
+            else {
+                result.addApplied(change);
+            }
+        }
+    }
+    
+    /**
+     * Add the command to set a feature of an object to its value in their object
+     * @return the reason it can't be set, or null
+     */
+    private String addSetCommand(EObject eObject, EObject theirObject, ModelChange change) {
+        if(ModelDiff.PARENT.equals(change.getFeature())) {
+            return addMoveCommand(eObject, theirObject, change.getNewValue());
+        }
+        
+        if(eObject.eClass() != theirObject.eClass()) {
+            return "Type is different in the model"; //$NON-NLS-1$
+        }
+        
+        EStructuralFeature feature = eObject.eClass().getEStructuralFeature(change.getFeature());
+        
+        if(feature instanceof EAttribute) {
+            if(feature.isMany()) {
+                setCommands.add(createSetListCommand(eObject, feature, new ArrayList<>((List<?>)theirObject.eGet(feature))));
+            }
+            else {
+                setCommands.add(new SetCommand(eObject, feature, theirObject.eGet(feature)));
+            }
+            return null;
+        }
+        
+        EReference reference = (EReference)feature;
+        
+        // Objects without ids are replaced with copies of theirs
+        if(reference.isContainment()) {
+            if(reference.isMany()) {
+                List<Object> values = new ArrayList<>();
+                for(Object child : (List<?>)eObject.eGet(reference)) {
+                    if(ModelDiff.hasId((EObject)child)) {
+                        values.add(child);
+                    }
+                }
+                for(Object child : (List<?>)theirObject.eGet(reference)) {
+                    if(!ModelDiff.hasId((EObject)child)) {
+                        values.add(EcoreUtil.copy((EObject)child));
+                    }
+                }
+                setCommands.add(createSetListCommand(eObject, reference, values));
+            }
+            else {
+                EObject value = (EObject)theirObject.eGet(reference);
+                setCommands.add(new SetCommand(eObject, reference, value != null ? EcoreUtil.copy(value) : null));
+            }
+            return null;
+        }
+        
+        // References are to our objects with the same ids
+        if(reference.isMany()) {
+            List<Object> values = new ArrayList<>();
+            for(Object target : (List<?>)theirObject.eGet(reference)) {
+                EObject ourTarget = resolve(ModelJournal.getAddress((EObject)target));
+                if(ourTarget == null) {
+                    return "References " + ModelJournal.getAddress((EObject)target) + " which is not in the model"; //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                values.add(ourTarget);
+            }
+            setCommands.add(createSetListCommand(eObject, reference, values));
+            return null;
+        }
+        
+        EObject target = (EObject)theirObject.eGet(reference);
+        EObject ourTarget = target != null ? resolve(ModelJournal.getAddress(target)) : null;
+        if(target != null && ourTarget == null) {
+            return "References " + change.getNewValue() + " which is not in the model"; //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        
+        if(eObject instanceof IDiagramModelArchimateObject && reference == IArchimatePackage.Literals.DIAGRAM_MODEL_ARCHIMATE_OBJECT__ARCHIMATE_ELEMENT) {
+            setCommands.add(new SetElementOnDiagramModelObjectCommand((IArchimateElement)ourTarget, (IDiagramModelArchimateObject)eObject, false));
+        }
+        else {
+            setCommands.add(createSetReferenceCommand(eObject, reference, ourTarget));
+        }
+        
+        return null;
+    }
+    
+    private ScriptCommand createSetReferenceCommand(EObject eObject, EReference reference, EObject newValue) {
+        return new ScriptCommand("set", eObject) { //$NON-NLS-1$
+            Object oldValue = eObject.eGet(reference);
+            
+            @Override
+            public void perform() {
+                set(newValue);
+            }
+            
+            @Override
+            public void undo() {
+                set(oldValue);
+            }
+            
+            private void set(Object value) {
+                // Connections and relationships are disconnected and reconnected to update the objects they connect and the UI
+                if(eObject instanceof IDiagramModelConnection) {
+                    ((IDiagramModelConnection)eObject).disconnect();
+                    eObject.eSet(reference, value);
+                    ((IDiagramModelConnection)eObject).reconnect();
+                }
+                else if(eObject instanceof IArchimateRelationship) {
+                    ((IArchimateRelationship)eObject).disconnect();
+                    eObject.eSet(reference, value);
+                    ((IArchimateRelationship)eObject).reconnect();
+                }
+                else {
+                    eObject.eSet(reference, value);
+                }
+            }
+        };
+    }
+    
+    private ScriptCommand createSetListCommand(EObject eObject, EStructuralFeature feature, List<Object> newValues) {
+        return new ScriptCommand("set", eObject) { //$NON-NLS-1$
+            List<Object> oldValues = new ArrayList<>(getList());
+            
+            @Override
+            public void perform() {
+                set(newValues);
+            }
+            
+            @Override
+            public void undo() {
+                set(oldValues);
+            }
+            
+            private void set(List<Object> values) {
+                EList<Object> list = getList();
+                list.clear();
+                list.addAll(values);
+            }
+            
+            @SuppressWarnings("unchecked")
+            private EList<Object> getList() {
+                return (EList<Object>)eObject.eGet(feature);
+            }
+        };
+    }
+    
+    /**
+     * Add the command to move an object to the folder or diagram object it's in in their model
+     */
+    private String addMoveCommand(EObject eObject, EObject theirObject, String newParentAddress) {
+        EObject newParent = resolve(newParentAddress);
+        if(newParent == null) {
+            return "Parent " + newParentAddress + " is not in the model"; //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        
+        EStructuralFeature feature = newParent.eClass().getEStructuralFeature(theirObject.eContainmentFeature().getName());
+        if(feature == null || !feature.isMany()) {
+            return "Parent " + newParentAddress + " can't contain the object"; //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        
+        setCommands.add(new ScriptCommand("move", eObject) { //$NON-NLS-1$
+            EObject oldParent;
+            EStructuralFeature oldFeature;
+            int oldIndex;
+            
+            @Override
+            public void perform() {
+                oldParent = eObject.eContainer();
+                oldFeature = eObject.eContainmentFeature();
+                oldIndex = getList(oldParent, oldFeature).indexOf(eObject);
+                getList(newParent, feature).add(eObject);
+            }
+            
+            @Override
+            public void undo() {
+                getList(oldParent, oldFeature).add(oldIndex, eObject);
+            }
+        });
+        
+        return null;
+    }
+    
+    /**
+     * @return our object at an address, or the copy of their added object that will be added to the model, or null
+     */
+    private EObject resolve(String address) {
+        EObject eObject = ours.resolve(address);
+        if(eObject != null || address == null) {
+            return eObject;
+        }
+        
+        int index = address.indexOf('#');
+        if(index == -1) {
+            return added.get(address);
+        }
+        
+        EObject anchor = added.get(address.substring(0, index));
+        return anchor != null ? EcoreUtil.getEObject(anchor, address.substring(index + 1)) : null;
+    }
+    
+    // ====================================== Added ======================================
+    
+    private void mergeAdded(List<ModelChange> changes) {
+        // Their added objects that are not in another added object, and copies of them and everything in them
+        Map<String, ModelChange> roots = new LinkedHashMap<>();
+        Map<EObject, EObject> copies = new IdentityHashMap<>();
+        Map<EObject, String> rootIds = new IdentityHashMap<>();
+        
+        for(ModelChange change : changes) {
+            if(!ModelChange.ADDED.equals(change.getKind())) {
+                continue;
+            }
+            
+            // In another added object, unless we have also added that
+            EObject theirObject = theirs.get(change.getId());
+            String parentId = ModelDiff.hasId(theirObject.eContainer()) ? ((IIdentifier)theirObject.eContainer()).getId() : null;
+            if(theirsAdded.contains(parentId) && ours.get(parentId) == null) {
+                continue;
+            }
+            
+            EObject eObject = ours.get(change.getId());
+            if(eObject != null) {
+                // Same object added in both
+                if(!ours.getFeatures(eObject).equals(theirs.getFeatures(theirObject))) {
+                    result.addConflict(change, "Also added in the model"); //$NON-NLS-1$
+                }
+                continue;
+            }
+            
+            if(ours.resolve(ModelJournal.getAddress(theirObject.eContainer())) == null) {
+                result.addConflict(change, "Parent " + ModelJournal.getAddress(theirObject.eContainer()) + " is not in the model"); //$NON-NLS-1$ //$NON-NLS-2$
+                continue;
+            }
+            
+            roots.put(change.getId(), change);
+            
+            Copier copier = new Copier(true, false);
+            copier.copy(theirObject);
+            for(Entry<EObject, EObject> entry : copier.entrySet()) {
+                copies.put(entry.getKey(), entry.getValue());
+                rootIds.put(entry.getKey(), change.getId());
+            }
+        }
+        
+        // Drop added objects that reference something that isn't in the model or in another added object, until none are dropped
+        for(boolean dropped = true; dropped;) {
+            dropped = false;
+            
+            for(Iterator<ModelChange> iter = roots.values().iterator(); iter.hasNext();) {
+                ModelChange change = iter.next();
+                String missing = findMissingReference(theirs.get(change.getId()), rootIds, roots);
+                if(missing != null) {
+                    iter.remove();
+                    result.addConflict(change, "References " + missing + " which is not in the model"); //$NON-NLS-1$ //$NON-NLS-2$
+                    dropped = true;
+                }
+            }
+        }
+        
+        // Set the copies' references and add them
+        for(ModelChange change : roots.values()) {
+            EObject theirObject = theirs.get(change.getId());
+            
+            for(Iterator<EObject> iter = EcoreUtil.getAllContents(Collections.singleton(theirObject)); iter.hasNext();) {
+                EObject eObject = iter.next();
+                if(ModelDiff.hasId(eObject)) {
+                    added.put(((IIdentifier)eObject).getId(), copies.get(eObject));
+                }
+            }
+            
+            for(Iterator<EObject> iter = EcoreUtil.getAllContents(Collections.singleton(theirObject)); iter.hasNext();) {
+                EObject eObject = iter.next();
+                setReferences(eObject, copies.get(eObject), copies);
+            }
+            
+            addCommands.add(createAddCommand(copies.get(theirObject), ours.resolve(ModelJournal.getAddress(theirObject.eContainer())),
+                    theirObject.eContainmentFeature().getName()));
+        }
+        
+        // Report everything in the added objects as applied
+        for(ModelChange change : changes) {
+            if(ModelChange.ADDED.equals(change.getKind())) {
+                String rootId = rootIds.get(theirs.get(change.getId()));
+                if(rootId != null && roots.containsKey(rootId)) {
+                    result.addApplied(change);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return the address of something an added object or its contents reference that won't be in the model, or null
+     */
+    private String findMissingReference(EObject theirObject, Map<EObject, String> rootIds, Map<String, ModelChange> roots) {
+        for(Iterator<EObject> iter = EcoreUtil.getAllContents(Collections.singleton(theirObject)); iter.hasNext();) {
+            EObject eObject = iter.next();
+            
+            for(EObject target : getReferences(eObject)) {
+                String rootId = rootIds.get(target);
+                if(rootId != null ? !roots.containsKey(rootId) : ours.resolve(ModelJournal.getAddress(target)) == null) {
+                    return ModelJournal.getAddress(target);
+                }
+            }
+        }
+        
+        return null;
+    }
+    
+    private static List<EObject> getReferences(EObject eObject) {
+        List<EObject> targets = new ArrayList<>();
+        
+        for(EReference reference : eObject.eClass().getEAllReferences()) {
+            if(reference.isContainment() || !ModelDiff.isCompared(reference) || !eObject.eIsSet(reference)) {
+                continue;
+            }
+            
+            if(reference.isMany()) {
+                for(Object target : (List<?>)eObject.eGet(reference)) {
+                    targets.add((EObject)target);
+                }
+            }
+            else if(eObject.eGet(reference) != null) {
+                targets.add((EObject)eObject.eGet(reference));
+            }
+        }
+        
+        return targets;
+    }
+    
+    /**
+     * Set the references of a copy to the other copies or our objects with the same ids. The copy isn't in the model yet.
+     */
+    @SuppressWarnings("unchecked")
+    private void setReferences(EObject theirObject, EObject copy, Map<EObject, EObject> copies) {
+        for(EReference reference : theirObject.eClass().getEAllReferences()) {
+            if(reference.isContainment() || !ModelDiff.isCompared(reference) || !theirObject.eIsSet(reference)) {
+                continue;
+            }
+            
+            if(reference.isMany()) {
+                EList<Object> list = (EList<Object>)copy.eGet(reference);
+                list.clear();
+                for(Object target : (List<?>)theirObject.eGet(reference)) {
+                    list.add(getOurs((EObject)target, copies));
+                }
+            }
+            else {
+                copy.eSet(reference, getOurs((EObject)theirObject.eGet(reference), copies));
+            }
+        }
+    }
+    
+    private EObject getOurs(EObject theirObject, Map<EObject, EObject> copies) {
+        EObject copy = copies.get(theirObject);
+        return copy != null ? copy : ours.resolve(ModelJournal.getAddress(theirObject));
+    }
+    
+    private ScriptCommand createAddCommand(EObject eObject, EObject parent, String featureName) {
+        EStructuralFeature feature = parent.eClass().getEStructuralFeature(featureName);
+        
+        // Connections in the added object, which may connect to objects outside it
+        List<IDiagramModelConnection> connections = new ArrayList<>();
+        for(Iterator<EObject> iter = EcoreUtil.getAllContents(Collections.singleton(eObject)); iter.hasNext();) {
+            EObject child = iter.next();
+            if(child instanceof IDiagramModelConnection) {
+                connections.add((IDiagramModelConnection)child);
+            }
+        }
+        
+        return new ScriptCommand("add", parent) { //$NON-NLS-1$
+            @Override
+            public void perform() {
+                // A connection is added to its source by connecting it
+                if(!(eObject instanceof IDiagramModelConnection)) {
+                    getList(parent, feature).add(eObject);
+                }
+                
+                if(eObject instanceof IArchimateRelationship) {
+                    ((IArchimateRelationship)eObject).reconnect();
+                }
+                
+                for(IDiagramModelConnection connection : connections) {
+                    connection.reconnect();
+                }
+            }
+            
+            @Override
+            public void undo() {
+                for(IDiagramModelConnection connection : connections) {
+                    connection.disconnect();
+                }
+                
+                if(eObject instanceof IArchimateRelationship) {
+                    ((IArchimateRelationship)eObject).disconnect();
+                }
+                
+                if(!(eObject instanceof IDiagramModelConnection)) {
+                    getList(parent, feature).remove(eObject);
+                }
+            }
+        };
+    }
+    
+    // ====================================== Removed ======================================
+    
+    private void mergeRemoved(List<ModelChange> changes) {
+        // Our objects to remove that are not in another removed object
+        Map<EObject, ModelChange> roots = new LinkedHashMap<>();
+        
+        for(ModelChange change : changes) {
+            if(!ModelChange.REMOVED.equals(change.getKind())) {
+                continue;
+            }
+            
+            EObject baseObject = base.get(change.getId());
+            EObject baseParent = baseObject.eContainer();
+            if(baseParent instanceof IIdentifier && theirsRemoved.contains(((IIdentifier)baseParent).getId())) {
+                continue;
+            }
+            
+            EObject eObject = ours.get(change.getId());
+            
+            // Already removed
+            if(eObject == null) {
+                continue;
+            }
+            
+            if(!preferTheirs && isChanged(eObject)) {
+                result.addConflict(change, "Changed in the model"); //$NON-NLS-1$
+                continue;
+            }
+            
+            roots.put(eObject, change);
+        }
+        
+        // Keep objects that are still referenced by something that isn't removed, until none are kept
+        for(boolean kept = true; kept;) {
+            kept = false;
+            
+            Set<EObject> removing = Collections.newSetFromMap(new IdentityHashMap<>());
+            Map<EObject, EObject> rootOf = new IdentityHashMap<>();
+            for(EObject root : roots.keySet()) {
+                for(Iterator<EObject> iter = EcoreUtil.getAllContents(Collections.singleton(root)); iter.hasNext();) {
+                    EObject eObject = iter.next();
+                    removing.add(eObject);
+                    rootOf.put(eObject, root);
+                }
+            }
+            
+            Map<EObject, Collection<Setting>> usages = EcoreUtil.UsageCrossReferencer.findAll(removing, model);
+            
+            for(Entry<EObject, Collection<Setting>> entry : usages.entrySet()) {
+                for(Setting setting : entry.getValue()) {
+                    EObject user = setting.getEObject();
+                    if(!removing.contains(user) && ModelDiff.isCompared(setting.getEStructuralFeature())) {
+                        EObject root = rootOf.get(entry.getKey());
+                        ModelChange change = roots.remove(root);
+                        if(change != null) {
+                            result.addConflict(change, "Still referenced by " + ModelJournal.getAddress(user)); //$NON-NLS-1$
+                            kept = true;
+                        }
+                    }
+                }
+            }
+        }
+        
+        // Connections and relationships first, then diagram objects, then the rest
+        List<EObject> ordered = new ArrayList<>(roots.keySet());
+        ordered.sort((o1, o2) -> Integer.compare(getRemoveOrder(o1), getRemoveOrder(o2)));
+        
+        for(EObject eObject : ordered) {
+            addRemoveCommands(eObject);
+        }
+        
+        // Report everything in the removed objects as applied
+        Set<String> removedIds = new HashSet<>();
+        for(EObject root : roots.keySet()) {
+            for(Iterator<EObject> iter = EcoreUtil.getAllContents(Collections.singleton(root)); iter.hasNext();) {
+                EObject eObject = iter.next();
+                if(ModelDiff.hasId(eObject)) {
+                    removedIds.add(((IIdentifier)eObject).getId());
+                }
+            }
+        }
+        
+        for(ModelChange change : changes) {
+            if(ModelChange.REMOVED.equals(change.getKind()) && removedIds.contains(change.getId())) {
+                result.addApplied(change);
+            }
+        }
+    }
+    
+    /**
+     * @return true if we have changed the object or anything in it, or added something to it
+     */
+    private boolean isChanged(EObject eObject) {
+        for(Iterator<EObject> iter = EcoreUtil.getAllContents(Collections.singleton(eObject)); iter.hasNext();) {
+            EObject child = iter.next();
+            if(ModelDiff.hasId(child) && oursChanged.contains(((IIdentifier)child).getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static int getRemoveOrder(EObject eObject) {
+        if(eObject instanceof IDiagramModelConnection) {
+            return 0;
+        }
+        if(eObject instanceof IArchimateRelationship) {
+            return 1;
+        }
+        if(eObject instanceof IDiagramModelObject) {
+            return 2;
+        }
+        return 3;
+    }
+    
+    private void addRemoveCommands(EObject eObject) {
+        // Disconnect the connections in the object, which may connect to objects outside it
+        for(Iterator<EObject> iter = EcoreUtil.getAllContents(Collections.singleton(eObject)); iter.hasNext();) {
+            EObject child = iter.next();
+            
+            if(child instanceof IDiagramModelConnection) {
+                removeCommands.add(new DisconnectConnectionCommand((IDiagramModelConnection)child));
+            }
+            
+            if(child instanceof IArchimateRelationship) {
+                removeCommands.add(new DisconnectRelationshipCommand((IArchimateRelationship)child));
+            }
+            
+            if(child instanceof IDiagramModel && PlatformUI.isWorkbenchRunning()) {
+                EditorManager.closeDiagramEditor((IDiagramModel)child);
+            }
+        }
+        
+        // Disconnecting a connection removes it
+        if(eObject instanceof IDiagramModelConnection) {
+            return;
+        }
+        
+        if(eObject instanceof IDiagramModelObject) {
+            removeCommands.add(new DeleteDiagramModelObjectCommand((IDiagramModelObject)eObject));
+        }
+        else if(eObject.eContainer() instanceof IFolder) {
+            removeCommands.add(new DeleteFolderObjectCommand(eObject));
+        }
+        else {
+            EObject parent = eObject.eContainer();
+            EStructuralFeature feature = eObject.eContainmentFeature();
+            
+            removeCommands.add(new ScriptCommand("delete", eObject) { //$NON-NLS-1$
+                int index;
+                
+                @Override
+                public void perform() {
+                    index = getList(parent, feature).indexOf(eObject);
+                    if(index != -1) {
+                        getList(parent, feature).remove(index);
+                    }
+                }
+                
+                @Override
+                public void undo() {
+                    if(index != -1) {
+                        getList(parent, feature).add(index, eObject);
+                    }
+                }
+            });
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static EList<EObject> getList(EObject eObject, EStructuralFeature feature) {
+        return (EList<EObject>)eObject.eGet(feature);
+    }
+}
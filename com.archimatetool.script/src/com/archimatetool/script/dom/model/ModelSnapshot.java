@@ -0,0 +1,542 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EDataType;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.util.InternalEList;
+import org.eclipse.gef.commands.CommandStack;
+
+import com.archimatetool.editor.model.IArchiveManager;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.ModelVersion;
+import com.archimatetool.script.commands.CommandHandler;
+
+/**
+ * Model Snapshot
+ *
+ * Writes and reads a model in a compact binary form that loads much faster than the XML model file,
+ * for use as a cache of a model that scripts only need to read. The model file remains the source of truth.
+ *
+ * Objects are written depth first. Each object is its class number followed by its set features, by feature number.
+ * Containments are written in place and references are the number of the object in the order it was written,
+ * so no ids have to be looked up when loading. Every string is written once and after that as its number in a string table,
+ * which makes repeated names, property keys and values cheap. Attribute values that are not strings are written as strings.
+ *
+ * The snapshot records the size and time of the model file it was taken from (and the size of its journal, if any)
+ * so that a script can tell if the snapshot is out of date. If the model has changes that are not saved to the model file
+ * (the command stack is dirty, or the script or the journal has changes that are not saved) the size and time are not recorded,
+ * so the snapshot is never taken as current.
+ *
+ * @author agent
+ */
+class ModelSnapshot {
+    
+    private static final String MAGIC = "JARCHI-SNAPSHOT"; //$NON-NLS-1$
+    private static final int VERSION = 1;
+    
+    // String references
+    private static final int NULL = 0;
+    private static final int NEW = 1;
+    
+    private ModelSnapshot() {
+    }
+    
+    // ====================================== Saving ======================================
+    
+    /**
+     * Write a snapshot of a model to a file. The file is written to a temporary file first and then replaces the file.
+     */
+    static void save(IArchimateModel model, File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null) {
+            parent.mkdirs();
+        }
+        
+        File temp = new File(parent, file.getName() + ".saving"); //$NON-NLS-1$
+        
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath()), 1 << 16))) {
+                new Writer(out).write(model);
+            }
+            
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+    
+    private static class Writer {
+        private DataOutputStream out;
+        private Map<String, Integer> strings = new HashMap<>();
+        private Map<EClass, Integer> classes = new IdentityHashMap<>();
+        private Map<EObject, Integer> objects = new IdentityHashMap<>();
+        private List<EObject> order = new ArrayList<>();
+        
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+        
+        void write(IArchimateModel model) throws IOException {
+            out.writeUTF(MAGIC);
+            writeInt(VERSION);
+            writeString(ModelVersion.VERSION);
+            
+            // The model file the snapshot was taken from.
+            // If the model has unsaved changes the snapshot isn't the same as the file, so the file's size and time are not recorded.
+            File file = model.getFile();
+            boolean saved = file != null && isSaved(model);
+            writeString(file != null ? file.getAbsolutePath() : null);
+            writeLong(saved ? file.length() : -1);
+            writeLong(saved ? file.lastModified() : -1);
+            writeLong(saved ? ModelJournal.getFile(file).length() : -1);
+            
+            // Number all the objects first so that references can be written as numbers
+            number(model);
+            writeInt(order.size());
+            
+            writeObject(model);
+        }
+        
+        private void number(EObject eObject) {
+            objects.put(eObject, order.size());
+            order.add(eObject);
+            
+            for(EObject child : eObject.eContents()) {
+                number(child);
+            }
+        }
+        
+        private void writeObject(EObject eObject) throws IOException {
+            EClass eClass = eObject.eClass();
+            writeClass(eClass);
+            
+            EList<EStructuralFeature> features = eClass.getEAllStructuralFeatures();
+            
+            for(int i = 0; i < features.size(); i++) {
+                EStructuralFeature feature = features.get(i);
+                
+                if(!isPersisted(feature) || !eObject.eIsSet(feature)) {
+                    continue;
+                }
+                
+                // 0 ends the features
+                writeInt(i + 1);
+                
+                Object value = eObject.eGet(feature, false);
+                
+                if(feature.isMany()) {
+                    List<?> list = (List<?>)value;
+                    
+                    // References to objects that aren't in the model are left out
+                    if(feature instanceof EReference && !((EReference)feature).isContainment()) {
+                        List<Integer> refs = new ArrayList<>(list.size());
+                        for(Object item : list) {
+                            Integer ref = objects.get(item);
+                            if(ref != null) {
+                                refs.add(ref);
+                            }
+                        }
+                        writeInt(refs.size());
+                        for(int ref : refs) {
+                            writeInt(ref);
+                        }
+                    }
+                    else {
+                        writeInt(list.size());
+                        for(Object item : list) {
+                            writeValue(feature, item);
+                        }
+                    }
+                }
+                else {
+                    writeValue(feature, value);
+                }
+            }
+            
+            writeInt(0);
+        }
+        
+        private void writeValue(EStructuralFeature feature, Object value) throws IOException {
+            if(feature instanceof EAttribute) {
+                EDataType type = ((EAttribute)feature).getEAttributeType();
+                writeString(value instanceof String ? (String)value : EcoreUtil.convertToString(type, value));
+            }
+            else if(((EReference)feature).isContainment()) {
+                writeObject((EObject)value);
+            }
+            else {
+                // 0 is an object that isn't in the model
+                Integer ref = objects.get(value);
+                writeInt(ref != null ? ref + 1 : 0);
+            }
+        }
+        
+        private void writeClass(EClass eClass) throws IOException {
+            Integer index = classes.get(eClass);
+            
+            if(index != null) {
+                writeInt(index + 1);
+            }
+            else {
+                classes.put(eClass, classes.size());
+                writeInt(0);
+                writeString(eClass.getEPackage().getNsURI());
+                writeString(eClass.getName());
+            }
+        }
+        
+        private void writeString(String s) throws IOException {
+            if(s == null) {
+                writeInt(NULL);
+                return;
+            }
+            
+            Integer index = strings.get(s);
+            
+            if(index != null) {
+                writeInt(index + 2);
+            }
+            else {
+                strings.put(s, strings.size());
+                writeInt(NEW);
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        
+        private void writeInt(int value) throws IOException {
+            while((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+        
+        private void writeLong(long value) throws IOException {
+            out.writeLong(value);
+        }
+    }
+    
+    /**
+     * @return true if the model has no changes that are not saved to its file
+     */
+    private static boolean isSaved(IArchimateModel model) {
+        CommandStack stack = (CommandStack)model.getAdapter(CommandStack.class);
+        if(stack != null && stack.isDirty()) {
+            return false;
+        }
+        
+        if(CommandHandler.hasPendingCommands(model)) {
+            return false;
+        }
+        
+        ModelJournal journal = ModelJournal.get(model);
+        return journal == null || journal.getPendingCount() == 0;
+    }
+    
+    // ====================================== Loading ======================================
+    
+    /**
+     * Load a model from a snapshot file. The snapshot might be out of date, so the model has no file
+     * and can't be saved over the model file it was taken from by mistake.
+     */
+    static IArchimateModel load(File file) throws IOException {
+        IArchimateModel model;
+        String source;
+        
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 1 << 16))) {
+            Reader reader = new Reader(in, file);
+            model = reader.read();
+            source = reader.source;
+        }
+        
+        IArchiveManager archiveManager = IArchiveManager.FACTORY.createArchiveManager(model);
+        model.setAdapter(IArchiveManager.class, archiveManager);
+        
+        // Images are not in the snapshot so load them from the model file, which is the model's file only while they are loaded
+        if(source != null && new File(source).exists()) {
+            model.setFile(new File(source));
+            try {
+                archiveManager.loadImages();
+            }
+            finally {
+                model.setFile(null);
+            }
+        }
+        
+        return model;
+    }
+    
+    /**
+     * @return true if a snapshot was taken from the current contents of a model file (and its journal)
+     */
+    static boolean isCurrent(File snapshotFile, File modelFile) throws IOException {
+        if(!snapshotFile.exists() || !modelFile.exists()) {
+            return false;
+        }
+        
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile.toPath())))) {
+            Reader reader = new Reader(in, snapshotFile);
+            reader.readHeader();
+            
+            return modelFile.getAbsolutePath().equals(reader.source)
+                    && modelFile.length() == reader.length
+                    && modelFile.lastModified() == reader.lastModified
+                    && ModelJournal.getFile(modelFile).length() == reader.journalLength;
+        }
+        catch(IOException ex) {
+            // Not a snapshot or not this version
+            return false;
+        }
+    }
+    
+    private static class Reader {
+        private DataInputStream in;
+        private File file;
+        private List<String> strings = new ArrayList<>();
+        private List<EClass> classes = new ArrayList<>();
+        private EObject[] objects;
+        private int count;
+        
+        private String source;
+        private long length, lastModified, journalLength;
+        
+        // References are set when all the objects have been created
+        private List<Runnable> references = new ArrayList<>();
+        
+        Reader(DataInputStream in, File file) {
+            this.in = in;
+            this.file = file;
+        }
+        
+        void readHeader() throws IOException {
+            if(!MAGIC.equals(in.readUTF()) || readInt() != VERSION) {
+                throw new IOException("Not a model snapshot: " + file); //$NON-NLS-1$
+            }
+            
+            String modelVersion = readString();
+            if(!ModelVersion.VERSION.equals(modelVersion)) {
+                throw new IOException("Model snapshot is from a different model version (" + modelVersion + "): " + file); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            
+            source = readString();
+            length = in.readLong();
+            lastModified = in.readLong();
+            journalLength = in.readLong();
+        }
+        
+        IArchimateModel read() throws IOException {
+            readHeader();
+            
+            objects = new EObject[readInt()];
+            
+            EObject root = readObject();
+            if(!(root instanceof IArchimateModel)) {
+                throw new IOException("Model snapshot does not contain a model: " + file); //$NON-NLS-1$
+            }
+            
+            for(Runnable reference : references) {
+                reference.run();
+            }
+            
+            return (IArchimateModel)root;
+        }
+        
+        private EObject readObject() throws IOException {
+            EClass eClass = readClass();
+            EObject eObject = EcoreUtil.create(eClass);
+            
+            if(count >= objects.length) {
+                throw new IOException("Model snapshot is corrupt: " + file); //$NON-NLS-1$
+            }
+            objects[count++] = eObject;
+            
+            EList<EStructuralFeature> features = eClass.getEAllStructuralFeatures();
+            
+            for(int i = readInt(); i != 0; i = readInt()) {
+                if(i > features.size()) {
+                    throw new IOException("Model snapshot is corrupt: " + file); //$NON-NLS-1$
+                }
+                
+                EStructuralFeature feature = features.get(i - 1);
+                
+                if(feature instanceof EAttribute) {
+                    readAttribute(eObject, (EAttribute)feature);
+                }
+                else if(((EReference)feature).isContainment()) {
+                    readContainment(eObject, (EReference)feature);
+                }
+                else {
+                    readReference(eObject, (EReference)feature);
+                }
+            }
+            
+            return eObject;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void readAttribute(EObject eObject, EAttribute feature) throws IOException {
+            EDataType type = feature.getEAttributeType();
+            boolean isString = type.getInstanceClass() == String.class;
+            
+            if(feature.isMany()) {
+                int size = readInt();
+                List<Object> values = new ArrayList<>(size);
+                for(int i = 0; i < size; i++) {
+                    String s = readString();
+                    values.add(isString ? s : EcoreUtil.createFromString(type, s));
+                }
+                ((InternalEList<Object>)eObject.eGet(feature)).addAllUnique(values);
+            }
+            else {
+                String s = readString();
+                eObject.eSet(feature, isString ? s : EcoreUtil.createFromString(type, s));
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void readContainment(EObject eObject, EReference feature) throws IOException {
+            if(feature.isMany()) {
+                int size = readInt();
+                List<EObject> children = new ArrayList<>(size);
+                for(int i = 0; i < size; i++) {
+                    children.add(readObject());
+                }
+                // Adding all at once without the uniqueness check, which is slow for a large folder
+                ((InternalEList<EObject>)eObject.eGet(feature)).addAllUnique(children);
+            }
+            else {
+                eObject.eSet(feature, readObject());
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void readReference(EObject eObject, EReference feature) throws IOException {
+            if(feature.isMany()) {
+                int size = readInt();
+                int[] refs = new int[size];
+                for(int i = 0; i < size; i++) {
+                    refs[i] = readInt();
+                }
+                
+                references.add(() -> {
+                    List<EObject> targets = new ArrayList<>(refs.length);
+                    for(int ref : refs) {
+                        if(ref < count && objects[ref] != null) {
+                            targets.add(objects[ref]);
+                        }
+                    }
+                    ((InternalEList<EObject>)eObject.eGet(feature)).addAllUnique(targets);
+                });
+            }
+            else {
+                int ref = readInt();
+                if(ref > 0 && ref <= objects.length) {
+                    references.add(() -> {
+                        if(objects[ref - 1] != null) {
+                            eObject.eSet(feature, objects[ref - 1]);
+                        }
+                    });
+                }
+            }
+        }
+        
+        private EClass readClass() throws IOException {
+            int index = readInt();
+            
+            if(index > 0) {
+                if(index > classes.size()) {
+                    throw new IOException("Model snapshot is corrupt: " + file); //$NON-NLS-1$
+                }
+                return classes.get(index - 1);
+            }
+            
+            String nsURI = readString();
+            String name = readString();
+            
+            EPackage ePackage = EPackage.Registry.INSTANCE.getEPackage(nsURI);
+            EClassifier eClassifier = ePackage != null ? ePackage.getEClassifier(name) : null;
+            if(!(eClassifier instanceof EClass)) {
+                throw new IOException("Model snapshot has an unknown class " + name + ": " + file); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            
+            classes.add((EClass)eClassifier);
+            return (EClass)eClassifier;
+        }
+        
+        private String readString() throws IOException {
+            int index = readInt();
+            
+            if(index == NULL) {
+                return null;
+            }
+            
+            if(index == NEW) {
+                byte[] bytes = new byte[readInt()];
+                in.readFully(bytes);
+                String s = new String(bytes, StandardCharsets.UTF_8);
+                strings.add(s);
+                return s;
+            }
+            
+            if(index - 2 >= strings.size()) {
+                throw new IOException("Model snapshot is corrupt: " + file); //$NON-NLS-1$
+            }
+            
+            return strings.get(index - 2);
+        }
+        
+        private int readInt() throws IOException {
+            int value = 0;
+            
+            for(int shift = 0; shift < 35; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            
+            throw new IOException("Model snapshot is corrupt: " + file); //$NON-NLS-1$
+        }
+    }
+    
+    private static boolean isPersisted(EStructuralFeature feature) {
+        return !feature.isTransient() && !feature.isDerived() && !(feature instanceof EReference && ((EReference)feature).isContainer());
+    }
+}
@@ -5,8 +5,11 @@
  */
 package com.archimatetool.script.dom.model;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -20,14 +23,24 @@ import com.archimatetool.model.FolderType;
 import com.archimatetool.model.IArchimateConcept;
 import com.archimatetool.model.IArchimateModel;
 import com.archimatetool.model.IArchimateModelObject;
-import com.archimatetool.model.IArchimatePackage;
 import com.archimatetool.model.IArchimateRelationship;
 import com.archimatetool.model.IBounds;
 import com.archimatetool.model.IDiagramModelContainer;
 import com.archimatetool.model.IDiagramModelObject;
 import com.archimatetool.model.IFolder;
-import com.archimatetool.model.util.ArchimateModelUtils;
+import com.archimatetool.model.IProperty;
 import com.archimatetool.script.ArchiScriptException;
+import com.archimatetool.script.commands.AddElementCommand;
+import com.archimatetool.script.commands.AddPropertyCommand;
+import com.archimatetool.script.commands.BatchCommand;
+import com.archimatetool.script.commands.DeleteDiagramModelObjectCommand;
+import com.archimatetool.script.commands.DeleteFolderObjectCommand;
+import com.archimatetool.script.commands.DisconnectConnectionCommand;
+import com.archimatetool.script.commands.RemovePropertiesCommand;
+import com.archimatetool.script.commands.ScriptCommand;
+import com.archimatetool.script.commands.SetCommand;
+import com.archimatetool.script.commands.SetElementOnDiagramModelObjectCommand;
+import com.archimatetool.script.commands.SetPropertiesCommand;
 
 /**
  * Model Utils
@@ -134,25 +147,25 @@ class ModelUtil {
      * @return false if trying to set an invalid type
      */
     static boolean isAllowedSetType(IArchimateConcept concept, String type) {
-        EClass eClass = (EClass)IArchimatePackage.eINSTANCE.getEClassifier(getCamelCase(type));
+        EClass eClass = RelationshipRules.getEClass(type);
         
         // Check source relationships
         for(IArchimateRelationship rel : concept.getSourceRelationships()) {
-            if(!ArchimateModelUtils.isValidRelationship(eClass, rel.getTarget().eClass(), rel.eClass())) {
+            if(!RelationshipRules.isValidRelationship(eClass, rel.getTarget().eClass(), rel.eClass())) {
                 return false;
             }
         }
         
         // Check target relationships
         for(IArchimateRelationship rel : concept.getTargetRelationships()) {
-            if(!ArchimateModelUtils.isValidRelationship(rel.getSource().eClass(), eClass, rel.eClass())) {
+            if(!RelationshipRules.isValidRelationship(rel.getSource().eClass(), eClass, rel.eClass())) {
                 return false;
             }
         }
         
         // If a relationship, check ends
         if(concept instanceof IArchimateRelationship) {
-            if(!ArchimateModelUtils.isValidRelationship(((IArchimateRelationship)concept).getSource(),
+            if(!RelationshipRules.isValidRelationship(((IArchimateRelationship)concept).getSource(),
                     ((IArchimateRelationship)concept).getTarget(), eClass)) {
                 return false;
             }
@@ -209,6 +222,17 @@ class ModelUtil {
         return (map != null && map.get(key) instanceof Number) ? ((Number)map.get(key)).intValue() : defaultValue;
     }
 
+    /**
+     * Get a double value from a property map.
+     * @param map
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    static double getDoubleValueFromMap(Map<?, ?> map, String key, double defaultValue) {
+        return (map != null && map.get(key) instanceof Number) ? ((Number)map.get(key)).doubleValue() : defaultValue;
+    }
+
     /**
      * Get a string value from a property map.
      * @param map
@@ -220,6 +244,83 @@ class ModelUtil {
         return (map != null && map.get(key) instanceof String) ? (String)map.get(key) : defaultValue;
     }
     
+    /**
+     * Get a list of string values from a property map.
+     * The value can be a single string, a collection, a JS array or a Java array.
+     * @param map
+     * @param key
+     * @return the list of strings, empty if not set
+     */
+    static List<String> getStringListFromMap(Map<?, ?> map, String key) {
+        List<String> list = new ArrayList<>();
+        
+        for(Object o : toList(map != null ? map.get(key) : null)) {
+            if(o instanceof String) {
+                list.add((String)o);
+            }
+        }
+        
+        return list;
+    }
+    
+    /**
+     * @param value a JS array, Collection, Java array or single value
+     * @return the values as a list, empty if value is null
+     */
+    static List<Object> toList(Object value) {
+        // JS arrays are passed in as a Map of index to value
+        if(value instanceof Map) {
+            return new ArrayList<>(((Map<?, ?>)value).values());
+        }
+        if(value instanceof Collection) {
+            return new ArrayList<>((Collection<?>)value);
+        }
+        if(value instanceof Object[]) {
+            return new ArrayList<>(Arrays.asList((Object[])value));
+        }
+        
+        List<Object> list = new ArrayList<>();
+        if(value != null) {
+            list.add(value);
+        }
+        return list;
+    }
+    
+    /**
+     * @return false if cmd is known not to add, remove or change any relationship.
+     * Relationships are disconnected before their concepts or folders are deleted so deleting from a folder doesn't change them.
+     * Setting a feature or a property of a relationship changes it, as selectors can match relationships by name or property.
+     */
+    static boolean canChangeRelationships(ScriptCommand cmd) {
+        if(cmd instanceof BatchCommand) {
+            return ((BatchCommand)cmd).getCommands().stream().anyMatch(ModelUtil::canChangeRelationships);
+        }
+        
+        if(cmd instanceof SetCommand) {
+            EObject eObject = ((SetCommand)cmd).getEObject();
+            // The value of a property
+            if(eObject instanceof IProperty) {
+                eObject = eObject.eContainer();
+            }
+            return eObject instanceof IArchimateRelationship;
+        }
+        
+        if(cmd instanceof AddPropertyCommand) {
+            return ((AddPropertyCommand)cmd).getEObject() instanceof IArchimateRelationship;
+        }
+        
+        if(cmd instanceof RemovePropertiesCommand) {
+            return ((RemovePropertiesCommand)cmd).getEObject() instanceof IArchimateRelationship;
+        }
+        
+        if(cmd instanceof SetPropertiesCommand) {
+            return ((SetPropertiesCommand)cmd).getOwners().stream().anyMatch(IArchimateRelationship.class::isInstance);
+        }
+        
+        return !(cmd instanceof AddElementCommand || cmd instanceof DeleteFolderObjectCommand || cmd instanceof DeleteDiagramModelObjectCommand
+                || cmd instanceof DisconnectConnectionCommand || cmd instanceof SetElementOnDiagramModelObjectCommand);
+    }
+    
     /**
      * Check all components belong to the same model
      */
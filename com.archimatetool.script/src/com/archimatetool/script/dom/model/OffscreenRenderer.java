@@ -0,0 +1,945 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import com.archimatetool.model.IAccessRelationship;
+import com.archimatetool.model.IAggregationRelationship;
+import com.archimatetool.model.IApplicationElement;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IAssignmentRelationship;
+import com.archimatetool.model.IAssociationRelationship;
+import com.archimatetool.model.IBounds;
+import com.archimatetool.model.IBusinessElement;
+import com.archimatetool.model.ICompositionRelationship;
+import com.archimatetool.model.IConnectable;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelArchimateConnection;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IDiagramModelBendpoint;
+import com.archimatetool.model.IDiagramModelConnection;
+import com.archimatetool.model.IDiagramModelContainer;
+import com.archimatetool.model.IDiagramModelGroup;
+import com.archimatetool.model.IDiagramModelNote;
+import com.archimatetool.model.IDiagramModelObject;
+import com.archimatetool.model.IDiagramModelReference;
+import com.archimatetool.model.IFlowRelationship;
+import com.archimatetool.model.IFontAttribute;
+import com.archimatetool.model.IGap;
+import com.archimatetool.model.IGrouping;
+import com.archimatetool.model.IImplementationMigrationElement;
+import com.archimatetool.model.IInfluenceRelationship;
+import com.archimatetool.model.IJunction;
+import com.archimatetool.model.ILineObject;
+import com.archimatetool.model.ILocation;
+import com.archimatetool.model.IMotivationElement;
+import com.archimatetool.model.INameable;
+import com.archimatetool.model.IPhysicalElement;
+import com.archimatetool.model.IPlateau;
+import com.archimatetool.model.IRealizationRelationship;
+import com.archimatetool.model.IServingRelationship;
+import com.archimatetool.model.ISpecializationRelationship;
+import com.archimatetool.model.IStrategyElement;
+import com.archimatetool.model.ITechnologyElement;
+import com.archimatetool.model.ITextAlignment;
+import com.archimatetool.model.ITextPosition;
+import com.archimatetool.model.ITriggeringRelationship;
+
+/**
+ * Offscreen Renderer
+ *
+ * Paints a View with Java2D, or writes it as SVG, straight from the diagram model without creating any SWT figures,
+ * so it doesn't need a Display and can be used on any thread, and on a headless build agent without an X server.
+ * Each render uses only its own objects so Views can be rendered in parallel.
+ *
+ * This draws an approximate preview of the View, not what Archi draws: boxes with their fill, line and font colours, text, opacity and nesting,
+ * and connections with their bendpoints and ArchiMate line styles and arrow heads. It doesn't draw element figures and icons.
+ * So it is only used when a script asks for it with the "headless" option.
+ *
+ * @author agent
+ */
+class OffscreenRenderer {
+    
+    static final String SVG = "SVG"; //$NON-NLS-1$
+    
+    // Used to measure text without a Graphics
+    private static final FontRenderContext FONT_CONTEXT = new FontRenderContext(null, true, true);
+    
+    private static final Font DEFAULT_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+    private static final Color DEFAULT_LINE_COLOR = new Color(92, 92, 92);
+    private static final int TEXT_PADDING = 5;
+    private static final double ARROW_SIZE = 10;
+    
+    private static final float[] DASHED = { 6, 3 };
+    private static final float[] DOTTED = { 2, 2 };
+    
+    /**
+     * Where the painting goes. Everything is painted in diagram coordinates.
+     */
+    interface Canvas {
+        void fill(Shape shape, Color color);
+        void draw(Shape shape, Color color, float lineWidth, float[] dash);
+        void drawString(String text, float x, float y, Font font, Color color);
+    }
+    
+    private double scale;
+    private int margin;
+    private int quality;
+    private int defaultWidth, defaultHeight;
+    
+    // The View being rendered and the absolute bounds of each of its diagram objects
+    private IDiagramModel dm;
+    private Map<IDiagramModelObject, Rectangle2D> boundsMap = new IdentityHashMap<>();
+    private List<IDiagramModelConnection> connections = new ArrayList<>();
+    
+    /**
+     * @param defaultWidth the width of an ArchiMate figure whose width is -1
+     * @param defaultHeight the height of an ArchiMate figure whose height is -1
+     */
+    OffscreenRenderer(double scale, int margin, int quality, int defaultWidth, int defaultHeight) {
+        this.scale = scale;
+        this.margin = margin;
+        this.quality = quality;
+        this.defaultWidth = defaultWidth;
+        this.defaultHeight = defaultHeight;
+    }
+    
+    /**
+     * Render a View to a stream, which is not closed
+     * @param format "SVG" or an image format supported by ImageIO such as "PNG", "JPG" or "BMP"
+     */
+    void render(IDiagramModel dm, String format, OutputStream out) throws IOException {
+        Rectangle2D extent = layout(dm);
+        
+        if(SVG.equalsIgnoreCase(format)) {
+            writeSVG(extent, out);
+        }
+        else {
+            writeImage(extent, format, out);
+        }
+    }
+    
+    /**
+     * Work out the absolute bounds of every diagram object
+     * @return the extent of the View including the margin
+     */
+    private Rectangle2D layout(IDiagramModel dm) {
+        this.dm = dm;
+        boundsMap.clear();
+        connections.clear();
+        
+        Rectangle2D extent = null;
+        
+        for(Iterator<?> iter = dm.eAllContents(); iter.hasNext();) {
+            Object eObject = iter.next();
+            
+            if(eObject instanceof IDiagramModelObject) {
+                Rectangle2D r = getBounds((IDiagramModelObject)eObject);
+                extent = extent == null ? (Rectangle2D)r.clone() : extent.createUnion(r);
+            }
+            else if(eObject instanceof IDiagramModelConnection) {
+                connections.add((IDiagramModelConnection)eObject);
+            }
+        }
+        
+        // Bendpoints can be outside of the objects
+        for(IDiagramModelConnection connection : connections) {
+            for(Point2D p : getPoints(connection, new HashSet<>())) {
+                if(extent != null) {
+                    extent.add(p);
+                }
+            }
+        }
+        
+        if(extent == null) {
+            extent = new Rectangle2D.Double(0, 0, 100, 100);
+        }
+        else {
+            extent.setRect(extent.getX() - margin, extent.getY() - margin, extent.getWidth() + margin * 2, extent.getHeight() + margin * 2);
+        }
+        
+        return extent;
+    }
+    
+    private Rectangle2D getBounds(IDiagramModelObject dmo) {
+        Rectangle2D r = boundsMap.get(dmo);
+        if(r != null) {
+            return r;
+        }
+        
+        IBounds bounds = dmo.getBounds();
+        double x = bounds.getX();
+        double y = bounds.getY();
+        int width = bounds.getWidth();
+        int height = bounds.getHeight();
+        
+        if(dmo.eContainer() instanceof IDiagramModelObject) {
+            Rectangle2D parent = getBounds((IDiagramModelObject)dmo.eContainer());
+            x += parent.getX();
+            y += parent.getY();
+        }
+        
+        r = new Rectangle2D.Double(x, y, width < 0 ? getDefaultWidth(dmo) : width, height < 0 ? getDefaultHeight(dmo) : height);
+        boundsMap.put(dmo, r);
+        
+        return r;
+    }
+    
+    private int getDefaultWidth(IDiagramModelObject dmo) {
+        if(dmo instanceof IDiagramModelArchimateObject) {
+            return ((IDiagramModelArchimateObject)dmo).getArchimateElement() instanceof IJunction ? 15 : defaultWidth;
+        }
+        if(dmo instanceof IDiagramModelGroup) {
+            return 400;
+        }
+        return 185;
+    }
+    
+    private int getDefaultHeight(IDiagramModelObject dmo) {
+        if(dmo instanceof IDiagramModelArchimateObject) {
+            return ((IDiagramModelArchimateObject)dmo).getArchimateElement() instanceof IJunction ? 15 : defaultHeight;
+        }
+        if(dmo instanceof IDiagramModelGroup) {
+            return 140;
+        }
+        return 80;
+    }
+    
+    // ====================================== Output ======================================
+    
+    private void writeImage(Rectangle2D extent, String format, OutputStream out) throws IOException {
+        long width = (long)Math.ceil(extent.getWidth() * scale);
+        long height = (long)Math.ceil(extent.getHeight() * scale);
+        
+        if(width * height > Integer.MAX_VALUE / 4) {
+            throw new IOException("Image is too large (" + width + " x " + height + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+        
+        BufferedImage image = new BufferedImage((int)Math.max(1, width), (int)Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            g.scale(scale, scale);
+            g.translate(-extent.getX(), -extent.getY());
+            
+            paint(new Java2DCanvas(g));
+        }
+        finally {
+            g.dispose();
+        }
+        
+        String formatName = "JPEG".equalsIgnoreCase(format) ? "jpg" : format.toLowerCase(Locale.ROOT); //$NON-NLS-1$ //$NON-NLS-2$
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+        if(!writers.hasNext()) {
+            throw new IOException("Unsupported image format: " + format); //$NON-NLS-1$
+        }
+        
+        ImageWriter writer = writers.next();
+        
+        try(ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if(quality > 0 && "jpg".equals(formatName)) { //$NON-NLS-1$
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(Math.min(quality, 100) / 100f);
+            }
+            
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        finally {
+            writer.dispose();
+        }
+    }
+    
+    private void writeSVG(Rectangle2D extent, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"); //$NON-NLS-1$
+        writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + SVGCanvas.format(extent.getWidth() * scale) //$NON-NLS-1$
+                + "\" height=\"" + SVGCanvas.format(extent.getHeight() * scale) //$NON-NLS-1$
+                + "\" viewBox=\"" + SVGCanvas.format(extent.getX()) + " " + SVGCanvas.format(extent.getY()) //$NON-NLS-1$ //$NON-NLS-2$
+                + " " + SVGCanvas.format(extent.getWidth()) + " " + SVGCanvas.format(extent.getHeight()) + "\">\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        
+        SVGCanvas canvas = new SVGCanvas(writer);
+        canvas.fill(extent, Color.WHITE);
+        paint(canvas);
+        
+        writer.write("</svg>\n"); //$NON-NLS-1$
+        writer.flush();
+        
+        if(canvas.error != null) {
+            throw canvas.error;
+        }
+    }
+    
+    // ====================================== Painting ======================================
+    
+    /**
+     * Paint the diagram objects, parents before children, and then the connections on top
+     */
+    private void paint(Canvas canvas) {
+        for(IDiagramModelObject dmo : dm.getChildren()) {
+            paintObject(canvas, dmo);
+        }
+        
+        for(IDiagramModelConnection connection : connections) {
+            paintConnection(canvas, connection);
+        }
+    }
+    
+    private void paintObject(Canvas canvas, IDiagramModelObject dmo) {
+        Rectangle2D r = getBounds(dmo);
+        Object concept = dmo instanceof IDiagramModelArchimateObject ? ((IDiagramModelArchimateObject)dmo).getArchimateElement() : null;
+        
+        Color fill = withAlpha(parseColor(dmo.getFillColor(), getDefaultFillColor(dmo, concept)), dmo.getAlpha());
+        Color line = parseColor(dmo instanceof ILineObject ? ((ILineObject)dmo).getLineColor() : null, DEFAULT_LINE_COLOR);
+        
+        if(concept instanceof IJunction) {
+            Shape circle = new Ellipse2D.Double(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+            if(IJunction.OR_JUNCTION_TYPE.equals(((IJunction)concept).getType())) {
+                canvas.fill(circle, Color.WHITE);
+                canvas.draw(circle, line, 1, null);
+            }
+            else {
+                canvas.fill(circle, line);
+            }
+            return;
+        }
+        
+        canvas.fill(r, fill);
+        canvas.draw(r, line, 1, concept instanceof IGrouping ? DASHED : null);
+        
+        paintText(canvas, dmo, r);
+        
+        if(dmo instanceof IDiagramModelContainer) {
+            for(IDiagramModelObject child : ((IDiagramModelContainer)dmo).getChildren()) {
+                paintObject(canvas, child);
+            }
+        }
+    }
+    
+    private void paintText(Canvas canvas, IDiagramModelObject dmo, Rectangle2D r) {
+        String text = getText(dmo);
+        if(text == null || text.isEmpty()) {
+            return;
+        }
+        
+        Font font = getFont(dmo);
+        Color color = parseColor(dmo instanceof IFontAttribute ? ((IFontAttribute)dmo).getFontColor() : null, Color.BLACK);
+        
+        LineMetrics metrics = font.getLineMetrics(text, FONT_CONTEXT);
+        float lineHeight = metrics.getHeight();
+        double maxWidth = r.getWidth() - TEXT_PADDING * 2;
+        int maxLines = Math.max(1, (int)((r.getHeight() - TEXT_PADDING * 2) / lineHeight));
+        
+        List<String> lines = wrap(text, font, maxWidth, maxLines);
+        
+        int position = dmo instanceof ITextPosition ? ((ITextPosition)dmo).getTextPosition() : ITextPosition.TEXT_POSITION_TOP;
+        int alignment = dmo instanceof ITextAlignment ? ((ITextAlignment)dmo).getTextAlignment() : ITextAlignment.TEXT_ALIGNMENT_CENTER;
+        
+        double textHeight = lines.size() * lineHeight;
+        double y;
+        
+        switch(position) {
+            case ITextPosition.TEXT_POSITION_CENTRE:
+                y = r.getY() + (r.getHeight() - textHeight) / 2;
+                break;
+            
+            case ITextPosition.TEXT_POSITION_BOTTOM:
+                y = r.getMaxY() - TEXT_PADDING - textHeight;
+                break;
+            
+            default:
+                y = r.getY() + TEXT_PADDING;
+                break;
+        }
+        
+        for(String s : lines) {
+            double width = font.getStringBounds(s, FONT_CONTEXT).getWidth();
+            double x;
+            
+            switch(alignment) {
+                case ITextAlignment.TEXT_ALIGNMENT_LEFT:
+                    x = r.getX() + TEXT_PADDING;
+                    break;
+                
+                case ITextAlignment.TEXT_ALIGNMENT_RIGHT:
+                    x = r.getMaxX() - TEXT_PADDING - width;
+                    break;
+                
+                default:
+                    x = r.getX() + (r.getWidth() - width) / 2;
+                    break;
+            }
+            
+            canvas.drawString(s, (float)x, (float)(y + metrics.getAscent()), font, color);
+            y += lineHeight;
+        }
+    }
+    
+    private void paintConnection(Canvas canvas, IDiagramModelConnection connection) {
+        List<Point2D> points = getPoints(connection, new HashSet<>());
+        if(points.size() < 2) {
+            return;
+        }
+        
+        Path2D path = new Path2D.Double();
+        path.moveTo(points.get(0).getX(), points.get(0).getY());
+        for(int i = 1; i < points.size(); i++) {
+            path.lineTo(points.get(i).getX(), points.get(i).getY());
+        }
+        
+        Color color = parseColor(connection.getLineColor(), DEFAULT_LINE_COLOR);
+        float lineWidth = Math.max(1, connection.getLineWidth());
+        
+        IArchimateRelationship relation = connection instanceof IDiagramModelArchimateConnection
+                ? ((IDiagramModelArchimateConnection)connection).getArchimateRelationship() : null;
+        
+        Point2D start = points.get(0), afterStart = points.get(1);
+        Point2D end = points.get(points.size() - 1), beforeEnd = points.get(points.size() - 2);
+        
+        float[] dash = null;
+        
+        if(relation instanceof ICompositionRelationship) {
+            canvas.fill(arrowHead(diamond(), afterStart, start), color);
+        }
+        else if(relation instanceof IAggregationRelationship) {
+            Shape diamond = arrowHead(diamond(), afterStart, start);
+            canvas.fill(diamond, Color.WHITE);
+            canvas.draw(diamond, color, 1, null);
+        }
+        else if(relation instanceof IAssignmentRelationship) {
+            canvas.fill(new Ellipse2D.Double(start.getX() - 3, start.getY() - 3, 6, 6), color);
+            canvas.fill(arrowHead(triangle(), beforeEnd, end), color);
+        }
+        else if(relation instanceof IRealizationRelationship || relation instanceof ISpecializationRelationship) {
+            if(relation instanceof IRealizationRelationship) {
+                dash = DOTTED;
+            }
+            Shape triangle = arrowHead(triangle(), beforeEnd, end);
+            canvas.fill(triangle, Color.WHITE);
+            canvas.draw(triangle, color, 1, null);
+        }
+        else if(relation instanceof IServingRelationship) {
+            canvas.draw(arrowHead(openArrow(), beforeEnd, end), color, lineWidth, null);
+        }
+        else if(relation instanceof IAccessRelationship) {
+            dash = DOTTED;
+            int type = ((IAccessRelationship)relation).getAccessType();
+            if(type == IAccessRelationship.WRITE_ACCESS || type == IAccessRelationship.READ_WRITE_ACCESS) {
+                canvas.draw(arrowHead(openArrow(), beforeEnd, end), color, lineWidth, null);
+            }
+            if(type == IAccessRelationship.READ_ACCESS || type == IAccessRelationship.READ_WRITE_ACCESS) {
+                canvas.draw(arrowHead(openArrow(), afterStart, start), color, lineWidth, null);
+            }
+        }
+        else if(relation instanceof IInfluenceRelationship) {
+            dash = DASHED;
+            canvas.draw(arrowHead(openArrow(), beforeEnd, end), color, lineWidth, null);
+        }
+        else if(relation instanceof ITriggeringRelationship || relation instanceof IFlowRelationship) {
+            if(relation instanceof IFlowRelationship) {
+                dash = DASHED;
+            }
+            canvas.fill(arrowHead(triangle(), beforeEnd, end), color);
+        }
+        else if(relation instanceof IAssociationRelationship && ((IAssociationRelationship)relation).isDirected()) {
+            canvas.draw(arrowHead(openArrow(), beforeEnd, end), color, lineWidth, null);
+        }
+        
+        canvas.draw(path, color, lineWidth, dash);
+        
+        String name = relation != null ? relation.getName() : connection.getName();
+        if(name != null && !name.isEmpty()) {
+            Point2D p = getMidPoint(points);
+            Font font = getFont(connection);
+            double width = font.getStringBounds(name, FONT_CONTEXT).getWidth();
+            canvas.drawString(name, (float)(p.getX() - width / 2), (float)(p.getY() - 3), font,
+                    parseColor(connection.getFontColor(), Color.BLACK));
+        }
+    }
+    
+    /**
+     * @return the points of a connection in absolute coordinates, from the edge of the source to the edge of the target
+     */
+    private List<Point2D> getPoints(IDiagramModelConnection connection, Set<IDiagramModelConnection> visited) {
+        List<Point2D> points = new ArrayList<>();
+        
+        // A connection can connect to a connection, so guard against a loop
+        if(!visited.add(connection)) {
+            return points;
+        }
+        
+        Point2D sourceCentre = getCentre(connection.getSource(), visited);
+        Point2D targetCentre = getCentre(connection.getTarget(), visited);
+        if(sourceCentre == null || targetCentre == null) {
+            return points;
+        }
+        
+        // Bendpoints are stored relative to the source and target centres and weighted along the connection
+        List<Point2D> bendpoints = new ArrayList<>();
+        int count = connection.getBendpoints().size();
+        for(int i = 0; i < count; i++) {
+            IDiagramModelBendpoint bp = connection.getBendpoints().get(i);
+            double weight = (i + 1.0) / (count + 1);
+            bendpoints.add(new Point2D.Double(
+                    (1 - weight) * (sourceCentre.getX() + bp.getStartX()) + weight * (targetCentre.getX() + bp.getEndX()),
+                    (1 - weight) * (sourceCentre.getY() + bp.getStartY()) + weight * (targetCentre.getY() + bp.getEndY())));
+        }
+        
+        Point2D first = bendpoints.isEmpty() ? targetCentre : bendpoints.get(0);
+        Point2D last = bendpoints.isEmpty() ? sourceCentre : bendpoints.get(bendpoints.size() - 1);
+        
+        points.add(getAnchor(connection.getSource(), sourceCentre, first));
+        points.addAll(bendpoints);
+        points.add(getAnchor(connection.getTarget(), targetCentre, last));
+        
+        return points;
+    }
+    
+    private Point2D getCentre(IConnectable connectable, Set<IDiagramModelConnection> visited) {
+        if(connectable instanceof IDiagramModelObject) {
+            Rectangle2D r = getBounds((IDiagramModelObject)connectable);
+            return new Point2D.Double(r.getCenterX(), r.getCenterY());
+        }
+        
+        if(connectable instanceof IDiagramModelConnection) {
+            List<Point2D> points = getPoints((IDiagramModelConnection)connectable, new HashSet<>(visited));
+            return points.isEmpty() ? null : getMidPoint(points);
+        }
+        
+        return null;
+    }
+    
+    /**
+     * @return the point where the line from the centre of an object towards another point leaves the object's bounds
+     */
+    private Point2D getAnchor(IConnectable connectable, Point2D centre, Point2D towards) {
+        if(!(connectable instanceof IDiagramModelObject)) {
+            return centre;
+        }
+        
+        Rectangle2D r = getBounds((IDiagramModelObject)connectable);
+        double dx = towards.getX() - centre.getX();
+        double dy = towards.getY() - centre.getY();
+        
+        if(dx == 0 && dy == 0) {
+            return centre;
+        }
+        
+        double t = Math.min(dx == 0 ? Double.MAX_VALUE : r.getWidth() / 2 / Math.abs(dx),
+                            dy == 0 ? Double.MAX_VALUE : r.getHeight() / 2 / Math.abs(dy));
+        t = Math.min(t, 1);
+        
+        return new Point2D.Double(centre.getX() + dx * t, centre.getY() + dy * t);
+    }
+    
+    private static Point2D getMidPoint(List<Point2D> points) {
+        double length = 0;
+        for(int i = 1; i < points.size(); i++) {
+            length += points.get(i - 1).distance(points.get(i));
+        }
+        
+        double half = length / 2;
+        for(int i = 1; i < points.size(); i++) {
+            Point2D a = points.get(i - 1), b = points.get(i);
+            double segment = a.distance(b);
+            if(segment >= half && segment > 0) {
+                double t = half / segment;
+                return new Point2D.Double(a.getX() + (b.getX() - a.getX()) * t, a.getY() + (b.getY() - a.getY()) * t);
+            }
+            half -= segment;
+        }
+        
+        return points.get(0);
+    }
+    
+    // ====================================== Arrow heads ======================================
+    
+    // Arrow head shapes pointing along the positive x axis with the tip at the origin
+    
+    private static Shape triangle() {
+        Path2D p = new Path2D.Double();
+        p.moveTo(0, 0);
+        p.lineTo(-ARROW_SIZE, -ARROW_SIZE / 2);
+        p.lineTo(-ARROW_SIZE, ARROW_SIZE / 2);
+        p.closePath();
+        return p;
+    }
+    
+    private static Shape openArrow() {
+        Path2D p = new Path2D.Double();
+        p.moveTo(-ARROW_SIZE, -ARROW_SIZE / 2);
+        p.lineTo(0, 0);
+        p.lineTo(-ARROW_SIZE, ARROW_SIZE / 2);
+        return p;
+    }
+    
+    private static Shape diamond() {
+        Path2D p = new Path2D.Double();
+        p.moveTo(0, 0);
+        p.lineTo(-ARROW_SIZE, -ARROW_SIZE / 2.5);
+        p.lineTo(-ARROW_SIZE * 2, 0);
+        p.lineTo(-ARROW_SIZE, ARROW_SIZE / 2.5);
+        p.closePath();
+        return p;
+    }
+    
+    /**
+     * @return shape rotated and moved so that it points from "from" to its tip at "to"
+     */
+    private static Shape arrowHead(Shape shape, Point2D from, Point2D to) {
+        AffineTransform transform = AffineTransform.getTranslateInstance(to.getX(), to.getY());
+        transform.rotate(Math.atan2(to.getY() - from.getY(), to.getX() - from.getX()));
+        return transform.createTransformedShape(shape);
+    }
+    
+    // ====================================== Text, fonts and colours ======================================
+    
+    private static String getText(IDiagramModelObject dmo) {
+        if(dmo instanceof IDiagramModelArchimateObject) {
+            return ((IDiagramModelArchimateObject)dmo).getArchimateElement().getName();
+        }
+        if(dmo instanceof IDiagramModelNote) {
+            return ((IDiagramModelNote)dmo).getContent();
+        }
+        if(dmo instanceof IDiagramModelReference) {
+            IDiagramModel ref = ((IDiagramModelReference)dmo).getReferencedModel();
+            return ref != null ? ref.getName() : null;
+        }
+        if(dmo instanceof INameable) {
+            return ((INameable)dmo).getName();
+        }
+        return null;
+    }
+    
+    /**
+     * Wrap text into lines that fit the width, keeping the line breaks in the text
+     */
+    private static List<String> wrap(String text, Font font, double maxWidth, int maxLines) {
+        List<String> lines = new ArrayList<>();
+        
+        for(String paragraph : text.split("\\r?\\n", -1)) { //$NON-NLS-1$
+            StringBuilder line = new StringBuilder();
+            
+            for(String word : paragraph.split(" ")) { //$NON-NLS-1$
+                String candidate = line.length() == 0 ? word : line + " " + word; //$NON-NLS-1$
+                
+                if(line.length() > 0 && font.getStringBounds(candidate, FONT_CONTEXT).getWidth() > maxWidth) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                    line.append(word);
+                }
+                else {
+                    line.setLength(0);
+                    line.append(candidate);
+                }
+            }
+            
+            lines.add(line.toString());
+        }
+        
+        return lines.size() > maxLines ? lines.subList(0, maxLines) : lines;
+    }
+    
+    /**
+     * @return the AWT font for a font string in SWT FontData format "1|name|height|style|..."
+     */
+    private static Font getFont(Object object) {
+        String fontString = object instanceof IFontAttribute ? ((IFontAttribute)object).getFont() : null;
+        if(fontString == null) {
+            return DEFAULT_FONT;
+        }
+        
+        String[] parts = fontString.split("\\|"); //$NON-NLS-1$
+        if(parts.length < 4) {
+            return DEFAULT_FONT;
+        }
+        
+        try {
+            // Font height is in points, so convert to pixels at 96 DPI. SWT and AWT have the same bold and italic bits.
+            float pixels = Float.parseFloat(parts[2]) * 96 / 72;
+            int style = Integer.parseInt(parts[3]) & (Font.BOLD | Font.ITALIC);
+            return new Font(parts[1], style, 1).deriveFont(pixels);
+        }
+        catch(NumberFormatException ex) {
+            return DEFAULT_FONT;
+        }
+    }
+    
+    /**
+     * @return the colour for a "#rrggbb" string, or defaultColor if it isn't set or valid
+     */
+    static Color parseColor(String value, Color defaultColor) {
+        if(value == null || !value.startsWith("#") || value.length() != 7) { //$NON-NLS-1$
+            return defaultColor;
+        }
+        
+        try {
+            return new Color(Integer.parseInt(value.substring(1), 16));
+        }
+        catch(NumberFormatException ex) {
+            return defaultColor;
+        }
+    }
+    
+    private static Color withAlpha(Color color, int alpha) {
+        return alpha >= 255 || alpha < 0 ? color : new Color(color.getRed(), color.getGreen(), color.getBlue(), alpha);
+    }
+    
+    /**
+     * @return the default fill colour for a diagram object, the same as Archi's default colours
+     */
+    private static Color getDefaultFillColor(IDiagramModelObject dmo, Object concept) {
+        if(concept instanceof IBusinessElement) {
+            return new Color(255, 255, 181);
+        }
+        if(concept instanceof IApplicationElement) {
+            return new Color(181, 255, 255);
+        }
+        if(concept instanceof ITechnologyElement || concept instanceof IPhysicalElement) {
+            return new Color(201, 231, 183);
+        }
+        if(concept instanceof IMotivationElement) {
+            return new Color(204, 204, 255);
+        }
+        if(concept instanceof IStrategyElement) {
+            return new Color(245, 222, 170);
+        }
+        if(concept instanceof IPlateau || concept instanceof IGap) {
+            return new Color(224, 255, 224);
+        }
+        if(concept instanceof IImplementationMigrationElement) {
+            return new Color(255, 224, 224);
+        }
+        if(concept instanceof ILocation) {
+            return new Color(251, 184, 117);
+        }
+        if(concept instanceof IGrouping || dmo instanceof IDiagramModelGroup) {
+            return new Color(210, 215, 215);
+        }
+        if(dmo instanceof IDiagramModelReference) {
+            return new Color(220, 235, 235);
+        }
+        if(concept instanceof IArchimateElement) {
+            return new Color(255, 255, 181);
+        }
+        return Color.WHITE;
+    }
+    
+    // ====================================== Canvases ======================================
+    
+    /**
+     * Paints to a Java2D Graphics
+     */
+    static class Java2DCanvas implements Canvas {
+        private Graphics2D g;
+        
+        Java2DCanvas(Graphics2D g) {
+            this.g = g;
+        }
+        
+        @Override
+        public void fill(Shape shape, Color color) {
+            g.setColor(color);
+            g.fill(shape);
+        }
+        
+        @Override
+        public void draw(Shape shape, Color color, float lineWidth, float[] dash) {
+            g.setColor(color);
+            g.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10, dash, 0));
+            g.draw(shape);
+        }
+        
+        @Override
+        public void drawString(String text, float x, float y, Font font, Color color) {
+            g.setColor(color);
+            g.setFont(font);
+            g.drawString(text, x, y);
+        }
+    }
+    
+    /**
+     * Writes SVG elements
+     */
+    static class SVGCanvas implements Canvas {
+        private Writer writer;
+        private IOException error;
+        
+        SVGCanvas(Writer writer) {
+            this.writer = writer;
+        }
+        
+        @Override
+        public void fill(Shape shape, Color color) {
+            write("<path d=\"" + toPath(shape) + "\" fill=\"" + toHex(color) + "\"" + opacity("fill-opacity", color) + "/>\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+        }
+        
+        @Override
+        public void draw(Shape shape, Color color, float lineWidth, float[] dash) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("<path d=\"").append(toPath(shape)).append("\" fill=\"none\" stroke=\"").append(toHex(color)) //$NON-NLS-1$ //$NON-NLS-2$
+              .append("\" stroke-width=\"").append(format(lineWidth)).append('"'); //$NON-NLS-1$
+            
+            if(dash != null) {
+                sb.append(" stroke-dasharray=\""); //$NON-NLS-1$
+                for(int i = 0; i < dash.length; i++) {
+                    sb.append(i > 0 ? "," : "").append(format(dash[i])); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                sb.append('"');
+            }
+            
+            sb.append(opacity("stroke-opacity", color)).append("/>\n"); //$NON-NLS-1$ //$NON-NLS-2$
+            write(sb.toString());
+        }
+        
+        @Override
+        public void drawString(String text, float x, float y, Font font, Color color) {
+            write("<text x=\"" + format(x) + "\" y=\"" + format(y) //$NON-NLS-1$ //$NON-NLS-2$
+                    + "\" font-family=\"" + escape(font.getFamily()) + "\" font-size=\"" + format(font.getSize2D()) + "\"" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                    + (font.isBold() ? " font-weight=\"bold\"" : "") //$NON-NLS-1$ //$NON-NLS-2$
+                    + (font.isItalic() ? " font-style=\"italic\"" : "") //$NON-NLS-1$ //$NON-NLS-2$
+                    + " fill=\"" + toHex(color) + "\" xml:space=\"preserve\">" + escape(text) + "</text>\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+        
+        private void write(String s) {
+            if(error == null) {
+                try {
+                    writer.write(s);
+                }
+                catch(IOException ex) {
+                    error = ex;
+                }
+            }
+        }
+        
+        private static String toPath(Shape shape) {
+            StringBuilder sb = new StringBuilder();
+            double[] c = new double[6];
+            
+            for(PathIterator iter = shape.getPathIterator(null); !iter.isDone(); iter.next()) {
+                switch(iter.currentSegment(c)) {
+                    case PathIterator.SEG_MOVETO:
+                        sb.append('M').append(format(c[0])).append(' ').append(format(c[1]));
+                        break;
+                    
+                    case PathIterator.SEG_LINETO:
+                        sb.append('L').append(format(c[0])).append(' ').append(format(c[1]));
+                        break;
+                    
+                    case PathIterator.SEG_QUADTO:
+                        sb.append('Q').append(format(c[0])).append(' ').append(format(c[1])).append(' ')
+                          .append(format(c[2])).append(' ').append(format(c[3]));
+                        break;
+                    
+                    case PathIterator.SEG_CUBICTO:
+                        sb.append('C').append(format(c[0])).append(' ').append(format(c[1])).append(' ')
+                          .append(format(c[2])).append(' ').append(format(c[3])).append(' ')
+                          .append(format(c[4])).append(' ').append(format(c[5]));
+                        break;
+                    
+                    case PathIterator.SEG_CLOSE:
+                        sb.append('Z');
+                        break;
+                    
+                    default:
+                        break;
+                }
+            }
+            
+            return sb.toString();
+        }
+        
+        private static String toHex(Color color) {
+            return String.format("#%06x", color.getRGB() & 0xFFFFFF); //$NON-NLS-1$
+        }
+        
+        private static String opacity(String attribute, Color color) {
+            return color.getAlpha() == 255 ? "" : " " + attribute + "=\"" + format(color.getAlpha() / 255.0) + "\""; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        }
+        
+        static String format(double value) {
+            long rounded = Math.round(value);
+            if(Math.abs(value - rounded) < 0.005) {
+                return Long.toString(rounded);
+            }
+            return String.format(Locale.ROOT, "%.2f", value); //$NON-NLS-1$
+        }
+        
+        private static String escape(String s) {
+            StringBuilder sb = new StringBuilder(s.length());
+            
+            for(int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch(c) {
+                    case '<':
+                        sb.append("&lt;"); //$NON-NLS-1$
+                        break;
+                    case '>':
+                        sb.append("&gt;"); //$NON-NLS-1$
+                        break;
+                    case '&':
+                        sb.append("&amp;"); //$NON-NLS-1$
+                        break;
+                    case '"':
+                        sb.append("&quot;"); //$NON-NLS-1$
+                        break;
+                    default:
+                        // Control characters aren't allowed in XML
+                        if(c >= 0x20 || c == '\t') {
+                            sb.append(c);
+                        }
+                        break;
+                }
+            }
+            
+            return sb.toString();
+        }
+    }
+}
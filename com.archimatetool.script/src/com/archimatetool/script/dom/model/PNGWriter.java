@@ -0,0 +1,196 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * PNG Writer
+ *
+ * Writes an RGB PNG image a row at a time so that an image of any size can be written
+ * without holding all of its pixels in memory.
+ *
+ * @author agent
+ */
+class PNGWriter implements Closeable {
+    
+    private static final byte[] SIGNATURE = { (byte)137, 80, 78, 71, 13, 10, 26, 10 };
+    private static final int CHUNK_SIZE = 1 << 16;
+    
+    private DataOutputStream out;
+    private DeflaterOutputStream idat;
+    private Deflater deflater;
+    
+    private int width;
+    private int height;
+    private int rowsWritten;
+    private byte[] row;
+    private byte[] previousRow;
+    
+    /**
+     * @param out the stream to write to. This is closed when this is closed.
+     * @param width image width in pixels
+     * @param height image height in pixels
+     */
+    PNGWriter(OutputStream out, int width, int height) throws IOException {
+        if(width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image size must be greater than 0"); //$NON-NLS-1$
+        }
+        
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        
+        row = new byte[width * 3 + 1];
+        previousRow = new byte[width * 3 + 1];
+        
+        this.out.write(SIGNATURE);
+        
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8); // bit depth
+        headerData.writeByte(2); // colour type RGB
+        headerData.writeByte(0); // compression
+        headerData.writeByte(0); // filter
+        headerData.writeByte(0); // interlace
+        writeChunk("IHDR", header.toByteArray(), header.size()); //$NON-NLS-1$
+        
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        idat = new DeflaterOutputStream(new ChunkOutputStream(), deflater, CHUNK_SIZE);
+    }
+    
+    /**
+     * Write rows of pixels
+     * @param pixels RGB pixels as 0xRRGGBB, row after row
+     * @param offset the index of the first pixel
+     * @param rows the number of rows
+     */
+    void writeRows(int[] pixels, int offset, int rows) throws IOException {
+        if(rowsWritten + rows > height) {
+            throw new IOException("Too many rows"); //$NON-NLS-1$
+        }
+        
+        for(int r = 0; r < rows; r++) {
+            int index = offset + r * width;
+            
+            for(int x = 0, i = 1; x < width; x++) {
+                int pixel = pixels[index + x];
+                row[i++] = (byte)(pixel >> 16);
+                row[i++] = (byte)(pixel >> 8);
+                row[i++] = (byte)pixel;
+            }
+            
+            writeFilteredRow();
+            rowsWritten++;
+        }
+    }
+    
+    /**
+     * Use the "Up" filter, which compresses diagram images well since most rows are the same as the one above
+     */
+    private void writeFilteredRow() throws IOException {
+        byte[] filtered = previousRow;
+        filtered[0] = 2;
+        
+        for(int i = 1; i < row.length; i++) {
+            filtered[i] = (byte)(row[i] - filtered[i]);
+        }
+        
+        idat.write(filtered);
+        
+        // The unfiltered row is the previous row for the next one
+        previousRow = row;
+        row = filtered;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if(out == null) {
+            return;
+        }
+        
+        try {
+            if(rowsWritten != height) {
+                throw new IOException("Expected " + height + " rows but " + rowsWritten + " were written"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            }
+            
+            idat.finish();
+            idat.flush();
+            writeChunk("IEND", new byte[0], 0); //$NON-NLS-1$
+        }
+        finally {
+            deflater.end();
+            out.close();
+            out = null;
+        }
+    }
+    
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int)crc.getValue());
+    }
+    
+    /**
+     * Buffers compressed data and writes it as IDAT chunks
+     */
+    private class ChunkOutputStream extends OutputStream {
+        private byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+        
+        @Override
+        public void write(int b) throws IOException {
+            if(count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte)b;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while(len > 0) {
+                if(count == buffer.length) {
+                    flush();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            if(count > 0) {
+                writeChunk("IDAT", buffer, count); //$NON-NLS-1$
+                count = 0;
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EObject;
+
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.model.IProperties;
+import com.archimatetool.model.IProperty;
+import com.archimatetool.script.commands.BatchCommand;
+import com.archimatetool.script.commands.CommandHandler;
+import com.archimatetool.script.commands.SetPropertiesCommand;
+
+/**
+ * Property Updater
+ *
+ * Adds and updates properties on many objects and applies all of the changes as one SetPropertiesCommand per model.
+ * The properties of each object are read once into a map of key to properties, which also holds the properties
+ * that will be added, so setting many keys on the same object doesn't rescan its properties.
+ *
+ * @author agent
+ */
+class PropertyUpdater {
+    
+    /**
+     * Changes to one object
+     */
+    private static class Owner {
+        IProperties properties;
+        SetPropertiesCommand cmd;
+        
+        // Key -> existing and added properties with that key
+        Map<String, List<IProperty>> keys = new HashMap<>();
+        
+        // Existing property -> index of its change in the command
+        Map<IProperty, Integer> changes = new HashMap<>();
+        
+        Owner(IProperties properties, SetPropertiesCommand cmd) {
+            this.properties = properties;
+            this.cmd = cmd;
+            
+            for(IProperty property : properties.getProperties()) {
+                keys.computeIfAbsent(property.getKey(), k -> new ArrayList<>()).add(property);
+            }
+        }
+        
+        void put(String key, String value, boolean allowDuplicate) {
+            List<IProperty> list = keys.computeIfAbsent(key, k -> new ArrayList<>());
+            
+            if(allowDuplicate || list.isEmpty()) {
+                IProperty property = IArchimateFactory.eINSTANCE.createProperty(key, value);
+                cmd.addProperty(properties, property);
+                list.add(property);
+                return;
+            }
+            
+            // Update all properties with this key
+            for(IProperty property : list) {
+                Integer index = changes.get(property);
+                
+                // Added by us and not in the model yet
+                if(property.eContainer() == null) {
+                    property.setValue(value);
+                }
+                else if(index != null) {
+                    cmd.updateValue(index, value);
+                }
+                else if(!value.equals(property.getValue())) {
+                    changes.put(property, cmd.setValue(property, value));
+                }
+            }
+        }
+    }
+    
+    private Map<IProperties, Owner> owners = new HashMap<>();
+    private Map<IArchimateModel, SetPropertiesCommand> commands = new LinkedHashMap<>();
+    
+    // If not null all of the changes are for this model
+    private IArchimateModel model;
+    
+    PropertyUpdater() {
+    }
+    
+    /**
+     * @param model all of the changes are made as one command on model,
+     * including changes to objects that are not in the model yet but will be added by the same batch command
+     */
+    PropertyUpdater(IArchimateModel model) {
+        this.model = model;
+    }
+    
+    /**
+     * Add or update a property on object
+     * @param allowDuplicate if true the property is always added, otherwise all existing properties with the key are updated
+     */
+    void put(EObjectProxy object, String key, String value, boolean allowDuplicate) {
+        if(object != null && object.getReferencedConcept() instanceof IProperties && key != null && value != null) {
+            getOwner((IProperties)object.getReferencedConcept(), model != null ? model : object.getArchimateModel()).put(key, value, allowDuplicate);
+        }
+    }
+    
+    /**
+     * Add or update the properties in values on object
+     */
+    void put(EObjectProxy object, Map<?, ?> values, boolean allowDuplicate) {
+        if(values == null) {
+            return;
+        }
+        
+        for(Entry<?, ?> entry : values.entrySet()) {
+            if(entry.getKey() != null && entry.getValue() != null) {
+                put(object, entry.getKey().toString(), entry.getValue().toString(), allowDuplicate);
+            }
+        }
+    }
+    
+    /**
+     * Execute the changes
+     */
+    void execute() {
+        // Objects that are not in a model have a command with no model, which is performed but not put on a command stack
+        for(SetPropertiesCommand cmd : commands.values()) {
+            CommandHandler.executeCommand(cmd);
+        }
+        
+        owners.clear();
+        commands.clear();
+    }
+    
+    /**
+     * Add the changes to a batch command, to be executed with it, instead of executing them
+     */
+    void addTo(BatchCommand batch) {
+        for(SetPropertiesCommand cmd : commands.values()) {
+            batch.add(cmd);
+        }
+        
+        owners.clear();
+        commands.clear();
+    }
+    
+    private Owner getOwner(IProperties properties, IArchimateModel model) {
+        Owner owner = owners.get(properties);
+        
+        if(owner == null) {
+            SetPropertiesCommand cmd = commands.computeIfAbsent(model, SetPropertiesCommand::new);
+            owner = new Owner(properties, cmd);
+            owners.put(properties, owner);
+        }
+        
+        return owner;
+    }
+    
+    /**
+     * Add or update properties on many objects in model as one command
+     * @param data a map of object or object id to a map of property keys and values
+     */
+    static void update(IArchimateModel model, Map<?, ?> data) {
+        PropertyUpdater updater = new PropertyUpdater();
+        Map<String, EObject> ids = null;
+        
+        for(Entry<?, ?> entry : data.entrySet()) {
+            if(!(entry.getValue() instanceof Map)) {
+                continue;
+            }
+            
+            EObjectProxy object = null;
+            
+            if(entry.getKey() instanceof EObjectProxy) {
+                object = (EObjectProxy)entry.getKey();
+            }
+            else if(entry.getKey() instanceof String) {
+                // Index the ids once rather than searching the model for each one
+                if(ids == null) {
+                    ids = getIds(model);
+                }
+                EObject eObject = ids.get(entry.getKey());
+                object = eObject != null ? EObjectProxy.get(eObject) : null;
+            }
+            
+            updater.put(object, (Map<?, ?>)entry.getValue(), false);
+        }
+        
+        updater.execute();
+    }
+    
+    private static Map<String, EObject> getIds(IArchimateModel model) {
+        Map<String, EObject> ids = new HashMap<>();
+        ids.put(model.getId(), model);
+        
+        for(TreeIterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            if(eObject instanceof IIdentifier) {
+                ids.put(((IIdentifier)eObject).getId(), eObject);
+            }
+        }
+        
+        return ids;
+    }
+}
@@ -0,0 +1,355 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EObject;
+
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.script.ArchiScriptException;
+import com.archimatetool.script.commands.AddRelationshipCommand;
+import com.archimatetool.script.commands.BatchCommand;
+import com.archimatetool.script.commands.CommandHandler;
+import com.archimatetool.script.commands.DisconnectRelationshipCommand;
+import com.archimatetool.script.commands.ICommandListener;
+import com.archimatetool.script.commands.ScriptCommand;
+import com.archimatetool.script.dom.model.SelectorFilterFactory.ISelectorFilter;
+
+/**
+ * Reachability Index
+ *
+ * Answers "what can be reached from this concept" and "what reaches this concept" over a selected set of relationship types.
+ * The relationships are held as int adjacency lists and the reachable set of each queried concept is cached.
+ *
+ * The index listens to the script's commands and keeps itself up to date:
+ * adding a relationship updates the adjacency lists and the cached sets in place, and removing a relationship
+ * drops only the cached sets that could have used it. Any other command that might change relationships
+ * causes the index to be rebuilt the next time it is queried.
+ *
+ * Options are "relations" (a selector or array of selectors of the relationships to index) and
+ * "cacheSize" (the maximum number of cached sets in each direction, default 1000).
+ *
+ * @author agent
+ */
+public class ReachabilityIndex {
+    
+    static final String CACHE_SIZE = "cacheSize"; //$NON-NLS-1$
+    
+    /**
+     * Growable list of int node ids
+     */
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+        
+        void add(int value) {
+            if(size == values.length) {
+                int[] newValues = new int[size * 2];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            values[size++] = value;
+        }
+        
+        // Remove one occurrence as there can be more than one relationship between two concepts
+        void remove(int value) {
+            for(int i = 0; i < size; i++) {
+                if(values[i] == value) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+    }
+    
+    private IArchimateModel model;
+    private List<ISelectorFilter> filters;
+    
+    private Map<IArchimateConcept, Integer> ids = new HashMap<>();
+    private List<IArchimateConcept> nodes = new ArrayList<>();
+    private List<IntList> outgoing = new ArrayList<>();
+    private List<IntList> incoming = new ArrayList<>();
+    
+    private Map<Integer, BitSet> downstreamCache;
+    private Map<Integer, BitSet> upstreamCache;
+    
+    private boolean dirty = true;
+    
+    private ICommandListener listener = this::commandPerformed;
+    
+    ReachabilityIndex(IArchimateModel model, Map<?, ?> options) {
+        this.model = model;
+        filters = GraphTraversal.getRelationFilters(options);
+        
+        int cacheSize = ModelUtil.getIntValueFromMap(options, CACHE_SIZE, 1000);
+        downstreamCache = createCache(cacheSize);
+        upstreamCache = createCache(cacheSize);
+        
+        CommandHandler.addCommandListener(listener);
+    }
+    
+    /**
+     * @return the concepts that can be reached from concept by following the indexed relationships
+     */
+    public synchronized EObjectProxyCollection downstream(EObjectProxy concept) {
+        Integer id = getId(concept);
+        return id == null ? new EObjectProxyCollection() : toCollection(getReachable(id, downstreamCache, outgoing));
+    }
+    
+    /**
+     * @return the concepts that reach concept by following the indexed relationships
+     */
+    public synchronized EObjectProxyCollection upstream(EObjectProxy concept) {
+        Integer id = getId(concept);
+        return id == null ? new EObjectProxyCollection() : toCollection(getReachable(id, upstreamCache, incoming));
+    }
+    
+    /**
+     * @return true if target can be reached from source by following the indexed relationships
+     */
+    public synchronized boolean isReachable(EObjectProxy source, EObjectProxy target) {
+        Integer sourceId = getId(source);
+        Integer targetId = getId(target);
+        if(sourceId == null || targetId == null) {
+            return false;
+        }
+        
+        // Use whichever set is already cached
+        BitSet upstream = upstreamCache.get(targetId);
+        if(upstream != null) {
+            return upstream.get(sourceId);
+        }
+        
+        return getReachable(sourceId, downstreamCache, outgoing).get(targetId);
+    }
+    
+    /**
+     * Stop listening to changes and release the index
+     */
+    public synchronized void dispose() {
+        CommandHandler.removeCommandListener(listener);
+        clear();
+        dirty = true;
+    }
+    
+    private Integer getId(EObjectProxy proxy) {
+        if(proxy == null || !(proxy.getEObject() instanceof IArchimateConcept)) {
+            throw new ArchiScriptException("Not a concept: " + proxy); //$NON-NLS-1$
+        }
+        
+        // If we've been disposed or a script has started since we were created
+        if(!CommandHandler.hasCommandListener(listener)) {
+            CommandHandler.addCommandListener(listener);
+            dirty = true;
+        }
+        
+        if(dirty) {
+            rebuild();
+        }
+        
+        return ids.get(proxy.getEObject());
+    }
+    
+    private BitSet getReachable(int id, Map<Integer, BitSet> cache, List<IntList> adjacency) {
+        BitSet reachable = cache.get(id);
+        
+        if(reachable == null) {
+            reachable = search(id, adjacency);
+            cache.put(id, reachable);
+        }
+        
+        return reachable;
+    }
+    
+    /**
+     * Breadth first search
+     * @return the ids reachable from id
+     */
+    private BitSet search(int id, List<IntList> adjacency) {
+        BitSet visited = new BitSet(nodes.size());
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(id);
+        
+        while(!queue.isEmpty()) {
+            IntList list = adjacency.get(queue.poll());
+            for(int i = 0; i < list.size; i++) {
+                int next = list.values[i];
+                if(!visited.get(next)) {
+                    visited.set(next);
+                    queue.add(next);
+                }
+            }
+        }
+        
+        return visited;
+    }
+    
+    private void rebuild() {
+        clear();
+        
+        for(TreeIterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            if(eObject instanceof IArchimateRelationship) {
+                addRelationship((IArchimateRelationship)eObject);
+            }
+            // Don't look inside views
+            else if(eObject instanceof IDiagramModel) {
+                iter.prune();
+            }
+        }
+        
+        dirty = false;
+    }
+    
+    private void clear() {
+        ids.clear();
+        nodes.clear();
+        outgoing.clear();
+        incoming.clear();
+        downstreamCache.clear();
+        upstreamCache.clear();
+    }
+    
+    private int addNode(IArchimateConcept concept) {
+        Integer id = ids.get(concept);
+        
+        if(id == null) {
+            id = nodes.size();
+            ids.put(concept, id);
+            nodes.add(concept);
+            outgoing.add(new IntList());
+            incoming.add(new IntList());
+        }
+        
+        return id;
+    }
+    
+    /**
+     * Add a relationship to the adjacency lists
+     * @return true if it was added
+     */
+    private boolean addRelationship(IArchimateRelationship relationship) {
+        if(relationship.getSource() == null || relationship.getTarget() == null || !GraphTraversal.acceptRelation(filters, relationship)) {
+            return false;
+        }
+        
+        int source = addNode(relationship.getSource());
+        int target = addNode(relationship.getTarget());
+        outgoing.get(source).add(target);
+        incoming.get(target).add(source);
+        
+        return true;
+    }
+    
+    private synchronized void commandPerformed(ScriptCommand cmd) {
+        if(dirty || cmd.getModel() != model) {
+            return;
+        }
+        
+        if(cmd instanceof BatchCommand) {
+            for(ScriptCommand batchCmd : ((BatchCommand)cmd).getCommands()) {
+                commandPerformed(batchCmd);
+            }
+        }
+        else if(cmd instanceof AddRelationshipCommand) {
+            relationshipAdded(((AddRelationshipCommand)cmd).getRelationship());
+        }
+        else if(cmd instanceof DisconnectRelationshipCommand) {
+            relationshipRemoved(((DisconnectRelationshipCommand)cmd).getRelationship());
+        }
+        else if(ModelUtil.canChangeRelationships(cmd)) {
+            dirty = true;
+        }
+    }
+    
+    private void relationshipAdded(IArchimateRelationship relationship) {
+        if(!addRelationship(relationship)) {
+            return;
+        }
+        
+        int source = ids.get(relationship.getSource());
+        int target = ids.get(relationship.getTarget());
+        
+        // Everything that reached the source now reaches the target and what it reaches
+        BitSet fromTarget = null;
+        for(Entry<Integer, BitSet> entry : downstreamCache.entrySet()) {
+            BitSet reachable = entry.getValue();
+            if((entry.getKey() == source || reachable.get(source)) && !reachable.get(target)) {
+                if(fromTarget == null) {
+                    fromTarget = search(target, outgoing);
+                    fromTarget.set(target);
+                }
+                reachable.or(fromTarget);
+            }
+        }
+        
+        // And the reverse
+        BitSet toSource = null;
+        for(Entry<Integer, BitSet> entry : upstreamCache.entrySet()) {
+            BitSet reaching = entry.getValue();
+            if((entry.getKey() == target || reaching.get(target)) && !reaching.get(source)) {
+                if(toSource == null) {
+                    toSource = search(source, incoming);
+                    toSource.set(source);
+                }
+                reaching.or(toSource);
+            }
+        }
+    }
+    
+    private void relationshipRemoved(IArchimateRelationship relationship) {
+        if(relationship.getSource() == null || relationship.getTarget() == null || !GraphTraversal.acceptRelation(filters, relationship)) {
+            return;
+        }
+        
+        Integer source = ids.get(relationship.getSource());
+        Integer target = ids.get(relationship.getTarget());
+        if(source == null || target == null) {
+            return;
+        }
+        
+        outgoing.get(source).remove(target);
+        incoming.get(target).remove(source);
+        
+        // Drop the cached sets that might have been reached through this relationship
+        downstreamCache.entrySet().removeIf(entry -> entry.getKey().equals(source) || entry.getValue().get(source));
+        upstreamCache.entrySet().removeIf(entry -> entry.getKey().equals(target) || entry.getValue().get(target));
+    }
+    
+    private EObjectProxyCollection toCollection(BitSet set) {
+        EObjectProxyCollection list = new EObjectProxyCollection();
+        
+        for(int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            list.add(EObjectProxy.get(nodes.get(i)));
+        }
+        
+        return list;
+    }
+    
+    @SuppressWarnings("serial")
+    private static Map<Integer, BitSet> createCache(int maxSize) {
+        // Least recently used
+        return new LinkedHashMap<Integer, BitSet>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Entry<Integer, BitSet> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+}
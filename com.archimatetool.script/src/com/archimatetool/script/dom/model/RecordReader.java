@@ -0,0 +1,407 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Record Reader
+ *
+ * Reads records one at a time from CSV (with a header row) or NDJSON (one JSON object per line)
+ * so that only the current record is held in memory.
+ *
+ * @author agent
+ */
+abstract class RecordReader implements Closeable {
+    
+    static final String CSV = "csv"; //$NON-NLS-1$
+    static final String NDJSON = "ndjson"; //$NON-NLS-1$
+    
+    protected BufferedReader reader;
+    protected int line;
+    
+    RecordReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader)reader : new BufferedReader(reader, 1 << 16);
+    }
+    
+    /**
+     * @param format "csv" or "ndjson"
+     * @param delimiter the CSV delimiter
+     */
+    static RecordReader create(Reader reader, String format, char delimiter) {
+        if(NDJSON.equals(format)) {
+            return new NDJSONReader(reader);
+        }
+        if(CSV.equals(format)) {
+            return new CSVReader(reader, delimiter);
+        }
+        throw new IllegalArgumentException("Unknown format: " + format); //$NON-NLS-1$
+    }
+    
+    /**
+     * @return the next record as a map of field name to value, or null at the end
+     * @throws IOException if the record can't be read or parsed
+     */
+    abstract Map<String, Object> next() throws IOException;
+    
+    /**
+     * @return the line number where the last record started
+     */
+    int getLine() {
+        return line;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+    
+    /**
+     * CSV with a header row. Fields can be quoted with double quotes, and quoted fields can contain delimiters, quotes ("") and new lines.
+     */
+    static class CSVReader extends RecordReader {
+        private char delimiter;
+        private List<String> header;
+        private int nextLine = 1;
+        
+        CSVReader(Reader reader, char delimiter) {
+            super(reader);
+            this.delimiter = delimiter;
+        }
+        
+        @Override
+        Map<String, Object> next() throws IOException {
+            if(header == null) {
+                header = readFields();
+                if(header == null) {
+                    return null;
+                }
+                // Remove a BOM
+                if(!header.isEmpty() && header.get(0).startsWith("\uFEFF")) { //$NON-NLS-1$
+                    header.set(0, header.get(0).substring(1));
+                }
+            }
+            
+            List<String> fields;
+            
+            // Skip blank lines
+            do {
+                fields = readFields();
+                if(fields == null) {
+                    return null;
+                }
+            }
+            while(fields.size() == 1 && fields.get(0).isEmpty());
+            
+            Map<String, Object> record = new LinkedHashMap<>();
+            for(int i = 0; i < header.size() && i < fields.size(); i++) {
+                record.put(header.get(i), fields.get(i));
+            }
+            
+            return record;
+        }
+        
+        private List<String> readFields() throws IOException {
+            line = nextLine;
+            
+            int c = reader.read();
+            if(c == -1) {
+                return null;
+            }
+            
+            List<String> fields = new ArrayList<>();
+            StringBuilder sb = new StringBuilder();
+            boolean quoted = false;
+            
+            while(true) {
+                if(quoted) {
+                    if(c == -1) {
+                        throw new IOException("Unterminated quoted field at line " + line); //$NON-NLS-1$
+                    }
+                    if(c == '"') {
+                        reader.mark(1);
+                        int next = reader.read();
+                        if(next == '"') {
+                            sb.append('"');
+                        }
+                        else {
+                            quoted = false;
+                            reader.reset();
+                        }
+                    }
+                    else {
+                        if(c == '\n') {
+                            nextLine++;
+                        }
+                        sb.append((char)c);
+                    }
+                }
+                else if(c == '"' && sb.length() == 0) {
+                    quoted = true;
+                }
+                else if(c == delimiter) {
+                    fields.add(sb.toString());
+                    sb.setLength(0);
+                }
+                else if(c == '\n' || c == -1) {
+                    nextLine++;
+                    break;
+                }
+                else if(c != '\r') {
+                    sb.append((char)c);
+                }
+                
+                c = reader.read();
+            }
+            
+            fields.add(sb.toString());
+            return fields;
+        }
+    }
+    
+    /**
+     * One JSON object per line. Blank lines are skipped.
+     */
+    static class NDJSONReader extends RecordReader {
+        private int nextLine = 1;
+        
+        NDJSONReader(Reader reader) {
+            super(reader);
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        Map<String, Object> next() throws IOException {
+            String text;
+            
+            do {
+                line = nextLine++;
+                text = reader.readLine();
+                if(text == null) {
+                    return null;
+                }
+            }
+            while(text.trim().isEmpty());
+            
+            Object value = new JSONParser(text, line).parse();
+            if(!(value instanceof Map)) {
+                throw new IOException("Expected a JSON object at line " + line); //$NON-NLS-1$
+            }
+            
+            return (Map<String, Object>)value;
+        }
+    }
+    
+    /**
+     * Minimal JSON parser for one value. Objects are parsed to LinkedHashMaps, arrays to Lists,
+     * numbers to Long or Double, and true, false and null to Boolean and null.
+     */
+    static class JSONParser {
+        private String text;
+        private int pos;
+        private int line;
+        
+        JSONParser(String text, int line) {
+            this.text = text;
+            this.line = line;
+        }
+        
+        Object parse() throws IOException {
+            Object value = parseValue();
+            skipWhitespace();
+            if(pos < text.length()) {
+                throw error("Unexpected text"); //$NON-NLS-1$
+            }
+            return value;
+        }
+        
+        private Object parseValue() throws IOException {
+            skipWhitespace();
+            if(pos >= text.length()) {
+                throw error("Unexpected end"); //$NON-NLS-1$
+            }
+            
+            char c = text.charAt(pos);
+            switch(c) {
+                case '{':
+                    return parseObject();
+                case '[':
+                    return parseArray();
+                case '"':
+                    return parseString();
+                case 't':
+                    return parseLiteral("true", Boolean.TRUE); //$NON-NLS-1$
+                case 'f':
+                    return parseLiteral("false", Boolean.FALSE); //$NON-NLS-1$
+                case 'n':
+                    return parseLiteral("null", null); //$NON-NLS-1$
+                default:
+                    return parseNumber();
+            }
+        }
+        
+        private Map<String, Object> parseObject() throws IOException {
+            Map<String, Object> map = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            
+            if(peek() == '}') {
+                pos++;
+                return map;
+            }
+            
+            while(true) {
+                skipWhitespace();
+                if(peek() != '"') {
+                    throw error("Expected a key"); //$NON-NLS-1$
+                }
+                String key = parseString();
+                skipWhitespace();
+                expect(':');
+                map.put(key, parseValue());
+                skipWhitespace();
+                if(peek() == ',') {
+                    pos++;
+                }
+                else {
+                    expect('}');
+                    return map;
+                }
+            }
+        }
+        
+        private List<Object> parseArray() throws IOException {
+            List<Object> list = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            
+            if(peek() == ']') {
+                pos++;
+                return list;
+            }
+            
+            while(true) {
+                list.add(parseValue());
+                skipWhitespace();
+                if(peek() == ',') {
+                    pos++;
+                }
+                else {
+                    expect(']');
+                    return list;
+                }
+            }
+        }
+        
+        private String parseString() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            pos++;
+            
+            while(pos < text.length()) {
+                char c = text.charAt(pos++);
+                if(c == '"') {
+                    return sb.toString();
+                }
+                if(c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if(pos >= text.length()) {
+                    break;
+                }
+                c = text.charAt(pos++);
+                switch(c) {
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if(pos + 4 > text.length()) {
+                            throw error("Bad unicode escape"); //$NON-NLS-1$
+                        }
+                        try {
+                            sb.append((char)Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        }
+                        catch(NumberFormatException ex) {
+                            throw error("Bad unicode escape"); //$NON-NLS-1$
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(c);
+                        break;
+                }
+            }
+            
+            throw error("Unterminated string"); //$NON-NLS-1$
+        }
+        
+        private Object parseLiteral(String literal, Object value) throws IOException {
+            if(!text.startsWith(literal, pos)) {
+                throw error("Unexpected text"); //$NON-NLS-1$
+            }
+            pos += literal.length();
+            return value;
+        }
+        
+        private Object parseNumber() throws IOException {
+            int start = pos;
+            while(pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) != -1) { //$NON-NLS-1$
+                pos++;
+            }
+            
+            String number = text.substring(start, pos);
+            try {
+                if(number.indexOf('.') == -1 && number.indexOf('e') == -1 && number.indexOf('E') == -1) {
+                    return Long.parseLong(number);
+                }
+                return Double.parseDouble(number);
+            }
+            catch(NumberFormatException ex) {
+                throw error("Bad value"); //$NON-NLS-1$
+            }
+        }
+        
+        private void expect(char c) throws IOException {
+            if(peek() != c) {
+                throw error("Expected '" + c + "'"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            pos++;
+        }
+        
+        private char peek() {
+            return pos < text.length() ? text.charAt(pos) : 0;
+        }
+        
+        private void skipWhitespace() {
+            while(pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+        
+        private IOException error(String message) {
+            return new IOException(message + " at line " + line + ", column " + (pos + 1)); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+}
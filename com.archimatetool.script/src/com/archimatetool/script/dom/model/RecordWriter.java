@@ -0,0 +1,207 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Record Writer
+ *
+ * Writes records one at a time as CSV (with an optional header row) or NDJSON (one JSON object per line)
+ * so that only the current record is held in memory.
+ *
+ * @author agent
+ */
+abstract class RecordWriter implements Closeable {
+    
+    protected BufferedWriter writer;
+    protected List<String> columns;
+    
+    RecordWriter(Writer writer, List<String> columns) {
+        this.writer = writer instanceof BufferedWriter ? (BufferedWriter)writer : new BufferedWriter(writer, 1 << 16);
+        this.columns = columns;
+    }
+    
+    /**
+     * @param format "csv" or "ndjson"
+     * @param columns the column names
+     * @param delimiter the CSV delimiter
+     * @param header whether to write a CSV header row
+     */
+    static RecordWriter create(Writer writer, String format, List<String> columns, char delimiter, boolean header) throws IOException {
+        if(RecordReader.NDJSON.equals(format)) {
+            return new NDJSONWriter(writer, columns);
+        }
+        if(RecordReader.CSV.equals(format)) {
+            return new CSVWriter(writer, columns, delimiter, header);
+        }
+        throw new IllegalArgumentException("Unknown format: " + format); //$NON-NLS-1$
+    }
+    
+    /**
+     * Write a record
+     * @param values the values in column order. A value can be a String, Number, Boolean, Map or null.
+     */
+    abstract void write(List<Object> values) throws IOException;
+    
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+    
+    /**
+     * CSV. Fields containing the delimiter, quotes or new lines are quoted.
+     */
+    static class CSVWriter extends RecordWriter {
+        private char delimiter;
+        
+        CSVWriter(Writer writer, List<String> columns, char delimiter, boolean header) throws IOException {
+            super(writer, columns);
+            this.delimiter = delimiter;
+            
+            if(header) {
+                write(columns.toArray());
+            }
+        }
+        
+        @Override
+        void write(List<Object> values) throws IOException {
+            write(values.toArray());
+        }
+        
+        private void write(Object[] values) throws IOException {
+            for(int i = 0; i < values.length; i++) {
+                if(i > 0) {
+                    writer.write(delimiter);
+                }
+                if(values[i] != null) {
+                    writeField(values[i].toString());
+                }
+            }
+            writer.write('\n');
+        }
+        
+        private void writeField(String s) throws IOException {
+            boolean quote = false;
+            for(int i = 0; i < s.length() && !quote; i++) {
+                char c = s.charAt(i);
+                quote = c == delimiter || c == '"' || c == '\n' || c == '\r';
+            }
+            
+            if(!quote) {
+                writer.write(s);
+                return;
+            }
+            
+            writer.write('"');
+            for(int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if(c == '"') {
+                    writer.write('"');
+                }
+                writer.write(c);
+            }
+            writer.write('"');
+        }
+    }
+    
+    /**
+     * One JSON object per line. Null values are left out.
+     */
+    static class NDJSONWriter extends RecordWriter {
+        
+        NDJSONWriter(Writer writer, List<String> columns) {
+            super(writer, columns);
+        }
+        
+        @Override
+        void write(List<Object> values) throws IOException {
+            writer.write('{');
+            
+            boolean first = true;
+            for(int i = 0; i < columns.size(); i++) {
+                if(values.get(i) != null) {
+                    if(!first) {
+                        writer.write(',');
+                    }
+                    first = false;
+                    writeString(columns.get(i));
+                    writer.write(':');
+                    writeValue(values.get(i));
+                }
+            }
+            
+            writer.write("}\n"); //$NON-NLS-1$
+        }
+        
+        private void writeValue(Object value) throws IOException {
+            if(value == null) {
+                writer.write("null"); //$NON-NLS-1$
+            }
+            else if(value instanceof Number || value instanceof Boolean) {
+                writer.write(value.toString());
+            }
+            else if(value instanceof Map) {
+                writer.write('{');
+                boolean first = true;
+                for(Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+                    if(!first) {
+                        writer.write(',');
+                    }
+                    first = false;
+                    writeString(String.valueOf(entry.getKey()));
+                    writer.write(':');
+                    writeValue(entry.getValue());
+                }
+                writer.write('}');
+            }
+            else {
+                writeString(value.toString());
+            }
+        }
+        
+        private void writeString(String s) throws IOException {
+            writer.write('"');
+            
+            for(int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch(c) {
+                    case '"':
+                        writer.write("\\\""); //$NON-NLS-1$
+                        break;
+                    case '\\':
+                        writer.write("\\\\"); //$NON-NLS-1$
+                        break;
+                    case '\n':
+                        writer.write("\\n"); //$NON-NLS-1$
+                        break;
+                    case '\r':
+                        writer.write("\\r"); //$NON-NLS-1$
+                        break;
+                    case '\t':
+                        writer.write("\\t"); //$NON-NLS-1$
+                        break;
+                    default:
+                        if(c < 0x20) {
+                            writer.write(String.format("\\u%04x", (int)c)); //$NON-NLS-1$
+                        }
+                        else {
+                            writer.write(c);
+                        }
+                        break;
+                }
+            }
+            
+            writer.write('"');
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimatePackage;
+import com.archimatetool.model.util.ArchimateModelUtils;
+
+/**
+ * Relationship Rules
+ *
+ * A table of which relationship types are allowed between which concept types.
+ * The table is computed once from ArchimateModelUtils and each concept class is given a dense index
+ * so that checking a relationship is an array lookup and one bit test.
+ *
+ * @author agent
+ */
+final class RelationshipRules {
+    
+    private static final IArchimatePackage PACKAGE = IArchimatePackage.eINSTANCE;
+    
+    // Concept and relationship classes by dense index
+    private static final List<EClass> concepts = new ArrayList<>();
+    private static final List<EClass> relations = new ArrayList<>();
+    
+    // Classifier ID to dense index, -1 if not a concept or relationship class
+    private static final int[] conceptIndex;
+    private static final int[] relationIndex;
+    
+    // Concept classes by lower case kebab-case name
+    private static final Map<String, EClass> types = new HashMap<>();
+    
+    // Bit (source * concepts + target) * relations + relation is set if allowed
+    private static final BitSet table;
+    
+    static {
+        List<EClassifier> classifiers = PACKAGE.getEClassifiers();
+        int maxId = 0;
+        for(EClassifier classifier : classifiers) {
+            maxId = Math.max(maxId, classifier.getClassifierID());
+        }
+        
+        conceptIndex = createIndex(maxId + 1);
+        relationIndex = createIndex(maxId + 1);
+        
+        for(EClassifier classifier : classifiers) {
+            if(classifier instanceof EClass) {
+                EClass eClass = (EClass)classifier;
+                if(!eClass.isAbstract() && !eClass.isInterface() && PACKAGE.getArchimateConcept().isSuperTypeOf(eClass)) {
+                    conceptIndex[eClass.getClassifierID()] = concepts.size();
+                    concepts.add(eClass);
+                    types.put(ModelUtil.getKebabCase(eClass.getName()), eClass);
+                    
+                    if(PACKAGE.getArchimateRelationship().isSuperTypeOf(eClass)) {
+                        relationIndex[eClass.getClassifierID()] = relations.size();
+                        relations.add(eClass);
+                    }
+                }
+            }
+        }
+        
+        table = new BitSet(concepts.size() * concepts.size() * relations.size());
+        
+        for(EClass source : concepts) {
+            for(EClass target : concepts) {
+                for(EClass relation : relations) {
+                    if(ArchimateModelUtils.isValidRelationship(source, target, relation)) {
+                        table.set(getBit(conceptIndex[source.getClassifierID()], conceptIndex[target.getClassifierID()],
+                                relationIndex[relation.getClassifierID()]));
+                    }
+                }
+            }
+        }
+    }
+    
+    private RelationshipRules() {
+    }
+    
+    /**
+     * @return true if a relationship of type relation is allowed from source type to target type
+     */
+    static boolean isValidRelationship(EClass source, EClass target, EClass relation) {
+        int sourceIndex = getIndex(conceptIndex, source);
+        int targetIndex = getIndex(conceptIndex, target);
+        int relIndex = getIndex(relationIndex, relation);
+        
+        if(sourceIndex == -1 || targetIndex == -1 || relIndex == -1) {
+            return false;
+        }
+        
+        return table.get(getBit(sourceIndex, targetIndex, relIndex));
+    }
+    
+    /**
+     * @return true if a relationship of type relation is allowed from source to target
+     */
+    static boolean isValidRelationship(IArchimateConcept source, IArchimateConcept target, EClass relation) {
+        return source != null && target != null && isValidRelationship(source.eClass(), target.eClass(), relation);
+    }
+    
+    /**
+     * @param type a type name such as "business-actor"
+     * @return the class for the type name or null
+     */
+    static EClass getEClass(String type) {
+        if(type == null) {
+            return null;
+        }
+        
+        EClass eClass = types.get(type.toLowerCase());
+        if(eClass != null) {
+            return eClass;
+        }
+        
+        EClassifier classifier = PACKAGE.getEClassifier(ModelUtil.getCamelCase(type));
+        return classifier instanceof EClass ? (EClass)classifier : null;
+    }
+    
+    /**
+     * Validate candidate relationships.
+     * Each candidate is an array of [relationship type, source, target] or a map with keys "type", "source" and "target".
+     * The source and target can be type names or concepts.
+     * @return the indexes of the candidates that are not valid
+     */
+    static List<Integer> validate(Collection<?> candidates) {
+        List<Integer> invalid = new ArrayList<>();
+        
+        int i = 0;
+        for(Object candidate : candidates) {
+            if(!isValidCandidate(candidate)) {
+                invalid.add(i);
+            }
+            i++;
+        }
+        
+        return invalid;
+    }
+    
+    private static boolean isValidCandidate(Object candidate) {
+        Object type, source, target;
+        
+        if(candidate instanceof Map && ((Map<?, ?>)candidate).containsKey("type")) { //$NON-NLS-1$
+            Map<?, ?> map = (Map<?, ?>)candidate;
+            type = map.get("type"); //$NON-NLS-1$
+            source = map.get("source"); //$NON-NLS-1$
+            target = map.get("target"); //$NON-NLS-1$
+        }
+        else {
+            List<Object> values = ModelUtil.toList(candidate);
+            if(values.size() != 3) {
+                return false;
+            }
+            type = values.get(0);
+            source = values.get(1);
+            target = values.get(2);
+        }
+        
+        EClass relation = type instanceof String ? getEClass((String)type) : null;
+        return isValidRelationship(getCandidateClass(source), getCandidateClass(target), relation);
+    }
+    
+    private static EClass getCandidateClass(Object object) {
+        if(object instanceof String) {
+            return getEClass((String)object);
+        }
+        
+        if(object instanceof EObjectProxy) {
+            return ((EObjectProxy)object).getEObject().eClass();
+        }
+        
+        return null;
+    }
+    
+    private static int getIndex(int[] index, EClass eClass) {
+        if(eClass == null || eClass.getEPackage() != PACKAGE) {
+            return -1;
+        }
+        
+        int id = eClass.getClassifierID();
+        return id >= 0 && id < index.length ? index[id] : -1;
+    }
+    
+    private static int getBit(int source, int target, int relation) {
+        return (source * concepts.size() + target) * relations.size() + relation;
+    }
+    
+    private static int[] createIndex(int size) {
+        int[] index = new int[size];
+        Arrays.fill(index, -1);
+        return index;
+    }
+}
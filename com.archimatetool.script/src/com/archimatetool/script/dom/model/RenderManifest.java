@@ -0,0 +1,118 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Render Manifest
+ *
+ * Stored in the export folder, this records the fingerprint and file name of each View rendered there,
+ * and the render options used, so that the next export can skip Views that have not changed.
+ *
+ * @author agent
+ */
+class RenderManifest {
+    
+    static final String FILE_NAME = ".render-manifest.properties"; //$NON-NLS-1$
+    
+    private static final String OPTIONS_KEY = "options"; //$NON-NLS-1$
+    private static final String VIEW_PREFIX = "view."; //$NON-NLS-1$
+    
+    private Path file;
+    private Properties properties = new Properties();
+    private boolean sameOptions;
+    
+    /**
+     * Load the manifest in folder, if there is one
+     * @param options a string representing the render options. If these are different from the last time
+     * then no View is treated as unchanged.
+     */
+    RenderManifest(Path folder, String options) throws IOException {
+        file = folder.resolve(FILE_NAME);
+        
+        if(Files.exists(file)) {
+            try(InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            }
+        }
+        
+        sameOptions = options.equals(properties.getProperty(OPTIONS_KEY));
+        properties.setProperty(OPTIONS_KEY, options);
+    }
+    
+    /**
+     * @return the file name a View was last rendered to, or null if it was not rendered
+     */
+    String getFileName(String viewId) {
+        String value = properties.getProperty(VIEW_PREFIX + viewId);
+        int index = value == null ? -1 : value.indexOf(' ');
+        return index == -1 ? null : value.substring(index + 1);
+    }
+    
+    /**
+     * @return the file names of all Views in the manifest, keyed by View id
+     */
+    Map<String, String> getFileNames() {
+        Map<String, String> fileNames = new HashMap<>();
+        
+        for(String key : properties.stringPropertyNames()) {
+            if(key.startsWith(VIEW_PREFIX)) {
+                String viewId = key.substring(VIEW_PREFIX.length());
+                String fileName = getFileName(viewId);
+                if(fileName != null) {
+                    fileNames.put(viewId, fileName);
+                }
+            }
+        }
+        
+        return fileNames;
+    }
+    
+    /**
+     * @return true if the View was last rendered with the same fingerprint and options, and its file still exists
+     */
+    boolean isUnchanged(String viewId, String fingerprint) {
+        if(!sameOptions) {
+            return false;
+        }
+        
+        String value = properties.getProperty(VIEW_PREFIX + viewId);
+        String fileName = getFileName(viewId);
+        
+        return value != null && fileName != null && value.startsWith(fingerprint + " ") //$NON-NLS-1$
+                && Files.exists(file.resolveSibling(fileName));
+    }
+    
+    void put(String viewId, String fingerprint, String fileName) {
+        properties.setProperty(VIEW_PREFIX + viewId, fingerprint + " " + fileName); //$NON-NLS-1$
+    }
+    
+    void remove(String viewId) {
+        properties.remove(VIEW_PREFIX + viewId);
+    }
+    
+    /**
+     * Save the manifest, replacing the old one only when the new one is completely written
+     */
+    void save() throws IOException {
+        Path temp = file.resolveSibling(FILE_NAME + ".tmp"); //$NON-NLS-1$
+        
+        try(OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, null);
+        }
+        
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
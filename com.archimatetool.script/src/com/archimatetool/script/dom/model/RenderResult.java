@@ -0,0 +1,85 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The progress and result of rendering a batch of Views
+ *
+ * @author agent
+ */
+public class RenderResult {
+    
+    private int total, rendered, skipped, failed;
+    private List<String> errors = new ArrayList<>();
+    
+    RenderResult(int total) {
+        this.total = total;
+    }
+    
+    /**
+     * @return the number of Views to render
+     */
+    public int getTotal() {
+        return total;
+    }
+    
+    /**
+     * @return the number of Views rendered and written so far
+     */
+    public int getRendered() {
+        return rendered;
+    }
+    
+    /**
+     * @return the number of Views not rendered because they are unchanged since the last export
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+    
+    /**
+     * @return the number of Views that could not be rendered or written
+     */
+    public int getFailed() {
+        return failed;
+    }
+    
+    /**
+     * @return the number of Views done so far
+     */
+    public int getDone() {
+        return rendered + skipped + failed;
+    }
+    
+    /**
+     * @return the error messages of the failed Views
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+    
+    void addRendered() {
+        rendered++;
+    }
+    
+    void addSkipped() {
+        skipped++;
+    }
+    
+    void addFailed(String viewName, Throwable error) {
+        failed++;
+        errors.add(viewName + ": " + error); //$NON-NLS-1$
+    }
+    
+    @Override
+    public String toString() {
+        return "Views: " + total + ", rendered: " + rendered + ", skipped: " + skipped + ", failed: " + failed; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+import com.archimatetool.editor.model.IArchiveManager;
+import com.archimatetool.model.IArchimateModel;
+
+/**
+ * A model save running in the background, returned by model.saveAsync()
+ *
+ * The model is copied on the calling thread and the copy is written on a background thread while the script carries on.
+ * The copy is written to a temporary file which then replaces the model file, so the model file is never left half written.
+ * Saves are written one at a time in the order they were started, and saves still running when a script ends are waited for.
+ *
+ * @author agent
+ */
+public class SaveTask {
+    
+    private static ExecutorService executor;
+    private static final Set<SaveTask> running = new LinkedHashSet<>();
+    
+    private String path;
+    private CountDownLatch latch = new CountDownLatch(1);
+    private volatile Throwable error;
+    
+    private SaveTask(String path) {
+        this.path = path;
+    }
+    
+    /**
+     * Copy the model and start writing it to its file. This has to be called on the thread that owns the model.
+     */
+    static SaveTask start(IArchimateModel model) {
+        File file = model.getFile().getAbsoluteFile();
+        
+        // The copy has the same ids. Images are in the archive managers' shared storage so the copy can find them.
+        IArchimateModel copy = EcoreUtil.copy(model);
+        
+        SaveTask task = new SaveTask(file.getPath());
+        
+        synchronized(running) {
+            running.add(task);
+            
+            if(executor == null) {
+                executor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "jArchi Save"); //$NON-NLS-1$
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            
+            executor.execute(() -> {
+                try {
+                    write(copy, file);
+                }
+                catch(Throwable ex) {
+                    task.error = ex;
+                }
+                finally {
+                    synchronized(running) {
+                        running.remove(task);
+                    }
+                    task.latch.countDown();
+                }
+            });
+        }
+        
+        return task;
+    }
+    
+    /**
+     * @return a task for a save that has already been done
+     */
+    static SaveTask completed(String path) {
+        SaveTask task = new SaveTask(path);
+        task.latch.countDown();
+        return task;
+    }
+    
+    private static void write(IArchimateModel copy, File file) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".saving"); //$NON-NLS-1$
+        
+        copy.setFile(temp);
+        IArchiveManager archiveManager = IArchiveManager.FACTORY.createArchiveManager(copy);
+        copy.setAdapter(IArchiveManager.class, archiveManager);
+        
+        try {
+            archiveManager.saveModel();
+            
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+    
+    /**
+     * Wait for all running saves to finish. This is called when a script ends.
+     */
+    public static void waitForAll() {
+        List<SaveTask> tasks;
+        
+        synchronized(running) {
+            tasks = new ArrayList<>(running);
+        }
+        
+        for(SaveTask task : tasks) {
+            try {
+                task.waitFor();
+            }
+            catch(IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * @return the model file path
+     */
+    public String getPath() {
+        return path;
+    }
+    
+    /**
+     * @return true if the save has finished or failed
+     */
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+    
+    /**
+     * @return true if the save has failed
+     */
+    public boolean isFailed() {
+        return error != null;
+    }
+    
+    /**
+     * @return the error message if the save failed, or null
+     */
+    public String getError() {
+        return error == null ? null : String.valueOf(error.getMessage());
+    }
+    
+    /**
+     * Wait for the save to finish
+     * @throws IOException if the save failed
+     */
+    public SaveTask waitFor() throws IOException {
+        try {
+            latch.await();
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+        
+        if(error instanceof IOException) {
+            throw (IOException)error;
+        }
+        if(error != null) {
+            throw new IOException(error);
+        }
+        
+        return this;
+    }
+    
+    @Override
+    public String toString() {
+        return "SaveTask: " + path + (isFailed() ? " (failed)" : isDone() ? " (done)" : " (running)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+}
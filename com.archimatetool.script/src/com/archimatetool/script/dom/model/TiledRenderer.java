@@ -0,0 +1,308 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.draw2d.ColorConstants;
+import org.eclipse.draw2d.Graphics;
+import org.eclipse.draw2d.IFigure;
+import org.eclipse.draw2d.SWTGraphics;
+import org.eclipse.draw2d.ScaledGraphics;
+import org.eclipse.draw2d.geometry.Rectangle;
+import org.eclipse.gef.LayerConstants;
+import org.eclipse.gef.editparts.LayerManager;
+import org.eclipse.gef.ui.parts.GraphicalViewerImpl;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+
+import com.archimatetool.editor.diagram.util.DiagramUtils;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.script.ArchiScriptException;
+
+/**
+ * Tiled Renderer
+ *
+ * Renders a View tile by tile so that memory use is bounded by the tile size and not by the size of the View.
+ * Either the tiles are painted strip by strip into one PNG file through the streaming PNGWriter,
+ * or each tile is written as its own image file in a folder, for a zoomable viewer.
+ *
+ * The View is divided into a grid of cells in diagram coordinates so that tiles join up at any scale.
+ * Each file is written to a temporary file which then replaces the file, so a failed render doesn't leave a half written file.
+ *
+ * @author agent
+ */
+class TiledRenderer {
+    
+    static final String TILE_SIZE = "tileSize"; //$NON-NLS-1$
+    
+    // Maximum pixel buffer for one strip when writing a single PNG
+    private static final long STRIP_BUDGET = 64L << 20;
+    
+    private Map<?, ?> options;
+    private double scale;
+    private int margin;
+    private int tileSize;
+    
+    // Diagram bounds including the margin, the size of a grid cell in diagram coordinates, and image size in pixels
+    private Rectangle bounds;
+    private int cell;
+    private int width, height;
+    
+    /**
+     * @param options "scale" (default 1), "margin" (default 10), "tileSize" (tile width and height in pixels, default 1024)
+     * and "quality" (JPEG quality of tiles from 1 to 100)
+     */
+    TiledRenderer(Map<?, ?> options) {
+        this.options = options;
+        scale = ModelUtil.getDoubleValueFromMap(options, ViewRenderer.SCALE, 1);
+        margin = ModelUtil.getIntValueFromMap(options, ViewRenderer.MARGIN, 10);
+        tileSize = ModelUtil.getIntValueFromMap(options, TILE_SIZE, 1024);
+        
+        if(scale <= 0) {
+            throw new ArchiScriptException("Scale must be greater than 0"); //$NON-NLS-1$
+        }
+        if(tileSize < 16) {
+            throw new ArchiScriptException("tileSize must be at least 16"); //$NON-NLS-1$
+        }
+    }
+    
+    /**
+     * Render a View to one PNG file, strip by strip
+     * @return the image "width" and "height"
+     */
+    Map<String, Integer> renderPNG(IDiagramModel dm, Path file) throws IOException {
+        Path temp = getTempFile(file);
+        Shell shell = new Shell();
+        
+        try {
+            IFigure figure = createFigure(dm, shell);
+            
+            // Strips are as wide as the image, so make them shorter than a tile if the image is very wide
+            int stripCells = (int)Math.max(1, Math.min(cell, STRIP_BUDGET / 4 / width / scale));
+            
+            try(PNGWriter writer = new PNGWriter(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16), width, height)) {
+                for(int j = 0; toPixels(j * stripCells) < height; j++) {
+                    int top = toPixels(j * stripCells);
+                    int rows = Math.min(height, toPixels((j + 1) * stripCells)) - top;
+                    int[] pixels = new int[width * rows];
+                    
+                    for(int i = 0; toPixels(i * cell) < width; i++) {
+                        int left = toPixels(i * cell);
+                        int right = Math.min(width, toPixels((i + 1) * cell));
+                        ImageData tile = paintTile(figure, i * cell, j * stripCells, right - left, rows);
+                        copyPixels(tile, pixels, left, width);
+                    }
+                    
+                    writer.writeRows(pixels, 0, rows);
+                }
+            }
+            
+            replace(temp, file);
+        }
+        finally {
+            shell.dispose();
+            Files.deleteIfExists(temp);
+        }
+        
+        return getSize(0, 0);
+    }
+    
+    /**
+     * Render a View to a folder of tiles named "column_row.ext"
+     * @param format One of "PNG", "BMP", "GIF", "JPG", "JPEG". Tiles are painted as bitmaps so SVG is not supported.
+     * @return the image "width" and "height", the "tileSize" and the number of "columns" and "rows"
+     */
+    Map<String, Integer> renderTiles(IDiagramModel dm, Path folder, String format) throws IOException {
+        if(OffscreenRenderer.SVG.equalsIgnoreCase(format)) {
+            throw new ArchiScriptException("SVG is not supported for tiles"); //$NON-NLS-1$
+        }
+        
+        // Check before anything is created
+        ViewRenderer.getSWTFormat(format);
+        
+        Files.createDirectories(folder);
+        
+        // The caller's options, such as JPEG quality, apply to each tile
+        ViewRenderer writer = new ViewRenderer(options);
+        String extension = ViewRenderer.getExtension(format);
+        int columns = 0, rows = 0;
+        
+        Shell shell = new Shell();
+        
+        try {
+            IFigure figure = createFigure(dm, shell);
+            
+            for(rows = 0; toPixels(rows * cell) < height; rows++) {
+                int top = toPixels(rows * cell);
+                int bottom = Math.min(height, toPixels((rows + 1) * cell));
+                
+                for(columns = 0; toPixels(columns * cell) < width; columns++) {
+                    int left = toPixels(columns * cell);
+                    int right = Math.min(width, toPixels((columns + 1) * cell));
+                    ImageData tile = paintTile(figure, columns * cell, rows * cell, right - left, bottom - top);
+                    writeTile(writer, tile, format, folder.resolve(columns + "_" + rows + "." + extension)); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+            }
+        }
+        finally {
+            shell.dispose();
+        }
+        
+        return getSize(columns, rows);
+    }
+    
+    /**
+     * Write a tile to a temporary file which then replaces the tile file
+     */
+    private void writeTile(ViewRenderer writer, ImageData tile, String format, Path file) throws IOException {
+        Path temp = getTempFile(file);
+        
+        try {
+            writer.write(tile, format, temp);
+            replace(temp, file);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    private static Path getTempFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".saving"); //$NON-NLS-1$
+    }
+    
+    private static void replace(Path temp, Path file) throws IOException {
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException ex) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Create the View's figure and work out the grid
+     */
+    private IFigure createFigure(IDiagramModel dm, Shell shell) {
+        shell.setLayout(new FillLayout());
+        GraphicalViewerImpl viewer = DiagramUtils.createViewer(dm, shell);
+        LayerManager layerManager = (LayerManager)viewer.getEditPartRegistry().get(LayerManager.ID);
+        IFigure figure = layerManager.getLayer(LayerConstants.PRINTABLE_LAYERS);
+        
+        bounds = DiagramUtils.getMinimumBounds(figure);
+        if(bounds == null) {
+            bounds = new Rectangle(0, 0, 100, 100);
+        }
+        else {
+            bounds = bounds.getCopy().expand(margin, margin);
+        }
+        
+        // Cell size in diagram coordinates so that a cell is about tileSize pixels
+        cell = Math.max(1, (int)(tileSize / scale));
+        
+        width = Math.max(1, (int)Math.ceil(bounds.width * scale));
+        height = Math.max(1, (int)Math.ceil(bounds.height * scale));
+        
+        return figure;
+    }
+    
+    /**
+     * @return the pixel position of a position in diagram coordinates relative to the bounds
+     */
+    private int toPixels(long diagramPosition) {
+        return (int)Math.min(Integer.MAX_VALUE, Math.floor(diagramPosition * scale));
+    }
+    
+    /**
+     * Paint one tile whose top left is at a position in diagram coordinates relative to the bounds
+     */
+    private ImageData paintTile(IFigure figure, int cellX, int cellY, int tileWidth, int tileHeight) {
+        Image image = new Image(Display.getDefault(), tileWidth, tileHeight);
+        GC gc = new GC(image);
+        SWTGraphics swtGraphics = new SWTGraphics(gc);
+        ScaledGraphics scaledGraphics = null;
+        Graphics graphics = swtGraphics;
+        
+        try {
+            graphics.setBackgroundColor(ColorConstants.white);
+            graphics.fillRectangle(0, 0, tileWidth, tileHeight);
+            
+            if(scale != 1) {
+                scaledGraphics = new ScaledGraphics(swtGraphics);
+                scaledGraphics.scale(scale);
+                graphics = scaledGraphics;
+            }
+            
+            graphics.translate(-(bounds.x + cellX), -(bounds.y + cellY));
+            figure.paint(graphics);
+            
+            return image.getImageData();
+        }
+        finally {
+            if(scaledGraphics != null) {
+                scaledGraphics.dispose();
+            }
+            swtGraphics.dispose();
+            gc.dispose();
+            image.dispose();
+        }
+    }
+    
+    /**
+     * Copy the pixels of a tile into a strip buffer as 0xRRGGBB
+     */
+    private static void copyPixels(ImageData tile, int[] pixels, int x, int stripWidth) {
+        PaletteData palette = tile.palette;
+        int[] row = new int[tile.width];
+        
+        for(int y = 0; y < tile.height; y++) {
+            tile.getPixels(0, y, tile.width, row, 0);
+            int offset = y * stripWidth + x;
+            
+            for(int i = 0; i < tile.width; i++) {
+                int pixel = row[i];
+                
+                if(palette.isDirect) {
+                    int r = shift(pixel & palette.redMask, palette.redShift);
+                    int g = shift(pixel & palette.greenMask, palette.greenShift);
+                    int b = shift(pixel & palette.blueMask, palette.blueShift);
+                    pixels[offset + i] = (r << 16) | (g << 8) | b;
+                }
+                else {
+                    pixels[offset + i] = (palette.colors[pixel].red << 16) | (palette.colors[pixel].green << 8) | palette.colors[pixel].blue;
+                }
+            }
+        }
+    }
+    
+    private static int shift(int value, int shift) {
+        return shift < 0 ? value >>> -shift : value << shift;
+    }
+    
+    private Map<String, Integer> getSize(int columns, int rows) {
+        Map<String, Integer> map = new LinkedHashMap<>();
+        map.put("width", width); //$NON-NLS-1$
+        map.put("height", height); //$NON-NLS-1$
+        if(columns > 0) {
+            map.put(TILE_SIZE, tileSize);
+            map.put("columns", columns); //$NON-NLS-1$
+            map.put("rows", rows); //$NON-NLS-1$
+        }
+        return map;
+    }
+}
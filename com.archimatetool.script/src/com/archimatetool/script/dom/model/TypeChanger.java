@@ -0,0 +1,305 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.osgi.util.NLS;
+
+import com.archimatetool.editor.utils.StringUtils;
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimatePackage;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelArchimateComponent;
+import com.archimatetool.model.IDiagramModelArchimateConnection;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.script.ArchiScriptException;
+import com.archimatetool.script.commands.AddElementCommand;
+import com.archimatetool.script.commands.AddRelationshipCommand;
+import com.archimatetool.script.commands.BatchCommand;
+import com.archimatetool.script.commands.CommandHandler;
+import com.archimatetool.script.commands.DeleteFolderObjectCommand;
+import com.archimatetool.script.commands.DisconnectRelationshipCommand;
+import com.archimatetool.script.commands.ScriptCommand;
+import com.archimatetool.script.commands.SetElementOnDiagramModelObjectCommand;
+
+/**
+ * Type Changer
+ *
+ * Sets the type of many concepts at once. This does the same as setType() on each concept but plans the whole change first:
+ * relationships are validated against the types that all of the concepts will have after the change, each view is scanned once
+ * for all diagram references, and all replacements and rewiring are applied as one batch command per model.
+ * If any relationship would become invalid nothing is changed.
+ *
+ * @author agent
+ */
+class TypeChanger {
+    
+    private EClass eClass;
+    private String type;
+    
+    // Old concept -> proxies that will be set to the new concept
+    private Map<IArchimateConcept, List<ArchimateConceptProxy>> proxies = new LinkedHashMap<>();
+    
+    // Old concept -> new concept
+    private Map<IArchimateConcept, IArchimateConcept> replacements = new HashMap<>();
+    
+    private TypeChanger(String type) {
+        this.type = type;
+        eClass = RelationshipRules.getEClass(type);
+    }
+    
+    /**
+     * Set the type of the concepts in objects to type. Objects that are not concepts or are already of type are ignored.
+     */
+    static void setType(Collection<EObjectProxy> objects, String type) {
+        if(!StringUtils.isSet(type)) {
+            return;
+        }
+        
+        TypeChanger changer = new TypeChanger(type);
+        changer.addConcepts(objects);
+        changer.validate();
+        changer.apply();
+    }
+    
+    private void addConcepts(Collection<EObjectProxy> objects) {
+        for(EObjectProxy object : objects) {
+            if(!(object instanceof ArchimateConceptProxy)) {
+                continue;
+            }
+            
+            IArchimateConcept concept = ((ArchimateConceptProxy)object).getEObject();
+            if(concept.eClass() == eClass) {
+                continue;
+            }
+            
+            // Check this is the correct kind of type
+            boolean isRelationship = concept instanceof IArchimateRelationship;
+            EClass superClass = isRelationship ? IArchimatePackage.eINSTANCE.getArchimateRelationship() : IArchimatePackage.eINSTANCE.getArchimateElement();
+            if(eClass == null || eClass.isAbstract() || !superClass.isSuperTypeOf(eClass)) {
+                throw new ArchiScriptException(NLS.bind(isRelationship ? Messages.ArchimateModelProxy_1 : Messages.ArchimateModelProxy_0, type));
+            }
+            
+            if(concept.getArchimateModel() == null) {
+                continue;
+            }
+            
+            proxies.computeIfAbsent(concept, c -> new ArrayList<>()).add((ArchimateConceptProxy)object);
+        }
+    }
+    
+    /**
+     * Check all relationships using the types the concepts will have after the change
+     */
+    private void validate() {
+        for(IArchimateConcept concept : proxies.keySet()) {
+            for(IArchimateRelationship rel : concept.getSourceRelationships()) {
+                if(!RelationshipRules.isValidRelationship(eClass, getNewClass(rel.getTarget()), getNewClass(rel))) {
+                    throw new ArchiScriptException(NLS.bind(Messages.ArchimateConceptProxy_1, type));
+                }
+            }
+            
+            for(IArchimateRelationship rel : concept.getTargetRelationships()) {
+                if(!RelationshipRules.isValidRelationship(getNewClass(rel.getSource()), eClass, getNewClass(rel))) {
+                    throw new ArchiScriptException(NLS.bind(Messages.ArchimateConceptProxy_1, type));
+                }
+            }
+            
+            if(concept instanceof IArchimateRelationship) {
+                IArchimateRelationship rel = (IArchimateRelationship)concept;
+                if(!RelationshipRules.isValidRelationship(getNewClass(rel.getSource()), getNewClass(rel.getTarget()), eClass)) {
+                    throw new ArchiScriptException(NLS.bind(Messages.ArchimateConceptProxy_1, type));
+                }
+            }
+        }
+    }
+    
+    private EClass getNewClass(IArchimateConcept concept) {
+        return proxies.containsKey(concept) ? eClass : concept.eClass();
+    }
+    
+    private IArchimateConcept getNewConcept(IArchimateConcept concept) {
+        return replacements.getOrDefault(concept, concept);
+    }
+    
+    private void apply() {
+        // One batch per model
+        Map<IArchimateModel, List<IArchimateConcept>> models = new LinkedHashMap<>();
+        for(IArchimateConcept concept : proxies.keySet()) {
+            models.computeIfAbsent(concept.getArchimateModel(), m -> new ArrayList<>()).add(concept);
+        }
+        
+        // Create all of the replacements first so that relationships between changed concepts can be connected to them
+        for(IArchimateConcept concept : proxies.keySet()) {
+            replacements.put(concept, createReplacement(concept));
+        }
+        
+        for(Entry<IArchimateModel, List<IArchimateConcept>> entry : models.entrySet()) {
+            BatchCommand batch = new BatchCommand("setType", entry.getKey()); //$NON-NLS-1$
+            addCommands(batch, entry.getKey(), entry.getValue());
+            CommandHandler.executeCommand(batch);
+        }
+    }
+    
+    private IArchimateConcept createReplacement(IArchimateConcept concept) {
+        IArchimateConcept newConcept = (IArchimateConcept)IArchimateFactory.eINSTANCE.create(eClass);
+        newConcept.setName(concept.getName());
+        newConcept.setDocumentation(concept.getDocumentation());
+        newConcept.getProperties().addAll(EcoreUtil.copyAll(concept.getProperties()));
+        newConcept.getFeatures().addAll(EcoreUtil.copyAll(concept.getFeatures()));
+        return newConcept;
+    }
+    
+    private void addCommands(BatchCommand batch, IArchimateModel model, List<IArchimateConcept> concepts) {
+        // Add the new concepts
+        for(IArchimateConcept concept : concepts) {
+            IArchimateConcept newConcept = replacements.get(concept);
+            
+            // Check folder is correct for type, if not use default folder
+            IFolder parentFolder = (IFolder)concept.eContainer();
+            if(parentFolder == null || !ModelUtil.isCorrectFolderForObject(parentFolder, newConcept)) {
+                parentFolder = model.getDefaultFolderForObject(newConcept);
+            }
+            
+            if(newConcept instanceof IArchimateRelationship) {
+                IArchimateRelationship rel = (IArchimateRelationship)concept;
+                batch.add(new AddRelationshipCommand(parentFolder, (IArchimateRelationship)newConcept,
+                        getNewConcept(rel.getSource()), getNewConcept(rel.getTarget())));
+            }
+            else {
+                batch.add(new AddElementCommand(parentFolder, (IArchimateElement)newConcept));
+            }
+        }
+        
+        // Rewire the relationships that are not changing type
+        for(IArchimateConcept concept : concepts) {
+            IArchimateConcept newConcept = replacements.get(concept);
+            
+            for(IArchimateRelationship rel : concept.getSourceRelationships()) {
+                if(!replacements.containsKey(rel)) {
+                    batch.add(createSetEndCommand(rel, newConcept, true));
+                }
+            }
+            
+            for(IArchimateRelationship rel : concept.getTargetRelationships()) {
+                if(!replacements.containsKey(rel)) {
+                    batch.add(createSetEndCommand(rel, newConcept, false));
+                }
+            }
+        }
+        
+        // Set all diagram components to the new concepts
+        for(IDiagramModel dm : model.getDiagramModels()) {
+            for(TreeIterator<EObject> iter = dm.eAllContents(); iter.hasNext();) {
+                EObject eObject = iter.next();
+                if(eObject instanceof IDiagramModelArchimateComponent) {
+                    IDiagramModelArchimateComponent dmc = (IDiagramModelArchimateComponent)eObject;
+                    IArchimateConcept newConcept = replacements.get(dmc.getArchimateConcept());
+                    if(newConcept instanceof IArchimateElement) {
+                        batch.add(new SetElementOnDiagramModelObjectCommand((IArchimateElement)newConcept, (IDiagramModelArchimateObject)dmc, true));
+                    }
+                    else if(newConcept instanceof IArchimateRelationship) {
+                        batch.add(createSetRelationshipCommand((IDiagramModelArchimateConnection)dmc, (IArchimateRelationship)newConcept));
+                    }
+                }
+            }
+        }
+        
+        // Remove the old concepts
+        for(IArchimateConcept concept : concepts) {
+            if(concept instanceof IArchimateRelationship) {
+                batch.add(new DisconnectRelationshipCommand((IArchimateRelationship)concept));
+            }
+            batch.add(new DeleteFolderObjectCommand(concept));
+        }
+        
+        // Set the proxies to the new concepts
+        batch.add(new ScriptCommand("set", model) { //$NON-NLS-1$
+            @Override
+            public void perform() {
+                for(IArchimateConcept concept : concepts) {
+                    for(ArchimateConceptProxy proxy : proxies.get(concept)) {
+                        proxy.setEObject(replacements.get(concept));
+                    }
+                }
+            }
+            
+            @Override
+            public void undo() {
+                for(IArchimateConcept concept : concepts) {
+                    for(ArchimateConceptProxy proxy : proxies.get(concept)) {
+                        proxy.setEObject(concept);
+                    }
+                }
+            }
+        });
+    }
+    
+    private ScriptCommand createSetEndCommand(IArchimateRelationship rel, IArchimateConcept newConcept, boolean isSource) {
+        return new ScriptCommand(isSource ? "source" : "target", rel) { //$NON-NLS-1$ //$NON-NLS-2$
+            IArchimateConcept oldConcept = isSource ? rel.getSource() : rel.getTarget();
+            
+            @Override
+            public void perform() {
+                set(newConcept);
+            }
+            
+            @Override
+            public void undo() {
+                set(oldConcept);
+            }
+            
+            private void set(IArchimateConcept concept) {
+                if(isSource) {
+                    rel.setSource(concept);
+                }
+                else {
+                    rel.setTarget(concept);
+                }
+            }
+        };
+    }
+    
+    private ScriptCommand createSetRelationshipCommand(IDiagramModelArchimateConnection dmc, IArchimateRelationship newRelationship) {
+        return new ScriptCommand("type", dmc) { //$NON-NLS-1$
+            IArchimateRelationship oldRelationship = dmc.getArchimateRelationship();
+            
+            @Override
+            public void perform() {
+                set(newRelationship);
+            }
+            
+            @Override
+            public void undo() {
+                set(oldRelationship);
+            }
+            
+            private void set(IArchimateRelationship relationship) {
+                // Safety to deregister listeners on the concept and update the UI
+                dmc.disconnect();
+                dmc.setArchimateRelationship(relationship);
+                // Reconnect and update UI
+                dmc.reconnect();
+            }
+        };
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package com.archimatetool.script.dom.model;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+
+import com.archimatetool.editor.diagram.util.DiagramUtils;
+import com.archimatetool.editor.preferences.IPreferenceConstants;
+import com.archimatetool.editor.preferences.Preferences;
+import com.archimatetool.editor.ui.ImageFactory;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.script.ArchiScriptException;
+
+/**
+ * View Renderer
+ *
+ * Renders a View and encodes the image straight to a file or output stream,
+ * rather than through a byte array and a Base64 string.
+ * 
+ * Views are painted with Archi's figures, which needs the Display. Only if the "headless" option is set is the View painted
+ * by the OffscreenRenderer instead, which doesn't need the Display and can be called on any thread but draws an approximate preview
+ * of the View rather than Archi's figures. SVG is only written by the OffscreenRenderer, so needs the "headless" option.
+ *
+ * @author agent
+ */
+class ViewRenderer {
+    
+    static final String FORMAT = "format"; //$NON-NLS-1$
+    static final String SCALE = "scale"; //$NON-NLS-1$
+    static final String MARGIN = "margin"; //$NON-NLS-1$
+    static final String QUALITY = "quality"; //$NON-NLS-1$
+    static final String HEADLESS = "headless"; //$NON-NLS-1$
+    
+    static final String PNG = "PNG"; //$NON-NLS-1$
+    
+    private double scale;
+    private int margin;
+    private int quality;
+    private boolean headless;
+    private int defaultWidth, defaultHeight;
+    
+    /**
+     * @param options "scale" (default 1), "margin" (default 10), "quality" (JPEG quality from 1 to 100)
+     * and "headless" (paint an approximate preview with Java2D instead of Archi's figures, needed for SVG)
+     */
+    ViewRenderer(Map<?, ?> options) {
+        scale = ModelUtil.getDoubleValueFromMap(options, SCALE, 1);
+        margin = ModelUtil.getIntValueFromMap(options, MARGIN, 10);
+        quality = ModelUtil.getIntValueFromMap(options, QUALITY, 0);
+        headless = Boolean.TRUE.equals(options != null ? options.get(HEADLESS) : null);
+        
+        if(scale <= 0) {
+            throw new ArchiScriptException("Scale must be greater than 0"); //$NON-NLS-1$
+        }
+        
+        // Read these here in case rendering is on another thread
+        defaultWidth = Preferences.STORE.getInt(IPreferenceConstants.DEFAULT_ARCHIMATE_FIGURE_WIDTH);
+        defaultHeight = Preferences.STORE.getInt(IPreferenceConstants.DEFAULT_ARCHIMATE_FIGURE_HEIGHT);
+    }
+    
+    /**
+     * @return true if Views are painted by the OffscreenRenderer, so don't need the Display
+     */
+    boolean isHeadless() {
+        return headless;
+    }
+    
+    /**
+     * @return a string representing the scale, margin and quality options, used to tell if a View was rendered with the same options
+     */
+    String getOptionsKey() {
+        return scale + "," + margin + "," + quality + (headless ? ",headless" : ""); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+    
+    /**
+     * Paint the View and return its image data. This has to be called on the Display thread.
+     */
+    ImageData createImageData(IDiagramModel dm) {
+        Image image = DiagramUtils.createImage(dm, scale, margin);
+        
+        try {
+            return image.getImageData(ImageFactory.getImageDeviceZoom());
+        }
+        finally {
+            image.dispose();
+        }
+    }
+    
+    /**
+     * Encode image data to a stream. This doesn't need the Display so can be called on any thread.
+     * @param format One of "PNG", "BMP", "GIF", "JPG", "JPEG"
+     */
+    void write(ImageData imageData, String format, OutputStream out) throws IOException {
+        int swtFormat = getSWTFormat(format);
+        
+        ImageLoader loader = new ImageLoader();
+        loader.data = new ImageData[] { imageData };
+        
+        if(quality > 0 && swtFormat == SWT.IMAGE_JPEG) {
+            loader.compression = Math.min(quality, 100);
+        }
+        
+        try {
+            loader.save(out, swtFormat);
+        }
+        catch(RuntimeException ex) { // SWTException
+            throw new IOException(ex);
+        }
+    }
+    
+    /**
+     * Encode image data to a file
+     */
+    void write(ImageData imageData, String format, Path file) throws IOException {
+        getSWTFormat(format);
+        
+        try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            write(imageData, format, out);
+        }
+    }
+    
+    /**
+     * Render a View to a stream
+     */
+    void render(IDiagramModel dm, String format, OutputStream out) throws IOException {
+        checkFormat(format);
+        
+        if(headless) {
+            new OffscreenRenderer(scale, margin, quality, defaultWidth, defaultHeight).render(dm, format, out);
+        }
+        else {
+            write(createImageData(dm), format, out);
+        }
+    }
+    
+    /**
+     * Render a View to a file
+     */
+    void render(IDiagramModel dm, String format, Path file) throws IOException {
+        // Check before the file is created
+        checkFormat(format);
+        
+        if(headless) {
+            try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+                render(dm, format, out);
+            }
+        }
+        else {
+            write(createImageData(dm), format, file);
+        }
+    }
+    
+    /**
+     * @return the format from the "format" option or else the file extension.
+     * A file extension that is not an image format defaults to PNG, as it always has.
+     */
+    static String getFormat(Map<?, ?> options, String path) {
+        String format = ModelUtil.getStringValueFromMap(options, FORMAT, null);
+        if(format != null) {
+            return format;
+        }
+        
+        String name = Paths.get(path).getFileName().toString();
+        int index = name.lastIndexOf('.');
+        String extension = index == -1 ? PNG : name.substring(index + 1);
+        return OffscreenRenderer.SVG.equalsIgnoreCase(extension) || toSWTFormat(extension) != -1 ? extension : PNG;
+    }
+    
+    /**
+     * @return format if this renderer can render it, otherwise PNG.
+     * renderViewAsBase64() has always rendered formats that it doesn't know, including SVG, as PNG.
+     */
+    String getFormatOrPNG(String format) {
+        if(OffscreenRenderer.SVG.equalsIgnoreCase(format)) {
+            return headless ? format : PNG;
+        }
+        
+        return toSWTFormat(format) != -1 ? format : PNG;
+    }
+    
+    /**
+     * @return the file extension to use for format
+     */
+    static String getExtension(String format) {
+        return "JPEG".equalsIgnoreCase(format) ? "jpg" : format.toLowerCase(); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    
+    /**
+     * Check that format is one that this renderer can render Views to
+     * @param format One of "PNG", "BMP", "GIF", "JPG", "JPEG", or "SVG" if the "headless" option is set
+     * @throws ArchiScriptException if it isn't
+     */
+    void checkFormat(String format) {
+        if(OffscreenRenderer.SVG.equalsIgnoreCase(format)) {
+            if(!headless) {
+                throw new ArchiScriptException("SVG can only be rendered with the headless option"); //$NON-NLS-1$
+            }
+        }
+        else {
+            getSWTFormat(format);
+        }
+    }
+    
+    /**
+     * @return the SWT image format for format
+     * @throws ArchiScriptException if format is not "PNG", "BMP", "GIF", "JPG" or "JPEG"
+     */
+    static int getSWTFormat(String format) {
+        int swtFormat = toSWTFormat(format);
+        if(swtFormat == -1) {
+            throw new ArchiScriptException("Unsupported image format: " + format); //$NON-NLS-1$
+        }
+        return swtFormat;
+    }
+    
+    /**
+     * @return the SWT image format for format, or -1
+     */
+    private static int toSWTFormat(String format) {
+        switch(format.toUpperCase()) {
+            case "PNG": //$NON-NLS-1$
+                return SWT.IMAGE_PNG;
+            
+            case "BMP": //$NON-NLS-1$
+                return SWT.IMAGE_BMP;
+            
+            case "GIF": //$NON-NLS-1$
+                return SWT.IMAGE_GIF;
+            
+            case "JPG": //$NON-NLS-1$
+            case "JPEG": //$NON-NLS-1$
+                return SWT.IMAGE_JPEG;
+            
+            default:
+                return -1;
+        }
+    }
+}